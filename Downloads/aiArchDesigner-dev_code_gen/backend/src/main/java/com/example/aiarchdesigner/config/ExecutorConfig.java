@@ -0,0 +1,131 @@
+package com.example.aiarchdesigner.config;
+
+import com.example.aiarchdesigner.service.GenerationConcurrencyGate;
+import com.example.aiarchdesigner.service.phase.PhaseGraphExecutor;
+import com.example.aiarchdesigner.utils.VirtualThreadSupport;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 执行模型配置（codegen.execution.mode）：
+ * - virtual（默认）：Tomcat 请求线程和阶段线程都使用虚拟线程，阻塞在 LLM 流上的生成不再占用平台线程；
+ *   并发上限由 GenerationConcurrencyGate（codegen.max-concurrent-generations）控制。
+ *   运行时低于 Java 21 时自动回退为 platform。
+ * - platform：Tomcat 默认连接器线程池 + 固定大小的阶段线程池（codegen.phase.parallelism）。
+ *   每个生成最多同时运行两个阶段（Frontend 和 Backend），实际的并发天花板是
+ *   min(codegen.max-concurrent-generations, codegen.phase.parallelism / 2)，超出的生成在 gate 里排队，而不是在阶段线程池里排队。
+ *   同步接口排队时仍然占着一个 Tomcat 请求线程，大量并发请求应使用异步任务接口。
+ */
+@Configuration
+public class ExecutorConfig {
+
+    public static final String MODE_VIRTUAL = "virtual";
+
+    private final boolean virtualThreads;
+
+    public ExecutorConfig(@Value("${codegen.execution.mode:virtual}") String executionMode) {
+        boolean virtualRequested = MODE_VIRTUAL.equalsIgnoreCase(executionMode);
+        if (virtualRequested && !VirtualThreadSupport.isSupported()) {
+            System.out.println("Virtual threads requested but not available on Java " + Runtime.version() + ", falling back to platform threads.");
+        }
+        this.virtualThreads = virtualRequested && VirtualThreadSupport.isSupported();
+        System.out.println("Code generation execution mode: " + (virtualThreads ? "virtual" : "platform"));
+    }
+
+    // 平台线程模式下每个阶段都会阻塞一个线程等待 LLM 流式返回，因此线程数按“同时运行的阶段数”而不是 CPU 核数来配置
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService generationPhaseExecutor(@Value("${codegen.phase.parallelism:16}") int parallelism) {
+        if (virtualThreads) {
+            return VirtualThreadSupport.newVirtualThreadPerTaskExecutor("codegen-phase-");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "codegen-phase-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Bean
+    public GenerationConcurrencyGate generationConcurrencyGate(
+            @Value("${codegen.max-concurrent-generations:2000}") int maxConcurrentGenerations,
+            @Value("${codegen.phase.parallelism:16}") int phaseParallelism) {
+        int ceiling = effectiveMaxConcurrentGenerations(virtualThreads, maxConcurrentGenerations, phaseParallelism);
+        if (ceiling < maxConcurrentGenerations) {
+            System.out.println("codegen.max-concurrent-generations=" + maxConcurrentGenerations + " exceeds what " + phaseParallelism
+                    + " platform phase threads can run (codegen.phase.parallelism / 2), limiting concurrent generations to " + ceiling + ".");
+        }
+        System.out.println("Concurrent generation ceiling: " + ceiling);
+        return new GenerationConcurrencyGate(ceiling);
+    }
+
+    /**
+     * 当前执行模型下真正生效的并发天花板：虚拟线程模式为配置值；平台线程模式受阶段线程池限制，每个生成要两个阶段线程。
+     */
+    public static int effectiveMaxConcurrentGenerations(boolean virtualThreads, int maxConcurrentGenerations, int phaseParallelism) {
+        if (virtualThreads) {
+            return maxConcurrentGenerations;
+        }
+        return Math.max(1, Math.min(maxConcurrentGenerations, phaseParallelism / 2));
+    }
+
+    @Bean
+    public PhaseGraphExecutor phaseGraphExecutor(@Qualifier("generationPhaseExecutor") ExecutorService generationPhaseExecutor) {
+        return new PhaseGraphExecutor(generationPhaseExecutor);
+    }
+
+    // 单次上游请求（主请求、对冲请求、重试）各占一个线程阻塞等待流结束；数量由 UpstreamConcurrencyLimiter 控制，这里不设上限
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService llmAttemptExecutor() {
+        if (virtualThreads) {
+            return VirtualThreadSupport.newVirtualThreadPerTaskExecutor("llm-attempt-");
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "llm-attempt-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 后台任务的工作线程数和排队长度都有上限，队列满时 GenerationJobService 直接拒绝提交（准入控制）。
+    // 虚拟线程模式下工作线程不再是稀缺资源，工作线程数放宽到并发天花板（codegen.max-concurrent-generations），
+    // 真正的并发上限由 GenerationConcurrencyGate 控制，空闲的工作线程超时后退出
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService generationJobExecutor(@Value("${codegen.jobs.workers:32}") int workers,
+                                                 @Value("${codegen.jobs.queue-capacity:200}") int queueCapacity,
+                                                 @Value("${codegen.max-concurrent-generations:2000}") int maxConcurrentGenerations) {
+        if (virtualThreads) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrentGenerations, maxConcurrentGenerations, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), VirtualThreadSupport.newThreadFactory("codegen-job-"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "codegen-job-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            if (virtualThreads) {
+                protocolHandler.setExecutor(VirtualThreadSupport.newVirtualThreadPerTaskExecutor("http-vt-"));
+            }
+        };
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.aiarchdesigner.config;
+
+import com.example.aiarchdesigner.service.ChatClientRegistry;
+import com.example.aiarchdesigner.service.CircuitBreaker;
+import com.example.aiarchdesigner.service.LlmEndpoint;
+import com.example.aiarchdesigner.service.LlmEndpointPool;
+import com.example.aiarchdesigner.service.StructuredOutputMode;
+import com.example.aiarchdesigner.service.UpstreamConcurrencyLimiter;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.support.RetryTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 根据 codegen.llm.endpoints 构建 {@link LlmEndpointPool}；没有配置端点时，
+ * 由 spring.ai.openai.* 自动配置的 ChatClient.Builder 组成只有一个端点的池，行为与之前相同。
+ */
+@Configuration
+public class LlmEndpointConfig {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMs;
+    private final long rateLimitPauseMs;
+    private final long maxTokensPerMinute;
+    private final int rateLimitRetries;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMs;
+    private final StructuredOutputMode structuredOutput;
+
+    public LlmEndpointConfig(@Value("${codegen.upstream.initial-limit:8}") int initialLimit,
+                             @Value("${codegen.upstream.min-limit:1}") int minLimit,
+                             @Value("${codegen.upstream.max-limit:64}") int maxLimit,
+                             @Value("${codegen.upstream.latency-threshold-ms:20000}") long latencyThresholdMs,
+                             @Value("${codegen.upstream.rate-limit-pause-ms:1000}") long rateLimitPauseMs,
+                             @Value("${codegen.upstream.max-tokens-per-minute:0}") long maxTokensPerMinute,
+                             @Value("${codegen.upstream.rate-limit-retries:3}") int rateLimitRetries,
+                             @Value("${codegen.llm.breaker.failure-threshold:3}") int breakerFailureThreshold,
+                             @Value("${codegen.llm.breaker.open-ms:30000}") long breakerOpenMs,
+                             @Value("${codegen.llm.structured-output:json-object}") String structuredOutput) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.rateLimitPauseMs = rateLimitPauseMs;
+        this.maxTokensPerMinute = maxTokensPerMinute;
+        this.rateLimitRetries = rateLimitRetries;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMs = breakerOpenMs;
+        this.structuredOutput = StructuredOutputMode.parse(structuredOutput);
+    }
+
+    @Bean
+    public LlmEndpointPool llmEndpointPool(LlmEndpointProperties properties, ChatClient.Builder defaultChatClientBuilder,
+                                           @Value("${spring.ai.openai.base-url:}") String defaultBaseUrl,
+                                           @Value("${spring.ai.openai.chat.model:}") String defaultModel) {
+        List<LlmEndpoint> endpoints = new ArrayList<>();
+        if (properties.getEndpoints().isEmpty()) {
+            endpoints.add(endpoint("default", defaultBaseUrl, defaultModel.isEmpty() ? null : defaultModel, 1,
+                    defaultChatClientBuilder, null, null, null));
+        }
+        for (LlmEndpointProperties.Endpoint settings : properties.getEndpoints()) {
+            String name = settings.getName() != null ? settings.getName() : "endpoint-" + (endpoints.size() + 1);
+            endpoints.add(endpoint(name, settings.getBaseUrl(), settings.getModel(), settings.getWeight(),
+                    openAiChatClientBuilder(settings.getBaseUrl(), settings.getApiKey(), settings.getModel()),
+                    settings.getMaxConcurrency(), settings.getMaxTokensPerMinute(), settings.getStructuredOutput()));
+        }
+        return new LlmEndpointPool(endpoints);
+    }
+
+    public LlmEndpoint endpoint(String name, String baseUrl, String model, int weight, ChatClient.Builder chatClientBuilder,
+                                Integer maxConcurrency, Long endpointMaxTokensPerMinute, String endpointStructuredOutput) {
+        int endpointMaxLimit = maxConcurrency != null ? maxConcurrency : maxLimit;
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(Math.min(initialLimit, endpointMaxLimit),
+                Math.min(minLimit, endpointMaxLimit), endpointMaxLimit, latencyThresholdMs, rateLimitPauseMs,
+                endpointMaxTokensPerMinute != null ? endpointMaxTokensPerMinute : maxTokensPerMinute, rateLimitRetries);
+        return new LlmEndpoint(name, model, baseUrl, weight, new ChatClientRegistry(chatClientBuilder, model), limiter,
+                new CircuitBreaker(breakerFailureThreshold, breakerOpenMs),
+                endpointStructuredOutput != null ? StructuredOutputMode.parse(endpointStructuredOutput) : structuredOutput);
+    }
+
+    /**
+     * 直接连某个 OpenAI 兼容端点的 ChatClient.Builder。关闭 Spring AI 自带的重试：
+     * 失败时由 LlmEndpointPool 换端点、由 HedgedLlmStreamer 退避重试，而不是在一个坏端点上重试十次。
+     */
+    public static ChatClient.Builder openAiChatClientBuilder(String baseUrl, String apiKey, String model) {
+        OpenAiApi openAiApi = OpenAiApi.builder()
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .build();
+        OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                .openAiApi(openAiApi)
+                .defaultOptions(OpenAiChatOptions.builder().model(model).build())
+                .retryTemplate(RetryTemplate.builder().maxAttempts(1).build())
+                .build();
+        return ChatClient.builder(chatModel);
+    }
+}
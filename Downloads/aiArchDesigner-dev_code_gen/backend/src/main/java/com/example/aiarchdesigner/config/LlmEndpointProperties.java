@@ -0,0 +1,102 @@
+package com.example.aiarchdesigner.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * codegen.llm.endpoints[n].*：可互相替代的 OpenAI 兼容端点。没有配置时只使用 spring.ai.openai.* 对应的单个端点。
+ */
+@Component
+@ConfigurationProperties(prefix = "codegen.llm")
+public class LlmEndpointProperties {
+
+    private List<Endpoint> endpoints = new ArrayList<>();
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void setEndpoints(List<Endpoint> endpoints) {
+        this.endpoints = endpoints;
+    }
+
+    public static class Endpoint {
+        private String name;
+        private String baseUrl;
+        private String apiKey;
+        private String model;
+        private int weight = 1;
+        // 不配置时使用 codegen.upstream.max-limit / codegen.upstream.max-tokens-per-minute
+        private Integer maxConcurrency;
+        private Long maxTokensPerMinute;
+        // none / json-object / json-schema，不配置时使用 codegen.llm.structured-output
+        private String structuredOutput;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public Integer getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(Integer maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public Long getMaxTokensPerMinute() {
+            return maxTokensPerMinute;
+        }
+
+        public void setMaxTokensPerMinute(Long maxTokensPerMinute) {
+            this.maxTokensPerMinute = maxTokensPerMinute;
+        }
+
+        public String getStructuredOutput() {
+            return structuredOutput;
+        }
+
+        public void setStructuredOutput(String structuredOutput) {
+            this.structuredOutput = structuredOutput;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.aiarchdesigner.controller;
+
+import com.example.aiarchdesigner.model.CacheStats;
+import com.example.aiarchdesigner.service.LlmResponseCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/code-generation/cache")
+public class CacheController {
+
+    private final LlmResponseCache llmResponseCache;
+
+    @Autowired
+    public CacheController(LlmResponseCache llmResponseCache) {
+        this.llmResponseCache = llmResponseCache;
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<CacheStats> getStats() {
+        return ResponseEntity.ok(llmResponseCache.getStats());
+    }
+
+    @PostMapping("/compact")
+    public ResponseEntity<CacheStats> compact() {
+        llmResponseCache.compact();
+        return ResponseEntity.ok(llmResponseCache.getStats());
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> clear() {
+        llmResponseCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -1,39 +1,53 @@
 package com.example.aiarchdesigner.controller;
 
 import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationOptions;
 import com.example.aiarchdesigner.service.CodeGenerationService;
+import com.example.aiarchdesigner.service.GenerationJobService;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/code-generation")
 public class CodeGenerationController {
 
     private final CodeGenerationService codeGenerationService;
+    private final GenerationJobService generationJobService;
+    private final long sseTimeoutMillis;
 
     @Autowired
-    public CodeGenerationController(CodeGenerationService codeGenerationService) {
+    public CodeGenerationController(CodeGenerationService codeGenerationService, GenerationJobService generationJobService,
+                                    @Value("${codegen.sse.timeout-minutes:30}") long sseTimeoutMinutes) {
         this.codeGenerationService = codeGenerationService;
+        this.generationJobService = generationJobService;
+        this.sseTimeoutMillis = TimeUnit.MINUTES.toMillis(sseTimeoutMinutes);
     }
 
     @PostMapping("/generate-from-document")
-    public ResponseEntity<List<GeneratedFile>> generateCodeFromDocument(@RequestParam("designDocument") MultipartFile designDocument) {
+    public ResponseEntity<List<GeneratedFile>> generateCodeFromDocument(@RequestParam("designDocument") MultipartFile designDocument,
+                                                                        @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
         if (designDocument.isEmpty()) {
             return ResponseEntity.badRequest().body(Collections.singletonList(new GeneratedFile("error", "Design document is empty.")));
         }
         try {
             String designDocumentContent = new String(designDocument.getBytes());
-            System.out.println("设计文档内容为:\n"+designDocumentContent);
-            System.out.println("=====");
-            List<GeneratedFile> generatedFiles = codeGenerationService.generateProjectCode(designDocumentContent);
+            // 设计文档全文不再打印到控制台；异步任务的提示词可以通过 /jobs/{jobId}/transcript 查看
+            System.out.println("设计文档长度:" + designDocumentContent.length());
+            List<GeneratedFile> generatedFiles = codeGenerationService.generateProjectCode(designDocumentContent, GenerationOptions.of(useCache), PhaseListener.NO_OP);
             System.out.println("结束时间:"+LocalDateTime.now());
 
             return ResponseEntity.ok(generatedFiles);
@@ -50,16 +64,44 @@ public class CodeGenerationController {
         }
     }
 
+    /**
+     * 与 generate-from-document 相同的生成流程，但以 SSE 实时推送每个阶段的 LLM 输出分片，
+     * 首字节时间等于模型的首 token 延迟，而不是全部阶段完成的时间。
+     */
+    @PostMapping(value = "/generate-from-document/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<?> streamCodeFromDocument(@RequestParam("designDocument") MultipartFile designDocument,
+                                                    @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
+        if (designDocument.isEmpty()) {
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(Collections.singletonMap("error", "Design document is empty."));
+        }
+        try {
+            String designDocumentContent = new String(designDocument.getBytes());
+            SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+            SseGenerationStream stream = new SseGenerationStream(emitter);
+            stream.start(() -> generationJobService.submit(designDocumentContent, GenerationOptions.of(useCache), stream, stream::finish));
+            return ResponseEntity.ok(emitter);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).contentType(MediaType.APPLICATION_JSON)
+                    .body(Collections.singletonMap("error", "Too many generation jobs queued, please retry later."));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).contentType(MediaType.APPLICATION_JSON)
+                    .body(Collections.singletonMap("error", "Error processing design document: " + e.getMessage()));
+        }
+    }
+
     // --- NEW ENDPOINTS FOR GRANULAR CODE GENERATION ---
 
     @PostMapping("/list-files-to-generate")
-    public ResponseEntity<?> listFilesToGenerate(@RequestParam("designDocument") MultipartFile designDocument) {
+    public ResponseEntity<?> listFilesToGenerate(@RequestParam("designDocument") MultipartFile designDocument,
+                                                 @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
         if (designDocument.isEmpty()) {
             return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Design document is empty."));
         }
         try {
             String designDocumentContent = new String(designDocument.getBytes());
-            List<String> filenames = codeGenerationService.listFilesToGenerate(designDocumentContent);
+            List<String> filenames = codeGenerationService.listFilesToGenerate(designDocumentContent, GenerationOptions.of(useCache));
             return ResponseEntity.ok(filenames);
         } catch (IOException e) {
             // Log the exception
@@ -73,32 +115,61 @@ public class CodeGenerationController {
         }
     }
 
-//    @PostMapping("/generate-single-file")
-//    public ResponseEntity<?> generateSingleFileContent(
-//            @RequestParam("designDocument") MultipartFile designDocument,
-//            @RequestParam("filename") String filename) {
-//
-//        if (designDocument.isEmpty()) {
-//            return ResponseEntity.badRequest().body(new GeneratedFile("error", "Design document is empty for file: " + filename));
-//        }
-//        if (filename == null || filename.trim().isEmpty()) {
-//            return ResponseEntity.badRequest().body(new GeneratedFile("error", "Filename parameter is missing or empty."));
-//        }
-//
-//        try {
-//            String designDocumentContent = new String(designDocument.getBytes());
-//            GeneratedFile generatedFile = codeGenerationService.generateSingleFileContent(designDocumentContent, filename);
-//            return ResponseEntity.ok(generatedFile);
-//        } catch (IOException e) {
-//            // Log the exception
-//            e.printStackTrace();
-//            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-//                    .body(new GeneratedFile("error", "Error processing design document for generating file '" + filename + "': " + e.getMessage()));
-//        } catch (Exception e) {
-//            e.printStackTrace();
-//            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-//                    .body(new GeneratedFile("error", "An unexpected error occurred while generating file '" + filename + "': " + e.getMessage()));
-//        }
-//    }
+    @PostMapping("/generate-single-file")
+    public ResponseEntity<?> generateSingleFileContent(
+            @RequestParam("designDocument") MultipartFile designDocument,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
+
+        if (designDocument.isEmpty()) {
+            return ResponseEntity.badRequest().body(new GeneratedFile("error", "Design document is empty for file: " + filename));
+        }
+        if (filename == null || filename.trim().isEmpty()) {
+            return ResponseEntity.badRequest().body(new GeneratedFile("error", "Filename parameter is missing or empty."));
+        }
+
+        try {
+            String designDocumentContent = new String(designDocument.getBytes());
+            GeneratedFile generatedFile = codeGenerationService.generateSingleFileContent(designDocumentContent, filename, GenerationOptions.of(useCache));
+            return ResponseEntity.ok(generatedFile);
+        } catch (IOException e) {
+            // Log the exception
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new GeneratedFile("error", "Error processing design document for generating file '" + filename + "': " + e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new GeneratedFile("error", "An unexpected error occurred while generating file '" + filename + "': " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 逐文件并行生成：按 list-files-to-generate 的文件清单为每个文件单独请求 LLM，
+     * 同时在途的请求数不超过 parallelism（上限 codegen.fanout.max-parallelism）。
+     */
+    @PostMapping("/generate-per-file")
+    public ResponseEntity<List<GeneratedFile>> generateCodePerFile(
+            @RequestParam("designDocument") MultipartFile designDocument,
+            @RequestParam(value = "parallelism", defaultValue = "8") int parallelism,
+            @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
+        if (designDocument.isEmpty()) {
+            return ResponseEntity.badRequest().body(Collections.singletonList(new GeneratedFile("error", "Design document is empty.")));
+        }
+        try {
+            String designDocumentContent = new String(designDocument.getBytes());
+            List<GeneratedFile> generatedFiles = codeGenerationService.generateProjectCodePerFile(designDocumentContent, parallelism,
+                    GenerationOptions.of(useCache), PhaseListener.NO_OP);
+            return ResponseEntity.ok(generatedFiles);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonList(new GeneratedFile("error", "Error processing design document: " + e.getMessage())));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonList(new GeneratedFile("error", "An unexpected error occurred: " + e.getMessage())));
+        }
+    }
     // --- End of NEW ENDPOINTS ---
 } 
\ No newline at end of file
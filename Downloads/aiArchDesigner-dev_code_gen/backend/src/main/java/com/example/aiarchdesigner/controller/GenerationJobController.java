@@ -0,0 +1,123 @@
+package com.example.aiarchdesigner.controller;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationJob;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.model.JobStatus;
+import com.example.aiarchdesigner.service.GenerationJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/code-generation/jobs")
+public class GenerationJobController {
+
+    private final GenerationJobService generationJobService;
+
+    @Autowired
+    public GenerationJobController(GenerationJobService generationJobService) {
+        this.generationJobService = generationJobService;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> submitJob(@RequestParam("designDocument") MultipartFile designDocument,
+                                       @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
+        if (designDocument.isEmpty()) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Design document is empty."));
+        }
+        try {
+            String designDocumentContent = new String(designDocument.getBytes());
+            GenerationJob job = generationJobService.submit(designDocumentContent, GenerationOptions.of(useCache));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Collections.singletonMap("error", "Too many generation jobs queued, please retry later."));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Error processing design document: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 增量重新生成：上传修改后的设计文档，只重新生成受变化影响的文件，其余文件复用 jobId 对应任务的结果。
+     */
+    @PostMapping("/{jobId}/regenerate")
+    public ResponseEntity<?> regenerate(@PathVariable("jobId") String jobId,
+                                        @RequestParam("designDocument") MultipartFile designDocument,
+                                        @RequestParam(value = "useCache", defaultValue = "true") boolean useCache) {
+        if (designDocument.isEmpty()) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Design document is empty."));
+        }
+        try {
+            String designDocumentContent = new String(designDocument.getBytes());
+            GenerationJob job = generationJobService.submitRegeneration(jobId, designDocumentContent, GenerationOptions.of(useCache));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .body(Collections.singletonMap("error", "Too many generation jobs queued, please retry later."));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Error processing design document: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable("jobId") String jobId) {
+        GenerationJob job = generationJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", "Unknown job: " + jobId));
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * 任务的对话记录：各阶段的提示词、模型输出和耗时，纯文本。任务运行中返回已经写出的部分。
+     */
+    @GetMapping(value = "/{jobId}/transcript", produces = MediaType.TEXT_PLAIN_VALUE)
+    public ResponseEntity<String> getJobTranscript(@PathVariable("jobId") String jobId) {
+        try {
+            String transcript = generationJobService.getTranscript(jobId);
+            if (transcript == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No transcript for job: " + jobId);
+            }
+            return ResponseEntity.ok(transcript);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading transcript: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<?> getJobResult(@PathVariable("jobId") String jobId) {
+        GenerationJob job = generationJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", "Unknown job: " + jobId));
+        }
+        if (job.getStatus() == JobStatus.FAILED) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonList(new GeneratedFile("error", "Generation job failed: " + job.getErrorMessage())));
+        }
+        if (job.getStatus() != JobStatus.COMPLETED) {
+            // 任务尚未完成，返回当前状态供客户端继续轮询
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        }
+        List<GeneratedFile> files = job.getResult();
+        return ResponseEntity.ok(files);
+    }
+}
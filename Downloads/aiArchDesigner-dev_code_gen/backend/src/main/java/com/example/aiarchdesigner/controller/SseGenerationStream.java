@@ -0,0 +1,111 @@
+package com.example.aiarchdesigner.controller;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationJob;
+import com.example.aiarchdesigner.model.JobStatus;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 把生成进度以 Server-Sent Events 推送给客户端：
+ * job → phase-start → (chunk | chunk-reset | file)* → phase-complete → ... → done / error。
+ * <p>
+ * 前端与后端阶段并行执行，send 由锁串行化。send 是阻塞写，客户端读得慢时会阻塞正在消费 LLM 流的阶段线程，
+ * 再经由 Flux 的有限预取传导到上游，这就是这里的背压。客户端断开后停止推送，但任务继续执行，结果仍可通过
+ * /api/code-generation/jobs/{jobId}/result 获取。
+ */
+public class SseGenerationStream implements PhaseListener {
+
+    private final SseEmitter emitter;
+    private final Object sendLock = new Object();
+    private volatile boolean open = true;
+
+    public SseGenerationStream(SseEmitter emitter) {
+        this.emitter = emitter;
+        emitter.onCompletion(() -> open = false);
+        emitter.onTimeout(() -> open = false);
+        emitter.onError(e -> open = false);
+    }
+
+    /**
+     * 提交任务并推送 job 事件。提交与推送在 sendLock 内完成，保证 job 事件一定先于任何阶段事件。
+     */
+    public GenerationJob start(Supplier<GenerationJob> submission) {
+        synchronized (sendLock) {
+            GenerationJob job = submission.get();
+            send("job", Map.of("jobId", job.getJobId(), "status", job.getStatus()));
+            return job;
+        }
+    }
+
+    @Override
+    public void onPhaseStarted(String phaseName) {
+        send("phase-start", Map.of("phase", phaseName));
+    }
+
+    @Override
+    public void onChunk(String phaseName, String chunk) {
+        send("chunk", Map.of("phase", phaseName, "text", chunk));
+    }
+
+    @Override
+    public void onStreamReset(String phaseName) {
+        send("chunk-reset", Map.of("phase", phaseName));
+    }
+
+    @Override
+    public void onFile(String phaseName, GeneratedFile generatedFile) {
+        send("file", Map.of("phase", phaseName, "filePath", String.valueOf(generatedFile.getFilePath())));
+    }
+
+    @Override
+    public void onPhaseCompleted(PhaseResult result) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("phase", result.getPhaseName());
+        data.put("status", result.getStatus());
+        data.put("durationMillis", result.getDurationMillis());
+        data.put("fileCount", result.getFiles().size());
+        send("phase-complete", data);
+    }
+
+    public void finish(GenerationJob job) {
+        if (job.getStatus() == JobStatus.COMPLETED) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("jobId", job.getJobId());
+            data.put("files", job.getResult());
+            send("done", data);
+        } else {
+            send("error", Map.of("jobId", job.getJobId(), "error", String.valueOf(job.getErrorMessage())));
+        }
+        synchronized (sendLock) {
+            if (open) {
+                emitter.complete();
+                open = false;
+            }
+        }
+    }
+
+    private void send(String eventName, Object data) {
+        if (!open) {
+            return;
+        }
+        synchronized (sendLock) {
+            if (!open) {
+                return;
+            }
+            try {
+                emitter.send(SseEmitter.event().name(eventName).data(data));
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已断开，后续事件直接丢弃
+                System.err.println("SSE client disconnected, stop streaming: " + e.getMessage());
+                open = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.aiarchdesigner.controller;
+
+import com.example.aiarchdesigner.model.HedgingStats;
+import com.example.aiarchdesigner.model.LlmEndpointStats;
+import com.example.aiarchdesigner.model.ResponseParseStats;
+import com.example.aiarchdesigner.service.HedgedLlmStreamer;
+import com.example.aiarchdesigner.service.LlmEndpointPool;
+import com.example.aiarchdesigner.service.ResponseParseTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/code-generation/upstream")
+public class UpstreamController {
+
+    private final LlmEndpointPool llmEndpointPool;
+    private final HedgedLlmStreamer hedgedLlmStreamer;
+    private final ResponseParseTracker responseParseTracker;
+
+    @Autowired
+    public UpstreamController(LlmEndpointPool llmEndpointPool, HedgedLlmStreamer hedgedLlmStreamer,
+                              ResponseParseTracker responseParseTracker) {
+        this.llmEndpointPool = llmEndpointPool;
+        this.hedgedLlmStreamer = hedgedLlmStreamer;
+        this.responseParseTracker = responseParseTracker;
+    }
+
+    /**
+     * 每个端点的熔断状态、延迟/吞吐 EWMA 以及各自的并发限制。
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<List<LlmEndpointStats>> getStats() {
+        return ResponseEntity.ok(llmEndpointPool.getStats());
+    }
+
+    @GetMapping("/hedging/stats")
+    public ResponseEntity<HedgingStats> getHedgingStats() {
+        return ResponseEntity.ok(hedgedLlmStreamer.getStats());
+    }
+
+    /**
+     * 按阶段、模型和 response_format 统计的响应解析失败率。
+     */
+    @GetMapping("/parse/stats")
+    public ResponseEntity<List<ResponseParseStats>> getParseStats() {
+        return ResponseEntity.ok(responseParseTracker.getStats());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.aiarchdesigner.model;
+
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+    private final long sizeBytes;
+    // 持久层 (磁盘) 统计，未启用时保持 0
+    private long diskHits;
+    private int diskEntries;
+    private long diskLiveBytes;
+    private long diskFileBytes;
+    private long diskEvictions;
+    private int diskCompactions;
+
+    public CacheStats(long hits, long misses, long evictions, int entries, long sizeBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.sizeBytes = sizeBytes;
+    }
+
+    public void setDisk(long diskHits, int diskEntries, long diskLiveBytes, long diskFileBytes,
+                        long diskEvictions, int diskCompactions) {
+        this.diskHits = diskHits;
+        this.diskEntries = diskEntries;
+        this.diskLiveBytes = diskLiveBytes;
+        this.diskFileBytes = diskFileBytes;
+        this.diskEvictions = diskEvictions;
+        this.diskCompactions = diskCompactions;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getDiskHits() {
+        return diskHits;
+    }
+
+    public int getDiskEntries() {
+        return diskEntries;
+    }
+
+    public long getDiskLiveBytes() {
+        return diskLiveBytes;
+    }
+
+    public long getDiskFileBytes() {
+        return diskFileBytes;
+    }
+
+    public long getDiskEvictions() {
+        return diskEvictions;
+    }
+
+    public int getDiskCompactions() {
+        return diskCompactions;
+    }
+
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
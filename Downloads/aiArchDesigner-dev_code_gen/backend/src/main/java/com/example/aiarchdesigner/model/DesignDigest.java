@@ -0,0 +1,79 @@
+package com.example.aiarchdesigner.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 大型设计文档按阶段浓缩后的摘要。后端、前端、README 阶段分别使用 backend / frontend / overview 代替原文；
+ * 文档不需要浓缩时三者都是原文（condensed = false）。
+ */
+public class DesignDigest {
+    private final String documentHash;
+    private final boolean condensed;
+    private final int chunkCount;
+    private final String backend;
+    private final String frontend;
+    private final String overview;
+
+    @JsonCreator
+    public DesignDigest(@JsonProperty("documentHash") String documentHash,
+                        @JsonProperty("condensed") boolean condensed,
+                        @JsonProperty("chunkCount") int chunkCount,
+                        @JsonProperty("backend") String backend,
+                        @JsonProperty("frontend") String frontend,
+                        @JsonProperty("overview") String overview) {
+        this.documentHash = documentHash;
+        this.condensed = condensed;
+        this.chunkCount = chunkCount;
+        this.backend = backend;
+        this.frontend = frontend;
+        this.overview = overview;
+    }
+
+    public static DesignDigest unchanged(String documentHash, String designDocumentContent) {
+        return new DesignDigest(documentHash, false, 1, designDocumentContent, designDocumentContent, designDocumentContent);
+    }
+
+    public String getDocumentHash() {
+        return documentHash;
+    }
+
+    public boolean isCondensed() {
+        return condensed;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public String getFrontend() {
+        return frontend;
+    }
+
+    public String getOverview() {
+        return overview;
+    }
+
+    /**
+     * 列文件清单需要同时看到前后端。
+     */
+    @JsonIgnore
+    public String getFilePlanning() {
+        return condensed ? backend + "\n\n" + frontend : backend;
+    }
+
+    /**
+     * 逐文件生成时按目标文件所在的模块选摘要。
+     */
+    public String forFile(String filePath) {
+        if (filePath.startsWith("frontend/") || filePath.startsWith("front/")) {
+            return frontend;
+        }
+        return filePath.equalsIgnoreCase("README.md") ? overview : backend;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.aiarchdesigner.model;
+
+/**
+ * 设计文档中的一个片段：某个标题下的一段文本、一张表格、一个 mermaid 图或代码块。
+ * id 由标题路径、片段类型和同一标题下同类片段的序号组成，在两个版本的文档之间用来对齐片段。
+ */
+public class DesignSection {
+    private final String id;
+    private final String headingPath;
+    private final SectionKind kind;
+    private final String content;
+
+    public DesignSection(String id, String headingPath, SectionKind kind, String content) {
+        this.id = id;
+        this.headingPath = headingPath;
+        this.kind = kind;
+        this.content = content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHeadingPath() {
+        return headingPath;
+    }
+
+    public SectionKind getKind() {
+        return kind;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.aiarchdesigner.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个后台代码生成任务。状态字段由任务线程写入、由轮询请求读取，因此都是 volatile；
+ * phases 在创建时确定，之后只修改其中 JobPhaseStatus 的值，不做结构性修改。
+ */
+public class GenerationJob {
+    private final String jobId;
+    private final Instant submittedAt;
+    private final Map<String, JobPhaseStatus> phases = new LinkedHashMap<>();
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String errorMessage;
+    private volatile List<GeneratedFile> result;
+    // 保留原始设计文档和各阶段产出，供后续基于本任务做增量重新生成
+    private final String designDocumentContent;
+    private volatile RegenerationPlan regenerationPlan;
+    // 所有阶段（包括逐文件生成时的每个文件）LLM 调用的 token 数之和
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedPromptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+
+    public GenerationJob(String jobId, List<String> phaseNames) {
+        this(jobId, phaseNames, null);
+    }
+
+    public GenerationJob(String jobId, List<String> phaseNames, String designDocumentContent) {
+        this.jobId = jobId;
+        this.submittedAt = Instant.now();
+        this.designDocumentContent = designDocumentContent;
+        for (String phaseName : phaseNames) {
+            phases.put(phaseName, new JobPhaseStatus(phaseName));
+        }
+    }
+
+    public void markRunning() {
+        this.startedAt = Instant.now();
+        this.status = JobStatus.RUNNING;
+    }
+
+    public void markCompleted(List<GeneratedFile> files) {
+        this.result = new ArrayList<>(files);
+        this.finishedAt = Instant.now();
+        this.status = JobStatus.COMPLETED;
+    }
+
+    public void markFailed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        this.finishedAt = Instant.now();
+        this.status = JobStatus.FAILED;
+    }
+
+    public void addTokenUsage(long promptTokens, long cachedPromptTokens, long completionTokens) {
+        this.promptTokens.addAndGet(promptTokens);
+        this.cachedPromptTokens.addAndGet(cachedPromptTokens);
+        this.completionTokens.addAndGet(completionTokens);
+    }
+
+    @JsonIgnore
+    public JobPhaseStatus getPhase(String phaseName) {
+        return phases.get(phaseName);
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == JobStatus.COMPLETED || status == JobStatus.FAILED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Instant getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens.get();
+    }
+
+    // 命中服务端前缀缓存的输入 token，包含在 promptTokens 中
+    public long getCachedPromptTokens() {
+        return cachedPromptTokens.get();
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens.get();
+    }
+
+    public Collection<JobPhaseStatus> getPhases() {
+        return phases.values();
+    }
+
+    @JsonIgnore
+    public List<GeneratedFile> getResult() {
+        return result;
+    }
+
+    @JsonIgnore
+    public String getDesignDocumentContent() {
+        return designDocumentContent;
+    }
+
+    @JsonIgnore
+    public Map<String, List<GeneratedFile>> getPhaseFiles() {
+        Map<String, List<GeneratedFile>> phaseFiles = new LinkedHashMap<>();
+        phases.forEach((phaseName, phase) -> phaseFiles.put(phaseName, phase.getFiles()));
+        return phaseFiles;
+    }
+
+    public RegenerationPlan getRegenerationPlan() {
+        return regenerationPlan;
+    }
+
+    public void setRegenerationPlan(RegenerationPlan regenerationPlan) {
+        this.regenerationPlan = regenerationPlan;
+    }
+}
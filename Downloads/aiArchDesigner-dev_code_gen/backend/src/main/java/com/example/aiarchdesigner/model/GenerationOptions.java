@@ -0,0 +1,26 @@
+package com.example.aiarchdesigner.model;
+
+/**
+ * 单次生成请求的可选项。
+ */
+public class GenerationOptions {
+    private boolean useCache = true;
+
+    public static GenerationOptions defaults() {
+        return new GenerationOptions();
+    }
+
+    public static GenerationOptions of(boolean useCache) {
+        GenerationOptions options = new GenerationOptions();
+        options.setUseCache(useCache);
+        return options;
+    }
+
+    public boolean isUseCache() {
+        return useCache;
+    }
+
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.aiarchdesigner.model;
+
+public class HedgingStats {
+    private final long calls;
+    private final long hedgesFired;
+    private final long hedgesWon;
+    private final long retries;
+    private final long failovers;
+    private final long hedgeDelayMillis;
+    // 最近 512 次调用的延迟分位数（毫秒），没有样本时为 -1
+    private final long firstTokenP50Millis;
+    private final long firstTokenP95Millis;
+    private final long firstTokenP99Millis;
+    private final long streamP50Millis;
+    private final long streamP95Millis;
+    private final long streamP99Millis;
+
+    public HedgingStats(long calls, long hedgesFired, long hedgesWon, long retries, long failovers, long hedgeDelayMillis,
+                        long firstTokenP50Millis, long firstTokenP95Millis, long firstTokenP99Millis,
+                        long streamP50Millis, long streamP95Millis, long streamP99Millis) {
+        this.calls = calls;
+        this.hedgesFired = hedgesFired;
+        this.hedgesWon = hedgesWon;
+        this.retries = retries;
+        this.failovers = failovers;
+        this.hedgeDelayMillis = hedgeDelayMillis;
+        this.firstTokenP50Millis = firstTokenP50Millis;
+        this.firstTokenP95Millis = firstTokenP95Millis;
+        this.firstTokenP99Millis = firstTokenP99Millis;
+        this.streamP50Millis = streamP50Millis;
+        this.streamP95Millis = streamP95Millis;
+        this.streamP99Millis = streamP99Millis;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getHedgesFired() {
+        return hedgesFired;
+    }
+
+    public long getHedgesWon() {
+        return hedgesWon;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    public long getFailovers() {
+        return failovers;
+    }
+
+    public long getHedgeDelayMillis() {
+        return hedgeDelayMillis;
+    }
+
+    public long getFirstTokenP50Millis() {
+        return firstTokenP50Millis;
+    }
+
+    public long getFirstTokenP95Millis() {
+        return firstTokenP95Millis;
+    }
+
+    public long getFirstTokenP99Millis() {
+        return firstTokenP99Millis;
+    }
+
+    public long getStreamP50Millis() {
+        return streamP50Millis;
+    }
+
+    public long getStreamP95Millis() {
+        return streamP95Millis;
+    }
+
+    public long getStreamP99Millis() {
+        return streamP99Millis;
+    }
+}
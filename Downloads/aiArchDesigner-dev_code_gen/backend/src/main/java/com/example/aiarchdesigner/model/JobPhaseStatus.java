@@ -0,0 +1,79 @@
+package com.example.aiarchdesigner.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JobPhaseStatus {
+    private final String phaseName;
+    private volatile PhaseStatus status = PhaseStatus.PENDING;
+    private volatile long durationMillis;
+    private volatile int fileCount;
+    private volatile String errorMessage;
+    private volatile List<GeneratedFile> files = List.of();
+    // 增量重新生成时同一阶段的多个文件并行调用 LLM
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong cachedPromptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+
+    public JobPhaseStatus(String phaseName) {
+        this.phaseName = phaseName;
+    }
+
+    public void markRunning() {
+        this.status = PhaseStatus.RUNNING;
+    }
+
+    public void markFinished(PhaseResult result) {
+        this.durationMillis = result.getDurationMillis();
+        this.fileCount = result.getFiles().size();
+        this.errorMessage = result.getErrorMessage();
+        this.files = List.copyOf(result.getFiles());
+        this.status = result.getStatus();
+    }
+
+    public void addTokenUsage(long promptTokens, long cachedPromptTokens, long completionTokens) {
+        this.promptTokens.addAndGet(promptTokens);
+        this.cachedPromptTokens.addAndGet(cachedPromptTokens);
+        this.completionTokens.addAndGet(completionTokens);
+    }
+
+    public String getPhaseName() {
+        return phaseName;
+    }
+
+    public PhaseStatus getStatus() {
+        return status;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens.get();
+    }
+
+    // 命中服务端前缀缓存的输入 token，包含在 promptTokens 中
+    public long getCachedPromptTokens() {
+        return cachedPromptTokens.get();
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens.get();
+    }
+
+    @JsonIgnore
+    public List<GeneratedFile> getFiles() {
+        return files;
+    }
+}
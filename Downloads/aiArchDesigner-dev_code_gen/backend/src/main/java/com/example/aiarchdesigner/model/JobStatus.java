@@ -0,0 +1,8 @@
+package com.example.aiarchdesigner.model;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
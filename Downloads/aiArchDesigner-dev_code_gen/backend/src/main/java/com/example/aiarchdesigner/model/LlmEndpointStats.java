@@ -0,0 +1,87 @@
+package com.example.aiarchdesigner.model;
+
+public class LlmEndpointStats {
+    private final String name;
+    private final String model;
+    private final String baseUrl;
+    private final int weight;
+    private final String circuitState;
+    private final int consecutiveFailures;
+    private final long timesOpened;
+    private final long ewmaFirstTokenMillis;
+    private final double ewmaTokensPerSecond;
+    private final long requests;
+    private final long failures;
+    private final String structuredOutput;
+    private final UpstreamLimiterStats limiter;
+
+    public LlmEndpointStats(String name, String model, String baseUrl, int weight, String circuitState, int consecutiveFailures,
+                            long timesOpened, long ewmaFirstTokenMillis, double ewmaTokensPerSecond, long requests, long failures,
+                            String structuredOutput, UpstreamLimiterStats limiter) {
+        this.name = name;
+        this.model = model;
+        this.baseUrl = baseUrl;
+        this.weight = weight;
+        this.circuitState = circuitState;
+        this.consecutiveFailures = consecutiveFailures;
+        this.timesOpened = timesOpened;
+        this.ewmaFirstTokenMillis = ewmaFirstTokenMillis;
+        this.ewmaTokensPerSecond = ewmaTokensPerSecond;
+        this.requests = requests;
+        this.failures = failures;
+        this.structuredOutput = structuredOutput;
+        this.limiter = limiter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public String getCircuitState() {
+        return circuitState;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getTimesOpened() {
+        return timesOpened;
+    }
+
+    public long getEwmaFirstTokenMillis() {
+        return ewmaFirstTokenMillis;
+    }
+
+    public double getEwmaTokensPerSecond() {
+        return ewmaTokensPerSecond;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public String getStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public UpstreamLimiterStats getLimiter() {
+        return limiter;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.aiarchdesigner.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PhaseResult {
+    private String phaseName;
+    private PhaseStatus status;
+    private List<GeneratedFile> files = new ArrayList<>();
+    private long startOffsetMillis;
+    private long durationMillis;
+    private String errorMessage;
+
+    public PhaseResult() {
+    }
+
+    public PhaseResult(String phaseName, PhaseStatus status, List<GeneratedFile> files, long startOffsetMillis, long durationMillis, String errorMessage) {
+        this.phaseName = phaseName;
+        this.status = status;
+        this.files = files;
+        this.startOffsetMillis = startOffsetMillis;
+        this.durationMillis = durationMillis;
+        this.errorMessage = errorMessage;
+    }
+
+    public String getPhaseName() {
+        return phaseName;
+    }
+
+    public void setPhaseName(String phaseName) {
+        this.phaseName = phaseName;
+    }
+
+    public PhaseStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(PhaseStatus status) {
+        this.status = status;
+    }
+
+    public List<GeneratedFile> getFiles() {
+        return files;
+    }
+
+    public void setFiles(List<GeneratedFile> files) {
+        this.files = files;
+    }
+
+    public long getStartOffsetMillis() {
+        return startOffsetMillis;
+    }
+
+    public void setStartOffsetMillis(long startOffsetMillis) {
+        this.startOffsetMillis = startOffsetMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
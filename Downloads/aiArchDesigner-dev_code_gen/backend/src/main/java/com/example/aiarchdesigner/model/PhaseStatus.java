@@ -0,0 +1,8 @@
+package com.example.aiarchdesigner.model;
+
+public enum PhaseStatus {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,93 @@
+package com.example.aiarchdesigner.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 增量重新生成的计划：新旧设计文档之间变化的片段、每个片段影响到的上一次生成的文件，以及其余可直接复用的文件。
+ * 变化无法归因到已有文件（例如新增了一张表，需要新的实体和接口）时退化为完整生成。
+ */
+public class RegenerationPlan {
+    private String baseJobId;
+    private final List<SectionChange> changes;
+    private final Map<String, List<GeneratedFile>> previousPhaseFiles;
+    // 阶段名 -> 文件路径 -> 影响该文件的片段变化
+    private final Map<String, Map<String, List<SectionChange>>> affectedFiles = new LinkedHashMap<>();
+    private final List<String> unmappedSections = new ArrayList<>();
+    private String fullRegenerationReason;
+
+    public RegenerationPlan(List<SectionChange> changes, Map<String, List<GeneratedFile>> previousPhaseFiles) {
+        this.changes = changes;
+        this.previousPhaseFiles = previousPhaseFiles;
+    }
+
+    public void addAffectedFile(String phaseName, String filePath, SectionChange change) {
+        affectedFiles.computeIfAbsent(phaseName, phase -> new LinkedHashMap<>())
+                .computeIfAbsent(filePath, path -> new ArrayList<>())
+                .add(change);
+    }
+
+    public void addUnmappedSection(String sectionId) {
+        unmappedSections.add(sectionId);
+    }
+
+    public void requireFullRegeneration(String reason) {
+        if (fullRegenerationReason == null) {
+            fullRegenerationReason = reason;
+        }
+    }
+
+    @JsonIgnore
+    public boolean isAffected(String phaseName, String filePath) {
+        return affectedFiles.getOrDefault(phaseName, Map.of()).containsKey(filePath);
+    }
+
+    @JsonIgnore
+    public List<SectionChange> getChangesFor(String phaseName, String filePath) {
+        return affectedFiles.getOrDefault(phaseName, Map.of()).getOrDefault(filePath, List.of());
+    }
+
+    @JsonIgnore
+    public Map<String, List<GeneratedFile>> getPreviousPhaseFiles() {
+        return previousPhaseFiles;
+    }
+
+    public String getBaseJobId() {
+        return baseJobId;
+    }
+
+    public void setBaseJobId(String baseJobId) {
+        this.baseJobId = baseJobId;
+    }
+
+    public List<SectionChange> getChanges() {
+        return changes;
+    }
+
+    public List<String> getRegeneratedFiles() {
+        List<String> files = new ArrayList<>();
+        affectedFiles.values().forEach(paths -> files.addAll(paths.keySet()));
+        return files;
+    }
+
+    public int getReusedFileCount() {
+        int total = previousPhaseFiles.values().stream().mapToInt(List::size).sum();
+        return total - getRegeneratedFiles().size();
+    }
+
+    public List<String> getUnmappedSections() {
+        return unmappedSections;
+    }
+
+    public boolean isFullRegeneration() {
+        return fullRegenerationReason != null;
+    }
+
+    public String getFullRegenerationReason() {
+        return fullRegenerationReason;
+    }
+}
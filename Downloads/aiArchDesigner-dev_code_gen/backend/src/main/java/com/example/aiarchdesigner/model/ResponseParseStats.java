@@ -0,0 +1,78 @@
+package com.example.aiarchdesigner.model;
+
+/**
+ * 某个生成阶段 + 模型 + response_format + 输出格式组合下，流式响应解析成文件列表的结果统计。
+ */
+public class ResponseParseStats {
+    private final String phase;
+    private final String model;
+    private final String structuredOutput;
+    // JSON 或 FILE_BLOCKS
+    private final String outputFormat;
+    private final long responses;
+    // 响应里找不到 JSON 数组（文件块格式：没有任何文件头）
+    private final long noJson;
+    // JSON 数组没有闭合或者最后一个文件块没有结束（输出被截断）
+    private final long truncated;
+    // JSON 格式错误，严格解析失败
+    private final long malformed;
+    // 上面三种失败里，第二遍宽松解析救回了文件的次数
+    private final long repaired;
+
+    public ResponseParseStats(String phase, String model, String structuredOutput, String outputFormat, long responses,
+                              long noJson, long truncated, long malformed, long repaired) {
+        this.phase = phase;
+        this.model = model;
+        this.structuredOutput = structuredOutput;
+        this.outputFormat = outputFormat;
+        this.responses = responses;
+        this.noJson = noJson;
+        this.truncated = truncated;
+        this.malformed = malformed;
+        this.repaired = repaired;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    public long getResponses() {
+        return responses;
+    }
+
+    public long getNoJson() {
+        return noJson;
+    }
+
+    public long getTruncated() {
+        return truncated;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    public long getRepaired() {
+        return repaired;
+    }
+
+    public long getFailures() {
+        return noJson + truncated + malformed;
+    }
+
+    public double getFailureRate() {
+        return responses == 0 ? 0 : (double) getFailures() / responses;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.aiarchdesigner.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Set;
+
+public class SectionChange {
+    private final String sectionId;
+    private final SectionKind kind;
+    private final SectionChangeType type;
+    private final String previousContent;
+    private final String currentContent;
+    // 从变化的行中提取出的标识符（表名、字段名、接口路径等），用于定位受影响的文件
+    private final Set<String> keywords;
+
+    public SectionChange(String sectionId, SectionKind kind, SectionChangeType type, String previousContent, String currentContent,
+                         Set<String> keywords) {
+        this.sectionId = sectionId;
+        this.kind = kind;
+        this.type = type;
+        this.previousContent = previousContent;
+        this.currentContent = currentContent;
+        this.keywords = keywords;
+    }
+
+    public String getSectionId() {
+        return sectionId;
+    }
+
+    public SectionKind getKind() {
+        return kind;
+    }
+
+    public SectionChangeType getType() {
+        return type;
+    }
+
+    @JsonIgnore
+    public String getPreviousContent() {
+        return previousContent;
+    }
+
+    @JsonIgnore
+    public String getCurrentContent() {
+        return currentContent;
+    }
+
+    public Set<String> getKeywords() {
+        return keywords;
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.aiarchdesigner.model;
+
+public enum SectionChangeType {
+    ADDED,
+    REMOVED,
+    MODIFIED
+}
@@ -0,0 +1,8 @@
+package com.example.aiarchdesigner.model;
+
+public enum SectionKind {
+    TEXT,
+    TABLE,
+    MERMAID,
+    CODE
+}
@@ -0,0 +1,88 @@
+package com.example.aiarchdesigner.model;
+
+public class UpstreamLimiterStats {
+    private final int limit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int inFlight;
+    private final int queueDepth;
+    private final long tokensLastMinute;
+    // 0 表示不限制
+    private final long maxTokensPerMinute;
+    private final long successes;
+    private final long rateLimited;
+    private final long slowResponses;
+    private final long failures;
+    private final long limitDecreases;
+    private final long lastLatencyMillis;
+
+    public UpstreamLimiterStats(int limit, int minLimit, int maxLimit, int inFlight, int queueDepth, long tokensLastMinute,
+                                long maxTokensPerMinute, long successes, long rateLimited, long slowResponses, long failures,
+                                long limitDecreases, long lastLatencyMillis) {
+        this.limit = limit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.inFlight = inFlight;
+        this.queueDepth = queueDepth;
+        this.tokensLastMinute = tokensLastMinute;
+        this.maxTokensPerMinute = maxTokensPerMinute;
+        this.successes = successes;
+        this.rateLimited = rateLimited;
+        this.slowResponses = slowResponses;
+        this.failures = failures;
+        this.limitDecreases = limitDecreases;
+        this.lastLatencyMillis = lastLatencyMillis;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getTokensLastMinute() {
+        return tokensLastMinute;
+    }
+
+    public long getMaxTokensPerMinute() {
+        return maxTokensPerMinute;
+    }
+
+    public long getSuccesses() {
+        return successes;
+    }
+
+    public long getRateLimited() {
+        return rateLimited;
+    }
+
+    public long getSlowResponses() {
+        return slowResponses;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getLimitDecreases() {
+        return limitDecreases;
+    }
+
+    public long getLastLatencyMillis() {
+        return lastLatencyMillis;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 增量解析分隔块格式的响应，代码原样输出，不需要任何转义：
+ * <pre>
+ * === FILE: src/main/java/com/example/demo/Application.java ===
+ * package com.example.demo;
+ * ...
+ * === END FILE ===
+ * </pre>
+ * 和 {@link GeneratedFileStreamParser} 一样逐个分片解析，遇到 END 行就把文件交给 sink，只缓存当前正在输出的那个文件。
+ * 文件块之外的说明文字被丢弃；缺少 END 行、直接开始下一个文件头时，上一个文件按完整处理；
+ * 整个文件内容被 ``` 围栏包住时去掉围栏。行尾的 \r 统一去掉。
+ */
+public class DelimitedFileStreamParser implements GeneratedFileParser {
+
+    public static final String FILE_HEADER = "=== FILE: %s ===";
+    public static final String END_MARKER = "=== END FILE ===";
+
+    private static final Pattern HEADER_PATTERN = Pattern.compile("^=+\\s*FILE:\\s*(.+?)\\s*=*$");
+    private static final Pattern END_PATTERN = Pattern.compile("^=+\\s*END(\\s+FILE)?\\s*=*$");
+
+    private final Consumer<GeneratedFile> sink;
+    // 文件之外：当前行；文件之内：当前文件的内容，当前行从 lineStart 开始，直接追加不另外复制
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder code = new StringBuilder();
+    private int lineStart;
+    private String filePath;
+    private boolean started;
+
+    public DelimitedFileStreamParser(Consumer<GeneratedFile> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * 一次性解析完整的响应文本（例如缓存命中），返回所有完整的文件。
+     */
+    public static List<GeneratedFile> parse(CharSequence response) {
+        List<GeneratedFile> files = new ArrayList<>();
+        DelimitedFileStreamParser parser = new DelimitedFileStreamParser(files::add);
+        parser.feed(response);
+        parser.finish();
+        return files;
+    }
+
+    /**
+     * 按模型输出的格式写回文件块，用于缓存由多次响应拼起来的结果。内容不以换行结尾时补一个换行。
+     */
+    public static String format(List<GeneratedFile> files) {
+        StringBuilder out = new StringBuilder();
+        for (GeneratedFile file : files) {
+            out.append(String.format(FILE_HEADER, file.getFilePath())).append('\n');
+            String content = file.getCode() == null ? "" : file.getCode();
+            out.append(content);
+            if (!content.isEmpty() && !content.endsWith("\n")) {
+                out.append('\n');
+            }
+            out.append(END_MARKER).append('\n');
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void feed(CharSequence chunk) {
+        if (chunk == null) {
+            return;
+        }
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (c == '\n') {
+                endLine();
+            } else if (c != '\r') {
+                (filePath != null ? code : line).append(c);
+            }
+        }
+    }
+
+    @Override
+    public boolean finish() {
+        // 最后一行可能没有换行
+        if (filePath != null ? code.length() > lineStart : line.length() > 0) {
+            endLine();
+        }
+        return started && filePath == null;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started;
+    }
+
+    private void endLine() {
+        if (filePath == null) {
+            Matcher header = matchMarker(line, 0, HEADER_PATTERN);
+            if (header != null) {
+                startFile(header.group(1));
+            }
+            line.setLength(0);
+            return;
+        }
+        if (matchMarker(code, lineStart, END_PATTERN) != null) {
+            code.setLength(lineStart);
+            emit();
+            return;
+        }
+        Matcher header = matchMarker(code, lineStart, HEADER_PATTERN);
+        if (header != null) {
+            String nextPath = header.group(1);
+            code.setLength(lineStart);
+            emit();
+            startFile(nextPath);
+            return;
+        }
+        code.append('\n');
+        lineStart = code.length();
+    }
+
+    // 只有以 '=' 开头的行才可能是分隔行，其余的行不做正则匹配
+    private static Matcher matchMarker(StringBuilder text, int start, Pattern pattern) {
+        int first = start;
+        while (first < text.length() && Character.isWhitespace(text.charAt(first))) {
+            first++;
+        }
+        if (first >= text.length() || text.charAt(first) != '=') {
+            return null;
+        }
+        Matcher matcher = pattern.matcher(text.subSequence(first, text.length()).toString().trim());
+        return matcher.matches() ? matcher : null;
+    }
+
+    private void startFile(String path) {
+        started = true;
+        filePath = path;
+        code.setLength(0);
+        lineStart = 0;
+    }
+
+    private void emit() {
+        GeneratedFile file = new GeneratedFile(filePath, stripFence(code.toString()));
+        filePath = null;
+        code.setLength(0);
+        lineStart = 0;
+        sink.accept(file);
+    }
+
+    private static String stripFence(String content) {
+        String trimmed = content.stripTrailing();
+        if (!content.startsWith("```") || !trimmed.endsWith("\n```")) {
+            return content;
+        }
+        return content.substring(content.indexOf('\n') + 1, trimmed.length() - 3);
+    }
+}
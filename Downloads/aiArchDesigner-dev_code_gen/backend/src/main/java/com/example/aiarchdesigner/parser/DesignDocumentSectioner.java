@@ -0,0 +1,124 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.DesignSection;
+import com.example.aiarchdesigner.model.SectionKind;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 把 Markdown 设计文档切分成片段：标题决定片段所属的路径（例如 "库表设计 > 用户表"），
+ * 标题下的表格、mermaid 图、代码块和普通文本各自成为一个片段。
+ * <p>
+ * 片段内容做了空白归一化（行首尾空白、表格单元格两侧的空格），只改排版不改内容的编辑不会被视为变化。
+ */
+public class DesignDocumentSectioner {
+
+    private static final Pattern HEADING = Pattern.compile("^(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^\\s*(```|~~~)\\s*([\\w-]*).*$");
+    private static final String PREAMBLE = "(preamble)";
+
+    private final List<DesignSection> sections = new ArrayList<>();
+    private final String[] headings = new String[7];
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private SectionKind blockKind;
+    private StringBuilder block;
+
+    private DesignDocumentSectioner() {
+    }
+
+    public static List<DesignSection> split(String markdown) {
+        DesignDocumentSectioner sectioner = new DesignDocumentSectioner();
+        sectioner.parse(markdown == null ? "" : markdown);
+        return sectioner.sections;
+    }
+
+    private void parse(String markdown) {
+        String fence = null;
+        for (String line : markdown.split("\\R", -1)) {
+            if (fence != null) {
+                if (line.trim().startsWith(fence)) {
+                    flush();
+                    fence = null;
+                } else {
+                    block.append(line.stripTrailing()).append('\n');
+                }
+                continue;
+            }
+            Matcher fenceMatcher = FENCE.matcher(line);
+            if (fenceMatcher.matches()) {
+                flush();
+                fence = fenceMatcher.group(1);
+                startBlock("mermaid".equalsIgnoreCase(fenceMatcher.group(2)) ? SectionKind.MERMAID : SectionKind.CODE);
+                continue;
+            }
+            Matcher headingMatcher = HEADING.matcher(line);
+            if (headingMatcher.matches()) {
+                flush();
+                int level = headingMatcher.group(1).length();
+                headings[level] = headingMatcher.group(2).trim();
+                for (int deeper = level + 1; deeper < headings.length; deeper++) {
+                    headings[deeper] = null;
+                }
+                continue;
+            }
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                // 空行结束表格；同一标题下的多段文字合并成一个片段
+                if (blockKind == SectionKind.TABLE) {
+                    flush();
+                }
+                continue;
+            }
+            if (trimmed.startsWith("|")) {
+                if (blockKind != SectionKind.TABLE) {
+                    flush();
+                    startBlock(SectionKind.TABLE);
+                }
+                block.append(normalizeTableRow(trimmed)).append('\n');
+                continue;
+            }
+            if (blockKind != SectionKind.TEXT) {
+                flush();
+                startBlock(SectionKind.TEXT);
+            }
+            block.append(trimmed.replaceAll("\\s+", " ")).append('\n');
+        }
+        // 没有闭合的代码块也作为一个片段
+        flush();
+    }
+
+    private void startBlock(SectionKind kind) {
+        blockKind = kind;
+        block = new StringBuilder();
+    }
+
+    private void flush() {
+        if (blockKind != null && block.length() > 0) {
+            String headingPath = headingPath();
+            String key = headingPath + "#" + blockKind;
+            int ordinal = ordinals.merge(key, 1, Integer::sum) - 1;
+            sections.add(new DesignSection(key + "[" + ordinal + "]", headingPath, blockKind, block.toString()));
+        }
+        blockKind = null;
+        block = null;
+    }
+
+    private String headingPath() {
+        List<String> path = new ArrayList<>();
+        for (String heading : headings) {
+            if (heading != null) {
+                path.add(heading);
+            }
+        }
+        return path.isEmpty() ? PREAMBLE : String.join(" > ", path);
+    }
+
+    private static String normalizeTableRow(String row) {
+        return row.replaceAll("\\s*\\|\\s*", "|").replaceAll("\\s+", " ");
+    }
+}
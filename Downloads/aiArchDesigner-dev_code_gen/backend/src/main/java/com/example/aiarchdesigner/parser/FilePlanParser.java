@@ -0,0 +1,101 @@
+package com.example.aiarchdesigner.parser;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 解析文件清单阶段返回的 ["path", ...] 数组。
+ * <p>
+ * 和 {@link GeneratedFileStreamParser} 一样直接在原始响应上用 Jackson 的流式解析器读取：
+ * 从第一个 '[' 开始，读到数组闭合为止，之前的 ```json 围栏、说明文字和之后的内容都不会被读到，
+ * 不需要先 replace 掉围栏、trim 再交给 ObjectMapper（每一步都会复制整个响应）。
+ */
+public final class FilePlanParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private FilePlanParser() {
+    }
+
+    /**
+     * 响应里没有数组时返回空列表；数组里不是字符串的元素被忽略。
+     *
+     * @throws IOException 数组没有闭合或者不是合法 JSON
+     */
+    public static List<String> parse(CharSequence response) throws IOException {
+        List<String> files = new ArrayList<>();
+        int start = indexOf(response, '[');
+        if (start < 0) {
+            return files;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(new CharSequenceReader(response, start))) {
+            parser.nextToken();
+            int depth = 1;
+            while (depth > 0) {
+                JsonToken token = parser.nextToken();
+                if (token == null) {
+                    throw new IOException("File list array is not closed");
+                }
+                if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                    depth++;
+                } else if (token == JsonToken.END_ARRAY || token == JsonToken.END_OBJECT) {
+                    depth--;
+                } else if (token == JsonToken.VALUE_STRING && depth == 1) {
+                    files.add(parser.getText());
+                }
+            }
+        }
+        return files;
+    }
+
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 直接读取 CharSequence 的 Reader；String / StringBuilder 按块拷贝到解析器自己的缓冲区，不复制整个文本。
+     */
+    static final class CharSequenceReader extends Reader {
+        private final CharSequence text;
+        private int position;
+
+        CharSequenceReader(CharSequence text, int start) {
+            this.text = text;
+            this.position = start;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (position >= text.length()) {
+                return -1;
+            }
+            int count = Math.min(length, text.length() - position);
+            if (text instanceof String string) {
+                string.getChars(position, position + count, buffer, offset);
+            } else if (text instanceof StringBuilder builder) {
+                builder.getChars(position, position + count, buffer, offset);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = text.charAt(position + i);
+                }
+            }
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.aiarchdesigner.parser;
+
+import java.io.IOException;
+
+/**
+ * 生成阶段的流式响应解析器：逐个分片 {@link #feed(CharSequence)}，每解析出一个完整的文件就交给构造时传入的 sink。
+ * 不同的输出格式（JSON 数组、=== FILE: ... === 分隔块）各有一个实现。
+ */
+public interface GeneratedFileParser {
+
+    void feed(CharSequence chunk) throws IOException;
+
+    /**
+     * 输入结束。返回 true 表示响应完整；被截断的响应返回 false，已完整的文件此前都已交给 sink。
+     */
+    boolean finish() throws IOException;
+
+    /**
+     * 响应里已经出现了文件输出（JSON 数组开始、第一个文件头），而不是只有说明文字。
+     */
+    boolean isStarted();
+}
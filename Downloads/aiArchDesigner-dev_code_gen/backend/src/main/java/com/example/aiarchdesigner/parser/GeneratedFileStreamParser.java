@@ -0,0 +1,284 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 增量解析 LLM 流式返回的 [{"filePath": ..., "code": ...}, ...] 数组。
+ * <p>
+ * 每收到一个分片就调用 {@link #feed(String)}，数组中的某个元素一闭合就立即交给 sink，
+ * 不需要等待最后一个 token：解析器本身只缓存当前正在解析的那个文件，不保留完整响应。
+ * 调用方另外保留完整响应的情况（写入响应缓存、JSON 解析失败后交给宽松解析）不在此列，
+ * 只有两者都用不到时峰值内存才由最大的单个文件决定。
+ * <p>
+ * 数组之前的内容（例如 ```json 围栏或说明文字）和数组结束之后的内容会被直接丢弃；
+ * 字符串内部的 ``` （例如 README 里的代码块）保持原样。
+ * <p>
+ * 分片里被接受的字符直接编码成 UTF-8 写进一个复用的输入缓冲区交给 Jackson 的非阻塞解析器，
+ * 不为分片创建中间 String / byte[]；除了解析出来的 filePath 和 code，每个分片不产生新的分配。
+ */
+public class GeneratedFileStreamParser implements GeneratedFileParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // 一次交给解析器的最大字节数：整个响应一次性送进来（缓存命中）时，缓冲区也不会跟着响应变大
+    private static final int FEED_BLOCK_BYTES = 8192;
+
+    private final Consumer<GeneratedFile> sink;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    // 解析器在 drain() 返回前会取走全部已送入的字节（未完成的 token 存在它自己的缓冲区里），所以可以复用
+    private final byte[] input = new byte[FEED_BLOCK_BYTES + 4];
+    private int inputLength;
+
+    // 预过滤状态：找到第一个 '[' 之前丢弃，顶层数组闭合之后丢弃
+    private boolean arrayStarted;
+    private boolean arrayClosed;
+    private int bracketDepth;
+    private boolean inString;
+    private boolean escaped;
+    private char pendingHighSurrogate;
+
+    // JSON 解析状态
+    private int depth;
+    private String currentField;
+    private String filePath;
+    private String code;
+    private int emittedCount;
+
+    public GeneratedFileStreamParser(Consumer<GeneratedFile> sink) {
+        this.sink = sink;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * 一次性解析完整的响应文本（例如缓存命中），返回所有完整闭合的文件。
+     */
+    public static List<GeneratedFile> parse(CharSequence response) throws IOException {
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+        parser.feed(response);
+        parser.finish();
+        return files;
+    }
+
+    /**
+     * 按模型输出的格式写回 [{"filePath": ..., "code": ...}, ...]，用于缓存由多次响应拼起来的结果。
+     */
+    public static String toJsonArray(List<GeneratedFile> files) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            generator.writeStartArray();
+            for (GeneratedFile file : files) {
+                generator.writeStartObject();
+                generator.writeStringField("filePath", file.getFilePath());
+                generator.writeStringField("code", file.getCode());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public void feed(CharSequence chunk) throws IOException {
+        if (chunk != null) {
+            feed(chunk, 0, chunk.length());
+        }
+    }
+
+    /**
+     * 只解析 text 的 [start, end) 部分，不复制 text。
+     */
+    public void feed(CharSequence text, int start, int end) throws IOException {
+        for (int i = start; i < end && !arrayClosed; i++) {
+            char c = text.charAt(i);
+            if (filterChar(c)) {
+                encode(c);
+                if (inputLength >= FEED_BLOCK_BYTES) {
+                    flush();
+                }
+            }
+        }
+        flush();
+    }
+
+    /**
+     * 输入结束。返回 true 表示顶层数组已经完整闭合；被截断的响应返回 false，已闭合的元素此前都已交给 sink。
+     */
+    @Override
+    public boolean finish() throws IOException {
+        feeder.endOfInput();
+        if (arrayStarted && !arrayClosed) {
+            try {
+                drain();
+            } catch (JsonProcessingException e) {
+                return false;
+            }
+        }
+        return arrayClosed;
+    }
+
+    public boolean isArrayStarted() {
+        return arrayStarted;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return arrayStarted;
+    }
+
+    public boolean isComplete() {
+        return arrayClosed;
+    }
+
+    public int getEmittedCount() {
+        return emittedCount;
+    }
+
+    // 返回 true 表示这个字符要交给 JSON 解析器
+    private boolean filterChar(char c) {
+        if (!arrayStarted) {
+            if (c == '[') {
+                arrayStarted = true;
+                bracketDepth = 1;
+                return true;
+            }
+            return false;
+        }
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return true;
+        }
+        switch (c) {
+            case '"':
+                inString = true;
+                break;
+            case '[':
+            case '{':
+                bracketDepth++;
+                break;
+            case ']':
+            case '}':
+                bracketDepth--;
+                if (bracketDepth == 0) {
+                    arrayClosed = true;
+                }
+                break;
+            case '`':
+                // 字符串之外的反引号只可能来自 markdown 围栏
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    // 按 UTF-8 编码写进输入缓冲区。代理对可能被拆在两个分片之间，高位代理先留住；孤立的代理按 String.getBytes 的做法换成 '?'
+    private void encode(char c) {
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                input[inputLength++] = (byte) (0xF0 | (codePoint >> 18));
+                input[inputLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                input[inputLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                input[inputLength++] = (byte) (0x80 | (codePoint & 0x3F));
+                return;
+            }
+            // 调用前 inputLength < FEED_BLOCK_BYTES，'?' 加上后面最多 3 个字节不会超过缓冲区预留的 4 个字节
+            input[inputLength++] = '?';
+        }
+        if (c < 0x80) {
+            input[inputLength++] = (byte) c;
+        } else if (c < 0x800) {
+            input[inputLength++] = (byte) (0xC0 | (c >> 6));
+            input[inputLength++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            input[inputLength++] = '?';
+        } else {
+            input[inputLength++] = (byte) (0xE0 | (c >> 12));
+            input[inputLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            input[inputLength++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void flush() throws IOException {
+        if (inputLength == 0) {
+            return;
+        }
+        feeder.feedInput(input, 0, inputLength);
+        inputLength = 0;
+        drain();
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            handle(token);
+        }
+    }
+
+    private void handle(JsonToken token) throws IOException {
+        switch (token) {
+            case START_ARRAY:
+            case START_OBJECT:
+                depth++;
+                if (depth == 2 && token == JsonToken.START_OBJECT) {
+                    filePath = null;
+                    code = null;
+                }
+                break;
+            case END_ARRAY:
+            case END_OBJECT:
+                depth--;
+                if (depth == 1 && token == JsonToken.END_OBJECT) {
+                    emittedCount++;
+                    sink.accept(new GeneratedFile(filePath, code));
+                    filePath = null;
+                    code = null;
+                }
+                break;
+            case FIELD_NAME:
+                if (depth == 2) {
+                    currentField = parser.currentName();
+                }
+                break;
+            case VALUE_STRING:
+                if (depth == 2) {
+                    if ("filePath".equals(currentField)) {
+                        filePath = parser.getText();
+                    } else if ("code".equals(currentField)) {
+                        code = parser.getText();
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 从生成的 Java 后端代码中提取紧凑的 API 签名索引：控制器的每个接口（HTTP 方法、完整路径、参数、返回类型），
+ * 以及接口签名直接或间接引用到的 DTO / 实体 / 枚举的字段。前端和 README 阶段用它代替完整的后端代码，
+ * 几百个 token 就能让前后端按同一份契约生成。
+ * <p>
+ * 轻量解析：去掉注释后按正则和括号匹配识别 Spring MVC 控制器和普通数据类的常见写法，不是完整的 Java 语法分析。
+ */
+public class JavaApiSignatureExtractor {
+
+    public static final int DEFAULT_MAX_CHARS = 6000;
+
+    private static final Pattern TYPE = Pattern.compile("\\b(class|record|enum|interface)\\s+(\\w+)");
+    private static final Pattern EXTENDS = Pattern.compile("\\bextends\\s+([\\w.]+)");
+    private static final Pattern MAPPING = Pattern.compile("@(Get|Post|Put|Delete|Patch|Request)Mapping\\b");
+    private static final Pattern CLASS_MAPPING = Pattern.compile("@RequestMapping\\b");
+    private static final Pattern CONTROLLER = Pattern.compile("@(Rest)?Controller\\b");
+    private static final Pattern FIRST_STRING = Pattern.compile("^\\s*\\{?\\s*\"([^\"]*)\"");
+    private static final Pattern PATH_ATTRIBUTE = Pattern.compile("\\b(?:value|path)\\s*=\\s*\\{?\\s*\"([^\"]*)\"");
+    private static final Pattern REQUEST_METHOD = Pattern.compile("RequestMethod\\.(\\w+)");
+    private static final Pattern FIELD = Pattern.compile(
+            "(?:private|protected|public)\\s+((?:\\w+\\s+)*?)([\\w.]+(?:\\s*<[^;=()]*>)?(?:\\[\\])*)\\s+(\\w+)\\s*(?:=[^;]*)?;");
+    private static final Pattern TYPE_NAME = Pattern.compile("\\b[A-Z]\\w*");
+    private static final Pattern PARAMETER_ANNOTATION = Pattern.compile("@(\\w+)(\\s*\\([^)]*\\))?\\s*");
+    private static final Set<String> MODIFIERS = Set.of("public", "protected", "private", "static", "final", "synchronized",
+            "abstract", "default", "native");
+    // 请求参数里只保留决定 HTTP 契约的注解
+    private static final Set<String> CONTRACT_ANNOTATIONS = Set.of("PathVariable", "RequestParam", "RequestBody", "RequestHeader",
+            "RequestPart", "ModelAttribute", "CookieValue");
+    // 由框架注入、不属于 HTTP 契约的参数
+    private static final Set<String> SERVER_SIDE_TYPES = Set.of("HttpServletRequest", "HttpServletResponse", "HttpSession",
+            "Model", "ModelMap", "BindingResult", "Principal", "Authentication", "Errors", "Locale", "ServerHttpRequest",
+            "ServerHttpResponse", "ServerWebExchange");
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final Map<String, DataType> dataTypes = new LinkedHashMap<>();
+
+    private JavaApiSignatureExtractor() {
+    }
+
+    /**
+     * 返回接口与数据类型的摘要；没有识别出任何接口时返回空字符串。摘要超过 maxChars 时截断并注明省略的行数。
+     */
+    public static String summarize(List<GeneratedFile> backendFiles, int maxChars) {
+        JavaApiSignatureExtractor extractor = new JavaApiSignatureExtractor();
+        if (backendFiles != null) {
+            for (GeneratedFile file : backendFiles) {
+                if (file.getFilePath() != null && file.getFilePath().endsWith(".java") && file.getCode() != null) {
+                    extractor.parse(stripComments(file.getCode()));
+                }
+            }
+        }
+        return extractor.render(maxChars);
+    }
+
+    public static String summarize(List<GeneratedFile> backendFiles) {
+        return summarize(backendFiles, DEFAULT_MAX_CHARS);
+    }
+
+    private void parse(String source) {
+        Matcher type = TYPE.matcher(source);
+        if (!type.find()) {
+            return;
+        }
+        String kind = type.group(1);
+        String name = type.group(2);
+        String annotations = source.substring(0, type.start());
+        int bodyStart = source.indexOf('{', type.end());
+        if (bodyStart < 0) {
+            return;
+        }
+        String header = source.substring(type.end(), bodyStart);
+        int bodyEnd = matching(source, bodyStart, '{', '}');
+        String body = source.substring(bodyStart + 1, bodyEnd < 0 ? source.length() : bodyEnd);
+
+        if (kind.equals("interface")) {
+            return;
+        }
+        if (CONTROLLER.matcher(annotations).find()) {
+            parseController(annotations, body);
+        } else if (kind.equals("enum")) {
+            dataTypes.put(name, new DataType("enum " + name, enumConstants(body), List.of()));
+        } else if (kind.equals("record")) {
+            int open = header.indexOf('(');
+            int close = open < 0 ? -1 : matching(header, open, '(', ')');
+            List<String> components = new ArrayList<>();
+            if (close > open) {
+                for (String component : splitTopLevel(header.substring(open + 1, close))) {
+                    String cleaned = PARAMETER_ANNOTATION.matcher(component).replaceAll("").trim().replaceAll("\\s+", " ");
+                    if (!cleaned.isEmpty()) {
+                        components.add(cleaned);
+                    }
+                }
+            }
+            dataTypes.put(name, new DataType(name, components, List.of()));
+        } else {
+            Matcher parent = EXTENDS.matcher(header);
+            List<String> supertypes = parent.find() ? List.of(simpleName(parent.group(1))) : List.of();
+            dataTypes.put(name, new DataType(supertypes.isEmpty() ? name : name + " extends " + supertypes.get(0),
+                    fields(topLevel(body)), supertypes));
+        }
+    }
+
+    private void parseController(String classAnnotations, String body) {
+        String basePath = "";
+        Matcher classMapping = CLASS_MAPPING.matcher(classAnnotations);
+        if (classMapping.find()) {
+            String arguments = annotationArguments(classAnnotations, classMapping.end());
+            basePath = arguments == null ? "" : path(arguments);
+        }
+        Matcher mapping = MAPPING.matcher(body);
+        int searchFrom = 0;
+        while (mapping.find(searchFrom)) {
+            searchFrom = mapping.end();
+            int position = mapping.end();
+            String arguments = annotationArguments(body, position);
+            if (arguments != null) {
+                position = body.indexOf('(', position);
+                position = matching(body, position, '(', ')') + 1;
+            }
+            String httpMethod = mapping.group(1).equals("Request") ? requestMethod(arguments) : mapping.group(1).toUpperCase();
+            Endpoint endpoint = parseMethod(body, position, httpMethod, joinPaths(basePath, arguments == null ? "" : path(arguments)));
+            if (endpoint != null) {
+                endpoints.add(endpoint);
+                searchFrom = Math.max(searchFrom, endpoint.end);
+            }
+        }
+    }
+
+    // position 在映射注解之后：跳过其他注解和修饰符，读出返回类型、方法名和参数列表
+    private Endpoint parseMethod(String body, int position, String httpMethod, String path) {
+        int cursor = position;
+        while (true) {
+            cursor = skipWhitespace(body, cursor);
+            if (cursor >= body.length() || body.charAt(cursor) != '@') {
+                break;
+            }
+            cursor++;
+            while (cursor < body.length() && (Character.isJavaIdentifierPart(body.charAt(cursor)) || body.charAt(cursor) == '.')) {
+                cursor++;
+            }
+            int next = skipWhitespace(body, cursor);
+            if (next < body.length() && body.charAt(next) == '(') {
+                int close = matching(body, next, '(', ')');
+                if (close < 0) {
+                    return null;
+                }
+                cursor = close + 1;
+            }
+        }
+        int open = body.indexOf('(', cursor);
+        if (open < 0) {
+            return null;
+        }
+        int close = matching(body, open, '(', ')');
+        if (close < 0) {
+            return null;
+        }
+        List<String> words = new ArrayList<>(List.of(normalize(body.substring(cursor, open)).split(" (?![^<]*>)")));
+        words.removeIf(word -> word.isEmpty() || MODIFIERS.contains(word));
+        if (words.size() < 2) {
+            return null;
+        }
+        String methodName = words.remove(words.size() - 1);
+        String returnType = String.join(" ", words);
+        List<String> parameters = new ArrayList<>();
+        for (String parameter : splitTopLevel(body.substring(open + 1, close))) {
+            String compact = compactParameter(parameter);
+            if (compact != null) {
+                parameters.add(compact);
+            }
+        }
+        return new Endpoint(httpMethod, path, returnType, methodName, parameters, close);
+    }
+
+    private static String compactParameter(String parameter) {
+        StringBuilder annotations = new StringBuilder();
+        Matcher annotation = PARAMETER_ANNOTATION.matcher(parameter);
+        int declarationStart = 0;
+        while (annotation.find(declarationStart) && annotation.start() == skipWhitespace(parameter, declarationStart)) {
+            if (CONTRACT_ANNOTATIONS.contains(annotation.group(1))) {
+                annotations.append('@').append(annotation.group(1));
+                if (annotation.group(2) != null) {
+                    annotations.append(annotation.group(2).replaceAll("\\s+", ""));
+                }
+                annotations.append(' ');
+            }
+            declarationStart = annotation.end();
+        }
+        String declaration = normalize(parameter.substring(declarationStart)).replaceFirst("^final ", "");
+        if (declaration.isEmpty()) {
+            return null;
+        }
+        String type = declaration.contains(" ") ? declaration.substring(0, declaration.lastIndexOf(' ')) : declaration;
+        if (SERVER_SIDE_TYPES.contains(simpleName(type))) {
+            return null;
+        }
+        return annotations + declaration;
+    }
+
+    private String render(int maxChars) {
+        if (endpoints.isEmpty()) {
+            return "";
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("[Backend API (extracted from the generated backend code; use exactly these paths, parameters and field names)]");
+        lines.add("Endpoints:");
+        Set<String> referenced = new LinkedHashSet<>();
+        for (Endpoint endpoint : endpoints) {
+            lines.add("- " + endpoint.httpMethod + " " + endpoint.path + " -> " + endpoint.returnType + " " + endpoint.methodName
+                    + "(" + String.join(", ", endpoint.parameters) + ")");
+            collectTypeNames(endpoint.returnType, referenced);
+            endpoint.parameters.forEach(parameter -> collectTypeNames(parameter.replaceAll("@\\w+(\\([^)]*\\))?", ""), referenced));
+        }
+        // 只列出接口签名直接或间接引用的类型，服务类、配置类等不进入摘要
+        List<DataType> types = new ArrayList<>();
+        Deque<String> pending = new ArrayDeque<>(referenced);
+        Set<String> visited = new LinkedHashSet<>();
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            DataType type = dataTypes.get(name);
+            if (type == null || !visited.add(name)) {
+                continue;
+            }
+            types.add(type);
+            Set<String> nested = new LinkedHashSet<>(type.supertypes);
+            if (!type.header.startsWith("enum ")) {
+                type.members.forEach(member -> collectTypeNames(member, nested));
+            }
+            pending.addAll(nested);
+        }
+        if (!types.isEmpty()) {
+            lines.add("Types:");
+            for (DataType type : types) {
+                String separator = type.header.startsWith("enum ") ? ", " : "; ";
+                lines.add("- " + type.header + " { " + String.join(separator, type.members) + " }");
+            }
+        }
+
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (summary.length() + line.length() + 1 > maxChars) {
+                summary.append("- ... (").append(lines.size() - i).append(" more lines omitted)\n");
+                break;
+            }
+            summary.append(line).append('\n');
+        }
+        return summary.append('\n').toString();
+    }
+
+    private static void collectTypeNames(String text, Set<String> names) {
+        Matcher matcher = TYPE_NAME.matcher(text);
+        while (matcher.find()) {
+            names.add(matcher.group());
+        }
+    }
+
+    private static List<String> fields(String topLevelBody) {
+        List<String> fields = new ArrayList<>();
+        Matcher field = FIELD.matcher(topLevelBody);
+        while (field.find()) {
+            if (field.group(1).contains("static")) {
+                continue;
+            }
+            fields.add(normalize(field.group(2)) + " " + field.group(3));
+        }
+        return fields;
+    }
+
+    private static List<String> enumConstants(String body) {
+        String constants = topLevel(body);
+        int end = constants.indexOf(';');
+        List<String> names = new ArrayList<>();
+        for (String constant : splitTopLevel(end < 0 ? constants : constants.substring(0, end))) {
+            String name = constant.replaceAll("\\(.*", "").replaceAll("@\\w+", "").trim();
+            if (!name.isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    private static String annotationArguments(String text, int afterName) {
+        int next = skipWhitespace(text, afterName);
+        if (next >= text.length() || text.charAt(next) != '(') {
+            return null;
+        }
+        int close = matching(text, next, '(', ')');
+        return close < 0 ? null : text.substring(next + 1, close);
+    }
+
+    private static String path(String arguments) {
+        Matcher first = FIRST_STRING.matcher(arguments);
+        if (first.find()) {
+            return first.group(1);
+        }
+        Matcher attribute = PATH_ATTRIBUTE.matcher(arguments);
+        return attribute.find() ? attribute.group(1) : "";
+    }
+
+    private static String requestMethod(String arguments) {
+        if (arguments == null) {
+            return "ANY";
+        }
+        Matcher method = REQUEST_METHOD.matcher(arguments);
+        return method.find() ? method.group(1) : "ANY";
+    }
+
+    private static String joinPaths(String base, String path) {
+        String joined = ("/" + base + "/" + path).replaceAll("/{2,}", "/");
+        return joined.length() > 1 && joined.endsWith("/") ? joined.substring(0, joined.length() - 1) : joined;
+    }
+
+    // 类体中花括号深度为 0 的部分：去掉方法体、初始化块和内部类
+    private static String topLevel(String body) {
+        StringBuilder result = new StringBuilder();
+        int depth = 0;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '"') {
+                int end = skipString(body, i);
+                if (depth == 0) {
+                    result.append(body, i, end);
+                }
+                i = end - 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+                if (depth == 0) {
+                    result.append(';');
+                }
+            } else if (depth == 0) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    // 按深度为 0 的逗号切分，泛型和括号里的逗号不切
+    private static List<String> splitTopLevel(String text) {
+        List<String> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                i = skipString(text, i) - 1;
+            } else if (c == '(' || c == '<' || c == '{' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == '>' || c == '}' || c == ']') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                parts.add(text.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        String last = text.substring(start).trim();
+        if (!last.isEmpty()) {
+            parts.add(last);
+        }
+        return parts;
+    }
+
+    private static int matching(String text, int open, char openChar, char closeChar) {
+        int depth = 0;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\'') {
+                i = skipString(text, i) - 1;
+            } else if (c == openChar) {
+                depth++;
+            } else if (c == closeChar && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 返回字符串或字符字面量结束后的位置；文本块 """ 按普通字符串处理
+    private static int skipString(String text, int start) {
+        char quote = text.charAt(start);
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i + 1;
+            }
+        }
+        return text.length();
+    }
+
+    private static int skipWhitespace(String text, int position) {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    // 去掉注释，字符串里的 // 和 /* 不受影响（例如 @CrossOrigin("http://localhost:3000")）
+    static String stripComments(String source) {
+        StringBuilder result = new StringBuilder(source.length());
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = skipString(source, i);
+                result.append(source, i, end);
+                i = end - 1;
+            } else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '/') {
+                int end = source.indexOf('\n', i);
+                i = (end < 0 ? source.length() : end) - 1;
+            } else if (c == '/' && i + 1 < source.length() && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? source.length() : end + 1;
+                result.append(' ');
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").replaceAll("\\s*<\\s*", "<").replaceAll("\\s+>", ">").replaceAll("\\s*,\\s*", ", ");
+    }
+
+    private static String simpleName(String type) {
+        String raw = type.replaceAll("<.*", "").trim();
+        return raw.substring(raw.lastIndexOf('.') + 1);
+    }
+
+    private static final class Endpoint {
+        private final String httpMethod;
+        private final String path;
+        private final String returnType;
+        private final String methodName;
+        private final List<String> parameters;
+        private final int end;
+
+        Endpoint(String httpMethod, String path, String returnType, String methodName, List<String> parameters, int end) {
+            this.httpMethod = httpMethod;
+            this.path = path;
+            this.returnType = returnType;
+            this.methodName = methodName;
+            this.parameters = parameters;
+            this.end = end;
+        }
+    }
+
+    private static final class DataType {
+        private final String header;
+        private final List<String> members;
+        private final List<String> supertypes;
+
+        DataType(String header, List<String> members, List<String> supertypes) {
+            this.header = header;
+            this.members = members;
+            this.supertypes = supertypes;
+        }
+    }
+}
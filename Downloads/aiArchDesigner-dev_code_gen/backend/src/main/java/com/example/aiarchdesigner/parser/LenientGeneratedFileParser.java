@@ -0,0 +1,440 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link GeneratedFileStreamParser} 拒绝的响应的第二遍解析：容忍 LLM 输出里常见的格式错误，尽量把每个文件都救回来。
+ * <ul>
+ *     <li>字符串里没有转义的换行、制表符等控制字符：原样保留</li>
+ *     <li>code 里没有转义的双引号：只有后面紧跟结束对象的 } 或者 , "filePath"/"code": 的引号才算字符串结束</li>
+ *     <li>非法转义（例如正则里的 \d）：保留反斜杠和字符</li>
+ *     <li>多余的逗号、缺少的逗号</li>
+ *     <li>多个 ```json 代码块、数组前后的说明文字：扫描全文，每个带 filePath 和 code 的对象都是一个文件；同名文件以最后一次为准</li>
+ *     <li>包在对象里的文件数组（json-object 模式要求的 {"files": [...]}，或者其他任意层级）：数组里闭合的文件对象同样收集</li>
+ * </ul>
+ * 在最后一个文件中途结束的响应标记为 truncated，之前的文件照常返回（包括外层对象没有闭合的 {"files": [...]}）。
+ */
+public final class LenientGeneratedFileParser {
+
+    public enum Repair {
+        UNESCAPED_CONTROL_CHARACTER,
+        UNESCAPED_QUOTE,
+        INVALID_ESCAPE,
+        TRAILING_COMMA,
+        MISSING_COMMA,
+        MULTIPLE_BLOCKS,
+        DUPLICATE_FILE
+    }
+
+    // 字符串后面跟着 , "key": 时，只有这些 key（文件字段和外层对象的 files）才说明字符串已经结束；code 里常见的 "a", "b": 不会被误判
+    private static final Set<String> FILE_KEYS = Set.of("filePath", "code", "language", "description", "files");
+    private static final Object TRUNCATED = new Object();
+
+    private final CharSequence text;
+    private final Map<Repair, Integer> repairs = new EnumMap<>(Repair.class);
+    // 当前顶层对象里已经闭合的文件对象（包括它自己），顶层对象截断时也保留
+    private final List<GeneratedFile> closedFiles = new ArrayList<>();
+    private int pos;
+
+    private LenientGeneratedFileParser(CharSequence text) {
+        this.text = text;
+    }
+
+    public static Result parse(CharSequence response) {
+        return new LenientGeneratedFileParser(response == null ? "" : response).parseAll();
+    }
+
+    public static final class Result {
+        private final List<GeneratedFile> files;
+        private final Map<Repair, Integer> repairs;
+        private final boolean truncated;
+
+        Result(List<GeneratedFile> files, Map<Repair, Integer> repairs, boolean truncated) {
+            this.files = files;
+            this.repairs = repairs;
+            this.truncated = truncated;
+        }
+
+        public List<GeneratedFile> getFiles() {
+            return files;
+        }
+
+        /**
+         * 每种修复发生的次数；严格 JSON 的输入为空。
+         */
+        public Map<Repair, Integer> getRepairs() {
+            return repairs;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return files.size() + " file(s), repairs " + repairs + (truncated ? ", truncated" : "");
+        }
+    }
+
+    private Result parseAll() {
+        Map<String, GeneratedFile> files = new LinkedHashMap<>();
+        boolean truncated = false;
+        int arrayIndex = 0;
+        int lastArrayWithFile = -1;
+        int arraysWithFiles = 0;
+        char lastSignificant = 0;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '{') {
+                int start = pos;
+                closedFiles.clear();
+                Object value = parseObject();
+                if (value == null) {
+                    // 不是 JSON 对象（例如说明文字里的花括号，或者中途出现无法解析的内容的外层对象），
+                    // 从下一个字符继续找，里面的文件对象会在顶层重新解析到
+                    pos = start + 1;
+                    continue;
+                }
+                if (!closedFiles.isEmpty() && (value == TRUNCATED || toFile(value) == null)) {
+                    // 外层对象里的文件数组（例如 {"files": [...]}）算作单独的一块
+                    arrayIndex++;
+                }
+                for (GeneratedFile file : closedFiles) {
+                    if (files.remove(file.getFilePath()) != null) {
+                        count(Repair.DUPLICATE_FILE);
+                    }
+                    files.put(file.getFilePath(), file);
+                    if (lastArrayWithFile != arrayIndex) {
+                        lastArrayWithFile = arrayIndex;
+                        arraysWithFiles++;
+                    }
+                }
+                if (value == TRUNCATED) {
+                    truncated = true;
+                    break;
+                }
+                lastSignificant = '}';
+                continue;
+            }
+            if (c == '[') {
+                arrayIndex++;
+            } else if (c == ']' && lastSignificant == ',') {
+                count(Repair.TRAILING_COMMA);
+            }
+            if (!Character.isWhitespace(c)) {
+                lastSignificant = c;
+            }
+            pos++;
+        }
+        if (arraysWithFiles > 1) {
+            repairs.put(Repair.MULTIPLE_BLOCKS, arraysWithFiles - 1);
+        }
+        return new Result(new ArrayList<>(files.values()), Collections.unmodifiableMap(repairs), truncated);
+    }
+
+    private static GeneratedFile toFile(Object value) {
+        if (!(value instanceof Map<?, ?> fields)) {
+            return null;
+        }
+        Object filePath = fields.get("filePath");
+        Object code = fields.get("code");
+        if (filePath instanceof String path && code instanceof String content && !path.isBlank()) {
+            return new GeneratedFile(path, content);
+        }
+        return null;
+    }
+
+    // pos 指向 '{'。返回字段 Map（只保留字符串和嵌套的值）、null（不是对象）或 TRUNCATED。
+    // 闭合的对象是文件时记入 closedFiles，外层对象之后截断也不会丢失
+    private Object parseObject() {
+        Map<String, Object> fields = new HashMap<>();
+        pos++;
+        boolean afterComma = false;
+        boolean afterValue = false;
+        while (true) {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return TRUNCATED;
+            }
+            char c = text.charAt(pos);
+            if (c == '}') {
+                if (afterComma) {
+                    count(Repair.TRAILING_COMMA);
+                }
+                pos++;
+                GeneratedFile file = toFile(fields);
+                if (file != null) {
+                    closedFiles.add(file);
+                }
+                return fields;
+            }
+            if (c == ',') {
+                pos++;
+                afterComma = true;
+                afterValue = false;
+                continue;
+            }
+            if (c != '"') {
+                return null;
+            }
+            if (afterValue) {
+                count(Repair.MISSING_COMMA);
+            }
+            String key = readKey();
+            if (key == null) {
+                return TRUNCATED;
+            }
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return TRUNCATED;
+            }
+            if (text.charAt(pos) != ':') {
+                return null;
+            }
+            pos++;
+            skipWhitespace();
+            Object value = parseValue();
+            if (value == TRUNCATED || value == null) {
+                return value;
+            }
+            fields.put(key, value);
+            afterComma = false;
+            afterValue = true;
+        }
+    }
+
+    private Object parseArray() {
+        List<Object> values = new ArrayList<>();
+        pos++;
+        boolean afterComma = false;
+        while (true) {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                return TRUNCATED;
+            }
+            char c = text.charAt(pos);
+            if (c == ']') {
+                if (afterComma) {
+                    count(Repair.TRAILING_COMMA);
+                }
+                pos++;
+                return values;
+            }
+            if (c == ',') {
+                pos++;
+                afterComma = true;
+                continue;
+            }
+            Object value = parseValue();
+            if (value == TRUNCATED || value == null) {
+                return value;
+            }
+            values.add(value);
+            afterComma = false;
+        }
+    }
+
+    private Object parseValue() {
+        if (pos >= text.length()) {
+            return TRUNCATED;
+        }
+        char c = text.charAt(pos);
+        if (c == '"') {
+            return readValueString();
+        }
+        if (c == '{') {
+            return parseObject();
+        }
+        if (c == '[') {
+            return parseArray();
+        }
+        // 数字、true/false/null：读到分隔符为止，值本身用不到
+        int start = pos;
+        while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+            pos++;
+        }
+        if (pos == start) {
+            return null;
+        }
+        return pos >= text.length() ? TRUNCATED : text.subSequence(start, pos).toString();
+    }
+
+    // key 不会包含引号，按严格规则读到下一个未转义的引号；没有结束时返回 null
+    private String readKey() {
+        StringBuilder key = new StringBuilder();
+        pos++;
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return key.toString();
+            }
+            if (c == '\\' && pos < text.length()) {
+                c = text.charAt(pos++);
+            }
+            key.append(c);
+        }
+        return null;
+    }
+
+    private Object readValueString() {
+        StringBuilder value = new StringBuilder();
+        pos++;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '\\') {
+                if (pos + 1 >= text.length()) {
+                    return TRUNCATED;
+                }
+                char escaped = text.charAt(pos + 1);
+                int decoded = unescape(escaped);
+                if (decoded >= 0) {
+                    value.append((char) decoded);
+                    pos += 2;
+                } else if (escaped == 'u' && isHex(pos + 2, 4)) {
+                    value.append((char) Integer.parseInt(text.subSequence(pos + 2, pos + 6).toString(), 16));
+                    pos += 6;
+                } else {
+                    count(Repair.INVALID_ESCAPE);
+                    value.append('\\').append(escaped);
+                    pos += 2;
+                }
+                continue;
+            }
+            if (c == '"') {
+                if (isClosingQuote(pos)) {
+                    pos++;
+                    return value.toString();
+                }
+                count(Repair.UNESCAPED_QUOTE);
+            } else if (c < 0x20) {
+                count(Repair.UNESCAPED_CONTROL_CHARACTER);
+            }
+            value.append(c);
+            pos++;
+        }
+        return TRUNCATED;
+    }
+
+    private static int unescape(char escaped) {
+        switch (escaped) {
+            case '"':
+                return '"';
+            case '\\':
+                return '\\';
+            case '/':
+                return '/';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * 字符串里的引号是不是结束引号：后面（跳过空白）是结束当前对象的 }，或者是逗号加上另一个文件字段（或者多余逗号后的 }）。
+     * code 里的 "/api"、"a", "b"、{ "Accept": "json" } 之类都不满足。
+     */
+    private boolean isClosingQuote(int quote) {
+        int next = skipWhitespace(quote + 1);
+        if (next >= text.length()) {
+            return true;
+        }
+        char c = text.charAt(next);
+        if (c == '}') {
+            return closesObject(next);
+        }
+        if (c != ',') {
+            return false;
+        }
+        int after = skipWhitespace(next + 1);
+        if (after >= text.length()) {
+            return true;
+        }
+        char following = text.charAt(after);
+        if (following == '}') {
+            return closesObject(after);
+        }
+        return following == '"' && isFileKey(after);
+    }
+
+    // brace 处的 } 后面是数组结束、代码块围栏、外层对象的 }，或者逗号加下一个对象
+    private boolean closesObject(int brace) {
+        while (true) {
+            int after = skipWhitespace(brace + 1);
+            if (after >= text.length()) {
+                return true;
+            }
+            char c = text.charAt(after);
+            if (c == ']' || c == '`') {
+                return true;
+            }
+            if (c == '}') {
+                brace = after;
+                continue;
+            }
+            if (c != ',') {
+                return false;
+            }
+            int next = skipWhitespace(after + 1);
+            return next >= text.length() || text.charAt(next) == '{' || text.charAt(next) == ']';
+        }
+    }
+
+    // quote 处开始的是 "filePath": 之类的文件字段
+    private boolean isFileKey(int quote) {
+        int keyEnd = quote + 1;
+        while (keyEnd < text.length() && Character.isJavaIdentifierPart(text.charAt(keyEnd))) {
+            keyEnd++;
+        }
+        if (keyEnd >= text.length() || text.charAt(keyEnd) != '"'
+                || !FILE_KEYS.contains(text.subSequence(quote + 1, keyEnd).toString())) {
+            return false;
+        }
+        int colon = skipWhitespace(keyEnd + 1);
+        return colon < text.length() && text.charAt(colon) == ':';
+    }
+
+    private boolean isHex(int start, int length) {
+        if (start + length > text.length()) {
+            return false;
+        }
+        for (int i = start; i < start + length; i++) {
+            if (Character.digit(text.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        pos = skipWhitespace(pos);
+    }
+
+    private int skipWhitespace(int index) {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private void count(Repair repair) {
+        repairs.merge(repair, 1, Integer::sum);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.aiarchdesigner.service;
+
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 每个 {@link ChatProfile} 对应一个预先构建好的 ChatClient。
+ * <p>
+ * ChatClient.Builder 是可变对象，多个请求线程同时对同一个 builder 调用 defaultOptions(...).build()
+ * 会互相覆盖对方的参数，而且每次都要重建 advisor 链。这里只在某个 profile 第一次出现时从 builder 的副本构建一次，
+ * 之后的获取只是一次无锁的 ConcurrentHashMap 读取；共享的 builder 本身永远不会被修改。
+ * <p>
+ * 每个 {@link LlmEndpoint} 有自己的注册表；没有指定模型的 profile 使用端点的默认模型。
+ */
+public class ChatClientRegistry {
+
+    private final ChatClient.Builder prototype;
+    private final String defaultModel;
+    private final ConcurrentMap<ChatProfile, ChatClient> clients = new ConcurrentHashMap<>();
+
+    public ChatClientRegistry(ChatClient.Builder chatClientBuilder) {
+        this(chatClientBuilder, null);
+    }
+
+    public ChatClientRegistry(ChatClient.Builder chatClientBuilder, String defaultModel) {
+        this.prototype = chatClientBuilder;
+        this.defaultModel = defaultModel;
+    }
+
+    public ChatClient get(ChatProfile profile) {
+        ChatClient client = clients.get(profile);
+        if (client != null) {
+            return client;
+        }
+        return clients.computeIfAbsent(profile, this::build);
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    private ChatClient build(ChatProfile profile) {
+        ChatProfile resolved = profile.withDefaultModel(defaultModel);
+        System.out.println("Building ChatClient for profile " + resolved);
+        return prototype.clone().defaultOptions(resolved.getOptions()).build();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.aiarchdesigner.service;
+
+import org.springframework.ai.openai.OpenAiChatOptions;
+
+import java.util.Objects;
+
+/**
+ * 一组 LLM 调用参数 (model, temperature, maxTokens, response_format)，作为 {@link ChatClientRegistry} 的 key。
+ * 不可变；对应的 OpenAiChatOptions 在构造时创建一次，调用方只能读取，不能修改。
+ * model 为 null 表示使用请求被路由到的端点上配置的模型（见 {@link LlmEndpoint}）。
+ */
+public final class ChatProfile {
+
+    private final String model;
+    private final Double temperature;
+    private final Integer maxTokens;
+    private final StructuredOutputMode structuredOutput;
+    private final OpenAiChatOptions options;
+    // 预先计算，注册表查找时不产生任何分配
+    private final int hashCode;
+
+    private ChatProfile(String model, Double temperature, Integer maxTokens) {
+        this(model, temperature, maxTokens, StructuredOutputMode.NONE);
+    }
+
+    private ChatProfile(String model, Double temperature, Integer maxTokens, StructuredOutputMode structuredOutput) {
+        this.model = model;
+        this.temperature = temperature;
+        this.maxTokens = maxTokens;
+        this.structuredOutput = structuredOutput;
+        this.options = OpenAiChatOptions.builder()
+                .model(model)
+                .temperature(temperature)
+                .maxTokens(maxTokens)
+                .responseFormat(structuredOutput.responseFormat())
+                // 流式响应的最后一个分片带上用量（包括命中前缀缓存的 token 数）；非流式请求由 Spring AI 去掉这个参数
+                .streamUsage(true)
+                .build();
+        this.hashCode = Objects.hash(model, temperature, maxTokens, structuredOutput);
+    }
+
+    /**
+     * 端点默认模型、模型默认参数。
+     */
+    public static ChatProfile defaults() {
+        return new ChatProfile(null, null, null);
+    }
+
+    /**
+     * 端点默认模型。
+     */
+    public static ChatProfile of(Double temperature, Integer maxTokens) {
+        return new ChatProfile(null, temperature, maxTokens);
+    }
+
+    public static ChatProfile of(String model) {
+        return new ChatProfile(model, null, null);
+    }
+
+    public static ChatProfile of(String model, Double temperature, Integer maxTokens) {
+        return new ChatProfile(model, temperature, maxTokens);
+    }
+
+    /**
+     * 没有指定模型时换成 defaultModel。
+     */
+    public ChatProfile withDefaultModel(String defaultModel) {
+        return model != null || defaultModel == null ? this : new ChatProfile(defaultModel, temperature, maxTokens, structuredOutput);
+    }
+
+    /**
+     * 同样的参数，加上 response_format（NONE 表示不发送）。
+     */
+    public ChatProfile withStructuredOutput(StructuredOutputMode mode) {
+        return mode == structuredOutput ? this : new ChatProfile(model, temperature, maxTokens, mode);
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public Double getTemperature() {
+        return temperature;
+    }
+
+    public Integer getMaxTokens() {
+        return maxTokens;
+    }
+
+    public StructuredOutputMode getStructuredOutput() {
+        return structuredOutput;
+    }
+
+    /**
+     * 共享实例，只用于读取（例如计算缓存 key），不要修改。
+     */
+    public OpenAiChatOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChatProfile)) {
+            return false;
+        }
+        ChatProfile that = (ChatProfile) o;
+        return Objects.equals(model, that.model) && Objects.equals(temperature, that.temperature) && Objects.equals(maxTokens, that.maxTokens)
+                && structuredOutput == that.structuredOutput;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return (model == null ? "(endpoint model)" : model) + "(temperature=" + temperature + ", maxTokens=" + maxTokens
+                + (structuredOutput == StructuredOutputMode.NONE ? "" : ", " + structuredOutput) + ")";
+    }
+}
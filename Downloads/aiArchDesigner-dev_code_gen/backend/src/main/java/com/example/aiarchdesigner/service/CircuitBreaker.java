@@ -0,0 +1,107 @@
+package com.example.aiarchdesigner.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 LLM 端点的熔断器：连续失败 failureThreshold 次后打开（OPEN），openMillis 内不再向该端点路由请求；
+ * 之后进入半开（HALF_OPEN），只放行一个探测请求，成功则关闭，失败则重新打开。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+    private long timesOpened;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    /**
+     * 现在能否向该端点发请求（只查询，不占用半开状态的探测名额）。
+     */
+    public synchronized boolean isAvailable() {
+        switch (currentState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                return !probeInFlight;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 发请求前调用；半开状态下只有一个调用者能拿到探测名额。
+     */
+    public synchronized boolean tryAcquire() {
+        switch (currentState()) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println("Circuit closed after successful probe");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (currentState() == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+            timesOpened++;
+        }
+        probeInFlight = false;
+    }
+
+    /**
+     * 请求被取消（例如对冲请求胜出），既不算成功也不算失败，只归还探测名额。
+     */
+    public synchronized void onCancelled() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return currentState();
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getTimesOpened() {
+        return timesOpened;
+    }
+
+    // 调用时必须持有锁
+    private State currentState() {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        return state;
+    }
+}
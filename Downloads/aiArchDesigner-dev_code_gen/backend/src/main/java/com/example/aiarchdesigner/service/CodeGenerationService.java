@@ -1,20 +1,35 @@
 package com.example.aiarchdesigner.service;
 
-import com.alibaba.fastjson.JSON;
+import com.example.aiarchdesigner.model.DesignDigest;
 import com.example.aiarchdesigner.model.GeneratedFile;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.ai.chat.client.ChatClient;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.model.PhaseStatus;
+import com.example.aiarchdesigner.model.RegenerationPlan;
+import com.example.aiarchdesigner.model.SectionChange;
+import com.example.aiarchdesigner.parser.FilePlanParser;
+import com.example.aiarchdesigner.parser.GeneratedFileParser;
+import com.example.aiarchdesigner.parser.LenientGeneratedFileParser;
+import com.example.aiarchdesigner.service.phase.GenerationPhase;
+import com.example.aiarchdesigner.service.phase.PhaseGraphExecutor;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.DefaultChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
-import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -22,103 +37,432 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-import static com.example.aiarchdesigner.utils.fileWriteUtil.fileWriting;
+import static com.example.aiarchdesigner.utils.fileWriteUtil.writeFile;
 
 @Service
 public class CodeGenerationService {
 
-    private final ObjectMapper objectMapper;
-    private final ChatClient.Builder chatClientBuilder;
+    private final LlmEndpointPool endpointPool;
     private final PromptProviderService promptProviderService;
+    private final PromptTemplateRegistry promptTemplates;
+    private final String sharedSystemPrompt;
+    private final PhaseGraphExecutor phaseGraphExecutor;
+    private final GenerationConcurrencyGate generationConcurrencyGate;
+    private final ExecutorService generationPhaseExecutor;
+    private final Path workspaceRoot;
+    private final int maxFanOutParallelism;
+    private final LlmResponseCache llmResponseCache;
+    private final HedgedLlmStreamer hedgedLlmStreamer;
+    private final TokenBudgeter tokenBudgeter;
+    private final DesignDocumentCondenser designDocumentCondenser;
+    private final ResponseParseTracker responseParseTracker;
+    private final int maxContinuations;
+    private final boolean frontendWaitsForBackendApi;
+
+    public static final String PHASE_FRONTEND = "Frontend";
+    public static final String PHASE_BACKEND = "Backend";
+    public static final String PHASE_README = "README";
+    public static final List<String> PROJECT_PHASES = List.of(PHASE_FRONTEND, PHASE_BACKEND, PHASE_README);
+    // 逐文件生成前的文件清单调用，只用于对话记录
+    public static final String PHASE_FILE_LIST = "File list";
+
+    // 代码生成使用模型默认参数；文件清单要求更确定的输出。模型由选中的端点决定
+    public static final ChatProfile CODE_GENERATION_PROFILE = ChatProfile.defaults();
+    public static final ChatProfile FILE_PLANNING_PROFILE = ChatProfile.of(0.3, null);
+    private static final String FILE_PATH_KEY = "\"filePath\"";
 
     @Autowired
-    public CodeGenerationService(ChatClient.Builder chatClientBuilder, ObjectMapper objectMapper, PromptProviderService promptProviderService) {
-        this.chatClientBuilder = chatClientBuilder;
-        this.objectMapper = objectMapper;
+    public CodeGenerationService(LlmEndpointPool endpointPool, PromptProviderService promptProviderService,
+                                 PromptTemplateRegistry promptTemplates,
+                                 PhaseGraphExecutor phaseGraphExecutor, GenerationConcurrencyGate generationConcurrencyGate,
+                                 @Qualifier("generationPhaseExecutor") ExecutorService generationPhaseExecutor,
+                                 @Value("${codegen.workspace-dir:workspace}") String workspaceDir,
+                                 @Value("${codegen.fanout.max-parallelism:16}") int maxFanOutParallelism,
+                                 @Value("${codegen.continuation.max-requests:2}") int maxContinuations,
+                                 @Value("${codegen.frontend.wait-for-backend-api:true}") boolean frontendWaitsForBackendApi,
+                                 LlmResponseCache llmResponseCache, HedgedLlmStreamer hedgedLlmStreamer, TokenBudgeter tokenBudgeter,
+                                 DesignDocumentCondenser designDocumentCondenser, ResponseParseTracker responseParseTracker) {
+        this.endpointPool = endpointPool;
         this.promptProviderService = promptProviderService;
+        this.promptTemplates = promptTemplates;
+        this.sharedSystemPrompt = promptTemplates.render(PromptTemplateRegistry.SHARED_SYSTEM, Map.of());
+        this.phaseGraphExecutor = phaseGraphExecutor;
+        this.generationConcurrencyGate = generationConcurrencyGate;
+        this.generationPhaseExecutor = generationPhaseExecutor;
+        this.workspaceRoot = Paths.get(workspaceDir);
+        this.maxFanOutParallelism = maxFanOutParallelism;
+        this.maxContinuations = maxContinuations;
+        this.frontendWaitsForBackendApi = frontendWaitsForBackendApi;
+        this.llmResponseCache = llmResponseCache;
+        this.hedgedLlmStreamer = hedgedLlmStreamer;
+        this.tokenBudgeter = tokenBudgeter;
+        this.designDocumentCondenser = designDocumentCondenser;
+        this.responseParseTracker = responseParseTracker;
     }
 
     public List<GeneratedFile> generateProjectCode(String designDocumentContent) throws IOException {
+        return generateProjectCode(designDocumentContent, GenerationOptions.defaults(), PhaseListener.NO_OP);
+    }
+
+    public List<GeneratedFile> generateProjectCode(String designDocumentContent, PhaseListener phaseListener) throws IOException {
+        return generateProjectCode(designDocumentContent, GenerationOptions.defaults(), phaseListener);
+    }
+
+    public List<GeneratedFile> generateProjectCode(String designDocumentContent, GenerationOptions options, PhaseListener phaseListener) throws IOException {
+        return runGated(() -> runPhaseGraph(designDocumentContent, options, phaseListener));
+    }
+
+    private <T> T runGated(Callable<T> generation) throws IOException {
+        try {
+            return generationConcurrencyGate.run(generation);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a code generation slot");
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<GeneratedFile> runPhaseGraph(String designDocumentContent, GenerationOptions options, PhaseListener phaseListener) throws IOException {
         // 通过大模型的问答方式，请根据识别设计文档中是否需要生成前端代码，如果不需要生成前端代码，则跳过前端代码生成阶段。
 //        boolean shouldGenerateFrontFlag = shouldGenerateFrontend(designDocumentContent);
 //        System.out.println("是否需要生成前端代码:"+shouldGenerateFrontFlag);
-        String timestamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
-        Path projectRunBaseDir = Paths.get("workspace", timestamp);
+        Path projectRunBaseDir = newProjectRunDir();
         Path backendBaseWorkspaceDir = projectRunBaseDir.resolve("backend");
         Path frontendBaseWorkspaceDir = projectRunBaseDir.resolve("front");
 
         Files.createDirectories(backendBaseWorkspaceDir);
         Files.createDirectories(frontendBaseWorkspaceDir);
 
+        // 大型设计文档先浓缩成各阶段的摘要，各阶段只发送与自己相关的部分
+        DesignDigest digest = designDocumentCondenser.condense(designDocumentContent, options, phaseListener);
+
+        // 默认前端依赖后端产出的接口签名索引，保证前后端的接口契约一致。代价是前端和后端不再并行：
+        // 整体耗时从 max(前端, 后端) 变成 后端 + 前端。关闭 codegen.frontend.wait-for-backend-api 后前端与后端并行，
+        // 只按设计文档生成接口调用，不带签名索引。README 依赖两者的产出，在两者都完成后立即开始
+        List<String> frontendDependencies = frontendWaitsForBackendApi ? List.of(PHASE_BACKEND) : List.of();
+        List<GenerationPhase> phases = List.of(
+                new GenerationPhase(PHASE_FRONTEND, frontendDependencies, inputs ->
+                        genFront(digest.getFrontend(), frontendWaitsForBackendApi ? inputs.getFiles(PHASE_BACKEND) : List.of(),
+                                frontendBaseWorkspaceDir, options, phaseListener)),
+                new GenerationPhase(PHASE_BACKEND, List.of(), inputs ->
+                        genBackend(digest.getBackend(), backendBaseWorkspaceDir, options, phaseListener)),
+                new GenerationPhase(PHASE_README, List.of(PHASE_FRONTEND, PHASE_BACKEND), inputs ->
+                        genReadme(digest.getOverview(), inputs.getAllDependencyFiles(), inputs.getFiles(PHASE_BACKEND), projectRunBaseDir,
+                                options, phaseListener))
+        );
+
+        Map<String, PhaseResult> results = phaseGraphExecutor.execute(phases, designDocumentContent, phaseListener);
+
         List<GeneratedFile> allGeneratedFiles = new ArrayList<>();
+        allGeneratedFiles.addAll(results.get(PHASE_FRONTEND).getFiles());
+        allGeneratedFiles.addAll(results.get(PHASE_BACKEND).getFiles());
+//        return projectRunBaseDir.getFileSystem();
+        return allGeneratedFiles;
+    }
 
-        System.out.println("\n--- Starting Backend Code Generation Phase ---");
+    private Path newProjectRunDir() {
+        String timestamp = new SimpleDateFormat("yyyyMMddHHmmssSSS").format(new Date());
+        return workspaceRoot.resolve(timestamp);
+    }
 
-        // 生成前端代码
-        genFront(designDocumentContent, null, frontendBaseWorkspaceDir, allGeneratedFiles);
+    /**
+     * 逐文件生成模式：先用 listFilesToGenerate 得到文件清单，再为每个文件单独调用一次 LLM，
+     * 最多 parallelism 个请求同时进行。多个小请求并行，总耗时不再受单个大响应的输出速率限制，也不会触发最大输出 token 截断。
+     */
+    public List<GeneratedFile> generateProjectCodePerFile(String designDocumentContent, int parallelism, GenerationOptions options,
+                                                          PhaseListener phaseListener) throws IOException {
+        return runGated(() -> fanOutFiles(designDocumentContent, parallelism, options, phaseListener));
+    }
 
-        // 生成后端代码
-        String backendPromptStr = promptProviderService.constructBackendPrompt(designDocumentContent);
-        List<GeneratedFile> backendFiles = callLlmForPhase(backendPromptStr, designDocumentContent, "Backend");
-        if (backendFiles != null && !backendFiles.isEmpty()) {
-            fileWriting(backendFiles, backendBaseWorkspaceDir);
-            allGeneratedFiles.addAll(backendFiles);
-            System.out.println("--- Backend Code Generation Phase Completed ---");
-        } else {
-            System.out.println("--- Backend Code Generation Phase Produced No Files or Errored ---");
+    private List<GeneratedFile> fanOutFiles(String designDocumentContent, int parallelism, GenerationOptions options,
+                                            PhaseListener phaseListener) throws IOException, InterruptedException {
+        DesignDigest digest = designDocumentCondenser.condense(designDocumentContent, options, phaseListener);
+        List<String> plannedFiles = listFilesToGenerate(digest.getFilePlanning(), options, phaseListener);
+        Path projectRunBaseDir = newProjectRunDir();
+        Files.createDirectories(projectRunBaseDir);
+
+        int effectiveParallelism = Math.max(1, Math.min(parallelism, maxFanOutParallelism));
+        System.out.println("\n--- Generating " + plannedFiles.size() + " files with parallelism " + effectiveParallelism + " ---");
+        long start = System.currentTimeMillis();
+
+        // 在提交线程上获取许可，保证同时在途的 LLM 请求不超过 effectiveParallelism，且不占用执行器线程等待
+        Semaphore permits = new Semaphore(effectiveParallelism);
+        List<CompletableFuture<GeneratedFile>> futures = new ArrayList<>();
+        for (String plannedFile : plannedFiles) {
+            permits.acquire();
+            futures.add(CompletableFuture
+                    .supplyAsync(() -> generateFileForPlan(digest.forFile(plannedFile), plannedFile, plannedFiles, projectRunBaseDir, options, phaseListener),
+                            generationPhaseExecutor)
+                    .whenComplete((file, error) -> permits.release()));
         }
 
-        System.out.println("\n--- Starting Project README.md Generation Phase ---");
-        String readmePromptStr = promptProviderService.constructReadmePrompt(designDocumentContent, allGeneratedFiles);
-        List<GeneratedFile> readmeFileList = callLlmForPhase(readmePromptStr, designDocumentContent, "README");
-        if (readmeFileList != null && !readmeFileList.isEmpty()) {
-            fileWriting(readmeFileList, projectRunBaseDir);
-            System.out.println("--- Project README.md Generation Phase Completed ---");
-        } else {
-            System.out.println("--- Project README.md Generation Phase Produced No File or Errored ---");
+        List<GeneratedFile> generatedFiles = new ArrayList<>();
+        for (CompletableFuture<GeneratedFile> future : futures) {
+            GeneratedFile generatedFile = future.join();
+            if (generatedFile != null) {
+                generatedFiles.add(generatedFile);
+            }
         }
-//        return projectRunBaseDir.getFileSystem();
+        System.out.println("--- Per-file generation produced " + generatedFiles.size() + "/" + plannedFiles.size()
+                + " files in " + (System.currentTimeMillis() - start) + "ms ---");
+        return generatedFiles;
+    }
+
+    private GeneratedFile generateFileForPlan(String designDocumentContent, String filename, List<String> plannedFiles,
+                                              Path projectRunBaseDir, GenerationOptions options, PhaseListener phaseListener) {
+        long start = System.currentTimeMillis();
+        phaseListener.onPhaseStarted(filename);
+        GeneratedFile generatedFile = null;
+        try {
+            generatedFile = generateSingleFile(designDocumentContent, filename, plannedFiles, options, phaseListener);
+            if (generatedFile != null) {
+                writeFile(generatedFile, projectRunBaseDir);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error generating file " + filename + ": " + e.getMessage());
+        }
+        List<GeneratedFile> files = generatedFile == null ? new ArrayList<>() : List.of(generatedFile);
+        phaseListener.onPhaseCompleted(new PhaseResult(filename, generatedFile == null ? PhaseStatus.FAILED : PhaseStatus.COMPLETED,
+                files, 0, System.currentTimeMillis() - start, generatedFile == null ? "No content generated" : null));
+        return generatedFile;
+    }
+
+    public GeneratedFile generateSingleFileContent(String designDocumentContent, String filename) throws IOException {
+        return generateSingleFileContent(designDocumentContent, filename, GenerationOptions.defaults());
+    }
+
+    public GeneratedFile generateSingleFileContent(String designDocumentContent, String filename, GenerationOptions options) throws IOException {
+        GeneratedFile generatedFile = runGated(() -> generateSingleFile(designDocumentContent, filename, List.of(filename), options, PhaseListener.NO_OP));
+        if (generatedFile == null) {
+            throw new IOException("LLM produced no content for file: " + filename);
+        }
+        return generatedFile;
+    }
+
+    private GeneratedFile generateSingleFile(String designDocumentContent, String filename, List<String> plannedFiles,
+                                             GenerationOptions options, PhaseListener phaseListener) {
+        Map<String, Object> promptParameters = new HashMap<>();
+        promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+        promptParameters.put(PromptTemplateRegistry.TARGET_FILE_PATH, filename);
+        promptParameters.put(PromptTemplateRegistry.PLANNED_FILES, String.join("\n", plannedFiles));
+        List<GeneratedFile> files = callLlmForPhase(PromptTemplateRegistry.SINGLE_FILE, promptParameters, filename, options, phaseListener, generatedFile -> {
+        });
+        return selectTargetFile(files, filename);
+    }
+
+    // 模型偶尔会多给文件，只取目标文件；路径写法不一致时退回第一个
+    private static GeneratedFile selectTargetFile(List<GeneratedFile> files, String filename) {
+        return files.stream()
+                .filter(file -> filename.equals(file.getFilePath()))
+                .findFirst()
+                .or(() -> files.stream().findFirst().map(file -> new GeneratedFile(filename, file.getCode())))
+                .orElse(null);
+    }
+
+    /**
+     * 增量重新生成：只为 plan 中受设计文档变化影响的文件重新调用 LLM（带上文件当前内容和变化的片段），
+     * 其余文件原样复用。plan 要求完整生成时等价于 generateProjectCode。
+     */
+    public List<GeneratedFile> regenerateProjectCode(RegenerationPlan plan, String designDocumentContent, GenerationOptions options,
+                                                     PhaseListener phaseListener) throws IOException {
+        if (plan.isFullRegeneration()) {
+            System.out.println("--- Falling back to full generation: " + plan.getFullRegenerationReason() + " ---");
+            return generateProjectCode(designDocumentContent, options, phaseListener);
+        }
+        return runGated(() -> applyRegenerationPlan(plan, designDocumentContent, options, phaseListener));
+    }
+
+    private List<GeneratedFile> applyRegenerationPlan(RegenerationPlan plan, String designDocumentContent, GenerationOptions options,
+                                                      PhaseListener phaseListener) throws IOException, InterruptedException {
+        Path projectRunBaseDir = newProjectRunDir();
+        Map<String, Path> phaseDirs = Map.of(
+                PHASE_FRONTEND, projectRunBaseDir.resolve("front"),
+                PHASE_BACKEND, projectRunBaseDir.resolve("backend"),
+                PHASE_README, projectRunBaseDir);
+        for (Path phaseDir : phaseDirs.values()) {
+            Files.createDirectories(phaseDir);
+        }
+        List<String> plannedFiles = new ArrayList<>();
+        plan.getPreviousPhaseFiles().values().forEach(files -> files.forEach(file -> plannedFiles.add(file.getFilePath())));
+
+        System.out.println("\n--- Regenerating " + plan.getRegeneratedFiles().size() + " of " + plannedFiles.size() + " files ---");
+        long start = System.currentTimeMillis();
+
+        // 与逐文件生成相同：在提交线程上获取许可，限制同时在途的 LLM 请求数
+        Semaphore permits = new Semaphore(maxFanOutParallelism);
+        Map<String, List<CompletableFuture<GeneratedFile>>> phaseFutures = new LinkedHashMap<>();
+        Set<String> keptPrevious = ConcurrentHashMap.newKeySet();
+        for (String phaseName : PROJECT_PHASES) {
+            phaseListener.onPhaseStarted(phaseName);
+            Path phaseDir = phaseDirs.get(phaseName);
+            List<CompletableFuture<GeneratedFile>> futures = new ArrayList<>();
+            for (GeneratedFile previousFile : plan.getPreviousPhaseFiles().getOrDefault(phaseName, List.of())) {
+                if (!plan.isAffected(phaseName, previousFile.getFilePath())) {
+                    writeFile(previousFile, phaseDir);
+                    phaseListener.onFile(phaseName, previousFile);
+                    futures.add(CompletableFuture.completedFuture(previousFile));
+                    continue;
+                }
+                permits.acquire();
+                futures.add(CompletableFuture
+                        .supplyAsync(() -> regenerateFile(designDocumentContent, phaseName, previousFile, plan, plannedFiles, phaseDir,
+                                keptPrevious, options, phaseListener), generationPhaseExecutor)
+                        .whenComplete((file, error) -> permits.release()));
+            }
+            phaseFutures.put(phaseName, futures);
+        }
+
+        Map<String, List<GeneratedFile>> phaseFiles = new HashMap<>();
+        for (Map.Entry<String, List<CompletableFuture<GeneratedFile>>> entry : phaseFutures.entrySet()) {
+            List<GeneratedFile> files = entry.getValue().stream().map(CompletableFuture::join).collect(Collectors.toList());
+            phaseFiles.put(entry.getKey(), files);
+            long kept = files.stream().filter(file -> keptPrevious.contains(entry.getKey() + ":" + file.getFilePath())).count();
+            phaseListener.onPhaseCompleted(new PhaseResult(entry.getKey(), PhaseStatus.COMPLETED, files, 0,
+                    System.currentTimeMillis() - start, kept == 0 ? null : "Kept previous version of " + kept + " file(s) that failed to regenerate"));
+        }
+        System.out.println("--- Incremental regeneration finished in " + (System.currentTimeMillis() - start) + "ms ---");
+
+        List<GeneratedFile> allGeneratedFiles = new ArrayList<>();
+        allGeneratedFiles.addAll(phaseFiles.get(PHASE_FRONTEND));
+        allGeneratedFiles.addAll(phaseFiles.get(PHASE_BACKEND));
         return allGeneratedFiles;
     }
 
-    private void genFront(String designDocumentContent, List<GeneratedFile> backendFiles, Path frontendBaseWorkspaceDir, List<GeneratedFile> allGeneratedFiles) {
+    private GeneratedFile regenerateFile(String designDocumentContent, String phaseName, GeneratedFile previousFile, RegenerationPlan plan,
+                                         List<String> plannedFiles, Path phaseDir, Set<String> keptPrevious, GenerationOptions options,
+                                         PhaseListener phaseListener) {
+        String filename = previousFile.getFilePath();
+        GeneratedFile generatedFile = null;
+        try {
+            Map<String, Object> promptParameters = new HashMap<>();
+            promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+            promptParameters.put(PromptTemplateRegistry.TARGET_FILE_PATH, filename);
+            promptParameters.put(PromptTemplateRegistry.PLANNED_FILES, String.join("\n", plannedFiles));
+            promptParameters.put(PromptTemplateRegistry.PREVIOUS_FILE_CONTENT, previousFile.getCode());
+            promptParameters.put(PromptTemplateRegistry.DESIGN_CHANGES, describeChanges(plan.getChangesFor(phaseName, filename)));
+            // 分片和 token 用量按所属阶段推送，文件本身在选出目标文件后再通知
+            PhaseListener chunkListener = new PhaseListener() {
+                @Override
+                public void onPrompt(String ignored, Prompt prompt) {
+                    phaseListener.onPrompt(phaseName, prompt);
+                }
+
+                @Override
+                public void onChunk(String ignored, String chunk) {
+                    phaseListener.onChunk(phaseName, chunk);
+                }
+
+                @Override
+                public void onStreamReset(String ignored) {
+                    phaseListener.onStreamReset(phaseName);
+                }
+
+                @Override
+                public void onTokenUsage(String ignored, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                    phaseListener.onTokenUsage(phaseName, promptTokens, cachedPromptTokens, completionTokens);
+                }
+            };
+            List<GeneratedFile> files = callLlmForPhase(PromptTemplateRegistry.REGENERATE_FILE, promptParameters, filename, options, chunkListener, file -> {
+                    });
+            generatedFile = selectTargetFile(files, filename);
+        } catch (RuntimeException e) {
+            System.err.println("Error regenerating file " + filename + ": " + e.getMessage());
+        }
+        if (generatedFile == null) {
+            // 重新生成失败时保留上一版本，项目仍然完整
+            keptPrevious.add(phaseName + ":" + filename);
+            generatedFile = previousFile;
+        }
+        writeFile(generatedFile, phaseDir);
+        phaseListener.onFile(phaseName, generatedFile);
+        return generatedFile;
+    }
+
+    private static String describeChanges(List<SectionChange> changes) {
+        StringBuilder description = new StringBuilder();
+        for (SectionChange change : changes) {
+            description.append("### ").append(change.getType()).append(": ").append(change.getSectionId()).append('\n');
+            if (change.getPreviousContent() != null) {
+                description.append("Before:\n").append(change.getPreviousContent()).append('\n');
+            }
+            if (change.getCurrentContent() != null) {
+                description.append("After:\n").append(change.getCurrentContent()).append('\n');
+            }
+        }
+        return description.toString();
+    }
+
+    private List<GeneratedFile> genFront(String designDocumentContent, List<GeneratedFile> backendFiles, Path frontendBaseWorkspaceDir,
+                                         GenerationOptions options, PhaseListener phaseListener) {
         System.out.println("\n--- Starting Frontend Code Generation Phase ---");
-        String frontendPromptStr = promptProviderService.constructFrontendPrompt(designDocumentContent, backendFiles);
-        List<GeneratedFile> frontFiles = callLlmForPhase(frontendPromptStr, designDocumentContent, "Frontend");
+        Map<String, Object> promptParameters = new HashMap<>();
+        promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+        promptParameters.put(PromptTemplateRegistry.BACKEND_API_SUMMARY, promptProviderService.describeBackendApi(backendFiles));
+        List<GeneratedFile> frontFiles = callLlmForPhase(PromptTemplateRegistry.FRONTEND, promptParameters, PHASE_FRONTEND, options, phaseListener,
+                generatedFile -> writeFile(generatedFile, frontendBaseWorkspaceDir));
         if (frontFiles != null && !frontFiles.isEmpty()) {
-            fileWriting(frontFiles, frontendBaseWorkspaceDir);
-            allGeneratedFiles.addAll(frontFiles);
             System.out.println("--- Frontend Code Generation Phase Completed ---");
         } else {
             System.out.println("--- Frontend Code Generation Phase Produced No Files or Errored ---");
         }
+        return frontFiles;
     }
 
-    // 新增方法：判断是否需要生成前端代码
-    private boolean shouldGenerateFrontend(String designDocumentContent) {
-        PromptTemplate promptTemplate = new PromptTemplate("请分析以下设计文档，判断是否需要生成前端代码。\n\n设计文档内容：\n{design_document_content}\n\n回答 \"Yes\" 表示需要生成前端代码，回答 \"No\" 表示不需要。");
-        Map<String, Object> promptParameters = new HashMap<>();
-        promptParameters.put("design_document_content", designDocumentContent);
-
-        Prompt prompt = promptTemplate.create(promptParameters);
+    private List<GeneratedFile> genBackend(String designDocumentContent, Path backendBaseWorkspaceDir, GenerationOptions options,
+                                           PhaseListener phaseListener) {
+        System.out.println("\n--- Starting Backend Code Generation Phase ---");
+        List<GeneratedFile> backendFiles = callLlmForPhase(PromptTemplateRegistry.BACKEND, designDocumentContent, PHASE_BACKEND, options, phaseListener,
+                generatedFile -> writeFile(generatedFile, backendBaseWorkspaceDir));
+        if (backendFiles != null && !backendFiles.isEmpty()) {
+            System.out.println("--- Backend Code Generation Phase Completed ---");
+        } else {
+            System.out.println("--- Backend Code Generation Phase Produced No Files or Errored ---");
+        }
+        return backendFiles;
+    }
 
-        OpenAiChatOptions openAiChatOptions = OpenAiChatOptions.builder()
-                .model("deepseek-chat")
-                .build();
+    private List<GeneratedFile> genReadme(String designDocumentContent, List<GeneratedFile> generatedFiles, List<GeneratedFile> backendFiles,
+                                          Path projectRunBaseDir, GenerationOptions options, PhaseListener phaseListener) {
+        System.out.println("\n--- Starting Project README.md Generation Phase ---");
+        Map<String, Object> promptParameters = new HashMap<>();
+        promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+        promptParameters.put(PromptTemplateRegistry.GENERATED_FILE_SUMMARY, promptProviderService.describeProjectStructure(generatedFiles));
+        promptParameters.put(PromptTemplateRegistry.BACKEND_API_SUMMARY, promptProviderService.describeBackendApi(backendFiles));
+        List<GeneratedFile> readmeFileList = callLlmForPhase(PromptTemplateRegistry.README, promptParameters, PHASE_README, options, phaseListener,
+                generatedFile -> writeFile(generatedFile, projectRunBaseDir));
+        if (readmeFileList != null && !readmeFileList.isEmpty()) {
+            System.out.println("--- Project README.md Generation Phase Completed ---");
+        } else {
+            System.out.println("--- Project README.md Generation Phase Produced No File or Errored ---");
+        }
+        return readmeFileList;
+    }
 
-        ChatClient chatClient = chatClientBuilder.defaultOptions(openAiChatOptions).build();
+    // 新增方法：判断是否需要生成前端代码
+    private boolean shouldGenerateFrontend(String designDocumentContent) {
+        Prompt prompt = new Prompt(new UserMessage(promptTemplates.render(PromptTemplateRegistry.FRONTEND_CHECK,
+                Map.of(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent))));
 
         try {
-            ChatResponse chatResponse = chatClient.prompt(prompt)
-                    .user("User: 请分析设计文档是否需要生成前端代码，并仅以 Yes 或 No 回答。")
-                    .call()
-                    .chatResponse();
-
-            String responseContent = chatResponse.getResult().getOutput().getText().trim();
+            String responseContent = callLlm(withUserMessage(prompt, "User: 请分析设计文档是否需要生成前端代码，并仅以 Yes 或 No 回答。"),
+                    CODE_GENERATION_PROFILE, GenerationOptions.defaults()).trim();
             return "Yes".equalsIgnoreCase(responseContent);
         } catch (Exception e) {
             System.err.println("Error during LLM call for determining frontend generation requirement: " + e.getMessage());
@@ -127,104 +471,439 @@ public class CodeGenerationService {
         }
     }
 
-    private List<GeneratedFile> callLlmForPhase(String phaseSpecificPromptString, String designDocumentContent, String phaseName) {
-        PromptTemplate promptTemplate = new PromptTemplate(phaseSpecificPromptString);
+    private List<GeneratedFile> callLlmForPhase(String templateName, String designDocumentContent, String phaseName,
+                                                GenerationOptions options, PhaseListener phaseListener, Consumer<GeneratedFile> fileSink) {
         Map<String, Object> promptParameters = new HashMap<>();
-        promptParameters.put("design_document_content", designDocumentContent);
-        
-        Prompt prompt = promptTemplate.create(promptParameters);
-
-        OpenAiChatOptions openAiChatOptions = OpenAiChatOptions.builder()
-            .model("deepseek-chat")
-            .build();
-
-        ChatClient chatClient = chatClientBuilder.defaultOptions(openAiChatOptions).build();
-        
-        System.out.println("--- Streaming LLM Response for " + phaseName + " to Console ---");
-        StringBuilder completeResponseContent = new StringBuilder();
-        try {
-            Flux<ChatResponse> chatResponseFlux = chatClient.prompt(prompt)
-                .user("User: Please generate the " + phaseName.toLowerCase() + " code as per the instructions.")
-                .stream()
-                .chatResponse();
-            
-            chatResponseFlux.toStream().forEach(chatResponse -> {
-                chatResponse.getResults().forEach(generation -> {
-                    String contentChunk = generation.getOutput().getText();
-                    if (contentChunk != null) {
-                        System.out.print(contentChunk);
-                        completeResponseContent.append(contentChunk);
-                    }
-                });
-            });
-            System.out.println("\n--- End of Streamed LLM Response for " + phaseName + " ---");
-
-            String llmResponseJson = completeResponseContent.toString();
-            System.out.println("Raw LLM Response JSON for " + phaseName + ":");
-            System.out.println(llmResponseJson);
+        promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+        return callLlmForPhase(templateName, promptParameters, phaseName, options, phaseListener, fileSink);
+    }
 
-            String cleanedJson = llmResponseJson.replace("```json", "").replace("```", "").trim();
-            
-            System.out.println("Cleaned LLM Response JSON for " + phaseName + " for parsing:");
-            System.out.println(cleanedJson);
+    private List<GeneratedFile> callLlmForPhase(String templateName, Map<String, Object> promptParameters, String phaseName,
+                                                GenerationOptions options, PhaseListener phaseListener, Consumer<GeneratedFile> fileSink) {
+        // 每个文件一解析完成就落盘并通知监听器
+        PhaseOutputFormat outputFormat = promptProviderService.outputFormat(templateName);
+        PhaseResponseSink responseSink = new PhaseResponseSink(phaseName, phaseListener, fileSink, tokenBudgeter,
+                Set.of(), outputFormat, options.isUseCache());
+        int promptTokens = -1;
+        try {
+            // 发请求前按上下文窗口检查提示词，设计文档过大时裁剪；去掉设计文档仍然放不下时直接失败，不发请求
+            TokenBudgeter.BudgetedPrompt budgetedPrompt = tokenBudgeter.fit(templateName, promptParameters,
+                    parameters -> phasePrompt(templateName, parameters));
+            Prompt prompt = budgetedPrompt.getPrompt();
+            phaseListener.onPrompt(phaseName, prompt);
+
+            String cacheKey = llmResponseCache.keyFor(prompt, CODE_GENERATION_PROFILE.getOptions(), endpointPool.getModelIdentity());
+            String cachedResponse = options.isUseCache() ? llmResponseCache.get(cacheKey) : null;
+            if (cachedResponse != null) {
+                System.out.println("--- LLM response cache hit for " + phaseName + " ---");
+                phaseListener.onChunk(phaseName, cachedResponse);
+                responseSink.parser.feed(cachedResponse);
+                responseSink.parser.finish();
+                return responseSink.files;
+            }
 
-            if (cleanedJson.isEmpty()) {
-                System.err.println("Error: Cleaned JSON content for " + phaseName + " is empty.");
-                return new ArrayList<>();
+            // 分片只交给监听器（SSE、对话记录），不再逐个打印到控制台
+            System.out.println("--- Streaming LLM response for " + phaseName + " (" + budgetedPrompt.getPromptTokens()
+                    + " prompt tokens) ---");
+            promptTokens = budgetedPrompt.getPromptTokens();
+            hedgedLlmStreamer.stream(phaseName, endpoint -> streamPhase(endpoint, prompt, outputFormat), responseSink);
+            System.out.println("--- End of streamed LLM response for " + phaseName + " (" + responseSink.completionTokens
+                    + " completion tokens) ---");
+
+            ResponseParseTracker.Outcome outcome = checkResponse(templateName, phaseName, responseSink);
+            if (needsRepair(outcome, responseSink)) {
+                outcome = repairResponse(templateName, phaseName, responseSink, outcome);
             }
-            return JSON.parseObject(cleanedJson, new com.alibaba.fastjson.TypeReference<List<GeneratedFile>>() {});
+            if (outcome == ResponseParseTracker.Outcome.PARSED) {
+                // 只缓存完整、可解析的响应；修复过的响应缓存修复后的数组，命中时不用再修一次
+                if (options.isUseCache()) {
+                    llmResponseCache.put(cacheKey, responseSink.repaired
+                            ? outputFormat.write(responseSink.files) : responseSink.response.toString());
+                }
+            } else if (outcome == ResponseParseTracker.Outcome.TRUNCATED
+                    && resumeTruncatedResponse(templateName, prompt, promptTokens, phaseName, phaseListener, fileSink, responseSink.files)
+                    && options.isUseCache()) {
+                // 续写拼出来的完整结果按一个数组缓存
+                llmResponseCache.put(cacheKey, outputFormat.write(responseSink.files));
+            }
+            return responseSink.files;
 
         } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             System.err.println("Error during LLM call or parsing response for " + phaseName + ": " + e.getMessage());
             e.printStackTrace();
-            if (e instanceof IllegalArgumentException && e.getMessage().contains("The template string is not valid")) {
-                System.err.println("This often means curly braces {} were not properly escaped as {{{{ or }}}} in the prompt string from PromptProviderService for phase: " + phaseName);
+            // 出错前已经完整解析并落盘的文件仍然返回
+            return responseSink.files;
+        } finally {
+            reportUsage(phaseName, phaseListener, responseSink, promptTokens);
+        }
+    }
+
+    /**
+     * 结束解析并记录解析统计。数组没有闭合（输出达到上限被截断，或者模型中途停止）时返回 TRUNCATED，
+     * 已经完整收到的文件都已交给 sink。
+     */
+    private ResponseParseTracker.Outcome checkResponse(String templateName, String phaseName, PhaseResponseSink responseSink)
+            throws IOException {
+        GeneratedFileParser responseParser = responseSink.parser;
+        ResponseParseTracker.Outcome outcome = ResponseParseTracker.Outcome.PARSED;
+        String finishReason = responseSink.finishReason == null ? "" : " (finish reason " + responseSink.finishReason + ")";
+        if (responseSink.malformed != null) {
+            outcome = ResponseParseTracker.Outcome.MALFORMED;
+            System.err.println("Error: LLM response for " + phaseName + " is not valid JSON (" + responseSink.malformed + ")"
+                    + finishReason + ", " + responseSink.files.size() + " file(s) parsed before the error.");
+        } else if (!responseParser.isStarted()) {
+            outcome = ResponseParseTracker.Outcome.NO_JSON;
+            System.err.println("Error: LLM response for " + phaseName + " contains no files (" + responseSink.outputFormat + ")"
+                    + finishReason + ".");
+        } else if (!responseParser.finish()) {
+            outcome = ResponseParseTracker.Outcome.TRUNCATED;
+            System.err.println("Error: LLM response for " + phaseName + " ended before the last file was complete" + finishReason
+                    + ", keeping " + responseSink.files.size() + " complete file(s).");
+        }
+        LlmEndpoint endpoint = responseSink.completedBy;
+        if (endpoint != null) {
+            // 文件块格式的请求不带 response_format
+            StructuredOutputMode structuredOutput = responseSink.outputFormat == PhaseOutputFormat.JSON
+                    ? endpoint.getStructuredOutput() : StructuredOutputMode.NONE;
+            responseParseTracker.record(templateName, endpoint.getModel(), structuredOutput, responseSink.outputFormat, outcome);
+        }
+        return outcome;
+    }
+
+    /**
+     * 严格解析失败（格式错误、找不到数组），或者响应里的文件对象比解析出来的多（数组之后还有别的代码块）时，
+     * 需要第二遍宽松解析。只有 JSON 格式需要，文件块格式没有转义可修。
+     */
+    private static boolean needsRepair(ResponseParseTracker.Outcome outcome, PhaseResponseSink responseSink) {
+        if (responseSink.outputFormat != PhaseOutputFormat.JSON) {
+            return false;
+        }
+        if (outcome == ResponseParseTracker.Outcome.MALFORMED || outcome == ResponseParseTracker.Outcome.NO_JSON) {
+            return true;
+        }
+        if (outcome != ResponseParseTracker.Outcome.PARSED) {
+            return false;
+        }
+        // 转义过的 \"filePath\"（代码里的字符串）不会匹配
+        int objects = 0;
+        for (int i = responseSink.response.indexOf(FILE_PATH_KEY); i >= 0; i = responseSink.response.indexOf(FILE_PATH_KEY, i + 1)) {
+            objects++;
+        }
+        return objects > responseSink.files.size();
+    }
+
+    /**
+     * 第二遍解析：严格解析器拒绝的响应交给 {@link LenientGeneratedFileParser}，修复字符串里未转义的换行和引号、
+     * 多余的逗号、多个代码块等常见问题，补上严格解析没拿到的文件，省掉整个阶段重新生成。
+     * 已经交给 sink 的文件不会重复输出。
+     *
+     * @return 救回了文件并且最后一个文件完整时返回 PARSED，输出被截断时返回 TRUNCATED（交给续写），什么都没救回来时返回 outcome
+     */
+    private ResponseParseTracker.Outcome repairResponse(String templateName, String phaseName, PhaseResponseSink responseSink,
+                                                        ResponseParseTracker.Outcome outcome) {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(responseSink.response);
+        if (result.getFiles().isEmpty()) {
+            System.err.println("Lenient parse of the LLM response for " + phaseName + " found no files either.");
+            return outcome;
+        }
+        int parsed = responseSink.files.size();
+        for (GeneratedFile file : result.getFiles()) {
+            responseSink.acceptRepaired(file);
+        }
+        responseSink.repaired = true;
+        System.out.println("--- Repaired LLM response for " + phaseName + ": " + result + ", "
+                + (responseSink.files.size() - parsed) + " file(s) recovered ---");
+        LlmEndpoint endpoint = responseSink.completedBy;
+        if (endpoint != null) {
+            responseParseTracker.recordRepair(templateName, endpoint.getModel(), endpoint.getStructuredOutput(), responseSink.outputFormat);
+        }
+        boolean truncated = result.isTruncated() || "length".equalsIgnoreCase(responseSink.finishReason);
+        return truncated ? ResponseParseTracker.Outcome.TRUNCATED : ResponseParseTracker.Outcome.PARSED;
+    }
+
+    /**
+     * 响应被截断时保留已经完整收到的文件，发续写请求只要剩下的文件：同一个阶段提示词后面追加已收到的文件清单，
+     * 前缀缓存依然命中，也不需要把已经输出过的内容再发一遍。续写结果追加到 files，直到数组完整闭合或者用完
+     * codegen.continuation.max-requests 次。截断前一个完整文件都没有（单个文件就超过输出上限）或者续写没有新文件时放弃，
+     * 避免在同一个文件上反复截断。
+     *
+     * @return true 表示最终拿到了完整的结果
+     */
+    private boolean resumeTruncatedResponse(String templateName, Prompt prompt, int promptTokens, String phaseName,
+                                            PhaseListener phaseListener, Consumer<GeneratedFile> fileSink, List<GeneratedFile> files)
+            throws Exception {
+        PhaseOutputFormat outputFormat = promptProviderService.outputFormat(templateName);
+        for (int continuation = 1; continuation <= maxContinuations; continuation++) {
+            Set<String> produced = new LinkedHashSet<>();
+            for (GeneratedFile file : files) {
+                if (file.getFilePath() != null) {
+                    produced.add(file.getFilePath());
+                }
+            }
+            if (produced.isEmpty()) {
+                System.err.println("No complete file received for " + phaseName + " before the cut-off, not resuming.");
+                return false;
+            }
+            String continuationText = promptTemplates.render(PromptTemplateRegistry.CONTINUATION,
+                    Map.of(PromptTemplateRegistry.PRODUCED_FILES, String.join("\n", produced)));
+            Prompt continuationPrompt = withUserMessage(prompt, continuationText);
+            // 续写结果按解析出的文件缓存，不需要保留原始响应
+            PhaseResponseSink continuationSink = new PhaseResponseSink(phaseName, phaseListener, fileSink, tokenBudgeter, produced,
+                    outputFormat, false);
+            phaseListener.onPrompt(phaseName, continuationPrompt);
+            System.out.println("--- Resuming truncated LLM response for " + phaseName + " (continuation " + continuation + ", "
+                    + produced.size() + " file(s) already received) ---");
+            try {
+                hedgedLlmStreamer.stream(phaseName, endpoint -> streamPhase(endpoint, continuationPrompt, outputFormat), continuationSink);
+            } finally {
+                files.addAll(continuationSink.files);
+                reportUsage(phaseName, phaseListener, continuationSink, promptTokens + tokenBudgeter.countTokens(continuationText));
+            }
+            System.out.println("--- End of continuation for " + phaseName + " ---");
+
+            ResponseParseTracker.Outcome outcome = checkResponse(templateName, phaseName, continuationSink);
+            if (needsRepair(outcome, continuationSink)) {
+                int received = continuationSink.files.size();
+                outcome = repairResponse(templateName, phaseName, continuationSink, outcome);
+                files.addAll(continuationSink.files.subList(received, continuationSink.files.size()));
+            }
+            if (outcome == ResponseParseTracker.Outcome.PARSED) {
+                return true;
+            }
+            if (outcome == ResponseParseTracker.Outcome.NO_JSON || continuationSink.files.isEmpty()) {
+                return false;
             }
-            return new ArrayList<>();
         }
+        System.err.println("LLM response for " + phaseName + " is still incomplete after " + maxContinuations + " continuation(s).");
+        return false;
     }
 
-    public List<String> listFilesToGenerate(String designDocumentContent) throws IOException {
-        System.out.println("\n--- Starting Phase: List Files to Generate ---");
+    // 服务端报告的用量优先；没有时用本地的提示词计数和逐个分片累加的输出 token 数
+    private static void reportUsage(String phaseName, PhaseListener phaseListener, PhaseResponseSink responseSink, int promptTokens) {
+        TokenUsage usage = responseSink.reportedUsage;
+        if (usage != null) {
+            System.out.println("--- LLM usage for " + phaseName + ": " + usage + " ---");
+            phaseListener.onTokenUsage(phaseName, usage.getPromptTokens(), usage.getCachedPromptTokens(), usage.getCompletionTokens());
+        } else if (promptTokens >= 0) {
+            phaseListener.onTokenUsage(phaseName, promptTokens, 0, responseSink.completionTokens);
+        }
+    }
 
-        String listFilesPromptStr = promptProviderService.constructListFilesPrompt(designDocumentContent);
-        PromptTemplate promptTemplate = new PromptTemplate(listFilesPromptStr);
-        Map<String, Object> promptParameters = new HashMap<>();
-        promptParameters.put("design_document_content", designDocumentContent);
-        Prompt prompt = promptTemplate.create(promptParameters);
+    /**
+     * 发往某个端点的生成请求。端点支持结构化输出并且阶段输出 JSON 时带上 response_format，并在最后追加一条说明对象外层格式的消息，
+     * 共享的前缀不变；服务拒绝 response_format 时（此时还没有任何输出）端点降级为 NONE，这次请求去掉参数重发。
+     */
+    private Flux<ChatResponse> streamPhase(LlmEndpoint endpoint, Prompt prompt, PhaseOutputFormat outputFormat) {
+        StructuredOutputMode mode = endpoint.getStructuredOutput();
+        if (mode == StructuredOutputMode.NONE || outputFormat != PhaseOutputFormat.JSON) {
+            return endpoint.chatClient(CODE_GENERATION_PROFILE).prompt(prompt).stream().chatResponse();
+        }
+        return endpoint.chatClient(CODE_GENERATION_PROFILE.withStructuredOutput(mode))
+                .prompt(withUserMessage(prompt, StructuredOutputMode.INSTRUCTION)).stream().chatResponse()
+                .onErrorResume(StructuredOutputMode::isUnsupported, error -> {
+                    endpoint.disableStructuredOutput(mode, error);
+                    return endpoint.chatClient(CODE_GENERATION_PROFILE).prompt(prompt).stream().chatResponse();
+                });
+    }
 
-        // Configure LLM options (you might want to centralize this or make it configurable)
-        OpenAiChatOptions openAiChatOptions = OpenAiChatOptions.builder()
-                .model("deepseek-chat") // Or your preferred model
-                .temperature(0.3) // Adjust for creativity vs. determinism
-                .build();
+    /**
+     * 生成阶段的提示词：system（角色 + 输出格式）和设计文档两条消息在所有阶段完全相同，阶段指令放在最后一条消息。
+     * DeepSeek / OpenAI 按前缀缓存输入，同一任务的第二个及以后的阶段（以及逐文件生成的每个文件）只有最后一条消息需要重新计算。
+     */
+    private Prompt phasePrompt(String templateName, Map<String, Object> parameters) {
+        return new Prompt(List.of(
+                new SystemMessage(sharedSystemPrompt),
+                new UserMessage(promptTemplates.render(PromptTemplateRegistry.DESIGN_DOCUMENT, parameters)),
+                new UserMessage(promptTemplates.render(templateName, parameters))));
+    }
 
-        ChatClient chatClient = chatClientBuilder.defaultOptions(openAiChatOptions).build();
+    /**
+     * 把胜出请求的流式输出交给解析器。流被对冲请求或重试替换时，丢弃已解析的文件和缓存内容从头解析；
+     * 已经落盘的文件会被新响应里的同名文件覆盖。
+     */
+    private static final class PhaseResponseSink implements HedgedLlmStreamer.StreamSink {
+        private final String phaseName;
+        private final PhaseListener phaseListener;
+        private final Consumer<GeneratedFile> fileSink;
+        private final List<GeneratedFile> files = new ArrayList<>();
+        // 完整响应：开启缓存时写入缓存，JSON 格式严格解析失败时交给 LenientGeneratedFileParser；
+        // 两者都用不到时（文件块格式且不缓存）为 null，峰值内存仍由最大的单个文件决定
+        private final StringBuilder response;
+        private final TokenBudgeter tokenBudgeter;
+        private final PhaseOutputFormat outputFormat;
+        private GeneratedFileParser parser;
+        // 胜出请求的输出 token 数，逐个分片累加
+        private long completionTokens;
+        // 服务端报告的用量，比本地计数准确，并且包含命中前缀缓存的 token 数
+        private TokenUsage reportedUsage;
+        // 胜出请求所在的端点，用于按模型统计解析失败率
+        private LlmEndpoint completedBy;
+        private String finishReason;
+        // 续写时已经收到的文件；模型重复输出时忽略
+        private final Set<String> skipPaths;
+        // 严格解析器的报错信息；之后的分片只保留不再解析
+        private String malformed;
+        // 文件列表经过第二遍宽松解析补充
+        private boolean repaired;
+
+        PhaseResponseSink(String phaseName, PhaseListener phaseListener, Consumer<GeneratedFile> fileSink,
+                          TokenBudgeter tokenBudgeter, Set<String> skipPaths, PhaseOutputFormat outputFormat, boolean cacheResponse) {
+            this.phaseName = phaseName;
+            this.phaseListener = phaseListener;
+            this.fileSink = fileSink;
+            this.tokenBudgeter = tokenBudgeter;
+            this.skipPaths = skipPaths;
+            this.outputFormat = outputFormat;
+            // needsRepair 只对 JSON 格式成立，文件块格式的响应只有写缓存时才需要
+            this.response = cacheResponse || outputFormat == PhaseOutputFormat.JSON ? new StringBuilder() : null;
+            this.parser = newParser();
+        }
 
-        System.out.println("Prompt for listing files:\n" + prompt.getInstructions().get(0).getText()); // Log the prompt
+        private GeneratedFileParser newParser() {
+            return outputFormat.newParser(this::accept);
+        }
 
-        try {
-            ChatResponse chatResponse = chatClient.prompt(prompt)
+        private void accept(GeneratedFile generatedFile) {
+            if (skipPaths.contains(generatedFile.getFilePath())) {
+                System.out.println("--- Ignoring repeated file " + generatedFile.getFilePath() + " in continuation ---");
+                return;
+            }
+            files.add(generatedFile);
+            fileSink.accept(generatedFile);
+            phaseListener.onFile(phaseName, generatedFile);
+        }
+
+        // 宽松解析的结果里包含严格解析在出错前已经输出的文件，跳过
+        private void acceptRepaired(GeneratedFile generatedFile) {
+            for (GeneratedFile file : files) {
+                if (Objects.equals(file.getFilePath(), generatedFile.getFilePath())) {
+                    return;
+                }
+            }
+            accept(generatedFile);
+        }
+
+        @Override
+        public void onChunk(String chunk) throws IOException {
+            phaseListener.onChunk(phaseName, chunk);
+            completionTokens += tokenBudgeter.countTokens(chunk);
+            if (response != null) {
+                response.append(chunk);
+            }
+            if (malformed == null) {
+                try {
+                    parser.feed(chunk);
+                } catch (JsonProcessingException e) {
+                    // 不中断流：收完整个响应后交给宽松解析
+                    malformed = e.getOriginalMessage();
+                }
+            }
+        }
+
+        @Override
+        public void onUsage(TokenUsage usage) {
+            reportedUsage = usage;
+        }
+
+        @Override
+        public void onCompletedBy(LlmEndpoint endpoint) {
+            completedBy = endpoint;
+        }
+
+        @Override
+        public void onFinishReason(String reason) {
+            finishReason = reason;
+        }
+
+        @Override
+        public void onReset() {
+            System.out.println("--- LLM response stream for " + phaseName + " replaced, restarting ---");
+            phaseListener.onStreamReset(phaseName);
+            files.clear();
+            completionTokens = 0;
+            reportedUsage = null;
+            finishReason = null;
+            malformed = null;
+            if (response != null) {
+                response.setLength(0);
+            }
+            parser = newParser();
+        }
+    }
+
+    /**
+     * 非流式调用，结果经过 LlmResponseCache。
+     */
+    private String callLlm(Prompt prompt, ChatProfile chatProfile, GenerationOptions options) throws Exception {
+        String cacheKey = llmResponseCache.keyFor(prompt, chatProfile.getOptions(), endpointPool.getModelIdentity());
+        if (options.isUseCache()) {
+            String cachedResponse = llmResponseCache.get(cacheKey);
+            if (cachedResponse != null) {
+                return cachedResponse;
+            }
+        }
+        String response = endpointPool.execute((endpoint, permit) -> {
+            ChatResponse chatResponse = endpoint.chatClient(chatProfile).prompt(prompt)
                     .call()
                     .chatResponse();
+            Usage usage = chatResponse.getMetadata().getUsage();
+            if (usage != null && usage.getCompletionTokens() != null) {
+                permit.recordTokens(usage.getCompletionTokens());
+            }
+            return chatResponse.getResult().getOutput().getText();
+        });
+        if (options.isUseCache() && response != null) {
+            llmResponseCache.put(cacheKey, response);
+        }
+        return response;
+    }
+
+    // 等价于 chatClient.prompt(prompt).user(userText)，但让追加的用户消息也参与缓存 key 的计算
+    private static Prompt withUserMessage(Prompt prompt, String userText) {
+        List<Message> messages = new ArrayList<>(prompt.getInstructions());
+        messages.add(new UserMessage(userText));
+        return new Prompt(messages, prompt.getOptions());
+    }
+
+    public List<String> listFilesToGenerate(String designDocumentContent) throws IOException {
+        return listFilesToGenerate(designDocumentContent, GenerationOptions.defaults());
+    }
+
+    public List<String> listFilesToGenerate(String designDocumentContent, GenerationOptions options) throws IOException {
+        return listFilesToGenerate(designDocumentContent, options, PhaseListener.NO_OP);
+    }
 
-            String llmResponseJson = chatResponse.getResult().getOutput().getText().trim();
-            System.out.println("Raw LLM Response for file list:\n" + llmResponseJson);
+    /**
+     * 提示词和原始响应交给 phaseListener（对话记录），控制台只打印摘要。
+     */
+    public List<String> listFilesToGenerate(String designDocumentContent, GenerationOptions options, PhaseListener phaseListener)
+            throws IOException {
+        System.out.println("\n--- Starting Phase: List Files to Generate ---");
 
-            // Clean the JSON if it's wrapped in markdown code blocks
-            String cleanedJson = llmResponseJson.replaceAll("^```json", "").replaceAll("```$", "").trim();
-            System.out.println("Cleaned LLM Response JSON for file list parsing:\n" + cleanedJson);
+        Map<String, Object> promptParameters = new HashMap<>();
+        promptParameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, designDocumentContent);
+        Prompt prompt = tokenBudgeter.fit(PromptTemplateRegistry.LIST_FILES, promptParameters, parameters ->
+                new Prompt(new UserMessage(promptTemplates.render(PromptTemplateRegistry.LIST_FILES, parameters)))).getPrompt();
 
-            if (cleanedJson.isEmpty()) {
-                System.err.println("Error: Cleaned JSON content for file list is empty.");
+        phaseListener.onPrompt(PHASE_FILE_LIST, prompt);
+
+        try {
+            String llmResponse = callLlm(prompt, FILE_PLANNING_PROFILE, options);
+            if (llmResponse != null) {
+                phaseListener.onResponse(PHASE_FILE_LIST, llmResponse);
+            }
+
+            // 直接在原始响应上流式读取数组，```json 围栏和前后的说明文字不需要先去掉
+            List<String> fileList = llmResponse == null ? List.of() : FilePlanParser.parse(llmResponse);
+            if (fileList.isEmpty()) {
+                System.err.println("Error: LLM response for file list contains no file paths.");
                 // Fallback or throw error
                 return List.of("README.md", "src/main/Error.java"); // Example fallback
             }
 
-            // Parse the JSON array of strings
-            // Using Jackson ObjectMapper as it's already a dependency
-            List<String> fileList = objectMapper.readValue(cleanedJson, new TypeReference<List<String>>() {});
-
             System.out.println("Parsed file list: " + fileList);
             System.out.println("--- Phase Completed: List Files to Generate (LLM) ---");
             return fileList;
@@ -0,0 +1,271 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.DesignDigest;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 大型设计文档的 map-reduce 浓缩：按标题切块，各块并行请求一次 LLM，同时产出后端、前端和概览三份摘要（map），
+ * 再按原顺序拼接成完整的摘要（reduce）。各阶段的提示词使用对应的摘要代替原文，每个任务重复发送的输入 token 大幅减少。
+ * <p>
+ * 小于 min-document-tokens 的文档直接使用原文：浓缩本身的耗时和费用换不回来。
+ * 摘要按文档内容的 SHA-256 缓存在 {@link LlmResponseCache} 中；同一文档同时被多个任务提交时只浓缩一次。
+ */
+@Service
+public class DesignDocumentCondenser {
+
+    // token 用量以这个阶段名汇报给 PhaseListener
+    public static final String PHASE_CONDENSE = "Condense";
+    // 摘要的格式或提示词变化时修改版本号，旧的缓存条目自然失效
+    private static final String CACHE_KEY_VERSION = "design-digest:v1:";
+    private static final ChatProfile CONDENSE_PROFILE = ChatProfile.of(0.2, null);
+    private static final Pattern MARKER = Pattern.compile("(?m)^\\s*===\\s*(BACKEND|FRONTEND|OVERVIEW)\\s*===\\s*$");
+
+    private final LlmEndpointPool endpointPool;
+    private final PromptTemplateRegistry promptTemplates;
+    private final TokenBudgeter tokenBudgeter;
+    private final LlmResponseCache llmResponseCache;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService condenseExecutor;
+    private final boolean enabled;
+    private final int minDocumentTokens;
+    private final int chunkTokens;
+    private final Map<String, CompletableFuture<DesignDigest>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DesignDocumentCondenser(LlmEndpointPool endpointPool, PromptTemplateRegistry promptTemplates, TokenBudgeter tokenBudgeter,
+                                   LlmResponseCache llmResponseCache, ObjectMapper objectMapper,
+                                   @Qualifier("generationPhaseExecutor") ExecutorService condenseExecutor,
+                                   @Value("${codegen.condense.enabled:true}") boolean enabled,
+                                   @Value("${codegen.condense.min-document-tokens:16000}") int minDocumentTokens,
+                                   @Value("${codegen.condense.chunk-tokens:6000}") int chunkTokens) {
+        this.endpointPool = endpointPool;
+        this.promptTemplates = promptTemplates;
+        this.tokenBudgeter = tokenBudgeter;
+        this.llmResponseCache = llmResponseCache;
+        this.objectMapper = objectMapper;
+        this.condenseExecutor = condenseExecutor;
+        this.enabled = enabled;
+        this.minDocumentTokens = minDocumentTokens;
+        this.chunkTokens = chunkTokens;
+    }
+
+    /**
+     * 返回文档的摘要；不需要浓缩或浓缩失败时返回原文（DesignDigest.unchanged）。
+     */
+    public DesignDigest condense(String designDocumentContent, GenerationOptions options, PhaseListener phaseListener) {
+        String documentHash = sha256(designDocumentContent);
+        if (!enabled || tokenBudgeter.countTokens(designDocumentContent) < minDocumentTokens) {
+            return DesignDigest.unchanged(documentHash, designDocumentContent);
+        }
+        String cacheKey = sha256(CACHE_KEY_VERSION + chunkTokens + ":" + endpointPool.getModelIdentity() + ":" + designDocumentContent);
+        if (options.isUseCache()) {
+            DesignDigest cached = readCached(cacheKey);
+            if (cached != null) {
+                System.out.println("--- Design digest cache hit for document " + documentHash.substring(0, 12) + " ---");
+                return cached;
+            }
+        }
+        CompletableFuture<DesignDigest> own = new CompletableFuture<>();
+        CompletableFuture<DesignDigest> running = options.isUseCache() ? inFlight.putIfAbsent(cacheKey, own) : null;
+        if (running != null) {
+            // 另一个任务正在浓缩同一份文档，等它的结果
+            return running.join();
+        }
+        try {
+            DesignDigest digest = mapReduce(designDocumentContent, documentHash, options, phaseListener);
+            if (options.isUseCache() && digest.isCondensed()) {
+                llmResponseCache.put(cacheKey, objectMapper.writeValueAsString(digest));
+            }
+            own.complete(digest);
+            return digest;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.err.println("Condensing design document failed, using the full document: " + e.getMessage());
+            DesignDigest unchanged = DesignDigest.unchanged(documentHash, designDocumentContent);
+            own.complete(unchanged);
+            return unchanged;
+        } finally {
+            inFlight.remove(cacheKey, own);
+        }
+    }
+
+    private DesignDigest mapReduce(String designDocumentContent, String documentHash, GenerationOptions options,
+                                   PhaseListener phaseListener) throws Exception {
+        List<String> chunks = tokenBudgeter.splitIntoChunks(designDocumentContent, chunkTokens);
+        System.out.println("\n--- Condensing design document (" + tokenBudgeter.countTokens(designDocumentContent) + " tokens) in "
+                + chunks.size() + " chunks ---");
+        long start = System.currentTimeMillis();
+
+        List<CompletableFuture<ChunkDigest>> futures = new ArrayList<>();
+        for (String chunk : chunks) {
+            futures.add(CompletableFuture.supplyAsync(() -> condenseChunk(chunk, options, phaseListener), condenseExecutor));
+        }
+        StringBuilder backend = new StringBuilder();
+        StringBuilder frontend = new StringBuilder();
+        StringBuilder overview = new StringBuilder();
+        for (CompletableFuture<ChunkDigest> future : futures) {
+            ChunkDigest chunkDigest = future.join();
+            append(backend, chunkDigest.backend);
+            append(frontend, chunkDigest.frontend);
+            append(overview, chunkDigest.overview);
+        }
+        DesignDigest digest = new DesignDigest(documentHash, true, chunks.size(),
+                orOriginal(backend.toString(), designDocumentContent), orOriginal(frontend.toString(), designDocumentContent),
+                orOriginal(overview.toString(), designDocumentContent));
+        System.out.println("--- Design document condensed in " + (System.currentTimeMillis() - start) + "ms: backend "
+                + tokenBudgeter.countTokens(digest.getBackend()) + ", frontend " + tokenBudgeter.countTokens(digest.getFrontend())
+                + ", overview " + tokenBudgeter.countTokens(digest.getOverview()) + " tokens ---");
+        return digest;
+    }
+
+    private ChunkDigest condenseChunk(String chunk, GenerationOptions options, PhaseListener phaseListener) {
+        Prompt prompt = new Prompt(new UserMessage(promptTemplates.render(PromptTemplateRegistry.CONDENSE,
+                Map.of(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, chunk))));
+        String cacheKey = llmResponseCache.keyFor(prompt, CONDENSE_PROFILE.getOptions(), endpointPool.getModelIdentity());
+        String response = options.isUseCache() ? llmResponseCache.get(cacheKey) : null;
+        try {
+            if (response == null) {
+                ChatResponse chatResponse = endpointPool.execute((endpoint, permit) -> {
+                    ChatResponse result = endpoint.chatClient(CONDENSE_PROFILE).prompt(prompt).call().chatResponse();
+                    permit.recordTokens(tokenBudgeter.countTokens(result.getResult().getOutput().getText()));
+                    return result;
+                });
+                response = chatResponse.getResult().getOutput().getText();
+                TokenUsage usage = TokenUsage.from(chatResponse);
+                if (usage != null) {
+                    phaseListener.onTokenUsage(PHASE_CONDENSE, usage.getPromptTokens(), usage.getCachedPromptTokens(), usage.getCompletionTokens());
+                } else {
+                    phaseListener.onTokenUsage(PHASE_CONDENSE, tokenBudgeter.countPromptTokens(prompt), 0, tokenBudgeter.countTokens(response));
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            System.err.println("Condensing a design document chunk failed, keeping it verbatim: " + e.getMessage());
+            return ChunkDigest.verbatim(chunk);
+        }
+        ChunkDigest digest = ChunkDigest.parse(response);
+        if (digest == null) {
+            System.err.println("Condensed chunk has no digest markers, keeping it verbatim");
+            return ChunkDigest.verbatim(chunk);
+        }
+        if (options.isUseCache()) {
+            llmResponseCache.put(cacheKey, response);
+        }
+        return digest;
+    }
+
+    private DesignDigest readCached(String cacheKey) {
+        String cached = llmResponseCache.get(cacheKey);
+        if (cached == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(cached, DesignDigest.class);
+        } catch (JsonProcessingException e) {
+            System.err.println("Ignoring unreadable cached design digest: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void append(StringBuilder digest, String part) {
+        if (part.isEmpty()) {
+            return;
+        }
+        if (digest.length() > 0) {
+            digest.append("\n\n");
+        }
+        digest.append(part);
+    }
+
+    // 整份文档都没有某一类内容时（例如没有前端），仍然给该阶段原文，由阶段自己判断
+    private static String orOriginal(String digest, String designDocumentContent) {
+        return digest.isBlank() ? designDocumentContent : digest;
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class ChunkDigest {
+        private final String backend;
+        private final String frontend;
+        private final String overview;
+
+        private ChunkDigest(String backend, String frontend, String overview) {
+            this.backend = backend;
+            this.frontend = frontend;
+            this.overview = overview;
+        }
+
+        static ChunkDigest verbatim(String chunk) {
+            String trimmed = chunk.strip();
+            return new ChunkDigest(trimmed, trimmed, trimmed);
+        }
+
+        /**
+         * 按 === BACKEND === / === FRONTEND === / === OVERVIEW === 标记拆分；缺少任何一个标记时返回 null。
+         */
+        static ChunkDigest parse(String response) {
+            if (response == null) {
+                return null;
+            }
+            Matcher matcher = MARKER.matcher(response);
+            Map<String, String> parts = new HashMap<>();
+            String current = null;
+            int contentStart = 0;
+            while (matcher.find()) {
+                if (current != null) {
+                    parts.put(current, response.substring(contentStart, matcher.start()));
+                }
+                current = matcher.group(1);
+                contentStart = matcher.end();
+            }
+            if (current != null) {
+                parts.put(current, response.substring(contentStart));
+            }
+            if (parts.size() != 3) {
+                return null;
+            }
+            return new ChunkDigest(clean(parts.get("BACKEND")), clean(parts.get("FRONTEND")), clean(parts.get("OVERVIEW")));
+        }
+
+        private static String clean(String part) {
+            String trimmed = part.strip();
+            return trimmed.equalsIgnoreCase("(none)") ? "" : trimmed;
+        }
+    }
+}
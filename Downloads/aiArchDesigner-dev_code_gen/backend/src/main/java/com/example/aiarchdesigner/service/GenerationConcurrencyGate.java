@@ -0,0 +1,52 @@
+package com.example.aiarchdesigner.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同时进行中的代码生成数量上限（codegen.max-concurrent-generations）。
+ * 虚拟线程让“一个生成占一个线程”不再受线程池大小限制，这个上限是唯一的并发天花板：
+ * 超过上限的请求会在这里排队（公平信号量），而不是继续向 LLM 发起请求。
+ * 由 ExecutorConfig 按执行模型创建：平台线程模式下上限不超过阶段线程数的一半。
+ */
+public class GenerationConcurrencyGate {
+
+    private final int maxConcurrentGenerations;
+    private final Semaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public GenerationConcurrencyGate(int maxConcurrentGenerations) {
+        this.maxConcurrentGenerations = maxConcurrentGenerations;
+        this.permits = new Semaphore(maxConcurrentGenerations, true);
+    }
+
+    public <T> T run(Callable<T> generation) throws Exception {
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        inFlight.incrementAndGet();
+        try {
+            return generation.call();
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    public int getMaxConcurrentGenerations() {
+        return maxConcurrentGenerations;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationJob;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.model.JobPhaseStatus;
+import com.example.aiarchdesigner.model.JobStatus;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.model.RegenerationPlan;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * 异步代码生成任务：提交设计文档后立即返回 jobId，由有界线程池在后台执行
+ * CodeGenerationService.generateProjectCode，客户端轮询任务及各阶段状态并在完成后获取结果。
+ */
+@Service
+public class GenerationJobService {
+
+    private final CodeGenerationService codeGenerationService;
+    private final IncrementalRegenerationPlanner regenerationPlanner;
+    private final ExecutorService generationJobExecutor;
+    private final TranscriptRecorder transcriptRecorder;
+    private final Duration retention;
+    private final Map<String, GenerationJob> jobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GenerationJobService(CodeGenerationService codeGenerationService, IncrementalRegenerationPlanner regenerationPlanner,
+                                @Qualifier("generationJobExecutor") ExecutorService generationJobExecutor,
+                                TranscriptRecorder transcriptRecorder,
+                                @Value("${codegen.jobs.retention-minutes:60}") long retentionMinutes) {
+        this.codeGenerationService = codeGenerationService;
+        this.regenerationPlanner = regenerationPlanner;
+        this.generationJobExecutor = generationJobExecutor;
+        this.transcriptRecorder = transcriptRecorder;
+        this.retention = Duration.ofMinutes(retentionMinutes);
+    }
+
+    /**
+     * @throws RejectedExecutionException 当工作线程和等待队列都已满时
+     */
+    public GenerationJob submit(String designDocumentContent, GenerationOptions options) {
+        return submit(designDocumentContent, options, PhaseListener.NO_OP, job -> {
+        });
+    }
+
+    /**
+     * 提交任务并附加一个额外的阶段监听器（例如 SSE 推送），onFinished 在任务完成或失败后调用。
+     */
+    public GenerationJob submit(String designDocumentContent, GenerationOptions options, PhaseListener progressListener,
+                                Consumer<GenerationJob> onFinished) {
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), CodeGenerationService.PROJECT_PHASES, designDocumentContent);
+        return enqueue(job, "generate from design document (" + designDocumentContent.length() + " chars)",
+                listener -> codeGenerationService.generateProjectCode(designDocumentContent, options, listener), progressListener, onFinished);
+    }
+
+    public GenerationJob submitRegeneration(String baseJobId, String designDocumentContent, GenerationOptions options) {
+        return submitRegeneration(baseJobId, designDocumentContent, options, PhaseListener.NO_OP, job -> {
+        });
+    }
+
+    /**
+     * 基于一个已完成的任务做增量重新生成：对比两版设计文档，只重新生成受影响的文件，其余文件直接复用。
+     *
+     * @throws NoSuchElementException    baseJobId 不存在（或已过期被清理）
+     * @throws IllegalStateException     baseJobId 对应的任务尚未成功完成
+     * @throws RejectedExecutionException 当工作线程和等待队列都已满时
+     */
+    public GenerationJob submitRegeneration(String baseJobId, String designDocumentContent, GenerationOptions options,
+                                            PhaseListener progressListener, Consumer<GenerationJob> onFinished) {
+        GenerationJob baseJob = jobs.get(baseJobId);
+        if (baseJob == null) {
+            throw new NoSuchElementException("Unknown job: " + baseJobId);
+        }
+        if (baseJob.getStatus() != JobStatus.COMPLETED || baseJob.getDesignDocumentContent() == null) {
+            throw new IllegalStateException("Job " + baseJobId + " has not completed successfully");
+        }
+        RegenerationPlan plan = regenerationPlanner.plan(baseJob.getDesignDocumentContent(), baseJob.getPhaseFiles(), designDocumentContent);
+        plan.setBaseJobId(baseJobId);
+        GenerationJob job = new GenerationJob(UUID.randomUUID().toString(), CodeGenerationService.PROJECT_PHASES, designDocumentContent);
+        job.setRegenerationPlan(plan);
+        return enqueue(job, "regenerate from job " + baseJobId + " (" + designDocumentContent.length() + " chars)",
+                listener -> codeGenerationService.regenerateProjectCode(plan, designDocumentContent, options, listener), progressListener, onFinished);
+    }
+
+    public GenerationJob getJob(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * 任务的对话记录（提示词、输出分片、各阶段耗时），任务结束后仍可读取。
+     *
+     * @return 没有记录时返回 null（未知任务，或者关闭了 codegen.transcript.enabled）
+     */
+    public String getTranscript(String jobId) throws IOException {
+        return transcriptRecorder.read(jobId);
+    }
+
+    private GenerationJob enqueue(GenerationJob job, String description, JobWork work, PhaseListener progressListener,
+                                  Consumer<GenerationJob> onFinished) {
+        evictExpiredJobs();
+        jobs.put(job.getJobId(), job);
+        try {
+            generationJobExecutor.execute(() -> {
+                run(job, description, work, progressListener);
+                onFinished.accept(job);
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        return job;
+    }
+
+    private void run(GenerationJob job, String description, JobWork work, PhaseListener progressListener) {
+        job.markRunning();
+        transcriptRecorder.open(job.getJobId(), description);
+        try {
+            job.markCompleted(work.run(new JobPhaseListener(job, transcriptRecorder.listener(job.getJobId()), progressListener)));
+            System.out.println("Generation job " + job.getJobId() + " completed.");
+        } catch (Exception e) {
+            System.err.println("Generation job " + job.getJobId() + " failed: " + e.getMessage());
+            e.printStackTrace();
+            job.markFailed(e.getMessage());
+        } finally {
+            transcriptRecorder.close(job.getJobId(), job.getStatus() + (job.getErrorMessage() == null ? "" : ": " + job.getErrorMessage()));
+        }
+    }
+
+    private void evictExpiredJobs() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private interface JobWork {
+        List<GeneratedFile> run(PhaseListener phaseListener) throws Exception;
+    }
+
+    /**
+     * 更新任务状态，并把每个回调依次交给对话记录和调用方的监听器。
+     */
+    private static class JobPhaseListener implements PhaseListener {
+        private final GenerationJob job;
+        private final PhaseListener transcript;
+        private final PhaseListener delegate;
+
+        JobPhaseListener(GenerationJob job, PhaseListener transcript, PhaseListener delegate) {
+            this.job = job;
+            this.transcript = transcript;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onPhaseStarted(String phaseName) {
+            JobPhaseStatus phase = job.getPhase(phaseName);
+            if (phase != null) {
+                phase.markRunning();
+            }
+            transcript.onPhaseStarted(phaseName);
+            delegate.onPhaseStarted(phaseName);
+        }
+
+        @Override
+        public void onPrompt(String phaseName, Prompt prompt) {
+            transcript.onPrompt(phaseName, prompt);
+            delegate.onPrompt(phaseName, prompt);
+        }
+
+        @Override
+        public void onResponse(String phaseName, String response) {
+            transcript.onResponse(phaseName, response);
+            delegate.onResponse(phaseName, response);
+        }
+
+        @Override
+        public void onChunk(String phaseName, String chunk) {
+            transcript.onChunk(phaseName, chunk);
+            delegate.onChunk(phaseName, chunk);
+        }
+
+        @Override
+        public void onStreamReset(String phaseName) {
+            transcript.onStreamReset(phaseName);
+            delegate.onStreamReset(phaseName);
+        }
+
+        @Override
+        public void onFile(String phaseName, GeneratedFile generatedFile) {
+            transcript.onFile(phaseName, generatedFile);
+            delegate.onFile(phaseName, generatedFile);
+        }
+
+        @Override
+        public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+            job.addTokenUsage(promptTokens, cachedPromptTokens, completionTokens);
+            JobPhaseStatus phase = job.getPhase(phaseName);
+            if (phase != null) {
+                phase.addTokenUsage(promptTokens, cachedPromptTokens, completionTokens);
+            }
+            transcript.onTokenUsage(phaseName, promptTokens, cachedPromptTokens, completionTokens);
+            delegate.onTokenUsage(phaseName, promptTokens, cachedPromptTokens, completionTokens);
+        }
+
+        @Override
+        public void onPhaseCompleted(PhaseResult result) {
+            JobPhaseStatus phase = job.getPhase(result.getPhaseName());
+            if (phase != null) {
+                phase.markFinished(result);
+            }
+            transcript.onPhaseCompleted(result);
+            delegate.onPhaseCompleted(result);
+        }
+    }
+}
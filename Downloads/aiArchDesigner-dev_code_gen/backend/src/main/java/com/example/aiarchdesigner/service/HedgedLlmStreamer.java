@@ -0,0 +1,598 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.HedgingStats;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.reactivestreams.Subscription;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.util.concurrent.Queues;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 流式 LLM 调用的对冲（hedging）与重试。
+ * <p>
+ * 对冲：主请求在“首 token 延迟的 P{codegen.hedging.ttft-percentile}”内还没有输出，或者输出后连续
+ * codegen.hedging.throughput-window-ms 内的速度低于 codegen.hedging.min-tokens-per-second，就再发一个相同的请求。
+ * <ul>
+ *   <li>两者都还没有输出时，先输出的一方胜出，另一方立即取消；</li>
+ *   <li>主请求已经在输出时，对冲请求的输出先缓存起来，谁先结束用谁：对冲请求先结束则取消主请求，
+ *       通知调用方丢弃已收到的内容（{@link StreamSink#onReset()}），再重放对冲请求的完整输出。</li>
+ * </ul>
+ * 每次调用最多对冲一次，对冲请求尽量发往另一个端点；所有端点的限流器都没有余量时不对冲，避免在拥塞时放大负载。
+ * <p>
+ * 故障转移与重试：端点故障（见 {@link LlmEndpointPool#isEndpointFailure}）在没有其他请求可以接替时，
+ * 立即换一个这次还没失败过的端点重新请求；所有端点都失败过之后，瞬时错误（5xx、429、连接/读取失败、超时）
+ * 再重试最多 codegen.retry.max-retries 次，退避时间为 [0, min(max-backoff, base-backoff * 2^n)) 内的随机值（full jitter）。
+ * 每个请求（主请求、对冲、重试）都由 {@link LlmEndpointPool} 选端点，并经过该端点的 {@link UpstreamConcurrencyLimiter}。
+ * <p>
+ * 背压：每个请求最多向上游预取 {@link #STREAM_PREFETCH} 个响应片段，调用方线程处理完一个片段才再要一个，
+ * 所以 {@link StreamSink} 处理得慢时上游读取也随之放慢，事件队列里每个请求最多积压这么多片段。
+ */
+@Component
+public class HedgedLlmStreamer {
+
+    private static final int MIN_SAMPLES_FOR_PERCENTILE = 20;
+    // 与 Flux.toStream() 默认的预取量相同
+    static final int STREAM_PREFETCH = Queues.SMALL_BUFFER_SIZE;
+
+    private final LlmEndpointPool endpointPool;
+    private final ExecutorService attemptExecutor;
+    private final boolean hedgingEnabled;
+    private final double ttftPercentile;
+    private final long minHedgeDelayMillis;
+    private final long initialHedgeDelayMillis;
+    private final double minTokensPerSecond;
+    private final long throughputWindowMillis;
+    private final int maxRetries;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private final LatencySamples firstTokenLatencies = new LatencySamples(512);
+    private final LatencySamples streamLatencies = new LatencySamples(512);
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    @Autowired
+    public HedgedLlmStreamer(LlmEndpointPool endpointPool,
+                             @Qualifier("llmAttemptExecutor") ExecutorService attemptExecutor,
+                             @Value("${codegen.hedging.enabled:true}") boolean hedgingEnabled,
+                             @Value("${codegen.hedging.ttft-percentile:95}") double ttftPercentile,
+                             @Value("${codegen.hedging.min-delay-ms:2000}") long minHedgeDelayMillis,
+                             @Value("${codegen.hedging.initial-delay-ms:15000}") long initialHedgeDelayMillis,
+                             @Value("${codegen.hedging.min-tokens-per-second:3}") double minTokensPerSecond,
+                             @Value("${codegen.hedging.throughput-window-ms:5000}") long throughputWindowMillis,
+                             @Value("${codegen.retry.max-retries:2}") int maxRetries,
+                             @Value("${codegen.retry.base-backoff-ms:500}") long baseBackoffMillis,
+                             @Value("${codegen.retry.max-backoff-ms:8000}") long maxBackoffMillis) {
+        this.endpointPool = endpointPool;
+        this.attemptExecutor = attemptExecutor;
+        this.hedgingEnabled = hedgingEnabled;
+        this.ttftPercentile = ttftPercentile;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+        this.initialHedgeDelayMillis = initialHedgeDelayMillis;
+        this.minTokensPerSecond = minTokensPerSecond;
+        this.throughputWindowMillis = throughputWindowMillis;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * 接收胜出请求的输出。回调都在调用 {@link #stream} 的线程上执行。
+     */
+    public interface StreamSink {
+        void onChunk(String chunk) throws IOException;
+
+        /**
+         * 之前收到的内容作废，接下来会从头收到另一个请求的输出。
+         */
+        void onReset() throws IOException;
+
+        /**
+         * 胜出请求结束时服务端报告的用量；服务端没有报告时不调用。
+         */
+        default void onUsage(TokenUsage usage) {
+        }
+
+        /**
+         * 胜出请求所在的端点，在 onUsage 之前调用。
+         */
+        default void onCompletedBy(LlmEndpoint endpoint) {
+        }
+
+        /**
+         * 胜出请求的 finish_reason（例如 STOP、LENGTH）；服务没有报告时不调用。
+         */
+        default void onFinishReason(String finishReason) {
+        }
+    }
+
+    /**
+     * @param request 给定端点，构造发往该端点的流式请求；主请求、对冲请求和重试各调用一次
+     */
+    public void stream(String label, Function<LlmEndpoint, Flux<ChatResponse>> request, StreamSink sink) throws Exception {
+        calls.incrementAndGet();
+        new Race(label, request, sink).run();
+    }
+
+    private final class Race {
+        private final String label;
+        private final Function<LlmEndpoint, Flux<ChatResponse>> request;
+        private final StreamSink sink;
+        // 不设容量：每个请求的片段数受预取量限制，另外每个请求最多一个结束事件
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+        private final List<Attempt> running = new ArrayList<>();
+        private final Set<LlmEndpoint> failedEndpoints = new HashSet<>();
+        private final long startNanos = System.nanoTime();
+        private final long hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(currentHedgeDelayMillis());
+        private Attempt committed;
+        private boolean hedged;
+        private boolean delivered;
+        private int retryCount;
+        private int nextAttemptId = 1;
+
+        Race(String label, Function<LlmEndpoint, Flux<ChatResponse>> request, StreamSink sink) {
+            this.label = label;
+            this.request = request;
+            this.sink = sink;
+        }
+
+        void run() throws Exception {
+            Attempt primary = start(false);
+            try {
+                while (true) {
+                    Event event = events.poll(pollIntervalMillis(), TimeUnit.MILLISECONDS);
+                    // 慢速输出时 poll 不一定超时，每次循环都检查
+                    maybeHedge(primary);
+                    if (event == null) {
+                        continue;
+                    }
+                    Attempt attempt = event.attempt;
+                    if (attempt.cancelled) {
+                        continue;
+                    }
+                    if (event.chunk != null) {
+                        onChunk(attempt, event.chunk);
+                        // 片段交给 sink（或缓存）之后才向上游要下一个
+                        event.replenish();
+                    } else if (event.error == null) {
+                        onComplete(attempt);
+                        return;
+                    } else {
+                        Attempt replacement = onError(attempt, event.error);
+                        if (replacement != null) {
+                            primary = replacement;
+                        }
+                    }
+                }
+            } finally {
+                running.forEach(Attempt::cancel);
+                streamLatencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+        }
+
+        private void onChunk(Attempt attempt, String chunk) throws IOException {
+            attempt.tokens++;
+            if (committed == null) {
+                // 还没有人输出过：第一个输出的请求胜出，其他请求取消
+                committed = attempt;
+                firstTokenLatencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - attempt.startNanos));
+                attempt.checkpointNanos = System.nanoTime();
+                if (attempt.hedge) {
+                    hedgesWon.incrementAndGet();
+                    System.out.println("Hedged request for " + label + " produced the first token, cancelling the original");
+                }
+                cancelAllExcept(attempt);
+            }
+            if (attempt == committed) {
+                delivered = true;
+                sink.onChunk(chunk);
+            } else {
+                attempt.buffer.append(chunk);
+            }
+        }
+
+        private void onComplete(Attempt attempt) throws IOException {
+            if (attempt != committed && committed != null) {
+                // 对冲请求先结束：替换掉已经输出了一部分的慢请求
+                hedgesWon.incrementAndGet();
+                System.out.println("Hedged request for " + label + " finished first, replacing the slow stream");
+                switchTo(attempt);
+            }
+            cancelAllExcept(attempt);
+            sink.onCompletedBy(attempt.endpoint);
+            if (attempt.finishReason != null) {
+                sink.onFinishReason(attempt.finishReason);
+            }
+            if (attempt.usage != null) {
+                sink.onUsage(attempt.usage);
+            }
+        }
+
+        private Attempt onError(Attempt attempt, Throwable error) throws Exception {
+            running.remove(attempt);
+            boolean endpointFault = LlmEndpointPool.isEndpointFailure(error);
+            if (endpointFault) {
+                failedEndpoints.add(attempt.endpoint);
+            }
+            if (!running.isEmpty()) {
+                // 还有另一个请求在跑，由它接替
+                Attempt survivor = running.get(0);
+                System.err.println("Request for " + label + " on " + attempt.endpoint + " failed (" + error.getMessage()
+                        + "), continuing with the other request");
+                if (attempt == committed) {
+                    switchTo(survivor);
+                }
+                return null;
+            }
+            if (endpointFault && endpointPool.hasEndpointOtherThan(failedEndpoints)) {
+                failovers.incrementAndGet();
+                System.err.println("LLM endpoint " + attempt.endpoint + " failed for " + label + " (" + error.getMessage()
+                        + "), failing over");
+            } else {
+                if (!isTransient(error) || retryCount >= maxRetries) {
+                    throw error instanceof Exception exception ? exception : new IllegalStateException(error);
+                }
+                retryCount++;
+                retries.incrementAndGet();
+                long backoffMillis = backoffMillis(retryCount);
+                System.err.println("Transient error for " + label + " (" + error.getMessage() + "), retry " + retryCount + " of "
+                        + maxRetries + " in " + backoffMillis + " ms");
+                Thread.sleep(backoffMillis);
+            }
+            if (delivered) {
+                sink.onReset();
+                delivered = false;
+            }
+            committed = null;
+            return start(false);
+        }
+
+        private void switchTo(Attempt attempt) throws IOException {
+            if (delivered) {
+                sink.onReset();
+            }
+            committed = attempt;
+            attempt.checkpointNanos = System.nanoTime();
+            attempt.checkpointTokens = attempt.tokens;
+            String buffered = attempt.buffer.toString();
+            attempt.buffer.setLength(0);
+            delivered = !buffered.isEmpty();
+            if (delivered) {
+                sink.onChunk(buffered);
+            }
+            cancelAllExcept(attempt);
+        }
+
+        private void maybeHedge(Attempt primary) {
+            if (hedged || !hedgingEnabled) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (committed == null) {
+                if (now - primary.startNanos >= hedgeDelayNanos && endpointPool.hasSpareCapacity()) {
+                    fireHedge("no first token after " + TimeUnit.NANOSECONDS.toMillis(now - primary.startNanos) + " ms");
+                }
+                return;
+            }
+            long windowNanos = now - committed.checkpointNanos;
+            if (windowNanos < TimeUnit.MILLISECONDS.toNanos(throughputWindowMillis)) {
+                return;
+            }
+            double tokensPerSecond = (committed.tokens - committed.checkpointTokens) * 1e9 / windowNanos;
+            if (tokensPerSecond < minTokensPerSecond && endpointPool.hasSpareCapacity()) {
+                fireHedge(String.format("stream slowed to %.1f tokens/s", tokensPerSecond));
+            } else {
+                committed.checkpointNanos = now;
+                committed.checkpointTokens = committed.tokens;
+            }
+        }
+
+        private void fireHedge(String reason) {
+            hedged = true;
+            hedgesFired.incrementAndGet();
+            System.out.println("Hedging request for " + label + ": " + reason);
+            start(true);
+        }
+
+        private long pollIntervalMillis() {
+            long hedgeCheck = Math.min(TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos), throughputWindowMillis) / 4;
+            return Math.max(10, Math.min(500, hedgeCheck));
+        }
+
+        private Attempt start(boolean hedge) {
+            // 对冲请求尽量避开正在跑的端点；重试避开这次已经失败过的端点
+            Set<LlmEndpoint> avoid = new HashSet<>(failedEndpoints);
+            if (hedge) {
+                running.forEach(other -> avoid.add(other.endpoint));
+            }
+            Attempt attempt = new Attempt(nextAttemptId++, hedge, endpointPool.select(avoid));
+            running.add(attempt);
+            attemptExecutor.execute(() -> attempt.run(request, events));
+            return attempt;
+        }
+
+        private void cancelAllExcept(Attempt winner) {
+            for (Attempt attempt : running) {
+                if (attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+            running.removeIf(attempt -> attempt.cancelled);
+        }
+    }
+
+    private final class Attempt {
+        private final int id;
+        private final boolean hedge;
+        private final LlmEndpoint endpoint;
+        private final long startNanos = System.nanoTime();
+        private final StringBuilder buffer = new StringBuilder();
+        private volatile CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean cancelled;
+        private volatile Disposable subscription;
+        // 以下字段只在 Race 所在线程上读写
+        private long tokens;
+        private long checkpointTokens;
+        private long checkpointNanos;
+
+        // 以下字段只在请求自己的线程上写
+        private volatile long requestStartNanos;
+        private volatile long firstTokenAtNanos;
+        private volatile long streamedTokens;
+        private volatile TokenUsage usage;
+        private volatile String finishReason;
+
+        Attempt(int id, boolean hedge, LlmEndpoint endpoint) {
+            this.id = id;
+            this.hedge = hedge;
+            this.endpoint = endpoint;
+        }
+
+        void run(Function<LlmEndpoint, Flux<ChatResponse>> request, BlockingQueue<Event> events) {
+            try {
+                endpoint.getLimiter().execute(permit -> {
+                    if (cancelled) {
+                        return null;
+                    }
+                    requestStartNanos = System.nanoTime();
+                    firstTokenAtNanos = 0;
+                    streamedTokens = 0;
+                    usage = null;
+                    finishReason = null;
+                    // 被 429 拒绝后限流器会再次调用这里，每次订阅用新的 latch
+                    CountDownLatch done = new CountDownLatch(1);
+                    finished = done;
+                    Throwable[] failure = new Throwable[1];
+                    BaseSubscriber<ChatResponse> subscriber = new BaseSubscriber<>() {
+                        @Override
+                        protected void hookOnSubscribe(Subscription upstream) {
+                            upstream.request(STREAM_PREFETCH);
+                        }
+
+                        @Override
+                        protected void hookOnNext(ChatResponse response) {
+                            // 用量在最后一个分片里，这个分片通常没有文本
+                            TokenUsage reported = TokenUsage.from(response);
+                            if (reported != null) {
+                                usage = reported;
+                            }
+                            List<String> chunks = new ArrayList<>(1);
+                            for (Generation generation : response.getResults()) {
+                                String reason = generation.getMetadata() == null ? null : generation.getMetadata().getFinishReason();
+                                if (reason != null && !reason.isEmpty()) {
+                                    finishReason = reason;
+                                }
+                                String chunk = generation.getOutput().getText();
+                                if (chunk != null && !cancelled) {
+                                    // OpenAI 兼容接口的流式响应每个片段大约是一个 token
+                                    permit.recordFirstToken();
+                                    permit.recordTokens(1);
+                                    if (firstTokenAtNanos == 0) {
+                                        firstTokenAtNanos = System.nanoTime();
+                                    }
+                                    streamedTokens++;
+                                    chunks.add(chunk);
+                                }
+                            }
+                            if (chunks.isEmpty()) {
+                                // 没有交给调用方线程的内容，直接要下一个
+                                request(1);
+                                return;
+                            }
+                            for (int i = 0; i < chunks.size(); i++) {
+                                events.add(Event.chunk(Attempt.this, chunks.get(i), i == chunks.size() - 1 ? this : null));
+                            }
+                        }
+
+                        @Override
+                        protected void hookOnError(Throwable error) {
+                            failure[0] = error;
+                            done.countDown();
+                        }
+
+                        @Override
+                        protected void hookOnComplete() {
+                            done.countDown();
+                        }
+                    };
+                    subscription = subscriber;
+                    request.apply(endpoint).subscribe(subscriber);
+                    if (cancelled) {
+                        subscription.dispose();
+                        done.countDown();
+                    }
+                    done.await();
+                    if (failure[0] != null && !cancelled) {
+                        throw failure[0] instanceof Exception exception ? exception : new IllegalStateException(failure[0]);
+                    }
+                    return null;
+                });
+                if (cancelled) {
+                    endpoint.recordCancelled(requestStartNanos, firstTokenAtNanos);
+                } else {
+                    endpoint.recordSuccess(requestStartNanos, firstTokenAtNanos, System.nanoTime(), streamedTokens);
+                }
+                events.add(Event.completed(this));
+            } catch (Exception e) {
+                if (cancelled) {
+                    endpoint.recordCancelled(requestStartNanos, firstTokenAtNanos);
+                } else {
+                    endpoint.recordFailure(LlmEndpointPool.isEndpointFailure(e));
+                }
+                events.add(Event.failed(this, e));
+            }
+        }
+
+        void cancel() {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            Disposable current = subscription;
+            if (current != null) {
+                current.dispose();
+            }
+            finished.countDown();
+        }
+
+        @Override
+        public String toString() {
+            return (hedge ? "hedge#" : "attempt#") + id + "@" + endpoint;
+        }
+    }
+
+    private static final class Event {
+        private final Attempt attempt;
+        private final String chunk;
+        private final Throwable error;
+        // 处理完这个片段后向它再要一个响应；一个响应拆出多个片段时只有最后一个带
+        private final BaseSubscriber<ChatResponse> demand;
+
+        private Event(Attempt attempt, String chunk, Throwable error, BaseSubscriber<ChatResponse> demand) {
+            this.attempt = attempt;
+            this.chunk = chunk;
+            this.error = error;
+            this.demand = demand;
+        }
+
+        static Event chunk(Attempt attempt, String chunk, BaseSubscriber<ChatResponse> demand) {
+            return new Event(attempt, chunk, null, demand);
+        }
+
+        static Event completed(Attempt attempt) {
+            return new Event(attempt, null, null, null);
+        }
+
+        static Event failed(Attempt attempt, Throwable error) {
+            return new Event(attempt, null, error, null);
+        }
+
+        void replenish() {
+            if (demand != null) {
+                demand.request(1);
+            }
+        }
+    }
+
+    long currentHedgeDelayMillis() {
+        long percentile = firstTokenLatencies.percentile(ttftPercentile, MIN_SAMPLES_FOR_PERCENTILE);
+        return percentile < 0 ? initialHedgeDelayMillis : Math.max(minHedgeDelayMillis, percentile);
+    }
+
+    private long backoffMillis(int retry) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(retry - 1, 20));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling);
+    }
+
+    public static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientAiException || cause instanceof WebClientRequestException
+                    || cause instanceof ResourceAccessException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause instanceof WebClientResponseException responseException) {
+                return isTransientStatus(responseException.getStatusCode().value());
+            }
+            if (cause instanceof RestClientResponseException responseException) {
+                return isTransientStatus(responseException.getStatusCode().value());
+            }
+            if (cause instanceof IOException && !(cause instanceof InterruptedIOException)) {
+                return true;
+            }
+        }
+        return UpstreamConcurrencyLimiter.isRateLimited(error);
+    }
+
+    private static boolean isTransientStatus(int status) {
+        return status == 429 || status == 408 || status >= 500;
+    }
+
+    public HedgingStats getStats() {
+        return new HedgingStats(calls.get(), hedgesFired.get(), hedgesWon.get(), retries.get(), failovers.get(), currentHedgeDelayMillis(),
+                firstTokenLatencies.percentile(50, 1), firstTokenLatencies.percentile(95, 1), firstTokenLatencies.percentile(99, 1),
+                streamLatencies.percentile(50, 1), streamLatencies.percentile(95, 1), streamLatencies.percentile(99, 1));
+    }
+
+    /**
+     * 最近 N 次的延迟（毫秒），环形缓冲区。
+     */
+    private static final class LatencySamples {
+        private final long[] samples;
+        private int next;
+        private int count;
+
+        LatencySamples(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        synchronized void add(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * 样本数不足 minSamples 时返回 -1。
+         */
+        synchronized long percentile(double percentile, int minSamples) {
+            if (count < Math.max(1, minSamples)) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.DesignSection;
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.RegenerationPlan;
+import com.example.aiarchdesigner.model.SectionChange;
+import com.example.aiarchdesigner.model.SectionChangeType;
+import com.example.aiarchdesigner.model.SectionKind;
+import com.example.aiarchdesigner.parser.DesignDocumentSectioner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 比较新旧设计文档，找出变化的片段并映射到上一次生成的文件。
+ * <p>
+ * 映射基于标识符：从变化的行中提取表名、字段名、接口路径片段等，文件路径或代码中出现这些标识符（忽略大小写、
+ * 下划线和连字符，因此 user_name 能匹配 userName）即认为受影响。变化的行里的标识符匹配不到任何文件时，退回到
+ * 片段所在标题和整个片段的标识符。新增或删除整张表意味着文件清单本身要变，直接要求完整生成。
+ * <p>
+ * 中文描述的变化（例如“物理删除”改成“逻辑删除”）通常提取不到标识符。只改排版的编辑已经被
+ * {@link DesignDocumentSectioner} 的空白归一化过滤掉，剩下的文字变化都可能改变行为，所以映射不到文件时
+ * 重新生成 README 和标题所属阶段（见 PHASE_HEADING_HINTS）的全部文件，判断不出所属阶段时完整生成。只有没有变化时才全部复用。
+ */
+@Component
+public class IncrementalRegenerationPlanner {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    private static final int MIN_KEYWORD_LENGTH = 3;
+    // SQL 类型与关键字、mermaid 语法、常见英文虚词：几乎所有文件都会出现，不能用来定位
+    private static final Set<String> STOP_WORDS = Set.of(
+            "varchar", "char", "text", "longtext", "int", "integer", "bigint", "tinyint", "smallint", "decimal", "double",
+            "float", "boolean", "bool", "date", "datetime", "timestamp", "time", "json", "blob", "string", "long", "number",
+            "null", "not", "default", "primary", "key", "foreign", "unique", "index", "auto_increment", "comment",
+            "current_timestamp", "unsigned", "references", "table", "create", "select", "insert", "update", "delete", "from",
+            "where", "and", "or", "the", "for", "with", "yes", "true", "false", "get", "post", "put", "patch", "api",
+            "graph", "flowchart", "erdiagram", "classdiagram", "sequencediagram", "participant", "actor", "note", "end",
+            "subgraph", "td", "lr", "tb", "rl", "pk", "fk", "uk", "http", "https", "www", "com", "example", "preamble"
+    );
+
+    // 标题路径中出现这些词时，该标题下的文字描述属于对应阶段（小写比较）
+    private static final Map<String, List<String>> PHASE_HEADING_HINTS = Map.of(
+            CodeGenerationService.PHASE_BACKEND, List.of("后端", "接口", "服务端", "数据库", "库表", "数据表", "backend", "api"),
+            CodeGenerationService.PHASE_FRONTEND, List.of("前端", "页面", "界面", "frontend")
+    );
+
+    public RegenerationPlan plan(String previousDesignDocument, Map<String, List<GeneratedFile>> previousPhaseFiles,
+                                 String designDocumentContent) {
+        List<SectionChange> changes = diff(DesignDocumentSectioner.split(previousDesignDocument),
+                DesignDocumentSectioner.split(designDocumentContent));
+        RegenerationPlan plan = new RegenerationPlan(changes, previousPhaseFiles);
+
+        Map<GeneratedFile, String> searchableFiles = new HashMap<>();
+        previousPhaseFiles.values().forEach(files -> files.forEach(file ->
+                searchableFiles.put(file, normalize(file.getFilePath() + "\n" + file.getCode()))));
+
+        for (SectionChange change : changes) {
+            if (change.getKind() == SectionKind.TABLE && change.getType() != SectionChangeType.MODIFIED) {
+                plan.requireFullRegeneration("Table section " + change.getType().name().toLowerCase(Locale.ROOT) + ": " + change.getSectionId());
+                continue;
+            }
+            if (!mapToFiles(plan, change, searchableFiles)) {
+                plan.addUnmappedSection(change.getSectionId());
+                // 结构化内容（表格、图、代码）找不到对应文件时无法保证正确，完整生成；文字描述按标题归到阶段
+                String owner = change.getKind() == SectionKind.TEXT ? owningPhase(headingOf(change.getSectionId())) : null;
+                if (owner == null) {
+                    plan.requireFullRegeneration("No generated file references changed section " + change.getSectionId());
+                    continue;
+                }
+                for (String phaseName : List.of(owner, CodeGenerationService.PHASE_README)) {
+                    plan.getPreviousPhaseFiles().getOrDefault(phaseName, List.of())
+                            .forEach(file -> plan.addAffectedFile(phaseName, file.getFilePath(), change));
+                }
+            }
+        }
+        System.out.println("Regeneration plan: " + changes.size() + " changed section(s), " + plan.getRegeneratedFiles().size()
+                + " file(s) to regenerate, " + plan.getReusedFileCount() + " reused"
+                + (plan.isFullRegeneration() ? ", full regeneration: " + plan.getFullRegenerationReason() : ""));
+        return plan;
+    }
+
+    private boolean mapToFiles(RegenerationPlan plan, SectionChange change, Map<GeneratedFile, String> searchableFiles) {
+        // 例如新增一列：新字段名还不在任何文件里，改为匹配这张表的表名和其他字段
+        List<Set<String>> keywordTiers = List.of(
+                change.getKeywords(),
+                keywordsOf(headingOf(change.getSectionId()) + "\n" + nullToEmpty(change.getPreviousContent()) + "\n"
+                        + nullToEmpty(change.getCurrentContent())));
+        for (Set<String> keywords : keywordTiers) {
+            boolean mapped = false;
+            for (Map.Entry<String, List<GeneratedFile>> phase : plan.getPreviousPhaseFiles().entrySet()) {
+                for (GeneratedFile file : phase.getValue()) {
+                    String searchable = searchableFiles.get(file);
+                    if (keywords.stream().anyMatch(searchable::contains)) {
+                        plan.addAffectedFile(phase.getKey(), file.getFilePath(), change);
+                        mapped = true;
+                    }
+                }
+            }
+            if (mapped) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 标题路径只命中一个阶段的提示词时返回该阶段，否则返回 null。
+     */
+    static String owningPhase(String headingPath) {
+        String heading = headingPath.toLowerCase(Locale.ROOT);
+        String owner = null;
+        for (Map.Entry<String, List<String>> hints : PHASE_HEADING_HINTS.entrySet()) {
+            if (hints.getValue().stream().anyMatch(heading::contains)) {
+                if (owner != null) {
+                    return null;
+                }
+                owner = hints.getKey();
+            }
+        }
+        return owner;
+    }
+
+    static List<SectionChange> diff(List<DesignSection> previousSections, List<DesignSection> currentSections) {
+        Map<String, DesignSection> previousById = new LinkedHashMap<>();
+        previousSections.forEach(section -> previousById.put(section.getId(), section));
+
+        List<SectionChange> changes = new ArrayList<>();
+        for (DesignSection current : currentSections) {
+            DesignSection previous = previousById.remove(current.getId());
+            if (previous == null) {
+                changes.add(new SectionChange(current.getId(), current.getKind(), SectionChangeType.ADDED, null, current.getContent(),
+                        keywordsOf(current.getContent())));
+            } else if (!previous.getContent().equals(current.getContent())) {
+                changes.add(new SectionChange(current.getId(), current.getKind(), SectionChangeType.MODIFIED, previous.getContent(),
+                        current.getContent(), keywordsOf(changedLines(previous.getContent(), current.getContent()))));
+            }
+        }
+        for (DesignSection removed : previousById.values()) {
+            changes.add(new SectionChange(removed.getId(), removed.getKind(), SectionChangeType.REMOVED, removed.getContent(), null,
+                    keywordsOf(removed.getContent())));
+        }
+        return changes;
+    }
+
+    /**
+     * 只在一侧出现的行：表格里改了一个字段，就只剩这一行。
+     */
+    private static String changedLines(String previousContent, String currentContent) {
+        Set<String> previousLines = new LinkedHashSet<>(List.of(previousContent.split("\n")));
+        Set<String> currentLines = new LinkedHashSet<>(List.of(currentContent.split("\n")));
+        StringBuilder changed = new StringBuilder();
+        for (String line : currentLines) {
+            if (!previousLines.contains(line)) {
+                changed.append(line).append('\n');
+            }
+        }
+        for (String line : previousLines) {
+            if (!currentLines.contains(line)) {
+                changed.append(line).append('\n');
+            }
+        }
+        return changed.toString();
+    }
+
+    static Set<String> keywordsOf(String text) {
+        Set<String> keywords = new LinkedHashSet<>();
+        Matcher matcher = IDENTIFIER.matcher(text);
+        while (matcher.find()) {
+            String word = matcher.group().toLowerCase(Locale.ROOT);
+            if (STOP_WORDS.contains(word)) {
+                continue;
+            }
+            String keyword = normalize(word);
+            if (keyword.length() >= MIN_KEYWORD_LENGTH) {
+                keywords.add(keyword);
+            }
+        }
+        return keywords;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replace("_", "").replace("-", "");
+    }
+
+    private static String headingOf(String sectionId) {
+        int kindSeparator = sectionId.lastIndexOf('#');
+        return kindSeparator < 0 ? sectionId : sectionId.substring(0, kindSeparator);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
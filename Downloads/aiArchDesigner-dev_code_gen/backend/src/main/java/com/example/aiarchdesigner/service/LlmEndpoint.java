@@ -0,0 +1,248 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.LlmEndpointStats;
+import org.springframework.ai.chat.client.ChatClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 一个 OpenAI 兼容端点（base-url + api-key + 默认模型）。
+ * <p>
+ * 每个端点有自己的 ChatClient 注册表、AIMD 并发限制（各家的限流互不相干）和熔断器，
+ * 并记录首 token 延迟与输出速度的 EWMA，{@link LlmEndpointPool} 据此路由。第一个延迟样本（冷启动：建连、TLS 握手）不计入，
+ * 输出太短的流不计入输出速度；估计陈旧的端点由 {@link #claimProbe(long)} 定期分到一个试探请求，一个坏样本不会让端点长期分不到流量。
+ * <p>
+ * 生成阶段使用端点配置的 {@link StructuredOutputMode}；服务拒绝 response_format 时降级为 NONE，之后不再发送。
+ */
+public class LlmEndpoint {
+
+    private static final double EWMA_ALPHA = 0.3;
+    // 还没有吞吐样本时（例如只有非流式调用）假设的输出速度
+    private static final double INITIAL_TOKENS_PER_SECOND = 50;
+    // 长时间没有新样本的估计按半衰期向 0 衰减：一次冷启动（建连、TLS 握手）造成的慢样本不会让端点永远分不到流量
+    private static final long ESTIMATE_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // 样本比池里最新的样本旧这么久的估计视为陈旧，每隔这么久给端点一个试探请求，刷新估计
+    static final long STALE_ESTIMATE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // 输出少于该 token 数的流不计算输出速度：几个分片的耗时主要是网络抖动，得出的速度没有意义
+    static final long MIN_THROUGHPUT_TOKENS = 32;
+    // 估算一次调用耗时时假设的输出长度
+    private static final double REFERENCE_OUTPUT_TOKENS = 256;
+
+    private final String name;
+    private final String model;
+    private final String baseUrl;
+    private final int weight;
+    private final ChatClientRegistry chatClients;
+    private final UpstreamConcurrencyLimiter limiter;
+    private final CircuitBreaker circuitBreaker;
+    private volatile StructuredOutputMode structuredOutput;
+    private final LongSupplier nanoClock;
+
+    private final Object statsLock = new Object();
+    private double ewmaTtftMillis;
+    private double ewmaTokensPerSecond = INITIAL_TOKENS_PER_SECOND;
+    // 收到过第一个延迟样本（被忽略的冷启动样本）
+    private boolean warmedUp;
+    private boolean ttftSampled;
+    private boolean throughputSampled;
+    private long lastSampleNanos;
+    private long lastProbeNanos = Long.MIN_VALUE;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public LlmEndpoint(String name, String model, String baseUrl, int weight, ChatClientRegistry chatClients,
+                       UpstreamConcurrencyLimiter limiter, CircuitBreaker circuitBreaker) {
+        this(name, model, baseUrl, weight, chatClients, limiter, circuitBreaker, StructuredOutputMode.NONE);
+    }
+
+    public LlmEndpoint(String name, String model, String baseUrl, int weight, ChatClientRegistry chatClients,
+                       UpstreamConcurrencyLimiter limiter, CircuitBreaker circuitBreaker, StructuredOutputMode structuredOutput) {
+        this(name, model, baseUrl, weight, chatClients, limiter, circuitBreaker, structuredOutput, System::nanoTime);
+    }
+
+    // nanoClock 与调用方传入的时间戳（System.nanoTime()）同源；测试注入假时钟
+    LlmEndpoint(String name, String model, String baseUrl, int weight, ChatClientRegistry chatClients,
+                UpstreamConcurrencyLimiter limiter, CircuitBreaker circuitBreaker, StructuredOutputMode structuredOutput,
+                LongSupplier nanoClock) {
+        this.name = name;
+        this.model = model;
+        this.baseUrl = baseUrl;
+        this.weight = Math.max(1, weight);
+        this.chatClients = chatClients;
+        this.limiter = limiter;
+        this.circuitBreaker = circuitBreaker;
+        this.structuredOutput = structuredOutput;
+        this.nanoClock = nanoClock;
+    }
+
+    public ChatClient chatClient(ChatProfile profile) {
+        return chatClients.get(profile);
+    }
+
+    /**
+     * 服务不支持 rejected 这种 response_format：之后的请求不再发送，已经在发的请求由调用方自己去掉参数重试。
+     */
+    public void disableStructuredOutput(StructuredOutputMode rejected, Throwable error) {
+        if (structuredOutput == rejected && rejected != StructuredOutputMode.NONE) {
+            structuredOutput = StructuredOutputMode.NONE;
+            System.err.println("LLM endpoint " + name + " rejected response_format " + rejected + " (" + error.getMessage()
+                    + "), falling back to prompt-only JSON output");
+        }
+    }
+
+    /**
+     * 一次成功的调用。firstTokenNanos 为 0 表示非流式调用：整体耗时包含整个输出（文件清单要 2048 个 token），
+     * 不是首 token 延迟，只计入成功次数，不更新延迟和输出速度的估计。
+     */
+    public void recordSuccess(long startNanos, long firstTokenNanos, long endNanos, long tokens) {
+        requests.incrementAndGet();
+        circuitBreaker.onSuccess();
+        if (firstTokenNanos == 0) {
+            return;
+        }
+        long streamNanos = endNanos - firstTokenNanos;
+        synchronized (statsLock) {
+            updateTtft(TimeUnit.NANOSECONDS.toMillis(firstTokenNanos - startNanos));
+            if (tokens >= MIN_THROUGHPUT_TOKENS && streamNanos > 0) {
+                double tokensPerSecond = (tokens - 1) * 1e9 / streamNanos;
+                ewmaTokensPerSecond = throughputSampled && !isStale() ? ewma(ewmaTokensPerSecond, tokensPerSecond) : tokensPerSecond;
+                throughputSampled = true;
+                lastSampleNanos = nanoClock.getAsLong();
+            }
+        }
+    }
+
+    /**
+     * endpointFault 为 false 的失败（例如请求本身不合法）不计入熔断。
+     */
+    public void recordFailure(boolean endpointFault) {
+        requests.incrementAndGet();
+        failures.incrementAndGet();
+        if (endpointFault) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onCancelled();
+        }
+    }
+
+    /**
+     * 被对冲请求淘汰的调用。还没有输出就被取消时，已经等待的时间是首 token 延迟的下限，也计入 EWMA。
+     */
+    public void recordCancelled(long startNanos, long firstTokenNanos) {
+        circuitBreaker.onCancelled();
+        // startNanos 为 0：还在限流器里排队就被取消，没有发出请求
+        if (firstTokenNanos == 0 && startNanos != 0) {
+            synchronized (statsLock) {
+                updateTtft(TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - startNanos));
+            }
+        }
+    }
+
+    /**
+     * 预计完成一次调用所需的时间，按当前排队情况和权重折算；越小越优先。
+     * 还没有样本的端点按 0 估计，会先被试一次；连续失败的端点（熔断器还没打开）按失败次数加倍，流量在熔断前就开始转移。
+     */
+    public double cost() {
+        double expectedMillis = 0;
+        synchronized (statsLock) {
+            if (ttftSampled) {
+                double decay = Math.pow(0.5, (double) (nanoClock.getAsLong() - lastSampleNanos) / ESTIMATE_HALF_LIFE_NANOS);
+                expectedMillis = decay * (ewmaTtftMillis + 1000.0 * REFERENCE_OUTPUT_TOKENS / Math.max(0.1, ewmaTokensPerSecond));
+            }
+        }
+        int queued = limiter.getInFlight() + limiter.getQueueDepth() + 1;
+        return (expectedMillis + 1) * queued * (1 + circuitBreaker.getConsecutiveFailures()) / weight;
+    }
+
+    /**
+     * 估计已经陈旧（最后一个样本比池里最新的样本 freshestSampleNanos 旧 STALE_ESTIMATE_NANOS 以上，最近也没有试探过）时
+     * 占用一次试探并返回 true，调用方把这次请求路由到该端点。慢端点因此在池里有流量时每隔一段时间也会分到一个请求，
+     * 这是刷新估计的代价；整个池都空闲时不试探。
+     */
+    public boolean claimProbe(long freshestSampleNanos) {
+        synchronized (statsLock) {
+            long now = nanoClock.getAsLong();
+            if (!ttftSampled || freshestSampleNanos - lastSampleNanos < STALE_ESTIMATE_NANOS
+                    || (lastProbeNanos != Long.MIN_VALUE && now - lastProbeNanos < STALE_ESTIMATE_NANOS)) {
+                return false;
+            }
+            lastProbeNanos = now;
+            return true;
+        }
+    }
+
+    long getLastSampleNanos() {
+        synchronized (statsLock) {
+            return lastSampleNanos;
+        }
+    }
+
+    // 调用时必须持有 statsLock
+    private void updateTtft(long ttftMillis) {
+        if (!warmedUp) {
+            // 冷启动样本不计入：端点仍按没有样本估计，下一次请求再试
+            warmedUp = true;
+            return;
+        }
+        // 陈旧的估计（通常是试探请求带回的样本）直接被新样本替换，一个坏样本不需要很多次试探才能冲淡
+        ewmaTtftMillis = ttftSampled && !isStale() ? ewma(ewmaTtftMillis, ttftMillis) : ttftMillis;
+        ttftSampled = true;
+        lastSampleNanos = nanoClock.getAsLong();
+    }
+
+    // 调用时必须持有 statsLock
+    private boolean isStale() {
+        return nanoClock.getAsLong() - lastSampleNanos >= STALE_ESTIMATE_NANOS;
+    }
+
+    private static double ewma(double current, double sample) {
+        return current + EWMA_ALPHA * (sample - current);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public StructuredOutputMode getStructuredOutput() {
+        return structuredOutput;
+    }
+
+    public UpstreamConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public LlmEndpointStats getStats() {
+        double ttft;
+        double tokensPerSecond;
+        synchronized (statsLock) {
+            ttft = ewmaTtftMillis;
+            tokensPerSecond = ewmaTokensPerSecond;
+        }
+        return new LlmEndpointStats(name, model, baseUrl, weight, circuitBreaker.getState().name(),
+                circuitBreaker.getConsecutiveFailures(), circuitBreaker.getTimesOpened(), Math.round(ttft),
+                Math.round(tokensPerSecond * 10) / 10.0, requests.get(), failures.get(), structuredOutput.name(), limiter.getStats());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.LlmEndpointStats;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 一组可以互相替代的 OpenAI 兼容端点（codegen.llm.endpoints）。
+ * <p>
+ * 路由：在熔断器允许的端点里按权重随机挑两个，选 {@link LlmEndpoint#cost()} 较小的一个（power of two choices）。
+ * cost 由首 token 延迟和输出速度的 EWMA、当前在途与排队数量以及权重算出，慢的或者忙的端点自然分到更少的请求，
+ * 又不会像“总选最快的”那样把所有请求压到同一个端点上。估计只在端点被选中时更新，所以估计陈旧的端点
+ * （见 {@link LlmEndpoint#claimProbe(long)}）优先分到一个试探请求：只有两个端点时每次比较的都是同一对，否则一个坏样本会让端点
+ * 在半衰期内都分不到流量。
+ * <p>
+ * 故障转移：端点本身的故障（5xx、429、网络错误、鉴权/模型配置错误）计入该端点的熔断器，
+ * 这次调用换一个还没失败过的端点重试；请求本身的错误（400 等）直接抛给调用方。
+ */
+public class LlmEndpointPool {
+
+    private final List<LlmEndpoint> endpoints;
+
+    public LlmEndpointPool(List<LlmEndpoint> endpoints) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one LLM endpoint is required");
+        }
+        Set<String> names = new HashSet<>();
+        for (LlmEndpoint endpoint : endpoints) {
+            if (!names.add(endpoint.getName())) {
+                throw new IllegalArgumentException("Duplicate LLM endpoint name: " + endpoint.getName());
+            }
+        }
+        this.endpoints = List.copyOf(endpoints);
+        System.out.println("LLM endpoints: " + endpoints.stream()
+                .map(endpoint -> endpoint.getName() + "(" + endpoint.getModel() + ", weight " + endpoint.getWeight() + ")")
+                .collect(Collectors.joining(", ")));
+    }
+
+    @FunctionalInterface
+    public interface EndpointCall<T> {
+        T call(LlmEndpoint endpoint, UpstreamConcurrencyLimiter.Permit permit) throws Exception;
+    }
+
+    /**
+     * 选一个端点并占用熔断器名额；调用结束后必须通过 recordSuccess / recordFailure / recordCancelled 汇报结果。
+     * 优先选 avoid 以外的端点，只剩 avoid 里的端点可用时也会返回它们。
+     *
+     * @throws IllegalStateException 所有端点都处于熔断状态
+     */
+    public LlmEndpoint select(Set<LlmEndpoint> avoid) {
+        for (int attempt = 0; attempt <= endpoints.size(); attempt++) {
+            List<LlmEndpoint> candidates = available(avoid);
+            if (candidates.isEmpty()) {
+                candidates = available(Set.of());
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            LlmEndpoint chosen = staleCandidate(candidates);
+            if (chosen == null) {
+                chosen = pickOfTwo(candidates);
+            }
+            // 半开状态只放行一个探测请求，被别的线程抢先时重新选
+            if (chosen.getCircuitBreaker().tryAcquire()) {
+                return chosen;
+            }
+        }
+        throw new IllegalStateException("No healthy LLM endpoint available, all circuits are open: " + endpoints);
+    }
+
+    /**
+     * 非流式调用：选端点、经过该端点的并发限制，端点故障时换一个端点重试。
+     */
+    public <T> T execute(EndpointCall<T> call) throws Exception {
+        Set<LlmEndpoint> failed = new HashSet<>();
+        while (true) {
+            LlmEndpoint endpoint = select(failed);
+            if (failed.contains(endpoint)) {
+                // select 已经占用了熔断器名额（半开时是唯一的探测名额），不用它就要还回去
+                endpoint.recordCancelled(0, 0);
+                throw new IllegalStateException("All LLM endpoints failed for this request: " + failed);
+            }
+            long[] timing = new long[2];
+            try {
+                T result = endpoint.getLimiter().execute(permit -> {
+                    timing[0] = System.nanoTime();
+                    return call.call(endpoint, permit);
+                });
+                // 非流式调用：只计入成功，不作为首 token 延迟样本
+                endpoint.recordSuccess(timing[0], 0, System.nanoTime(), 0);
+                return result;
+            } catch (Exception e) {
+                boolean endpointFault = isEndpointFailure(e);
+                endpoint.recordFailure(endpointFault);
+                failed.add(endpoint);
+                if (!endpointFault || failed.size() >= endpoints.size()) {
+                    throw e;
+                }
+                System.err.println("LLM endpoint " + endpoint.getName() + " failed (" + e.getMessage() + "), failing over");
+            }
+        }
+    }
+
+    /**
+     * 池里各端点服务的模型（去重、排序后以逗号连接），作为 LLM 响应缓存 key 的一部分：
+     * 池里换了模型，之前缓存的响应不再命中。池里的端点可以互相替代，同一个池的响应共用缓存。
+     */
+    public String getModelIdentity() {
+        return endpoints.stream().map(LlmEndpoint::getModel).distinct().sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * 现在是否有端点能不排队地接一个额外的请求（用于决定是否对冲）。
+     */
+    public boolean hasSpareCapacity() {
+        for (LlmEndpoint endpoint : endpoints) {
+            if (endpoint.getCircuitBreaker().isAvailable() && endpoint.getLimiter().hasSpareCapacity()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasEndpointOtherThan(Set<LlmEndpoint> excluded) {
+        return !available(excluded).isEmpty();
+    }
+
+    /**
+     * 端点本身的问题，换一个端点可能成功：瞬时错误，以及鉴权失败、模型不存在这类只跟某个端点的配置有关的错误。
+     */
+    public static boolean isEndpointFailure(Throwable error) {
+        if (HedgedLlmStreamer.isTransient(error)) {
+            return true;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            int status = -1;
+            if (cause instanceof WebClientResponseException responseException) {
+                status = responseException.getStatusCode().value();
+            } else if (cause instanceof RestClientResponseException responseException) {
+                status = responseException.getStatusCode().value();
+            } else if (cause.getMessage() != null && cause.getMessage().matches("^(401|403|404) - (?s).*")) {
+                return true;
+            }
+            if (status == 401 || status == 403 || status == 404) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<LlmEndpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public List<LlmEndpointStats> getStats() {
+        return endpoints.stream().map(LlmEndpoint::getStats).collect(Collectors.toList());
+    }
+
+    private List<LlmEndpoint> available(Set<LlmEndpoint> excluded) {
+        List<LlmEndpoint> available = new ArrayList<>(endpoints.size());
+        for (LlmEndpoint endpoint : endpoints) {
+            if (!excluded.contains(endpoint) && endpoint.getCircuitBreaker().isAvailable()) {
+                available.add(endpoint);
+            }
+        }
+        return available;
+    }
+
+    // 样本最旧、并且可以试探的端点；没有时返回 null
+    private static LlmEndpoint staleCandidate(List<LlmEndpoint> candidates) {
+        if (candidates.size() == 1) {
+            return null;
+        }
+        List<LlmEndpoint> oldestFirst = new ArrayList<>(candidates);
+        oldestFirst.sort(Comparator.comparingLong(LlmEndpoint::getLastSampleNanos));
+        long freshestSampleNanos = oldestFirst.get(oldestFirst.size() - 1).getLastSampleNanos();
+        for (LlmEndpoint candidate : oldestFirst) {
+            if (candidate.claimProbe(freshestSampleNanos)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static LlmEndpoint pickOfTwo(List<LlmEndpoint> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        LlmEndpoint first = pickWeighted(candidates, null);
+        LlmEndpoint second = pickWeighted(candidates, first);
+        return first.cost() <= second.cost() ? first : second;
+    }
+
+    private static LlmEndpoint pickWeighted(List<LlmEndpoint> candidates, LlmEndpoint exclude) {
+        int totalWeight = 0;
+        for (LlmEndpoint candidate : candidates) {
+            if (candidate != exclude) {
+                totalWeight += candidate.getWeight();
+            }
+        }
+        int target = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (LlmEndpoint candidate : candidates) {
+            if (candidate == exclude) {
+                continue;
+            }
+            target -= candidate.getWeight();
+            if (target < 0) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("unreachable");
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.CacheStats;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按内容寻址的 LLM 响应缓存：key 是渲染后的 Prompt（所有消息的类型与文本）、模型名和 ChatOptions 的 SHA-256。
+ * ChatOptions 没有指定模型时（默认的 ChatProfile 都不指定，由端点决定），模型名取 {@link LlmEndpointPool#getModelIdentity()}，
+ * 端点池换了模型后旧的响应不再命中。value 是完整的响应文本。按条目数和总字节数做 LRU 淘汰。
+ * 设计文档和提示词完全相同的重复提交直接命中，毫秒级返回且不消耗 token。
+ * 配置了 {@link PersistentResponseStore} 时作为两级缓存：内存未命中再查磁盘，命中后回填内存，重启后依然有效。
+ */
+@Component
+public class LlmResponseCache {
+
+    private final ObjectMapper objectMapper;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final PersistentResponseStore persistentStore;
+
+    // accessOrder = true：get 会把条目移到队尾，淘汰时从队头开始
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+
+    public LlmResponseCache(ObjectMapper objectMapper, int maxEntries, long maxSizeMb) {
+        this(objectMapper, maxEntries, maxSizeMb, null);
+    }
+
+    @Autowired
+    public LlmResponseCache(ObjectMapper objectMapper,
+                            @Value("${codegen.cache.max-entries:500}") int maxEntries,
+                            @Value("${codegen.cache.max-size-mb:256}") long maxSizeMb,
+                            PersistentResponseStore persistentStore) {
+        this.objectMapper = objectMapper;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.persistentStore = persistentStore;
+    }
+
+    /**
+     * @param endpointModels 请求会发往的端点的模型（{@link LlmEndpointPool#getModelIdentity()}），options 指定了模型时以 options 为准
+     */
+    public String keyFor(Prompt prompt, ChatOptions options, String endpointModels) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            String model = options == null || options.getModel() == null ? endpointModels : options.getModel();
+            update(digest, model == null ? "" : model);
+            update(digest, options == null ? "" : objectMapper.writeValueAsString(options));
+            for (Message message : prompt.getInstructions()) {
+                update(digest, message.getMessageType().getValue());
+                update(digest, message.getText() == null ? "" : message.getText());
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Unable to compute LLM cache key", e);
+        }
+    }
+
+    public String get(String key) {
+        String response;
+        synchronized (this) {
+            response = entries.get(key);
+        }
+        if (response == null && persistentStore != null) {
+            response = persistentStore.get(key);
+            if (response != null) {
+                diskHits.incrementAndGet();
+                putInMemory(key, response);
+            }
+        }
+        if (response == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return response;
+    }
+
+    public void put(String key, String response) {
+        putInMemory(key, response);
+        if (persistentStore != null) {
+            persistentStore.put(key, response);
+        }
+    }
+
+    private synchronized void putInMemory(String key, String response) {
+        long entryBytes = bytesOf(response);
+        if (entryBytes > maxBytes) {
+            return;
+        }
+        String previous = entries.put(key, response);
+        if (previous != null) {
+            sizeBytes -= bytesOf(previous);
+        }
+        sizeBytes += entryBytes;
+        Iterator<Map.Entry<String, String>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || sizeBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<String, String> entry = eldest.next();
+            sizeBytes -= bytesOf(entry.getValue());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            sizeBytes = 0;
+        }
+        if (persistentStore != null) {
+            persistentStore.clear();
+        }
+    }
+
+    public CacheStats getStats() {
+        int memoryEntries;
+        long memoryBytes;
+        synchronized (this) {
+            memoryEntries = entries.size();
+            memoryBytes = sizeBytes;
+        }
+        CacheStats stats = new CacheStats(hits.get(), misses.get(), evictions.get(), memoryEntries, memoryBytes);
+        if (persistentStore != null && persistentStore.isEnabled()) {
+            stats.setDisk(diskHits.get(), persistentStore.size(), persistentStore.getLiveBytes(),
+                    persistentStore.getDiskBytes(), persistentStore.getEvictions(), persistentStore.getCompactions());
+        }
+        return stats;
+    }
+
+    public void compact() {
+        if (persistentStore != null) {
+            persistentStore.compact();
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // 分隔符，避免 "ab"+"c" 与 "a"+"bc" 得到相同的摘要
+        digest.update((byte) 0);
+    }
+
+    private static long bytesOf(String value) {
+        // Java 字符串内部按 UTF-16 估算
+        return 2L * value.length();
+    }
+}
@@ -0,0 +1,705 @@
+package com.example.aiarchdesigner.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 持久化的 LLM 响应存储，作为 {@link LlmResponseCache} 的第二级，进程重启后无需重新请求模型即可命中。
+ *
+ * 磁盘布局：
+ * <ul>
+ *     <li>segment-NNNNNN.log：只追加的数据段，每条记录为 [magic][keyLen][valueLen][crc32][key][value]，写满后滚动到下一个段</li>
+ *     <li>index.idx：只追加的索引日志，PUT 记录 (key → 段号/偏移/长度) 或 REMOVE 墓碑；启动时 mmap 后一次性载入内存</li>
+ * </ul>
+ * 查询只做一次 HashMap 查找和一次定位读 (pread)，与条目数量无关。
+ * 超过容量上限时按 LRU 淘汰（写墓碑），失效字节超过存活字节时在后台线程压缩：
+ * 先在锁内封存当前的段（写入切换到新段），在锁外按 LRU 顺序把封存时的存活记录拷贝到新段并写好临时索引，
+ * 最后在锁内补上拷贝期间的变化、原子替换索引文件并换入新段，旧段随后删除。读写只在开头和结尾短暂等待，不会被整个重写阻塞。
+ */
+@Component
+public class PersistentResponseStore {
+
+    private static final int RECORD_MAGIC = 0x4C4C4D52; // "LLMR"
+    private static final int RECORD_HEADER_BYTES = 16;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final String INDEX_FILE = "index.idx";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{6})\\.log");
+    // 失效字节低于该值时不压缩，避免小文件频繁重写
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final long segmentBytes;
+
+    // accessOrder = true：淘汰和压缩都按最近最少使用的顺序
+    private final LinkedHashMap<String, Location> locations = new LinkedHashMap<>(1024, 0.75f, true);
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    private FileChannel indexChannel;
+    private int activeSegment;
+    private int nextSegmentId;
+    // clear() 之后进行中的压缩作废
+    private long storeEpoch;
+    private boolean compactionScheduled;
+    // 同一时间只有一次压缩（后台触发的和 compact() 手动调用的）
+    private final Object compactionMonitor = new Object();
+    private final ExecutorService compactionExecutor;
+    private long liveBytes;
+    private long evictions;
+    private int compactions;
+
+    @Autowired
+    public PersistentResponseStore(@Value("${codegen.cache.persistent.enabled:true}") boolean enabled,
+                                   @Value("${codegen.cache.persistent.dir:cache-store}") String directory,
+                                   @Value("${codegen.cache.persistent.max-size-mb:1024}") long maxSizeMb,
+                                   @Value("${codegen.cache.persistent.segment-size-mb:64}") long segmentSizeMb) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.segmentBytes = segmentSizeMb * 1024 * 1024;
+        this.compactionExecutor = enabled ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "persistent-cache-compaction");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        if (enabled) {
+            open();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Location location = locations.get(key);
+        if (location == null) {
+            return null;
+        }
+        try {
+            String value = readValue(key, location);
+            if (value == null) {
+                // 记录损坏（例如写入时进程被杀），当作未命中并丢弃
+                System.err.println("Discarding corrupt persistent cache record in segment " + location.segment);
+                removeLocation(key);
+            }
+            return value;
+        } catch (IOException e) {
+            System.err.println("Failed to read persistent cache record: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public synchronized void put(String key, String value) {
+        if (!enabled) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int recordLength = RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length;
+        if (recordLength > maxBytes) {
+            return;
+        }
+        try {
+            FileChannel segment = segments.get(activeSegment);
+            if (segment.size() > 0 && segment.size() + recordLength > segmentBytes) {
+                segment = rollSegment();
+            }
+            long offset = segment.size();
+            writeFully(segment, encodeRecord(keyBytes, valueBytes), offset);
+            Location location = new Location(activeSegment, offset, recordLength);
+            // 先写数据段再写索引：崩溃时最多丢一条没进索引的记录，不会出现指向空洞的索引
+            appendIndex(OP_PUT, keyBytes, location);
+            Location previous = locations.put(key, location);
+            if (previous != null) {
+                liveBytes -= previous.length;
+            }
+            liveBytes += recordLength;
+            evictOverflow();
+            compactIfNeeded();
+        } catch (IOException e) {
+            // 持久层写失败不影响生成流程，只是少一次缓存
+            System.err.println("Failed to write persistent cache record: " + e.getMessage());
+        }
+    }
+
+    public synchronized void clear() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            closeChannels();
+            deleteStoreFiles();
+            locations.clear();
+            liveBytes = 0;
+            storeEpoch++;
+            open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clear persistent cache at " + directory, e);
+        }
+    }
+
+    /**
+     * 把存活记录按 LRU 顺序重写到新段并原子替换索引，在调用线程上执行；后台压缩正在进行时等它结束后再压缩一次。
+     */
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        runCompaction();
+    }
+
+    public synchronized int size() {
+        return locations.size();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        long total = 0;
+        try {
+            for (FileChannel channel : segments.values()) {
+                total += channel.size();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        return total;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getCompactions() {
+        return compactions;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (!enabled || indexChannel == null) {
+            return;
+        }
+        // 进行中的后台压缩在拷贝时遇到已关闭的通道后放弃，留下的新段下次打开时作为无引用的段删除
+        compactionExecutor.shutdown();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.force(false);
+            }
+            if (indexChannel != null) {
+                indexChannel.force(false);
+            }
+            closeChannels();
+        } catch (IOException e) {
+            System.err.println("Failed to close persistent cache: " + e.getMessage());
+        }
+    }
+
+    private void open() {
+        long start = System.currentTimeMillis();
+        try {
+            Files.createDirectories(directory);
+            for (Path segmentFile : listSegmentFiles()) {
+                int id = segmentId(segmentFile);
+                segments.put(id, FileChannel.open(segmentFile, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            }
+            Path indexFile = directory.resolve(INDEX_FILE);
+            if (Files.exists(indexFile)) {
+                loadIndex(indexFile);
+            } else if (!segments.isEmpty()) {
+                rebuildIndexFromSegments();
+            }
+            if (segments.isEmpty()) {
+                activeSegment = 1;
+                segments.put(activeSegment, openSegment(activeSegment));
+            } else {
+                activeSegment = segments.lastKey();
+            }
+            // clear() 之后重新打开时段号也不回退，避免和作废的压缩写出的新段重名
+            nextSegmentId = Math.max(nextSegmentId, activeSegment + 1);
+            dropUnreferencedSegments();
+            indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            evictOverflow();
+            compactIfNeeded();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open persistent cache at " + directory, e);
+        }
+        System.out.println("Persistent LLM cache loaded " + locations.size() + " entries (" + liveBytes + " bytes) from "
+                + directory + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void loadIndex(Path indexFile) throws IOException {
+        long validLength;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.hasRemaining()) {
+                int entryStart = buffer.position();
+                if (!readIndexEntry(buffer)) {
+                    buffer.position(entryStart);
+                    break;
+                }
+            }
+            validLength = buffer.position();
+            if (validLength < size) {
+                // 索引尾部是写了一半的条目，截掉后继续追加
+                System.err.println("Truncating partial persistent cache index entry at offset " + validLength);
+                channel.truncate(validLength);
+            }
+        }
+    }
+
+    /**
+     * 读取一条索引条目；条目不完整时返回 false。
+     */
+    private boolean readIndexEntry(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 3) {
+            return false;
+        }
+        byte op = buffer.get();
+        int keyLength = Short.toUnsignedInt(buffer.getShort());
+        if (buffer.remaining() < keyLength) {
+            return false;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        buffer.get(keyBytes);
+        String key = new String(keyBytes, StandardCharsets.UTF_8);
+        if (op == OP_REMOVE) {
+            Location removed = locations.remove(key);
+            if (removed != null) {
+                liveBytes -= removed.length;
+            }
+            return true;
+        }
+        if (op != OP_PUT || buffer.remaining() < 16) {
+            return false;
+        }
+        Location location = new Location(buffer.getInt(), buffer.getLong(), buffer.getInt());
+        FileChannel segment = segments.get(location.segment);
+        if (segment == null || location.offset + location.length > segment.size()) {
+            // 索引指向已不存在的数据（段被手工删除或截断），跳过这条
+            return true;
+        }
+        Location previous = locations.put(key, location);
+        if (previous != null) {
+            liveBytes -= previous.length;
+        }
+        liveBytes += location.length;
+        return true;
+    }
+
+    /**
+     * 索引文件丢失时，顺序扫描所有段重建索引，遇到损坏的记录即停止扫描该段。
+     */
+    private void rebuildIndexFromSegments() throws IOException {
+        System.out.println("Persistent cache index missing, rebuilding from " + segments.size() + " segments");
+        try (FileChannel index = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<Integer, FileChannel> entry : segments.entrySet()) {
+                FileChannel segment = entry.getValue();
+                long offset = 0;
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+                while (offset + RECORD_HEADER_BYTES <= segment.size()) {
+                    header.clear();
+                    readFully(segment, header, offset);
+                    header.flip();
+                    if (header.getInt() != RECORD_MAGIC) {
+                        break;
+                    }
+                    int keyLength = header.getInt();
+                    int valueLength = header.getInt();
+                    int length = RECORD_HEADER_BYTES + keyLength + valueLength;
+                    if (keyLength < 0 || valueLength < 0 || offset + length > segment.size()) {
+                        break;
+                    }
+                    ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+                    readFully(segment, keyBuffer, offset + RECORD_HEADER_BYTES);
+                    String key = new String(keyBuffer.array(), StandardCharsets.UTF_8);
+                    Location location = new Location(entry.getKey(), offset, length);
+                    writeFully(index, encodeIndexEntry(OP_PUT, keyBuffer.array(), location), index.size());
+                    Location previous = locations.put(key, location);
+                    if (previous != null) {
+                        liveBytes -= previous.length;
+                    }
+                    liveBytes += length;
+                    offset += length;
+                }
+            }
+            index.force(false);
+        }
+    }
+
+    private void evictOverflow() throws IOException {
+        Iterator<Map.Entry<String, Location>> eldest = locations.entrySet().iterator();
+        while (liveBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Location> entry = eldest.next();
+            appendIndex(OP_REMOVE, entry.getKey().getBytes(StandardCharsets.UTF_8), null);
+            liveBytes -= entry.getValue().length;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void removeLocation(String key) {
+        Location removed = locations.remove(key);
+        if (removed == null) {
+            return;
+        }
+        liveBytes -= removed.length;
+        try {
+            appendIndex(OP_REMOVE, key.getBytes(StandardCharsets.UTF_8), null);
+        } catch (IOException e) {
+            System.err.println("Failed to record persistent cache removal: " + e.getMessage());
+        }
+    }
+
+    private void compactIfNeeded() {
+        long deadBytes = getDiskBytes() - liveBytes;
+        if (deadBytes > MIN_COMPACTION_BYTES && deadBytes > liveBytes && !compactionScheduled && !compactionExecutor.isShutdown()) {
+            compactionScheduled = true;
+            compactionExecutor.execute(() -> {
+                try {
+                    runCompaction();
+                } finally {
+                    synchronized (this) {
+                        compactionScheduled = false;
+                    }
+                }
+            });
+        }
+    }
+
+    private void runCompaction() {
+        synchronized (compactionMonitor) {
+            try {
+                doCompact();
+            } catch (IOException e) {
+                System.err.println("Persistent cache compaction failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void doCompact() throws IOException {
+        long start = System.currentTimeMillis();
+        // 1. 锁内：记下存活记录，封存现有的段，之后的写入进入新的活动段
+        List<Map.Entry<String, Location>> snapshot;
+        Map<Integer, FileChannel> sealed;
+        long epoch;
+        long bytesBefore;
+        synchronized (this) {
+            if (indexChannel == null) {
+                return;
+            }
+            epoch = storeEpoch;
+            bytesBefore = getDiskBytes();
+            // 遍历 entrySet 不会改变 accessOrder，拷贝保持原有的 LRU 顺序
+            snapshot = new ArrayList<>(locations.size());
+            for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                snapshot.add(Map.entry(entry.getKey(), entry.getValue()));
+            }
+            sealed = new TreeMap<>(segments);
+            if (segments.get(activeSegment).size() > 0) {
+                rollSegment();
+            } else {
+                // 空的活动段不需要封存，压缩完成后照常删除
+                sealed.remove(activeSegment);
+            }
+        }
+
+        // 2. 锁外：把封存时的存活记录拷贝到新段，写临时索引。封存的段不再被写入，定位读和 transferTo 不需要锁
+        TreeMap<Integer, FileChannel> targets = new TreeMap<>();
+        Map<String, Location> moved = new LinkedHashMap<>();
+        Path tmpIndex = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel index = FileChannel.open(tmpIndex,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            int targetId = allocateSegmentId();
+            FileChannel target = openSegment(targetId);
+            targets.put(targetId, target);
+            for (Map.Entry<String, Location> entry : snapshot) {
+                Location source = entry.getValue();
+                FileChannel from = sealed.get(source.segment);
+                if (from == null) {
+                    continue;
+                }
+                if (target.size() > 0 && target.size() + source.length > segmentBytes) {
+                    targetId = allocateSegmentId();
+                    target = openSegment(targetId);
+                    targets.put(targetId, target);
+                }
+                long offset = target.size();
+                long copied = 0;
+                while (copied < source.length) {
+                    copied += from.transferTo(source.offset + copied, source.length - copied, target);
+                }
+                Location location = new Location(targetId, offset, source.length);
+                writeFully(index, encodeIndexEntry(OP_PUT, entry.getKey().getBytes(StandardCharsets.UTF_8), location), index.size());
+                moved.put(entry.getKey(), location);
+            }
+            for (FileChannel channel : targets.values()) {
+                channel.force(false);
+            }
+            index.force(false);
+        } catch (IOException e) {
+            discardSegments(targets);
+            Files.deleteIfExists(tmpIndex);
+            throw e;
+        }
+
+        // 3. 锁内：补上拷贝期间的变化，原子替换索引，换入新段、删除封存的段
+        synchronized (this) {
+            if (indexChannel == null || epoch != storeEpoch) {
+                // 拷贝期间 store 被关闭或清空
+                discardSegments(targets);
+                Files.deleteIfExists(tmpIndex);
+                return;
+            }
+            LinkedHashMap<String, Location> compacted = new LinkedHashMap<>(Math.max(1024, locations.size() * 2), 0.75f, true);
+            try (FileChannel index = FileChannel.open(tmpIndex, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                for (Map.Entry<String, Location> entry : snapshot) {
+                    if (!locations.containsKey(entry.getKey())) {
+                        // 拷贝期间被淘汰或丢弃
+                        writeFully(index, encodeIndexEntry(OP_REMOVE, entry.getKey().getBytes(StandardCharsets.UTF_8), null), index.size());
+                    }
+                }
+                for (Map.Entry<String, Location> entry : locations.entrySet()) {
+                    Location current = entry.getValue();
+                    Location copy = moved.get(entry.getKey());
+                    if (copy != null && sealed.containsKey(current.segment)) {
+                        // 拷贝期间没有改动（被覆盖的记录一定写在新的活动段里）
+                        compacted.put(entry.getKey(), copy);
+                    } else {
+                        // 拷贝期间新写入或覆盖的记录
+                        writeFully(index, encodeIndexEntry(OP_PUT, entry.getKey().getBytes(StandardCharsets.UTF_8), current), index.size());
+                        compacted.put(entry.getKey(), current);
+                    }
+                }
+                index.force(false);
+            }
+
+            indexChannel.close();
+            Files.move(tmpIndex, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+            segments.putAll(targets);
+            for (Integer id : sealed.keySet()) {
+                segments.remove(id).close();
+                Files.deleteIfExists(segmentPath(id));
+            }
+            FileChannel active = segments.get(activeSegment);
+            if (active.size() == 0) {
+                // 拷贝期间没有新的写入：最后一个新段继续作为活动段
+                segments.remove(activeSegment).close();
+                Files.deleteIfExists(segmentPath(activeSegment));
+                activeSegment = targets.lastKey();
+            }
+            locations.clear();
+            locations.putAll(compacted);
+            compactions++;
+            System.out.println("Persistent LLM cache compacted " + bytesBefore + " -> " + getDiskBytes() + " bytes ("
+                    + locations.size() + " entries) in " + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    private synchronized int allocateSegmentId() {
+        return nextSegmentId++;
+    }
+
+    /**
+     * 删除一次作废的压缩写出的新段（它们还没有换入 segments）。
+     */
+    private void discardSegments(Map<Integer, FileChannel> discarded) {
+        for (Map.Entry<Integer, FileChannel> entry : discarded.entrySet()) {
+            try {
+                entry.getValue().close();
+                Files.deleteIfExists(segmentPath(entry.getKey()));
+            } catch (IOException e) {
+                // 删不掉的新段没有被索引引用，下次打开时删除
+            }
+        }
+    }
+
+    /**
+     * 删除索引里没有任何存活记录的段（例如压缩中途崩溃留下的新段、或全部被淘汰的旧段），活动段除外。
+     */
+    private void dropUnreferencedSegments() throws IOException {
+        List<Integer> unreferenced = new ArrayList<>(segments.keySet());
+        for (Location location : locations.values()) {
+            unreferenced.remove(Integer.valueOf(location.segment));
+        }
+        unreferenced.remove(Integer.valueOf(activeSegment));
+        for (Integer id : unreferenced) {
+            segments.remove(id).close();
+            Files.deleteIfExists(segmentPath(id));
+        }
+    }
+
+    private FileChannel rollSegment() throws IOException {
+        segments.get(activeSegment).force(false);
+        activeSegment = nextSegmentId++;
+        FileChannel segment = openSegment(activeSegment);
+        segments.put(activeSegment, segment);
+        return segment;
+    }
+
+    private FileChannel openSegment(int id) throws IOException {
+        return FileChannel.open(segmentPath(id), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("segment-%06d.log", id));
+    }
+
+    private List<Path> listSegmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> SEGMENT_NAME.matcher(path.getFileName().toString()).matches()).sorted().toList();
+        }
+    }
+
+    private static int segmentId(Path segmentFile) {
+        Matcher matcher = SEGMENT_NAME.matcher(segmentFile.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a segment file: " + segmentFile);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    private String readValue(String key, Location location) throws IOException {
+        FileChannel segment = segments.get(location.segment);
+        if (segment == null) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(location.length);
+        readFully(segment, record, location.offset);
+        record.flip();
+        if (record.getInt() != RECORD_MAGIC) {
+            return null;
+        }
+        int keyLength = record.getInt();
+        int valueLength = record.getInt();
+        int crc = record.getInt();
+        if (RECORD_HEADER_BYTES + keyLength + valueLength != location.length) {
+            return null;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        record.get(keyBytes);
+        if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8))) {
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), record.position(), valueLength);
+        if ((int) checksum.getValue() != crc) {
+            return null;
+        }
+        return new String(record.array(), record.position(), valueLength, StandardCharsets.UTF_8);
+    }
+
+    private void appendIndex(byte op, byte[] keyBytes, Location location) throws IOException {
+        ByteBuffer entry = encodeIndexEntry(op, keyBytes, location);
+        while (entry.hasRemaining()) {
+            indexChannel.write(entry);
+        }
+    }
+
+    private static ByteBuffer encodeRecord(byte[] keyBytes, byte[] valueBytes) {
+        CRC32 checksum = new CRC32();
+        checksum.update(valueBytes);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length);
+        record.putInt(RECORD_MAGIC).putInt(keyBytes.length).putInt(valueBytes.length).putInt((int) checksum.getValue());
+        record.put(keyBytes).put(valueBytes);
+        return record.flip();
+    }
+
+    private static ByteBuffer encodeIndexEntry(byte op, byte[] keyBytes, Location location) {
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Cache key too long: " + keyBytes.length + " bytes");
+        }
+        ByteBuffer entry = ByteBuffer.allocate(3 + keyBytes.length + (op == OP_PUT ? 16 : 0));
+        entry.put(op).putShort((short) keyBytes.length).put(keyBytes);
+        if (op == OP_PUT) {
+            entry.putInt(location.segment).putLong(location.offset).putInt(location.length);
+        }
+        return entry.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    private void closeChannels() throws IOException {
+        for (FileChannel channel : segments.values()) {
+            channel.close();
+        }
+        segments.clear();
+        if (indexChannel != null) {
+            indexChannel.close();
+            indexChannel = null;
+        }
+    }
+
+    private void deleteStoreFiles() throws IOException {
+        for (Path segmentFile : listSegmentFiles()) {
+            Files.deleteIfExists(segmentFile);
+        }
+        Files.deleteIfExists(directory.resolve(INDEX_FILE));
+        Files.deleteIfExists(directory.resolve(INDEX_FILE + ".tmp"));
+    }
+
+    private static final class Location {
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        private Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.parser.DelimitedFileStreamParser;
+import com.example.aiarchdesigner.parser.GeneratedFileParser;
+import com.example.aiarchdesigner.parser.GeneratedFileStreamParser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * 生成阶段要求模型输出文件的格式，按阶段配置（codegen.output-format.*，见 {@link PromptProviderService}）。
+ * <ul>
+ *     <li>JSON：[{"filePath": ..., "code": ...}] 数组。代码里的换行、引号、反斜杠都要转义，输出 token 更多，
+ *     转义出错是解析失败的主要原因；可以配合 response_format 使用</li>
+ *     <li>FILE_BLOCKS：=== FILE: path === 开头、=== END FILE === 结尾的文件块，代码原样输出。
+ *     不能使用 response_format，也没有第二遍宽松解析（没有需要修复的转义）</li>
+ * </ul>
+ */
+public enum PhaseOutputFormat {
+    JSON,
+    FILE_BLOCKS;
+
+    /**
+     * 解析配置值，接受 file-blocks / file_blocks / FILE_BLOCKS 等写法；为空时返回 JSON。
+     */
+    public static PhaseOutputFormat parse(String value) {
+        if (value == null || value.isBlank()) {
+            return JSON;
+        }
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    public GeneratedFileParser newParser(Consumer<GeneratedFile> sink) {
+        return this == FILE_BLOCKS ? new DelimitedFileStreamParser(sink) : new GeneratedFileStreamParser(sink);
+    }
+
+    /**
+     * 把文件列表写成这种格式的响应文本，用于缓存修复或续写拼出来的结果。
+     */
+    public String write(List<GeneratedFile> files) throws IOException {
+        return this == FILE_BLOCKS ? DelimitedFileStreamParser.format(files) : GeneratedFileStreamParser.toJsonArray(files);
+    }
+}
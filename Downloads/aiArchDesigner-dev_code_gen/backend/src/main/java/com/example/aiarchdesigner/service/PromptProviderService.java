@@ -1,6 +1,10 @@
 package com.example.aiarchdesigner.service;
 
 import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.parser.JavaApiSignatureExtractor;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.nio.file.Path;
@@ -14,20 +18,57 @@ import java.util.stream.Collectors;
 @Service
 public class PromptProviderService {
 
+    // 阶段指令的最后追加这一段就切换到文件块格式；两种格式都写在共享的 system 消息里，切换格式不影响前缀缓存
+    static final String FILE_BLOCKS_INSTRUCTION = """
+
+[Output Format for this request: FILE BLOCKS]
+Output format: FILE BLOCKS. Do NOT output JSON for this request; output every file as a file block as specified above.
+""";
+
+    private final PhaseOutputFormat defaultOutputFormat;
+    private final Map<String, PhaseOutputFormat> outputFormats = new HashMap<>();
+
+    public PromptProviderService() {
+        this("json", "json", "json", "json");
+    }
+
+    /**
+     * 每个生成阶段的输出格式：json 或 file-blocks。逐文件生成和增量更新使用 default。
+     */
+    @Autowired
+    public PromptProviderService(@Value("${codegen.output-format.default:json}") String defaultOutputFormat,
+                                 @Value("${codegen.output-format.backend:${codegen.output-format.default:json}}") String backendOutputFormat,
+                                 @Value("${codegen.output-format.frontend:${codegen.output-format.default:json}}") String frontendOutputFormat,
+                                 @Value("${codegen.output-format.readme:${codegen.output-format.default:json}}") String readmeOutputFormat) {
+        this.defaultOutputFormat = PhaseOutputFormat.parse(defaultOutputFormat);
+        outputFormats.put(PromptTemplateRegistry.BACKEND, PhaseOutputFormat.parse(backendOutputFormat));
+        outputFormats.put(PromptTemplateRegistry.FRONTEND, PhaseOutputFormat.parse(frontendOutputFormat));
+        outputFormats.put(PromptTemplateRegistry.README, PhaseOutputFormat.parse(readmeOutputFormat));
+    }
+
+    public PhaseOutputFormat outputFormat(String templateName) {
+        return outputFormats.getOrDefault(templateName, defaultOutputFormat);
+    }
+
+    // 阶段指令按该阶段的输出格式追加格式说明；JSON 是默认格式，不追加
+    private String withOutputFormat(String templateName, String instruction) {
+        return outputFormat(templateName) == PhaseOutputFormat.FILE_BLOCKS ? instruction + FILE_BLOCKS_INSTRUCTION : instruction;
+    }
+
     public String getCommonPromptPreamble() {
         return """
 [System Preamble]
-You are an expert AI software architect and senior full-stack developer. Your primary function is to meticulously analyze provided software design documents and generate complete, production-ready source code files based on these designs. You must output the generated files in a specific JSON format.
+You are an expert AI software architect and senior full-stack developer. Your primary function is to meticulously analyze provided software design documents and generate complete, production-ready source code files based on these designs. You must output the generated files in the specified output format.
 
 [Overall Task Context]
-The overall goal is to generate a complete project. This specific request focuses on a particular PHASE of that project. Adhere to all general code quality, pathing, and output format specifications.
+The overall goal is to generate a complete project. The design document is given in the first user message; the LAST user message describes the particular PHASE of the project this specific request focuses on. Adhere to all general code quality, pathing, and output format specifications.
 """;
     }
 
     public String getCommonOutputFormatAndKeyInstructions() {
         return """
 [Output Format Specification]
-Your entire response MUST be a valid JSON array. Each element of the array must be an object with exactly two keys:
+Unless the LAST user message selects the FILE BLOCKS format, your entire response MUST be a valid JSON array. Each element of the array must be an object with exactly two keys:
 - `filePath`: A string representing the full relative path for the file (e.g., "src/main/java/com/example/service/UserService.java", "frontend/src/components/UserProfile.jsx", "README.md").
 - `code`: A string containing the complete, well-formatted source code for that file. Ensure all special characters within the code (like newlines, tabs, quotes) are correctly escaped to produce valid JSON.
 
@@ -46,60 +87,110 @@ Your entire response MUST be a valid JSON array. Each element of the array must
 [Example of Expected JSON Output Structure]
 ```json
 [
-  {{
+  {
     "filePath": "src/main/java/com/example/demo/controller/UserController.java",
     "code": "package com.example.demo.controller;\n// ... rest of the code ..."
-  }}
+  }
   // ... more files for THIS PHASE
 ]
 ```
 Please ensure your output strictly follows this JSON structure for THIS PHASE. Do not include any explanatory text or apologies outside of the JSON array itself.
+
+[Alternative Output Format: FILE BLOCKS]
+When the LAST user message says "Output format: FILE BLOCKS", do NOT output JSON. Output every file as a block of raw source code instead:
+=== FILE: <filePath> ===
+<complete file content exactly as it should be written to disk, NOT escaped and NOT wrapped in markdown code fences>
+=== END FILE ===
+Output the blocks one after another with nothing before, between or after them. `filePath` follows the same rules as above.
 """;
     }
 
-    public String constructBackendPrompt(String designDocumentContentPlaceholder) {
-        // designDocumentContentPlaceholder is not directly used in the template string here,
-        // but passed via promptParameters. Keeping it for consistency.
-        return getCommonPromptPreamble() + """
+    /**
+     * 所有生成阶段共用的 system 消息。与 {@link #constructDesignDocumentPrompt()} 一起构成各阶段完全相同的前缀，
+     * 阶段指令放在最后一条消息里，服务端的前缀缓存才能在同一任务的后续阶段命中。
+     */
+    public String constructSharedSystemPrompt() {
+        return getCommonPromptPreamble() + "\n" + getCommonOutputFormatAndKeyInstructions();
+    }
+
+    public String constructDesignDocumentPrompt() {
+        return """
+[Input Design Document]
+```
+{design_document_content}
+```
+""";
+    }
 
+    public String constructBackendPrompt() {
+        return withOutputFormat(PromptTemplateRegistry.BACKEND, """
 [Current Phase: BACKEND CODE GENERATION]
 Your SOLE FOCUS for this request is to generate the BACKEND code for the application, based on the design document.
 This typically includes: Java, Spring Boot, database interaction (MyBatis as per previous instructions), etc.
 - Generate all necessary Controllers, Services, DTOs, Models (Entities), and MyBatis Mapper interfaces and XML files.
-- CRITICAL: Generate the main Spring Boot application class (e.g., `Application.java` or a suitable name like `MainApplication.java` or `YourProjectNameApplication.java` if a project name can be inferred from the design document) in an appropriate package (e.g., `com.example.yourproject`), annotated with `@SpringBootApplication` and containing the `public static void main(String[] args) {{ SpringApplication.run(...); }}` method. This class is essential for running the backend.
+- CRITICAL: Generate the main Spring Boot application class (e.g., `Application.java` or a suitable name like `MainApplication.java` or `YourProjectNameApplication.java` if a project name can be inferred from the design document) in an appropriate package (e.g., `com.example.yourproject`), annotated with `@SpringBootApplication` and containing the `public static void main(String[] args) { SpringApplication.run(...); }` method. This class is essential for running the backend.
 - If a `pom.xml` is needed for the backend module, generate it with necessary Spring Boot and MyBatis dependencies.
 - If database schema (DDL) is part of the backend design and not a separate phase, include it (e.g. in `src/main/resources/db/migration/V1__init.sql` if using Flyway, or a simple `schema.sql`).
 - Ensure adherence to RESTful principles for APIs.
 - Implement business logic and CRUD operations as indicated by the design for the backend.
 - DO NOT generate any frontend code (React, Vue, Angular, HTML, CSS, JavaScript, package.json, etc.) in this step.
 - DO NOT generate deployment scripts or general project-level README files (a separate phase will handle the main README).
-
-[Input Design Document Snippet - Focus on Backend Aspects]
-```
-{design_document_content}
-```
-""" + getCommonOutputFormatAndKeyInstructions();
+- Focus on the backend aspects of the design document above.
+""");
     }
 
-    public String constructFrontendPrompt(String designDocumentContentPlaceholder, List<GeneratedFile> backendFilesInfo) {
-        String backendApiSummary = "";
-        if (backendFilesInfo != null && !backendFilesInfo.isEmpty()) {
+    public String constructFrontendPrompt() {
+        // backend_api_summary is filled per call from describeBackendApi.
+        return withOutputFormat(PromptTemplateRegistry.FRONTEND, """
+[Current Phase: FRONTEND CODE GENERATION]
+Your SOLE FOCUS for this request is to generate the FRONTEND code for the application. Focus on the frontend aspects of the design document above.
+注意: 语言限定为 html,css,js。
+
+{backend_api_summary}""");
+    }
 
+    /**
+     * 后端阶段产出的接口签名索引（接口路径、参数、返回类型以及引用到的 DTO / 实体字段），代替完整的后端代码放进提示词。
+     */
+    public String describeBackendApi(List<GeneratedFile> backendFilesInfo) {
+        if (backendFilesInfo == null || backendFilesInfo.isEmpty()) {
+            return "";
         }
+        return JavaApiSignatureExtractor.summarize(backendFilesInfo);
+    }
 
-        return getCommonPromptPreamble() + """
+    public String constructReadmePrompt() {
+        // generated_file_summary and backend_api_summary are filled per call from describeProjectStructure and describeBackendApi.
+        return withOutputFormat(PromptTemplateRegistry.README, """
+[Current Task: GENERATE PROJECT README.md]
+Based on the design document above and the project structure that was generated (backend and frontend modules located in 'backend/' and 'frontend/' subdirectories respectively), your task is to create a comprehensive `README.md` file.
+This `README.md` should be placed at the root of the generated project.
 
-""" + backendApiSummary + """
-[Input Design Document Snippet - Focus on Frontend Aspects]
-```
-{design_document_content}
-```
-注意: 语言限定为 html,css,js。
+This `README.md` should include:
+1.  **Project Title**: Derived from the design document.
+2.  **Project Description**: A brief overview of the project's purpose.
+3.  **Technology Stack**: List the main technologies used for backend and frontend (e.g., Java Spring Boot, MyBatis, React, TypeScript, Vite).
+4.  **Prerequisites**: Any software that needs to be installed to run the project (e.g., JDK 17, Node.js 18+, Maven, npm/yarn, MySQL if applicable).
+5.  **Backend Setup and Run Instructions** (assuming backend code is in a 'backend/' subdirectory):
+    *   How to navigate to the backend directory: `cd backend`
+    *   How to build the backend (e.g., `mvn clean install`).
+    *   How to run the backend (e.g., `java -jar target/your-backend-app.jar` or `mvn spring-boot:run`).
+    *   Default backend port (e.g., 8080) and any key API base paths.
+6.  **Frontend Setup and Run Instructions** (assuming frontend code is in a 'frontend/' subdirectory):
+    *   How to navigate to the frontend directory: `cd frontend`
+    *   How to install dependencies (e.g., `npm install` or `yarn install`).
+    *   How to start the frontend development server (e.g., `npm start` or `yarn start`).
+    *   Default frontend port (e.g., 3000 or 5173 for Vite) and how to access it in the browser.
+7.  **(Optional) Database Setup**: If a database like MySQL is used, mention any initial setup steps (e.g., create database, ensure server is running, run schema scripts if they were generated separately in `backend/src/main/resources/db/...`).
+8.  **Directory Structure Overview**: Briefly explain the purpose of the 'backend/' and 'frontend/' subdirectories.
 
-""" + getCommonOutputFormatAndKeyInstructions();
+Ensure the instructions are clear, concise, and actionable for a developer trying to set up and run the generated project.
+The output for this request should be a SINGLE file in the output format specified above, whose `filePath` is "README.md" (this path is relative to the project root where backend/ and frontend/ dirs reside) and whose content is the Markdown. Take the key API base paths from the backend API below when it is given.
+{generated_file_summary}
+{backend_api_summary}""");
     }
 
-    public String constructReadmePrompt(String designDocumentContentPlaceholder, List<GeneratedFile> allGeneratedFiles) {
+    public String describeProjectStructure(List<GeneratedFile> allGeneratedFiles) {
         StringBuilder fileSummary = new StringBuilder();
         if (allGeneratedFiles != null && !allGeneratedFiles.isEmpty()) {
             fileSummary.append("\n\n[Generated Project Structure Overview (for your reference)]\n");
@@ -126,45 +217,10 @@ This typically includes: Java, Spring Boot, database interaction (MyBatis as per
                 fileSummary.append("- frontend/ module (contains frontend source code)\n");
             }
         }
-        // designDocumentContentPlaceholder is not directly used in the template string here,
-        // but passed via promptParameters. Keeping it for consistency.
-        return getCommonPromptPreamble() + """
-
-[Current Task: GENERATE PROJECT README.md]
-Based on the original design document and the project structure that was generated (backend and frontend modules located in 'backend/' and 'frontend/' subdirectories respectively), your task is to create a comprehensive `README.md` file.
-This `README.md` should be placed at the root of the generated project.
-
-This `README.md` should include:
-1.  **Project Title**: Derived from the design document.
-2.  **Project Description**: A brief overview of the project's purpose.
-3.  **Technology Stack**: List the main technologies used for backend and frontend (e.g., Java Spring Boot, MyBatis, React, TypeScript, Vite).
-4.  **Prerequisites**: Any software that needs to be installed to run the project (e.g., JDK 17, Node.js 18+, Maven, npm/yarn, MySQL if applicable).
-5.  **Backend Setup and Run Instructions** (assuming backend code is in a 'backend/' subdirectory):
-    *   How to navigate to the backend directory: `cd backend`
-    *   How to build the backend (e.g., `mvn clean install`).
-    *   How to run the backend (e.g., `java -jar target/your-backend-app.jar` or `mvn spring-boot:run`).
-    *   Default backend port (e.g., 8080) and any key API base paths.
-6.  **Frontend Setup and Run Instructions** (assuming frontend code is in a 'frontend/' subdirectory):
-    *   How to navigate to the frontend directory: `cd frontend`
-    *   How to install dependencies (e.g., `npm install` or `yarn install`).
-    *   How to start the frontend development server (e.g., `npm start` or `yarn start`).
-    *   Default frontend port (e.g., 3000 or 5173 for Vite) and how to access it in the browser.
-7.  **(Optional) Database Setup**: If a database like MySQL is used, mention any initial setup steps (e.g., create database, ensure server is running, run schema scripts if they were generated separately in `backend/src/main/resources/db/...`).
-8.  **Directory Structure Overview**: Briefly explain the purpose of the 'backend/' and 'frontend/' subdirectories.
-
-Ensure the instructions are clear, concise, and actionable for a developer trying to set up and run the generated project.
-The output for this request should be a SINGLE `GeneratedFile` object in the standard JSON array format, where `filePath` is "README.md" (this path is relative to the project root where backend/ and frontend/ dirs reside) and `code` is the Markdown content.
-
-[Input Design Document (for context)]
-```
-{design_document_content}
-```
-""" + fileSummary + getCommonOutputFormatAndKeyInstructions();
+        return fileSummary.toString();
     }
 
-    public String constructListFilesPrompt(String designDocumentContentPlaceholder) {
-        // designDocumentContentPlaceholder is not directly used in the template string here,
-        // but passed via promptParameters. Keeping it for consistency.
+    public String constructListFilesPrompt() {
         return """
 [System Preamble]
 You are an expert AI software architect. Your primary function is to meticulously analyze a provided software design document and identify all the individual source code files that need to be generated to realize this design.
@@ -208,4 +264,95 @@ Example:
 Ensure your output strictly adheres to this JSON format. Do not include any other text, explanations, or markdown formatting outside of the JSON array itself.
 """;
     }
-} 
\ No newline at end of file
+
+    public String constructSingleFilePrompt() {
+        // target_file_path and planned_files are passed via promptParameters. The plan is the same for every file of a job,
+        // so it comes before the target path to extend the shared prefix.
+        return withOutputFormat(PromptTemplateRegistry.SINGLE_FILE, """
+[Planned Project Files]
+{planned_files}
+
+[Current Phase: SINGLE FILE GENERATION]
+The project is generated file by file in parallel; every other file in the plan above is generated by a separate request.
+Your SOLE FOCUS for this request is to generate the complete content of ONE file of the project: `{target_file_path}`.
+- Generate ONLY `{target_file_path}`. Do not generate any other file.
+- Keep package names, class names, imports, API paths and configuration keys consistent with the other planned files, so that the files compile and run together.
+- The `filePath` of the single file in your output MUST be exactly `{target_file_path}`.
+""");
+    }
+
+    public String constructRegenerateFilePrompt() {
+        // target_file_path, planned_files, previous_file_content and design_changes are passed via promptParameters.
+        return withOutputFormat(PromptTemplateRegistry.REGENERATE_FILE, """
+[Planned Project Files]
+{planned_files}
+
+[Current Phase: INCREMENTAL FILE UPDATE]
+The design document above has been edited. The project was already generated from the previous version of the document;
+only the files affected by the edit are being regenerated. Your SOLE FOCUS for this request is ONE file: `{target_file_path}`.
+- Apply the design changes listed below to the current content of `{target_file_path}`.
+- Keep everything that the changes do not touch exactly as it is: the other files of the project are NOT regenerated and still expect the same package names, class names, method signatures, API paths and configuration keys.
+- Output the COMPLETE updated content of the file, not a diff.
+- The `filePath` of the single file in your output MUST be exactly `{target_file_path}`.
+
+[Design Changes]
+{design_changes}
+
+[Current Content of {target_file_path}]
+```
+{previous_file_content}
+```
+""");
+    }
+
+    public String constructContinuationPrompt() {
+        // Appended after the phase prompt when the previous response ran out of output tokens; the phase prompt itself is
+        // unchanged, so the continuation request reuses its cached prefix. produced_files is one path per line.
+        return """
+[Continuation]
+Your previous response to the request above was cut off because it reached the output length limit.
+The following files were received completely and MUST NOT be output again:
+{produced_files}
+
+Output ONLY the remaining files of this phase that are not listed above, in exactly the output format specified above.
+If a file was cut off in the middle, output it again in full. Do not repeat any listed file.
+""";
+    }
+
+    public String constructCondensePrompt() {
+        // design_document_content is one chunk of a large design document; the digests of all chunks are concatenated in order.
+        return """
+[System Preamble]
+You are an expert AI software architect. A large software design document is being condensed chunk by chunk before code generation.
+Later requests will generate the backend, the frontend and the README from your digests INSTEAD of the original document, so anything you leave out is lost.
+
+[Task Definition]
+Condense the document chunk below into three digests:
+- BACKEND: entities and database tables with every field (name, type, length, nullability, default, meaning), indexes and relations; every API endpoint (method, path, request parameters and body fields, response fields, status codes); business rules, validations, state transitions, scheduled jobs, configuration and technology choices.
+- FRONTEND: pages and components, what each page shows and which user actions it offers, form fields and validations, navigation, and every API endpoint the frontend calls (method, path, request/response fields).
+- OVERVIEW: project name, purpose, modules, technology stack, runtime dependencies (database, middleware), ports and deployment notes.
+
+Rules:
+1. Copy identifiers EXACTLY as written: table, field, class, enum and constant names, types and lengths, API paths, configuration keys. Never rename or translate them.
+2. Drop narrative, repetition, rationale and formatting that carries no implementation detail. Summarize sequence and flow diagrams as numbered steps.
+3. Keep the original section headings (as markdown headings) so that the digests of all chunks read as one document when concatenated.
+4. If the chunk contains nothing for a digest, write `(none)` under its marker.
+5. Write each digest in the language of the document.
+
+[Input Design Document Chunk]
+```
+{design_document_content}
+```
+
+[Output Format Specification]
+Output exactly the three markers below, each on its own line and in this order, each followed by its digest. Output nothing before the first marker.
+=== BACKEND ===
+=== FRONTEND ===
+=== OVERVIEW ===
+""";
+    }
+
+    public String constructFrontendCheckPrompt() {
+        return "请分析以下设计文档，判断是否需要生成前端代码。\n\n设计文档内容：\n{design_document_content}\n\n回答 \"Yes\" 表示需要生成前端代码，回答 \"No\" 表示不需要。";
+    }
+}
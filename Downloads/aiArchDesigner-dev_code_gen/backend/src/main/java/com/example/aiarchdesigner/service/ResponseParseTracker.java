@@ -0,0 +1,107 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.ResponseParseStats;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 (阶段模板, 模型, response_format, 输出格式) 统计生成阶段响应的解析失败率，用来比较不同模型、不同结构化输出方式的可靠性。
+ * 只统计实际收到的流式响应；缓存命中和请求本身失败不计入。
+ */
+@Component
+public class ResponseParseTracker {
+
+    public enum Outcome {
+        PARSED,
+        NO_JSON,
+        TRUNCATED,
+        // 严格解析器报错（字符串里未转义的换行或引号、多余的逗号……）
+        MALFORMED
+    }
+
+    private final ConcurrentMap<Key, Counters> counters = new ConcurrentHashMap<>();
+
+    public void record(String phase, String model, StructuredOutputMode structuredOutput, PhaseOutputFormat outputFormat,
+                       Outcome outcome) {
+        Counters entry = counters.computeIfAbsent(new Key(phase, model == null ? "(default)" : model, structuredOutput, outputFormat),
+                key -> new Counters());
+        entry.responses.incrementAndGet();
+        if (outcome == Outcome.NO_JSON) {
+            entry.noJson.incrementAndGet();
+        } else if (outcome == Outcome.TRUNCATED) {
+            entry.truncated.incrementAndGet();
+        } else if (outcome == Outcome.MALFORMED) {
+            entry.malformed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 第二遍宽松解析从这次响应里救回了文件。
+     */
+    public void recordRepair(String phase, String model, StructuredOutputMode structuredOutput, PhaseOutputFormat outputFormat) {
+        counters.computeIfAbsent(new Key(phase, model == null ? "(default)" : model, structuredOutput, outputFormat),
+                key -> new Counters()).repaired.incrementAndGet();
+    }
+
+    public List<ResponseParseStats> getStats() {
+        List<ResponseParseStats> stats = new ArrayList<>();
+        for (Map.Entry<Key, Counters> entry : counters.entrySet()) {
+            Key key = entry.getKey();
+            Counters value = entry.getValue();
+            stats.add(new ResponseParseStats(key.phase, key.model, key.structuredOutput.name(), key.outputFormat.name(),
+                    value.responses.get(),
+                    value.noJson.get(), value.truncated.get(), value.malformed.get(), value.repaired.get()));
+        }
+        stats.sort(Comparator.comparing(ResponseParseStats::getPhase).thenComparing(ResponseParseStats::getModel)
+                .thenComparing(ResponseParseStats::getStructuredOutput).thenComparing(ResponseParseStats::getOutputFormat));
+        return stats;
+    }
+
+    private static final class Counters {
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong noJson = new AtomicLong();
+        private final AtomicLong truncated = new AtomicLong();
+        private final AtomicLong malformed = new AtomicLong();
+        private final AtomicLong repaired = new AtomicLong();
+    }
+
+    private static final class Key {
+        private final String phase;
+        private final String model;
+        private final StructuredOutputMode structuredOutput;
+        private final PhaseOutputFormat outputFormat;
+
+        Key(String phase, String model, StructuredOutputMode structuredOutput, PhaseOutputFormat outputFormat) {
+            this.phase = phase;
+            this.model = model;
+            this.structuredOutput = structuredOutput;
+            this.outputFormat = outputFormat;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return phase.equals(that.phase) && model.equals(that.model) && structuredOutput == that.structuredOutput
+                    && outputFormat == that.outputFormat;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(phase, model, structuredOutput, outputFormat);
+        }
+    }
+}
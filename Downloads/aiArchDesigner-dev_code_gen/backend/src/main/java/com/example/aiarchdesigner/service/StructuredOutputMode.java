@@ -0,0 +1,133 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 生成阶段请求的 response_format（codegen.llm.structured-output，可以按端点覆盖）。
+ * <p>
+ * json_schema 和 json_object 都要求顶层是对象，所以结构化输出时模型返回 {"files": [...]}，
+ * {@link com.example.aiarchdesigner.parser.GeneratedFileStreamParser} 从第一个 '[' 开始解析，两种形式都能处理。
+ * <ul>
+ *     <li>NONE：只靠提示词要求 JSON 数组，适用于不支持 response_format 的服务</li>
+ *     <li>JSON_OBJECT：{"type": "json_object"}，DeepSeek 和 OpenAI 都支持，保证输出是合法 JSON</li>
+ *     <li>JSON_SCHEMA：按 {@link GeneratedFile} 的字段生成的 strict schema，目前只有 OpenAI 的新模型支持</li>
+ * </ul>
+ */
+public enum StructuredOutputMode {
+    NONE,
+    JSON_OBJECT,
+    JSON_SCHEMA;
+
+    public static final String FILES_PROPERTY = "files";
+
+    // 结构化输出时追加在提示词最后，不影响前面共享的前缀；DeepSeek 的 json_object 模式要求提示词里出现 "json"
+    public static final String INSTRUCTION = "Output format: respond with a single JSON object {\"" + FILES_PROPERTY
+            + "\": [...]} whose \"" + FILES_PROPERTY + "\" array is exactly the JSON array of files described above.";
+
+    private static final ResponseFormat JSON_OBJECT_FORMAT = ResponseFormat.builder()
+            .type(ResponseFormat.Type.JSON_OBJECT)
+            .build();
+    private static final ResponseFormat JSON_SCHEMA_FORMAT = ResponseFormat.builder()
+            .type(ResponseFormat.Type.JSON_SCHEMA)
+            .jsonSchema(ResponseFormat.JsonSchema.builder()
+                    .name("generated_files")
+                    .schema(generatedFilesSchema())
+                    .strict(true)
+                    .build())
+            .build();
+
+    /**
+     * 解析配置值，接受 json-object / json_object / JSON_OBJECT 等写法；为空时返回 NONE。
+     */
+    public static StructuredOutputMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * NONE 返回 null（不发送 response_format）。返回的是共享实例，不要修改。
+     */
+    public ResponseFormat responseFormat() {
+        switch (this) {
+            case JSON_OBJECT:
+                return JSON_OBJECT_FORMAT;
+            case JSON_SCHEMA:
+                return JSON_SCHEMA_FORMAT;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 服务拒绝了 response_format 参数（不支持该类型或者 schema）。只看错误体里提到 response_format 的 400/422，
+     * 上下文超长之类的其他请求错误不算，免得误把端点降级。
+     */
+    public static boolean isUnsupported(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            int status = -1;
+            String body = cause.getMessage();
+            if (cause instanceof WebClientResponseException responseException) {
+                status = responseException.getStatusCode().value();
+                body = responseException.getResponseBodyAsString() + " " + body;
+            } else if (cause instanceof RestClientResponseException responseException) {
+                status = responseException.getStatusCode().value();
+                body = responseException.getResponseBodyAsString() + " " + body;
+            } else if (body != null && body.matches("^(400|422) - (?s).*")) {
+                status = Integer.parseInt(body.substring(0, 3));
+            }
+            if ((status == 400 || status == 422) && body != null && mentionsResponseFormat(body)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean mentionsResponseFormat(String body) {
+        String lower = body.toLowerCase(Locale.ROOT);
+        return lower.contains("response_format") || lower.contains("json_schema") || lower.contains("json_object");
+    }
+
+    /**
+     * {"files": [{"filePath": string, "code": string}]}，条目的属性取自 GeneratedFile 的字段。
+     * strict 模式要求所有属性都列为 required 并且禁止额外属性。
+     * 全部使用有序 Map：每次发出的 schema 字节完全相同，不破坏服务端的前缀缓存。
+     */
+    static Map<String, Object> generatedFilesSchema() {
+        Map<String, Object> fileProperties = new LinkedHashMap<>();
+        for (Field field : GeneratedFile.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                fileProperties.put(field.getName(), Map.of("type", "string"));
+            }
+        }
+        Map<String, Object> fileSchema = new LinkedHashMap<>();
+        fileSchema.put("type", "object");
+        fileSchema.put("properties", fileProperties);
+        fileSchema.put("required", new ArrayList<>(fileProperties.keySet()));
+        fileSchema.put("additionalProperties", false);
+
+        Map<String, Object> schema = new LinkedHashMap<>();
+        schema.put("type", "object");
+        Map<String, Object> filesSchema = new LinkedHashMap<>();
+        filesSchema.put("type", "array");
+        filesSchema.put("items", fileSchema);
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put(FILES_PROPERTY, filesSchema);
+        schema.put("properties", properties);
+        schema.put("required", List.of(FILES_PROPERTY));
+        schema.put("additionalProperties", false);
+        return schema;
+    }
+}
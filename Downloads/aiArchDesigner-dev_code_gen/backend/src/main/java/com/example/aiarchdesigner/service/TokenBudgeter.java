@@ -0,0 +1,229 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * 调用前估算提示词的 token 数，保证 提示词 + 预留的输出 不超过模型上下文窗口。
+ * <p>
+ * 超出时不直接报错，而是按标题把设计文档切成若干块，按原顺序尽量保留完整的块，放不下的块只在文末列出标题；
+ * 去掉整个设计文档仍然放不下时在发请求前失败，不为注定失败的调用付费。
+ * <p>
+ * 计数使用 cl100k_base 编码。DeepSeek 等模型的分词器与之不完全相同，所以只使用上下文窗口的 safety-margin 比例。
+ */
+@Component
+public class TokenBudgeter {
+
+    // 每条消息的角色、分隔符等额外开销，以及回复的起始标记（按 OpenAI 的计算方式）
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int TOKENS_PER_REPLY = 3;
+    private static final Pattern HEADING = Pattern.compile("^#{1,6}\\s+.*");
+    private static final Pattern FENCE = Pattern.compile("^\\s*(```|~~~).*");
+    private static final String OMITTED_NOTE = "\n\n> 以下章节因超出模型上下文窗口而省略 (omitted to fit the context window):\n";
+
+    private final Encoding encoding = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    private final int contextWindow;
+    private final double safetyMargin;
+    private final int defaultOutputReserve;
+    private final Map<String, Integer> outputReserves = new HashMap<>();
+
+    @Autowired
+    public TokenBudgeter(@Value("${codegen.tokens.context-window:65536}") int contextWindow,
+                         @Value("${codegen.tokens.safety-margin:0.9}") double safetyMargin,
+                         @Value("${codegen.tokens.output-reserve.default:4096}") int defaultOutputReserve,
+                         @Value("${codegen.tokens.output-reserve.backend:8192}") int backendOutputReserve,
+                         @Value("${codegen.tokens.output-reserve.frontend:8192}") int frontendOutputReserve,
+                         @Value("${codegen.tokens.output-reserve.readme:4096}") int readmeOutputReserve,
+                         @Value("${codegen.tokens.output-reserve.list-files:2048}") int listFilesOutputReserve) {
+        this.contextWindow = contextWindow;
+        this.safetyMargin = safetyMargin;
+        this.defaultOutputReserve = defaultOutputReserve;
+        outputReserves.put(PromptTemplateRegistry.BACKEND, backendOutputReserve);
+        outputReserves.put(PromptTemplateRegistry.FRONTEND, frontendOutputReserve);
+        outputReserves.put(PromptTemplateRegistry.README, readmeOutputReserve);
+        outputReserves.put(PromptTemplateRegistry.LIST_FILES, listFilesOutputReserve);
+    }
+
+    /**
+     * 按模板渲染提示词，超出预算时裁剪 parameters 中的设计文档后重新渲染。
+     *
+     * @throws IllegalStateException 去掉整个设计文档后提示词仍然超出预算
+     */
+    public BudgetedPrompt fit(String templateName, Map<String, Object> parameters, Function<Map<String, Object>, Prompt> render) {
+        Prompt prompt = render.apply(parameters);
+        int promptTokens = countPromptTokens(prompt);
+        int budget = promptBudget(templateName);
+        if (promptTokens <= budget) {
+            return new BudgetedPrompt(prompt, promptTokens, false);
+        }
+        Object document = parameters.get(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT);
+        int documentTokens = document == null ? 0 : countTokens(document.toString());
+        int documentBudget = budget - (promptTokens - documentTokens);
+        if (documentBudget <= 0) {
+            throw new IllegalStateException("Prompt for " + templateName + " needs " + promptTokens + " tokens, " + (promptTokens - documentTokens)
+                    + " without the design document, but only " + budget + " fit in the context window after reserving "
+                    + outputReserve(templateName) + " output tokens");
+        }
+        Map<String, Object> fitted = new HashMap<>(parameters);
+        fitted.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, fitDocument(document.toString(), documentBudget));
+        Prompt fittedPrompt = render.apply(fitted);
+        int fittedTokens = countPromptTokens(fittedPrompt);
+        System.out.println("Design document for " + templateName + " trimmed from " + documentTokens + " to fit a budget of " + documentBudget
+                + " tokens (prompt " + promptTokens + " -> " + fittedTokens + " tokens)");
+        return new BudgetedPrompt(fittedPrompt, fittedTokens, true);
+    }
+
+    /**
+     * 按标题把文档切块，按原顺序保留放得下的完整块，放不下的块只列出标题；第一块本身就放不下时按 token 截断。
+     * 返回文本的 token 数不超过 maxTokens。
+     */
+    public String fitDocument(String document, int maxTokens) {
+        if (countTokens(document) <= maxTokens) {
+            return document;
+        }
+        List<String> kept = new ArrayList<>();
+        List<String> omittedHeadings = new ArrayList<>();
+        // 先为省略说明预留空间，没有省略的块时这部分预算不会用到
+        int remaining = maxTokens - countTokens(OMITTED_NOTE);
+        for (String chunk : splitByHeading(document)) {
+            int chunkTokens = countTokens(chunk);
+            String heading = firstLine(chunk);
+            int headingTokens = HEADING.matcher(heading).matches() ? countTokens("- " + heading + "\n") : 0;
+            if (chunkTokens <= remaining) {
+                kept.add(chunk);
+                remaining -= chunkTokens;
+            } else if (headingTokens > 0 && headingTokens <= remaining) {
+                omittedHeadings.add(heading);
+                remaining -= headingTokens;
+            }
+        }
+        StringBuilder fitted = new StringBuilder();
+        kept.forEach(fitted::append);
+        if (!omittedHeadings.isEmpty()) {
+            fitted.append(OMITTED_NOTE);
+            omittedHeadings.forEach(heading -> fitted.append("- ").append(heading).append('\n'));
+        }
+        // 块之间拼接时 token 边界可能合并或拆开，最后再按 token 截一次保证不超出
+        return truncate(kept.isEmpty() ? document : fitted.toString(), maxTokens);
+    }
+
+    /**
+     * 按标题把文档切成若干块，相邻的章节合并到同一块直到接近 maxChunkTokens；单个章节超出时按行拆开。
+     * 所有块按顺序拼起来与原文相同。
+     */
+    public List<String> splitIntoChunks(String document, int maxChunkTokens) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder();
+        int chunkTokens = 0;
+        for (String section : splitByHeading(document)) {
+            List<String> pieces = countTokens(section) <= maxChunkTokens ? List.of(section) : List.of(section.split("(?<=\\n)"));
+            for (String piece : pieces) {
+                int pieceTokens = countTokens(piece);
+                if (chunkTokens > 0 && chunkTokens + pieceTokens > maxChunkTokens) {
+                    chunks.add(chunk.toString());
+                    chunk.setLength(0);
+                    chunkTokens = 0;
+                }
+                chunk.append(piece);
+                chunkTokens += pieceTokens;
+            }
+        }
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    public int countTokens(String text) {
+        return text == null || text.isEmpty() ? 0 : encoding.countTokensOrdinary(text);
+    }
+
+    public int countPromptTokens(Prompt prompt) {
+        int tokens = TOKENS_PER_REPLY;
+        for (Message message : prompt.getInstructions()) {
+            tokens += TOKENS_PER_MESSAGE + countTokens(message.getText());
+        }
+        return tokens;
+    }
+
+    public int outputReserve(String templateName) {
+        return outputReserves.getOrDefault(templateName, defaultOutputReserve);
+    }
+
+    /**
+     * 提示词可以使用的 token 数：上下文窗口按 safety-margin 折算后，减去该模板预留的输出 token。
+     */
+    public int promptBudget(String templateName) {
+        return (int) (contextWindow * safetyMargin) - outputReserve(templateName);
+    }
+
+    private String truncate(String text, int maxTokens) {
+        EncodingResult result = encoding.encodeOrdinary(text, maxTokens);
+        return result.isTruncated() ? encoding.decode(result.getTokens()) : text;
+    }
+
+    // 在代码块外的标题行处切分，每块保留原始文本（包括换行），拼回去与原文相同
+    private static List<String> splitByHeading(String document) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder();
+        boolean inFence = false;
+        for (String line : document.split("(?<=\\n)")) {
+            String trimmed = line.strip();
+            if (FENCE.matcher(trimmed).matches()) {
+                inFence = !inFence;
+            } else if (!inFence && HEADING.matcher(trimmed).matches() && chunk.length() > 0) {
+                chunks.add(chunk.toString());
+                chunk.setLength(0);
+            }
+            chunk.append(line);
+        }
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    private static String firstLine(String chunk) {
+        int newline = chunk.indexOf('\n');
+        return (newline < 0 ? chunk : chunk.substring(0, newline)).strip();
+    }
+
+    public static final class BudgetedPrompt {
+        private final Prompt prompt;
+        private final int promptTokens;
+        private final boolean documentTrimmed;
+
+        BudgetedPrompt(Prompt prompt, int promptTokens, boolean documentTrimmed) {
+            this.prompt = prompt;
+            this.promptTokens = promptTokens;
+            this.documentTrimmed = documentTrimmed;
+        }
+
+        public Prompt getPrompt() {
+            return prompt;
+        }
+
+        public int getPromptTokens() {
+            return promptTokens;
+        }
+
+        public boolean isDocumentTrimmed() {
+            return documentTrimmed;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.aiarchdesigner.service;
+
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.openai.api.OpenAiApi;
+
+/**
+ * 服务端在响应里报告的 token 用量。流式请求只有开启 stream_options.include_usage 时才会在最后一个分片里带上。
+ * <p>
+ * cachedPromptTokens 是命中服务端前缀缓存、按折扣计费的输入 token：
+ * DeepSeek 报告为 prompt_cache_hit_tokens，OpenAI 报告为 prompt_tokens_details.cached_tokens。
+ */
+public final class TokenUsage {
+
+    private final long promptTokens;
+    private final long cachedPromptTokens;
+    private final long completionTokens;
+
+    public TokenUsage(long promptTokens, long cachedPromptTokens, long completionTokens) {
+        this.promptTokens = promptTokens;
+        this.cachedPromptTokens = cachedPromptTokens;
+        this.completionTokens = completionTokens;
+    }
+
+    /**
+     * 响应没有带用量（中间的流式分片、不报告用量的服务）时返回 null。
+     */
+    public static TokenUsage from(ChatResponse response) {
+        if (response == null || response.getMetadata() == null) {
+            return null;
+        }
+        Usage usage = response.getMetadata().getUsage();
+        if (usage == null || usage.getPromptTokens() == null || usage.getPromptTokens() == 0) {
+            return null;
+        }
+        long cached = 0;
+        if (usage.getNativeUsage() instanceof OpenAiApi.Usage nativeUsage) {
+            if (nativeUsage.promptCacheHitTokens() != null) {
+                cached = nativeUsage.promptCacheHitTokens();
+            } else if (nativeUsage.promptTokensDetails() != null && nativeUsage.promptTokensDetails().cachedTokens() != null) {
+                cached = nativeUsage.promptTokensDetails().cachedTokens();
+            }
+        }
+        long completion = usage.getCompletionTokens() == null ? 0 : usage.getCompletionTokens();
+        return new TokenUsage(usage.getPromptTokens(), cached, completion);
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getCachedPromptTokens() {
+        return cachedPromptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    @Override
+    public String toString() {
+        return promptTokens + " prompt (" + cachedPromptTokens + " cached) + " + completionTokens + " completion tokens";
+    }
+}
@@ -0,0 +1,535 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.utils.MpscRingBuffer;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 生成任务的对话记录：每个阶段的提示词、流式输出分片和耗时，按任务写入 gzip 压缩的 {jobId}.transcript.gz。
+ * <p>
+ * 阶段线程只把事件放进无锁的 {@link MpscRingBuffer}，不加锁、不做 I/O，缓冲区满时丢弃事件（计入 droppedEvents）而不是拖慢生成；
+ * 唯一的后台写线程取出事件，通过 FileChannel 追加到各任务的 gzip 流，空闲时 sync flush，
+ * 所以任务运行中也能读到最多滞后 flush-interval-ms 的记录。同一任务的文件多次打开时追加新的 gzip member，读取时按顺序解压。
+ * <p>
+ * 控制台输出是可选的：codegen.transcript.console-sample-rate 大于 0 时由写线程按比例抽样打印事件摘要。
+ * <p>
+ * 保留策略：写线程启动时和每次打开任务时，删除最后修改时间早于 max-age-hours 的记录，再从最旧的开始删除直到不超过 max-files 个；
+ * 正在写入的记录不删除。两项都为 0 时不清理。
+ */
+@Component
+public class TranscriptRecorder {
+
+    private static final String FILE_SUFFIX = ".transcript.gz";
+    // jobId 是 UUID，拒绝其他字符，避免路径穿越
+    private static final Pattern JOB_ID = Pattern.compile("[A-Za-z0-9-]{1,64}");
+    // 不短于该长度的消息在同一任务里只记录一次（共享的 system 提示词和设计文档），之后引用编号
+    private static final int DEDUPLICATED_MESSAGE_CHARS = 1024;
+    private static final int CONSOLE_PREVIEW_CHARS = 200;
+
+    private enum Kind {
+        OPEN, PROMPT, OUTPUT, RESPONSE, EVENT, CLOSE
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long flushIntervalNanos;
+    // 0 表示不按时间 / 数量清理
+    private final Duration maxAge;
+    private final int maxFiles;
+    // 每隔多少个事件在控制台打印一个，0 表示不打印
+    private final long consoleStride;
+    private final MpscRingBuffer<Event> ring;
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // 以下字段只由写线程访问
+    private final Map<String, JobTranscript> transcripts = new HashMap<>();
+    private long reportedDrops;
+    private long consoleCounter;
+
+    @Autowired
+    public TranscriptRecorder(@Value("${codegen.transcript.enabled:true}") boolean enabled,
+                              @Value("${codegen.transcript.dir:transcripts}") String directory,
+                              @Value("${codegen.transcript.ring-size:65536}") int ringSize,
+                              @Value("${codegen.transcript.flush-interval-ms:200}") long flushIntervalMillis,
+                              @Value("${codegen.transcript.console-sample-rate:0}") double consoleSampleRate,
+                              @Value("${codegen.transcript.max-age-hours:168}") long maxAgeHours,
+                              @Value("${codegen.transcript.max-files:1000}") int maxFiles) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.maxAge = Duration.ofHours(Math.max(0, maxAgeHours));
+        this.maxFiles = Math.max(0, maxFiles);
+        this.consoleStride = consoleSampleRate <= 0 ? 0 : Math.max(1, Math.round(1 / Math.min(1.0, consoleSampleRate)));
+        this.ring = new MpscRingBuffer<>(enabled ? ringSize : 2);
+        if (enabled) {
+            writerThread = new Thread(this::writeLoop, "transcript-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        } else {
+            writerThread = null;
+        }
+    }
+
+    /**
+     * 不记录任何内容的实例，用于测试和关闭记录的场景。
+     */
+    public static TranscriptRecorder disabled() {
+        return new TranscriptRecorder(false, "transcripts", 2, 200, 0, 0, 0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * 开始记录一个任务，之后 listener(jobId) 的事件写入该任务的文件。
+     */
+    public void open(String jobId, String description) {
+        if (enabled && JOB_ID.matcher(jobId).matches()) {
+            publish(new Event(jobId, null, Kind.OPEN, null, description), true);
+        }
+    }
+
+    /**
+     * 任务结束：写入结束状态并关闭文件（完成 gzip 流）。
+     */
+    public void close(String jobId, String status) {
+        if (enabled) {
+            publish(new Event(jobId, null, Kind.CLOSE, null, status), true);
+        }
+    }
+
+    /**
+     * 把阶段回调记录到 jobId 的对话记录里，与任务自身的监听器并列使用。
+     */
+    public PhaseListener listener(String jobId) {
+        return enabled ? new TranscriptListener(jobId) : PhaseListener.NO_OP;
+    }
+
+    /**
+     * 读取任务的对话记录（解压后的文本）。任务仍在运行时返回已经 flush 的部分。
+     *
+     * @return 没有该任务的记录时返回 null
+     */
+    public String read(String jobId) throws IOException {
+        if (!JOB_ID.matcher(jobId).matches()) {
+            return null;
+        }
+        Path file = transcriptFile(jobId);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        // GZIPInputStream 依次解压拼接的多个 member
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                text.write(buffer, 0, read);
+            }
+        } catch (EOFException e) {
+            // 正在写入的 member 还没有结束，返回已经 flush 的内容
+        }
+        return text.toString(StandardCharsets.UTF_8);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    Path transcriptFile(String jobId) {
+        return directory.resolve(jobId + FILE_SUFFIX);
+    }
+
+    private void publish(Event event, boolean mustDeliver) {
+        // 打开和关闭事件不能丢，缓冲区满时等写线程腾出位置；其余事件直接丢弃
+        while (!ring.offer(event)) {
+            if (!mustDeliver || !running) {
+                droppedEvents.incrementAndGet();
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void writeLoop() {
+        prune();
+        while (true) {
+            boolean stopping = !running;
+            int drained = drain();
+            if (drained == 0) {
+                flushAll();
+                if (stopping && ring.isEmpty()) {
+                    break;
+                }
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+        for (JobTranscript transcript : transcripts.values()) {
+            transcript.close("recorder shut down");
+        }
+        transcripts.clear();
+    }
+
+    private int drain() {
+        int drained = 0;
+        for (Event event = ring.poll(); event != null; event = ring.poll()) {
+            drained++;
+            try {
+                write(event);
+            } catch (IOException e) {
+                System.err.println("Failed to write transcript of job " + event.jobId + ": " + e.getMessage());
+                JobTranscript broken = transcripts.remove(event.jobId);
+                if (broken != null) {
+                    broken.closeQuietly();
+                }
+            }
+            sampleToConsole(event);
+        }
+        noteDroppedEvents();
+        return drained;
+    }
+
+    // 丢弃的事件不知道属于哪个任务，在所有打开的记录里注明
+    private void noteDroppedEvents() {
+        long dropped = droppedEvents.get();
+        if (dropped > reportedDrops) {
+            String note = (dropped - reportedDrops) + " event(s) dropped, transcript ring buffer full";
+            System.err.println("Transcript recorder: " + note);
+            for (JobTranscript transcript : transcripts.values()) {
+                transcript.note(note);
+            }
+            reportedDrops = dropped;
+        }
+    }
+
+    private void write(Event event) throws IOException {
+        if (event.kind == Kind.OPEN) {
+            if (!transcripts.containsKey(event.jobId)) {
+                transcripts.put(event.jobId, new JobTranscript(event));
+                prune();
+            }
+            return;
+        }
+        JobTranscript transcript = transcripts.get(event.jobId);
+        if (transcript == null) {
+            // 任务已经结束（或没有打开），迟到的事件不再记录
+            return;
+        }
+        if (event.kind == Kind.CLOSE) {
+            noteDroppedEvents();
+            transcripts.remove(event.jobId);
+            transcript.write(event);
+            transcript.writer.close();
+            return;
+        }
+        transcript.write(event);
+    }
+
+    // 按最后修改时间从新到旧保留记录：过期的、或者超出 maxFiles 的删除，正在写入的记录总是保留（并计入数量）
+    private void prune() {
+        if (maxAge.isZero() && maxFiles == 0) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(FILE_SUFFIX)).collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println("Failed to list transcripts in " + directory + ": " + e.getMessage());
+            return;
+        }
+        Map<Path, FileTime> modified = new HashMap<>();
+        for (Path file : files) {
+            try {
+                modified.put(file, Files.getLastModifiedTime(file));
+            } catch (IOException e) {
+                // 刚被删除，忽略
+            }
+        }
+        FileTime cutoff = FileTime.from(Instant.now().minus(maxAge));
+        int kept = 0;
+        int deleted = 0;
+        for (Path file : modified.keySet().stream().sorted(Comparator.comparing(modified::get).reversed()).collect(Collectors.toList())) {
+            String name = file.getFileName().toString();
+            boolean open = transcripts.containsKey(name.substring(0, name.length() - FILE_SUFFIX.length()));
+            boolean expired = !maxAge.isZero() && modified.get(file).compareTo(cutoff) < 0;
+            if (open || (!expired && (maxFiles == 0 || kept < maxFiles))) {
+                kept++;
+                continue;
+            }
+            try {
+                Files.deleteIfExists(file);
+                deleted++;
+            } catch (IOException e) {
+                System.err.println("Failed to delete transcript " + file + ": " + e.getMessage());
+            }
+        }
+        if (deleted > 0) {
+            System.out.println("Transcript recorder: deleted " + deleted + " old transcript(s), " + kept + " kept");
+        }
+    }
+
+    private void flushAll() {
+        for (JobTranscript transcript : transcripts.values()) {
+            transcript.flush();
+        }
+    }
+
+    private void sampleToConsole(Event event) {
+        if (consoleStride == 0 || consoleCounter++ % consoleStride != 0) {
+            return;
+        }
+        String text = event.text == null ? "" : event.text;
+        String preview = text.length() > CONSOLE_PREVIEW_CHARS ? text.substring(0, CONSOLE_PREVIEW_CHARS) + "..." : text;
+        System.out.println("[transcript " + event.jobId + "] " + (event.phase == null ? "" : event.phase + " ")
+                + event.kind + (event.label == null ? "" : " " + event.label) + ": " + preview);
+    }
+
+    private static final class Event {
+        private final String jobId;
+        private final String phase;
+        private final Kind kind;
+        private final String label;
+        private final String text;
+        private final long nanos = System.nanoTime();
+
+        Event(String jobId, String phase, Kind kind, String label, String text) {
+            this.jobId = jobId;
+            this.phase = phase;
+            this.kind = kind;
+            this.label = label;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 一个任务的输出文件，只由写线程访问。连续的同一阶段的输出分片合并在一个标题下，时间是相对任务开始的毫秒数。
+     * 提示词、输出和响应正文之后总是多写一个换行再写下一个标题，读取时去掉一个换行即可得到原文（见 llm-simulator 的回放）。
+     */
+    private final class JobTranscript {
+        private final String jobId;
+        private final long startNanos;
+        private final Writer writer;
+        private final Map<String, Integer> recordedMessages = new HashMap<>();
+        private int messageCount;
+        private String lastOutputPhase;
+        // 上一个写入的是正文，下一个标题前要补换行
+        private boolean bodyOpen;
+        private boolean dirty;
+
+        JobTranscript(Event open) throws IOException {
+            this.jobId = open.jobId;
+            this.startNanos = open.nanos;
+            Files.createDirectories(directory);
+            FileChannel channel = FileChannel.open(transcriptFile(jobId), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            // syncFlush：每次 flush 都把已压缩的数据完整写出，读取方可以解压到当前位置
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Channels.newOutputStream(channel), 16 * 1024, true), StandardCharsets.UTF_8), 16 * 1024);
+            writer.write("=== Transcript of job " + jobId + (open.text == null ? "" : ": " + open.text) + " (started " + Instant.now()
+                    + ") ===\n");
+            dirty = true;
+        }
+
+        void write(Event event) throws IOException {
+            dirty = true;
+            if (event.kind == Kind.OUTPUT && event.phase.equals(lastOutputPhase)) {
+                append(event.text);
+                return;
+            }
+            lastOutputPhase = event.kind == Kind.OUTPUT ? event.phase : null;
+            closeBody();
+            String header = String.format(Locale.ROOT, "[+%d ms] %s", TimeUnit.NANOSECONDS.toMillis(event.nanos - startNanos),
+                    event.phase == null ? "job" : event.phase);
+            switch (event.kind) {
+                case PROMPT:
+                    Integer earlier = event.text.length() >= DEDUPLICATED_MESSAGE_CHARS ? recordedMessages.get(event.text) : null;
+                    if (earlier != null) {
+                        writer.write(header + " PROMPT " + event.label + ": same as message #" + earlier + " (" + event.text.length()
+                                + " chars)\n");
+                        return;
+                    }
+                    int number = ++messageCount;
+                    if (event.text.length() >= DEDUPLICATED_MESSAGE_CHARS) {
+                        recordedMessages.put(event.text, number);
+                    }
+                    writer.write(header + " PROMPT " + event.label + " #" + number + " (" + event.text.length() + " chars)\n");
+                    append(event.text);
+                    return;
+                case OUTPUT:
+                case RESPONSE:
+                    writer.write(header + " " + event.kind + "\n");
+                    append(event.text);
+                    return;
+                default:
+                    writer.write(header + " " + event.text + "\n");
+            }
+        }
+
+        void note(String text) {
+            try {
+                closeBody();
+                writer.write("[" + text + "]\n");
+                lastOutputPhase = null;
+            } catch (IOException e) {
+                System.err.println("Failed to write transcript of job " + jobId + ": " + e.getMessage());
+            }
+        }
+
+        private void append(String text) throws IOException {
+            if (text != null) {
+                writer.write(text);
+            }
+            bodyOpen = true;
+        }
+
+        private void closeBody() throws IOException {
+            if (bodyOpen) {
+                writer.write('\n');
+                bodyOpen = false;
+            }
+        }
+
+        void flush() {
+            if (!dirty) {
+                return;
+            }
+            try {
+                writer.flush();
+                dirty = false;
+            } catch (IOException e) {
+                System.err.println("Failed to flush transcript of job " + jobId + ": " + e.getMessage());
+            }
+        }
+
+        void close(String reason) {
+            note(reason);
+            closeQuietly();
+        }
+
+        void closeQuietly() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close transcript of job " + jobId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 在调用方线程上只创建事件对象并放入缓冲区，格式化和 I/O 都在写线程。
+     */
+    private final class TranscriptListener implements PhaseListener {
+        private final String jobId;
+
+        TranscriptListener(String jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void onPhaseStarted(String phaseName) {
+            event(phaseName, "phase started");
+        }
+
+        @Override
+        public void onPrompt(String phaseName, Prompt prompt) {
+            for (Message message : prompt.getInstructions()) {
+                publish(new Event(jobId, phaseName, Kind.PROMPT, message.getMessageType().getValue(),
+                        message.getText() == null ? "" : message.getText()), false);
+            }
+        }
+
+        @Override
+        public void onResponse(String phaseName, String response) {
+            publish(new Event(jobId, phaseName, Kind.RESPONSE, null, response), false);
+        }
+
+        @Override
+        public void onChunk(String phaseName, String chunk) {
+            publish(new Event(jobId, phaseName, Kind.OUTPUT, null, chunk), false);
+        }
+
+        @Override
+        public void onStreamReset(String phaseName) {
+            event(phaseName, "response stream replaced, output restarts");
+        }
+
+        @Override
+        public void onFile(String phaseName, GeneratedFile generatedFile) {
+            event(phaseName, "file " + generatedFile.getFilePath() + " ("
+                    + (generatedFile.getCode() == null ? 0 : generatedFile.getCode().length()) + " chars)");
+        }
+
+        @Override
+        public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+            event(phaseName, "usage: " + promptTokens + " prompt tokens (" + cachedPromptTokens + " cached), "
+                    + completionTokens + " completion tokens");
+        }
+
+        @Override
+        public void onPhaseCompleted(PhaseResult result) {
+            event(result.getPhaseName(), "phase " + result.getStatus() + " in " + result.getDurationMillis() + " ms, "
+                    + (result.getFiles() == null ? 0 : result.getFiles().size()) + " file(s)"
+                    + (result.getErrorMessage() == null ? "" : ": " + result.getErrorMessage()));
+        }
+
+        private void event(String phaseName, String text) {
+            publish(new Event(jobId, phaseName, Kind.EVENT, null, text), false);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.UpstreamLimiterStats;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * 所有发往上游 LLM 的请求都经过这里：限制同时在途的请求数，统计每分钟流式输出的 token 数。
+ * <p>
+ * 并发上限按 AIMD 自适应调整：请求成功且首 token 延迟低于 codegen.upstream.latency-threshold-ms 时，
+ * 上限每经过约一个“窗口”的成功请求加 1；收到 429 时减半，首 token 延迟超过阈值时乘以 0.9。
+ * 非流式调用（没有调用 {@link Permit#recordFirstToken()}）的耗时包含整个输出，不是首 token 延迟，不参与慢响应判断。
+ * 同一波突发里的多个 429 只算一次（两次下调之间至少间隔 codegen.upstream.rate-limit-pause-ms），
+ * 并且在这段时间内暂停放行新的请求。
+ * <p>
+ * 超出上限的调用者按到达顺序排队等待，而不是失败；还没收到任何 token 就被 429 拒绝的调用会重新排队
+ * （最多 codegen.upstream.rate-limit-retries 次），调用方看不到这次 429。
+ * <p>
+ * 每个 {@link LlmEndpoint} 一个实例，见 LlmEndpointConfig。
+ */
+public class UpstreamConcurrencyLimiter {
+
+    private static final double RATE_LIMITED_BACKOFF = 0.5;
+    private static final double SLOW_BACKOFF = 0.9;
+    private static final long WAIT_SLICE_MILLIS = 100;
+    private static final Pattern RATE_LIMITED_MESSAGE = Pattern.compile("^429\\b|too many requests|rate limit", Pattern.CASE_INSENSITIVE);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final long rateLimitPauseNanos;
+    private final long maxTokensPerMinute;
+    private final int rateLimitRetries;
+
+    // 公平锁 + 每个等待者一个 Condition：放行顺序严格按排队顺序，而不是依赖 signalAll 后的抢锁结果
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+
+    private final TokenWindow tokenWindow = new TokenWindow();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong slowResponses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong limitDecreases = new AtomicLong();
+    private volatile long lastLatencyMillis;
+
+    public UpstreamConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMs, long rateLimitPauseMs,
+                                      long maxTokensPerMinute, int rateLimitRetries) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid upstream limit range [" + minLimit + ", " + maxLimit + "]");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+        this.rateLimitPauseNanos = TimeUnit.MILLISECONDS.toNanos(rateLimitPauseMs);
+        this.maxTokensPerMinute = maxTokensPerMinute;
+        this.rateLimitRetries = rateLimitRetries;
+        this.pausedUntilNanos = System.nanoTime();
+        this.lastDecreaseNanos = pausedUntilNanos - rateLimitPauseNanos;
+    }
+
+    /**
+     * 排队拿到许可后执行一次上游调用。流式调用在收到第一个片段时调用 {@link Permit#recordFirstToken()}，
+     * 并通过 {@link Permit#recordTokens(long)} 上报输出的 token 数。
+     */
+    public <T> T execute(UpstreamCall<T> call) throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            Permit permit = acquire();
+            try {
+                T result = call.call(permit);
+                onSuccess(permit);
+                return result;
+            } catch (Exception e) {
+                if (!isRateLimited(e)) {
+                    failures.incrementAndGet();
+                    throw e;
+                }
+                onRateLimited();
+                // 已经输出过内容的流不能透明地重来，交给调用方处理
+                if (permit.firstTokenNanos != 0 || attempt >= rateLimitRetries) {
+                    throw e;
+                }
+                System.out.println("Upstream rate limited (429), re-queueing request, attempt " + (attempt + 1) + " of " + rateLimitRetries);
+            } finally {
+                release();
+            }
+        }
+    }
+
+    Permit acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && canAdmit(System.nanoTime())) {
+                inFlight++;
+                return new Permit(inFlight);
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            waiters.addLast(waiter);
+            try {
+                while (waiter.permit == null) {
+                    // 定时醒来：暂停期结束或 token 窗口滑动后不会有 release 来唤醒等待者
+                    waiter.condition.await(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS);
+                    dispatch();
+                }
+                return waiter.permit;
+            } catch (InterruptedException e) {
+                if (waiter.permit != null) {
+                    // 中断和放行同时发生：许可已经算在 inFlight 里，交还给下一个等待者
+                    inFlight--;
+                    dispatch();
+                } else {
+                    waiters.remove(waiter);
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用时必须持有 lock
+    private void dispatch() {
+        long now = System.nanoTime();
+        while (!waiters.isEmpty() && canAdmit(now)) {
+            Waiter head = waiters.pollFirst();
+            inFlight++;
+            head.permit = new Permit(inFlight);
+            head.condition.signal();
+        }
+    }
+
+    private boolean canAdmit(long now) {
+        return inFlight < (int) limit
+                && now - pausedUntilNanos >= 0
+                && (maxTokensPerMinute <= 0 || tokenWindow.lastMinute() < maxTokensPerMinute);
+    }
+
+    private void onSuccess(Permit permit) {
+        successes.incrementAndGet();
+        long end = System.nanoTime();
+        boolean streamed = permit.firstTokenNanos != 0;
+        long latency = permit.firstTokenNanos - permit.startNanos;
+        if (streamed) {
+            lastLatencyMillis = TimeUnit.NANOSECONDS.toMillis(latency);
+        }
+        lock.lock();
+        try {
+            if (streamed && latency > latencyThresholdNanos) {
+                slowResponses.incrementAndGet();
+                decrease(SLOW_BACKOFF, end, "first token after " + lastLatencyMillis + " ms");
+            } else if (permit.inFlightAtStart * 2 >= (int) limit) {
+                // 只有上限确实被用到一半以上时才增长，空闲时上限不会无限膨胀
+                int before = (int) limit;
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+                if ((int) limit != before) {
+                    System.out.println("Upstream concurrency limit raised to " + (int) limit);
+                }
+                dispatch();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onRateLimited() {
+        rateLimited.incrementAndGet();
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            if (decrease(RATE_LIMITED_BACKOFF, now, "429 from upstream")) {
+                pausedUntilNanos = now + rateLimitPauseNanos;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用时必须持有 lock；同一波拥塞只下调一次
+    private boolean decrease(double ratio, long now, String reason) {
+        if (now - lastDecreaseNanos < rateLimitPauseNanos) {
+            return false;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * ratio);
+        limitDecreases.incrementAndGet();
+        System.out.println("Upstream concurrency limit lowered to " + (int) limit + " (" + reason + ")");
+        return true;
+    }
+
+    public static boolean isRateLimited(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WebClientResponseException responseException) {
+                return responseException.getStatusCode().value() == 429;
+            }
+            if (cause instanceof RestClientResponseException responseException) {
+                return responseException.getStatusCode().value() == 429;
+            }
+            // Spring AI 把 RestClient 的错误响应转换成 "状态码 - 响应体" 形式的 NonTransientAiException
+            if (cause.getMessage() != null && RATE_LIMITED_MESSAGE.matcher(cause.getMessage()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 现在发起一个新请求能否不排队直接放行。
+     */
+    public boolean hasSpareCapacity() {
+        lock.lock();
+        try {
+            return waiters.isEmpty() && canAdmit(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public UpstreamLimiterStats getStats() {
+        int currentLimit;
+        int currentInFlight;
+        int queueDepth;
+        lock.lock();
+        try {
+            currentLimit = (int) limit;
+            currentInFlight = inFlight;
+            queueDepth = waiters.size();
+        } finally {
+            lock.unlock();
+        }
+        return new UpstreamLimiterStats(currentLimit, minLimit, maxLimit, currentInFlight, queueDepth, tokenWindow.lastMinute(),
+                maxTokensPerMinute, successes.get(), rateLimited.get(), slowResponses.get(), failures.get(), limitDecreases.get(),
+                lastLatencyMillis);
+    }
+
+    @FunctionalInterface
+    public interface UpstreamCall<T> {
+        T call(Permit permit) throws Exception;
+    }
+
+    /**
+     * 一次上游调用占用的许可。
+     */
+    public final class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inFlightAtStart;
+        private volatile long firstTokenNanos;
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void recordFirstToken() {
+            if (firstTokenNanos == 0) {
+                firstTokenNanos = System.nanoTime();
+            }
+        }
+
+        public void recordTokens(long tokens) {
+            tokenWindow.add(tokens);
+        }
+    }
+
+    private static final class Waiter {
+        private final Condition condition;
+        private Permit permit;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+
+    /**
+     * 最近 60 秒的 token 数，按秒分桶。
+     */
+    private static final class TokenWindow {
+        private final long[] counts = new long[60];
+        private final long[] seconds = new long[60];
+
+        synchronized void add(long tokens) {
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            int bucket = (int) Math.floorMod(second, counts.length);
+            if (seconds[bucket] != second) {
+                seconds[bucket] = second;
+                counts[bucket] = 0;
+            }
+            counts[bucket] += tokens;
+        }
+
+        synchronized long lastMinute() {
+            long now = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (now - seconds[i] < counts.length) {
+                    total += counts[i];
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.aiarchdesigner.service.phase;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 一个代码生成阶段（例如 Frontend / Backend / README）。
+ * 阶段通过 dependsOn 声明它需要哪些其它阶段的 GeneratedFile 作为输入，
+ * 没有依赖关系的阶段会被 PhaseGraphExecutor 并行执行。
+ */
+public class GenerationPhase {
+    private final String name;
+    private final List<String> dependsOn;
+    private final Function<PhaseInputs, List<GeneratedFile>> action;
+
+    public GenerationPhase(String name, List<String> dependsOn, Function<PhaseInputs, List<GeneratedFile>> action) {
+        this.name = name;
+        this.dependsOn = dependsOn == null ? List.of() : List.copyOf(dependsOn);
+        this.action = action;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDependsOn() {
+        return dependsOn;
+    }
+
+    public Function<PhaseInputs, List<GeneratedFile>> getAction() {
+        return action;
+    }
+}
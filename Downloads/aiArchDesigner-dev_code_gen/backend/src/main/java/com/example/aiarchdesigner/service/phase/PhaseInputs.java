@@ -0,0 +1,37 @@
+package com.example.aiarchdesigner.service.phase;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 传给阶段的输入：设计文档内容以及其依赖阶段产出的文件。
+ */
+public class PhaseInputs {
+    private final String designDocumentContent;
+    private final Map<String, List<GeneratedFile>> dependencyFiles;
+
+    public PhaseInputs(String designDocumentContent, Map<String, List<GeneratedFile>> dependencyFiles) {
+        this.designDocumentContent = designDocumentContent;
+        this.dependencyFiles = dependencyFiles;
+    }
+
+    public String getDesignDocumentContent() {
+        return designDocumentContent;
+    }
+
+    public List<GeneratedFile> getFiles(String phaseName) {
+        return dependencyFiles.getOrDefault(phaseName, List.of());
+    }
+
+    /**
+     * All files produced by the dependency phases, in the order the dependencies were declared.
+     */
+    public List<GeneratedFile> getAllDependencyFiles() {
+        List<GeneratedFile> all = new ArrayList<>();
+        dependencyFiles.values().forEach(all::addAll);
+        return all;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.aiarchdesigner.service.phase;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.PhaseResult;
+import org.springframework.ai.chat.prompt.Prompt;
+
+/**
+ * Callback for phase progress. Methods are invoked from the phase worker threads.
+ */
+public interface PhaseListener {
+
+    PhaseListener NO_OP = new PhaseListener() {
+    };
+
+    default void onPhaseStarted(String phaseName) {
+    }
+
+    /**
+     * The prompt of an LLM call about to be made for the phase (also reported when the response comes from the cache).
+     * Continuation requests report their own, longer prompt.
+     */
+    default void onPrompt(String phaseName, Prompt prompt) {
+    }
+
+    /**
+     * The complete response of a non-streamed LLM call made for the phase (the file planning call).
+     */
+    default void onResponse(String phaseName, String response) {
+    }
+
+    /**
+     * A streamed LLM output chunk. Called on the thread draining the phase's response stream, so a slow
+     * implementation slows the phase down (and, through the bounded demand HedgedLlmStreamer requests from
+     * each response stream, the upstream read).
+     */
+    default void onChunk(String phaseName, String chunk) {
+    }
+
+    /**
+     * The phase's response stream was replaced by another request (a hedged request that finished first, or a retry).
+     * Chunks delivered so far are void; the replacement's output follows from the beginning.
+     */
+    default void onStreamReset(String phaseName) {
+    }
+
+    /**
+     * A file parsed out of the phase's response stream, delivered as soon as its JSON element closes.
+     */
+    default void onFile(String phaseName, GeneratedFile generatedFile) {
+    }
+
+    /**
+     * Token usage of one LLM call made for the phase. The counts come from the provider when the response reports them,
+     * otherwise from the local tokenizer (pre-flight prompt count and streamed completion). cachedPromptTokens is the part of
+     * the prompt served from the provider's prefix cache, 0 when unknown. A phase may report several calls (per-file
+     * generation, retries of the whole phase).
+     */
+    default void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+    }
+
+    default void onPhaseCompleted(PhaseResult result) {
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.aiarchdesigner.service.prompt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的提示词模板：编译时把模板切成固定文本段和占位符，渲染时只按顺序拼接，不再解析模板。
+ * <p>
+ * 只有 {@code {小写标识符}} 形式的片段是占位符，其余花括号（JSON 示例、代码片段）都按原样输出，
+ * 不需要像 StringTemplate 那样写成 {{ }}；占位符的值也原样插入，不会被再次解析。
+ */
+public final class CompiledPromptTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([a-z][a-z0-9_]*)}");
+
+    private final String name;
+    private final String[] segments;
+    private final String[] slots;
+    private final int literalLength;
+
+    private CompiledPromptTemplate(String name, String[] segments, String[] slots) {
+        this.name = name;
+        this.segments = segments;
+        this.slots = slots;
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @throws IllegalArgumentException 模板中的占位符与 expectedPlaceholders 不一致
+     */
+    public static CompiledPromptTemplate compile(String name, String template, Set<String> expectedPlaceholders) {
+        List<String> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int literalStart = 0;
+        while (matcher.find()) {
+            segments.add(template.substring(literalStart, matcher.start()));
+            slots.add(matcher.group(1));
+            literalStart = matcher.end();
+        }
+        segments.add(template.substring(literalStart));
+
+        Set<String> found = new LinkedHashSet<>(slots);
+        if (!found.equals(expectedPlaceholders)) {
+            Set<String> unexpected = new LinkedHashSet<>(found);
+            unexpected.removeAll(expectedPlaceholders);
+            Set<String> missing = new LinkedHashSet<>(expectedPlaceholders);
+            missing.removeAll(found);
+            throw new IllegalArgumentException("Prompt template '" + name + "' placeholders do not match: unexpected "
+                    + unexpected + ", missing " + missing);
+        }
+        return new CompiledPromptTemplate(name, segments.toArray(new String[0]), slots.toArray(new String[0]));
+    }
+
+    public String render(Map<String, ?> values) {
+        String[] rendered = new String[slots.length];
+        int length = literalLength;
+        for (int i = 0; i < slots.length; i++) {
+            Object value = values.get(slots[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing value for placeholder '" + slots[i] + "' of prompt template '" + name + "'");
+            }
+            rendered[i] = value.toString();
+            length += rendered[i].length();
+        }
+        StringBuilder prompt = new StringBuilder(length);
+        for (int i = 0; i < slots.length; i++) {
+            prompt.append(segments[i]).append(rendered[i]);
+        }
+        return prompt.append(segments[slots.length]).toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getPlaceholders() {
+        return new LinkedHashSet<>(List.of(slots));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.aiarchdesigner.service.prompt;
+
+import com.example.aiarchdesigner.service.PromptProviderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 所有阶段的提示词模板在启动时编译一次并校验占位符，模板写错（占位符拼错、漏写）会让应用启动失败，
+ * 而不是等到某次生成请求时才报 "The template string is not valid"。
+ */
+@Component
+public class PromptTemplateRegistry {
+
+    // 生成阶段共用的前缀：system 消息 + 设计文档消息；各阶段的模板只包含阶段指令
+    public static final String SHARED_SYSTEM = "shared-system";
+    public static final String DESIGN_DOCUMENT = "design-document";
+    public static final String BACKEND = "backend";
+    public static final String FRONTEND = "frontend";
+    public static final String README = "readme";
+    public static final String LIST_FILES = "list-files";
+    public static final String SINGLE_FILE = "single-file";
+    public static final String REGENERATE_FILE = "regenerate-file";
+    public static final String FRONTEND_CHECK = "frontend-check";
+    public static final String CONDENSE = "condense";
+    public static final String CONTINUATION = "continuation";
+
+    public static final String DESIGN_DOCUMENT_CONTENT = "design_document_content";
+    public static final String BACKEND_API_SUMMARY = "backend_api_summary";
+    public static final String GENERATED_FILE_SUMMARY = "generated_file_summary";
+    public static final String TARGET_FILE_PATH = "target_file_path";
+    public static final String PLANNED_FILES = "planned_files";
+    public static final String PREVIOUS_FILE_CONTENT = "previous_file_content";
+    public static final String DESIGN_CHANGES = "design_changes";
+    public static final String PRODUCED_FILES = "produced_files";
+
+    private final Map<String, CompiledPromptTemplate> templates = new LinkedHashMap<>();
+
+    @Autowired
+    public PromptTemplateRegistry(PromptProviderService promptProviderService) {
+        register(SHARED_SYSTEM, promptProviderService.constructSharedSystemPrompt(), Set.of());
+        register(DESIGN_DOCUMENT, promptProviderService.constructDesignDocumentPrompt(), Set.of(DESIGN_DOCUMENT_CONTENT));
+        register(BACKEND, promptProviderService.constructBackendPrompt(), Set.of());
+        register(FRONTEND, promptProviderService.constructFrontendPrompt(), Set.of(BACKEND_API_SUMMARY));
+        register(README, promptProviderService.constructReadmePrompt(), Set.of(GENERATED_FILE_SUMMARY, BACKEND_API_SUMMARY));
+        register(LIST_FILES, promptProviderService.constructListFilesPrompt(), Set.of(DESIGN_DOCUMENT_CONTENT));
+        register(SINGLE_FILE, promptProviderService.constructSingleFilePrompt(),
+                Set.of(TARGET_FILE_PATH, PLANNED_FILES));
+        register(REGENERATE_FILE, promptProviderService.constructRegenerateFilePrompt(),
+                Set.of(TARGET_FILE_PATH, DESIGN_CHANGES, PREVIOUS_FILE_CONTENT, PLANNED_FILES));
+        register(FRONTEND_CHECK, promptProviderService.constructFrontendCheckPrompt(), Set.of(DESIGN_DOCUMENT_CONTENT));
+        register(CONDENSE, promptProviderService.constructCondensePrompt(), Set.of(DESIGN_DOCUMENT_CONTENT));
+        register(CONTINUATION, promptProviderService.constructContinuationPrompt(), Set.of(PRODUCED_FILES));
+        System.out.println("Compiled " + templates.size() + " prompt templates: " + templates.keySet());
+    }
+
+    private void register(String name, String template, Set<String> placeholders) {
+        templates.put(name, CompiledPromptTemplate.compile(name, template, placeholders));
+    }
+
+    public CompiledPromptTemplate get(String name) {
+        CompiledPromptTemplate template = templates.get(name);
+        if (template == null) {
+            throw new IllegalArgumentException("Unknown prompt template: " + name);
+        }
+        return template;
+    }
+
+    public String render(String name, Map<String, ?> values) {
+        return get(name).render(values);
+    }
+}
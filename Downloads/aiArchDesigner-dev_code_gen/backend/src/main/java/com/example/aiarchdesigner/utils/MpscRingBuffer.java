@@ -0,0 +1,74 @@
+package com.example.aiarchdesigner.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 无锁的多生产者单消费者环形缓冲区，容量为 2 的幂。
+ * <p>
+ * 生产者用 CAS 领取一个序号后写入对应槽位，缓冲区已满时 offer 直接返回 false，从不阻塞也不加锁；
+ * 唯一的消费者按序号顺序取出，槽位尚未写入（生产者已领号但还没发布）时视为暂时为空。
+ * 取出的顺序就是领号的顺序，同一个生产者线程的元素保持 offer 的先后顺序。
+ */
+public final class MpscRingBuffer<T> {
+
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+    // 下一个可领取的序号
+    private final AtomicLong producerSequence = new AtomicLong();
+    // 下一个要取出的序号，只由消费者线程写入
+    private final AtomicLong consumerSequence = new AtomicLong();
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("Ring buffer capacity must be at least 2: " + requestedCapacity);
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return false 表示缓冲区已满，元素没有放入
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long sequence;
+        do {
+            sequence = producerSequence.get();
+            if (sequence - consumerSequence.get() >= slots.length()) {
+                return false;
+            }
+        } while (!producerSequence.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, element);
+        return true;
+    }
+
+    /**
+     * 只能由消费者线程调用。
+     *
+     * @return 下一个元素，暂时没有时返回 null
+     */
+    public T poll() {
+        long sequence = consumerSequence.get();
+        int index = (int) sequence & mask;
+        T element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        // 先清空槽位再推进序号，生产者看到空位时槽位一定已经可写
+        slots.lazySet(index, null);
+        consumerSequence.lazySet(sequence + 1);
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return producerSequence.get() == consumerSequence.get();
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.aiarchdesigner.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持。项目仍以 Java 17 编译，运行在 Java 21+ 上时通过反射创建虚拟线程，
+ * 否则 isSupported() 返回 false，由调用方回退到平台线程池。
+ */
+public final class VirtualThreadSupport {
+
+    private static final ThreadFactoryProvider PROVIDER = lookup();
+
+    private VirtualThreadSupport() {
+    }
+
+    public static boolean isSupported() {
+        return PROVIDER != null;
+    }
+
+    public static ThreadFactory newThreadFactory(String namePrefix) {
+        if (PROVIDER == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21+, running on " + Runtime.version());
+        }
+        return PROVIDER.create(namePrefix);
+    }
+
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory threadFactory = newThreadFactory(namePrefix);
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create virtual-thread-per-task executor", e);
+        }
+    }
+
+    private static ThreadFactoryProvider lookup() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Method name = builderClass.getMethod("name", String.class, long.class);
+            Method factory = builderClass.getMethod("factory");
+            return namePrefix -> {
+                try {
+                    Object builder = name.invoke(ofVirtual.invoke(null), namePrefix, 1L);
+                    return (ThreadFactory) factory.invoke(builder);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Unable to create virtual thread factory", e);
+                }
+            };
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private interface ThreadFactoryProvider {
+        ThreadFactory create(String namePrefix);
+    }
+}
@@ -52,39 +52,41 @@ public class fileWriteUtil {
 
     public static void fileWriting(List<GeneratedFile> generatedFiles, Path backendBaseWorkspaceDir) {
         if (generatedFiles != null && !generatedFiles.isEmpty()) {
-            Path workspaceDir = backendBaseWorkspaceDir;
-            try {
-                Files.createDirectories(workspaceDir); // Create the base timestamped directory
-                System.out.println("Writing generated files to: " + workspaceDir.toAbsolutePath());
+            System.out.println("Writing generated files to: " + backendBaseWorkspaceDir.toAbsolutePath());
+            for (GeneratedFile generatedFile : generatedFiles) {
+                writeFile(generatedFile, backendBaseWorkspaceDir);
+            }
+        }
+    }
 
-                for (GeneratedFile generatedFile : generatedFiles) {
-                    if (generatedFile.getFilePath() == null || generatedFile.getFilePath().trim().isEmpty()) {
-                        System.err.println("Skipping file with empty path.");
-                        continue;
-                    }
-                    if (generatedFile.getCode() == null) {
-                        System.err.println("Skipping file " + generatedFile.getFilePath() + " due to null content.");
-                        continue;
-                    }
+    /**
+     * 写入单个文件，供流式解析在每个文件解析完成时立即落盘。
+     */
+    public static void writeFile(GeneratedFile generatedFile, Path workspaceDir) {
+        if (generatedFile.getFilePath() == null || generatedFile.getFilePath().trim().isEmpty()) {
+            System.err.println("Skipping file with empty path.");
+            return;
+        }
+        if (generatedFile.getCode() == null) {
+            System.err.println("Skipping file " + generatedFile.getFilePath() + " due to null content.");
+            return;
+        }
 
-                    Path filePath = workspaceDir.resolve(generatedFile.getFilePath().trim()).normalize();
+        Path filePath = workspaceDir.resolve(generatedFile.getFilePath().trim()).normalize();
 
-                    // Security check: Ensure the resolved path is still within the workspaceDir
-                    if (!filePath.startsWith(workspaceDir)) {
-                        System.err.println("Skipping file due to invalid path (potential directory traversal): " + generatedFile.getFilePath());
-                        continue;
-                    }
+        // Security check: Ensure the resolved path is still within the workspaceDir
+        if (!filePath.startsWith(workspaceDir.normalize())) {
+            System.err.println("Skipping file due to invalid path (potential directory traversal): " + generatedFile.getFilePath());
+            return;
+        }
 
-                    Files.createDirectories(filePath.getParent()); // Create parent directories for the file
-                    Files.writeString(filePath, generatedFile.getCode());
-                    System.out.println("Successfully wrote file: " + filePath);
-                }
-            } catch (IOException e) {
-                System.err.println("Error writing files to disk: " + e.getMessage());
-                e.printStackTrace();
-                // Optionally, you might want to add this error information to the response
-                // For now, we just log and proceed to return the generatedFiles list
-            }
+        try {
+            Files.createDirectories(filePath.getParent()); // Create parent directories for the file
+            Files.writeString(filePath, generatedFile.getCode());
+            System.out.println("Successfully wrote file: " + filePath);
+        } catch (IOException e) {
+            System.err.println("Error writing file " + filePath + " to disk: " + e.getMessage());
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,83 @@
+package com.example.aiarchdesigner.controller;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationJob;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.model.PhaseStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SseGenerationStream 单元测试类
+ */
+public class SseGenerationStreamTest {
+
+    @Test
+    public void eventsAreForwardedInOrderWithPhaseMarkers() {
+        RecordingEmitter emitter = new RecordingEmitter(Integer.MAX_VALUE);
+        SseGenerationStream stream = new SseGenerationStream(emitter);
+        GenerationJob job = stream.start(() -> new GenerationJob("job-1", List.of("Backend")));
+
+        stream.onPhaseStarted("Backend");
+        stream.onChunk("Backend", "[{\"filePath\"");
+        stream.onPhaseCompleted(new PhaseResult("Backend", PhaseStatus.COMPLETED, List.of(), 0, 10, null));
+        job.markCompleted(List.of(new GeneratedFile("App.java", "class App {}")));
+        stream.finish(job);
+
+        assertEquals(List.of("job", "phase-start", "chunk", "phase-complete", "done"), emitter.eventNames());
+        assertTrue(emitter.events.get(2).contains("phase=Backend"));
+        assertTrue(emitter.completed);
+    }
+
+    @Test
+    public void disconnectedClientStopsReceivingButDoesNotFailTheJob() {
+        RecordingEmitter emitter = new RecordingEmitter(2);
+        SseGenerationStream stream = new SseGenerationStream(emitter);
+        GenerationJob job = stream.start(() -> new GenerationJob("job-2", List.of("Backend")));
+
+        stream.onPhaseStarted("Backend");
+        stream.onChunk("Backend", "a");
+        stream.onChunk("Backend", "b");
+        job.markFailed("boom");
+        stream.finish(job);
+
+        assertEquals(List.of("job", "phase-start"), emitter.eventNames());
+        assertFalse(emitter.completed);
+    }
+
+    static class RecordingEmitter extends SseEmitter {
+        private final int acceptBeforeDisconnect;
+        private final List<String> events = new ArrayList<>();
+        private boolean completed;
+
+        RecordingEmitter(int acceptBeforeDisconnect) {
+            this.acceptBeforeDisconnect = acceptBeforeDisconnect;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (events.size() >= acceptBeforeDisconnect) {
+                throw new IOException("Broken pipe");
+            }
+            events.add(builder.build().stream().map(data -> String.valueOf(data.getData())).collect(Collectors.joining()));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        List<String> eventNames() {
+            return events.stream()
+                    .map(event -> event.substring("event:".length(), event.indexOf('\n')))
+                    .collect(Collectors.toList());
+        }
+    }
+}
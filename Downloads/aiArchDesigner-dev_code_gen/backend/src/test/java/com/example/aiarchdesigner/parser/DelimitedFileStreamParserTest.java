@@ -0,0 +1,76 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DelimitedFileStreamParser 单元测试类
+ */
+public class DelimitedFileStreamParserTest {
+
+    private static final String RESPONSE = "Here are the files.\n" +
+            "=== FILE: src/main/java/com/example/Application.java ===\n" +
+            "package com.example;\n" +
+            "\n" +
+            "public class Application {\n" +
+            "    String s = \"{[\\\"\";\n" +
+            "}\n" +
+            "=== END FILE ===\n" +
+            "=== FILE: README.md ===\r\n" +
+            "# 操作日志\r\n" +
+            "=====\r\n" +
+            "```bash\r\n" +
+            "mvn spring-boot:run\r\n" +
+            "```\r\n" +
+            "😀\r\n" +
+            "=== END FILE ===";
+
+    @Test
+    public void parsesRawCodeFedOneCharacterAtATime() {
+        List<GeneratedFile> files = new ArrayList<>();
+        DelimitedFileStreamParser parser = new DelimitedFileStreamParser(files::add);
+
+        for (int i = 0; i < RESPONSE.length(); i++) {
+            parser.feed(RESPONSE.substring(i, i + 1));
+        }
+
+        assertTrue(parser.finish());
+        assertEquals(2, files.size());
+        assertEquals("src/main/java/com/example/Application.java", files.get(0).getFilePath());
+        assertEquals("package com.example;\n\npublic class Application {\n    String s = \"{[\\\"\";\n}\n", files.get(0).getCode());
+        assertEquals("README.md", files.get(1).getFilePath());
+        assertEquals("# 操作日志\n=====\n```bash\nmvn spring-boot:run\n```\n😀\n", files.get(1).getCode());
+    }
+
+    @Test
+    public void missingEndMarkerFencesAndTruncation() {
+        List<GeneratedFile> files = new ArrayList<>();
+        DelimitedFileStreamParser parser = new DelimitedFileStreamParser(files::add);
+
+        parser.feed("=== FILE: a.js ===\n```javascript\nconst a = 1;\n```\n=== FILE: b.js ===\nconst b = 2;\n"
+                + "=== END FILE ===\n=== FILE: c.js ===\nconst c =");
+
+        assertFalse(parser.finish());
+        assertTrue(parser.isStarted());
+        assertEquals(2, files.size());
+        assertEquals("const a = 1;\n", files.get(0).getCode());
+        assertEquals("const b = 2;\n", files.get(1).getCode());
+        assertFalse(new DelimitedFileStreamParser(file -> fail()).isStarted());
+    }
+
+    @Test
+    public void formatRoundTrips() {
+        List<GeneratedFile> files = List.of(new GeneratedFile("A.java", "class A {}\n"), new GeneratedFile("b.md", "# b"));
+
+        List<GeneratedFile> parsed = DelimitedFileStreamParser.parse(DelimitedFileStreamParser.format(files));
+
+        assertEquals(2, parsed.size());
+        assertEquals("class A {}\n", parsed.get(0).getCode());
+        assertEquals("# b\n", parsed.get(1).getCode());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.DesignSection;
+import com.example.aiarchdesigner.model.SectionKind;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DesignDocumentSectioner 单元测试类
+ */
+public class DesignDocumentSectionerTest {
+
+    private static final String DOCUMENT = "# 技术设计文档\n" +
+            "系统用于记录操作日志。\n" +
+            "\n" +
+            "## 库表设计\n" +
+            "### 日志表 (t_log)\n" +
+            "| 字段 | 类型 |\n" +
+            "|---|---|\n" +
+            "| log_id | bigint |\n" +
+            "\n" +
+            "说明文字\n" +
+            "\n" +
+            "## 关键时序图\n" +
+            "```mermaid\n" +
+            "sequenceDiagram\n" +
+            "    Client->>Service: POST /api/logs\n" +
+            "```\n";
+
+    @Test
+    public void splitsByHeadingAndBlockKind() {
+        List<DesignSection> sections = DesignDocumentSectioner.split(DOCUMENT);
+
+        assertEquals(List.of(
+                "技术设计文档#TEXT[0]",
+                "技术设计文档 > 库表设计 > 日志表 (t_log)#TABLE[0]",
+                "技术设计文档 > 库表设计 > 日志表 (t_log)#TEXT[0]",
+                "技术设计文档 > 关键时序图#MERMAID[0]"
+        ), sections.stream().map(DesignSection::getId).collect(Collectors.toList()));
+        assertEquals(SectionKind.MERMAID, sections.get(3).getKind());
+        assertEquals("sequenceDiagram\n    Client->>Service: POST /api/logs\n", sections.get(3).getContent());
+        assertEquals("|字段|类型|\n|---|---|\n|log_id|bigint|\n", sections.get(1).getContent());
+    }
+
+    @Test
+    public void layoutOnlyEditsProduceIdenticalSections() {
+        String reformatted = DOCUMENT
+                .replace("| log_id | bigint |", "|   log_id   |  bigint|")
+                .replace("系统用于记录操作日志。", "  系统用于记录操作日志。  ");
+
+        List<String> original = DesignDocumentSectioner.split(DOCUMENT).stream().map(DesignSection::getContent).collect(Collectors.toList());
+        List<String> edited = DesignDocumentSectioner.split(reformatted).stream().map(DesignSection::getContent).collect(Collectors.toList());
+        assertEquals(original, edited);
+    }
+}
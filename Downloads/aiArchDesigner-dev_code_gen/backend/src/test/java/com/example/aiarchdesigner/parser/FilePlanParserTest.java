@@ -0,0 +1,24 @@
+package com.example.aiarchdesigner.parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FilePlanParser 单元测试类
+ */
+public class FilePlanParserTest {
+
+    @Test
+    public void readsTheFirstArrayAndIgnoresFencesAndProse() throws Exception {
+        StringBuilder response = new StringBuilder("Here is the plan:\n```json\n[\n  \"backend/pom.xml\",\n  \"README.md\",\n"
+                + "  {\"ignored\": [\"x\"]},\n  \"frontend/src/App.vue\"\n]\n```\nLet me know if [anything] is missing.");
+
+        assertEquals(List.of("backend/pom.xml", "README.md", "frontend/src/App.vue"), FilePlanParser.parse(response));
+        assertEquals(List.of(), FilePlanParser.parse("I cannot produce a file list."));
+        assertThrows(IOException.class, () -> FilePlanParser.parse("[\"README.md\", \"backend/"));
+    }
+}
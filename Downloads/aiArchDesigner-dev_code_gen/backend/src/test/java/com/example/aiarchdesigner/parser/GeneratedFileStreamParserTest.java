@@ -0,0 +1,104 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GeneratedFileStreamParser 单元测试类
+ */
+public class GeneratedFileStreamParserTest {
+
+    private static final String FENCED_RESPONSE = "```json\n" +
+            "[\n" +
+            "  {\n" +
+            "    \"filePath\": \"src/main/java/com/example/Application.java\",\n" +
+            "    \"code\": \"package com.example;\\n\\n@SpringBootApplication\\npublic class Application {\\n    String s = \\\"{[\\\";\\n}\"\n" +
+            "  },\n" +
+            "  {\n" +
+            "    \"filePath\": \"README.md\",\n" +
+            "    \"code\": \"# 操作日志\\n```bash\\nmvn spring-boot:run\\n```\\n😀\"\n" +
+            "  }\n" +
+            "]\n" +
+            "```";
+
+    @Test
+    public void parsesFencedResponseFedOneCharacterAtATime() throws Exception {
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+
+        for (int i = 0; i < FENCED_RESPONSE.length(); i++) {
+            parser.feed(FENCED_RESPONSE.substring(i, i + 1));
+        }
+
+        assertTrue(parser.finish());
+        assertEquals(2, files.size());
+        assertEquals("src/main/java/com/example/Application.java", files.get(0).getFilePath());
+        assertTrue(files.get(0).getCode().contains("String s = \"{[\";"));
+        // 字符串内部的 ``` 不能被当作围栏去掉
+        assertEquals("# 操作日志\n```bash\nmvn spring-boot:run\n```\n😀", files.get(1).getCode());
+    }
+
+    @Test
+    public void emitsEachFileAsSoonAsItsElementCloses() throws Exception {
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+        int firstElementEnd = FENCED_RESPONSE.indexOf("},") + 1;
+
+        parser.feed(FENCED_RESPONSE.substring(0, firstElementEnd - 1));
+        assertEquals(0, files.size());
+        parser.feed(FENCED_RESPONSE.substring(firstElementEnd - 1, firstElementEnd));
+        assertEquals(1, files.size());
+
+        parser.feed(FENCED_RESPONSE.substring(firstElementEnd));
+        assertEquals(2, files.size());
+        assertTrue(parser.isComplete());
+    }
+
+    @Test
+    public void truncatedResponseKeepsCompleteFiles() throws Exception {
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+
+        parser.feed(FENCED_RESPONSE.substring(0, FENCED_RESPONSE.indexOf("# 操作日志")));
+
+        assertFalse(parser.finish());
+        assertEquals(1, files.size());
+    }
+
+    @Test
+    public void proseBeforeAndAfterTheArrayIsIgnored() throws Exception {
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+
+        parser.feed("Here are the files:\n[{\"filePath\": \"a.txt\", \"code\": \"a\", \"extra\": {\"k\": [1, 2]}}]\nHope this helps!");
+
+        assertTrue(parser.finish());
+        assertEquals(1, files.size());
+        assertEquals("a", files.get(0).getCode());
+    }
+
+    @Test
+    public void largeResponseAndSplitSurrogatesAreEncodedCorrectly() throws Exception {
+        String code = "// 日志 😀 é\n".repeat(2000);
+        String json = "[{\"filePath\": \"a.txt\", \"code\": \"" + code.replace("\n", "\\n") + "\"}]";
+
+        // 整体送入：超过一个输入块，按块交给解析器
+        List<GeneratedFile> whole = GeneratedFileStreamParser.parse("```json\n" + json + "\n```");
+        assertEquals(1, whole.size());
+        assertEquals(code, whole.get(0).getCode());
+
+        // 逐个字符送入：代理对的两半分在两个分片里
+        List<GeneratedFile> files = new ArrayList<>();
+        GeneratedFileStreamParser parser = new GeneratedFileStreamParser(files::add);
+        for (int i = 0; i < json.length(); i++) {
+            parser.feed(json, i, i + 1);
+        }
+        assertTrue(parser.finish());
+        assertEquals(code, files.get(0).getCode());
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * JavaApiSignatureExtractor 单元测试类
+ */
+public class JavaApiSignatureExtractorTest {
+
+    private static final String CONTROLLER = "package com.example.logs.controller;\n" +
+            "\n" +
+            "import org.springframework.web.bind.annotation.*;\n" +
+            "\n" +
+            "/** 日志接口 // 不是注释结束 */\n" +
+            "@RestController\n" +
+            "@CrossOrigin(origins = \"http://localhost:3000\")\n" +
+            "@RequestMapping(\"/api/logs/\")\n" +
+            "public class LogController {\n" +
+            "    private final LogService logService;\n" +
+            "\n" +
+            "    public LogController(LogService logService) {\n" +
+            "        this.logService = logService;\n" +
+            "    }\n" +
+            "\n" +
+            "    // 分页查询\n" +
+            "    @GetMapping\n" +
+            "    public Result<PageResult<LogDTO>> list(@RequestParam(defaultValue = \"1\") int page,\n" +
+            "                                           @RequestParam(value = \"page_size\", required = false) Integer size,\n" +
+            "                                           HttpServletRequest request) {\n" +
+            "        if (page < 1) { return Result.fail(\"bad page\"); }\n" +
+            "        return Result.ok(logService.list(page, size));\n" +
+            "    }\n" +
+            "\n" +
+            "    @PostMapping(value = \"/{id}/archive\", produces = \"application/json\")\n" +
+            "    @ResponseStatus(HttpStatus.CREATED)\n" +
+            "    public ResponseEntity<Map<String, Object>> archive(@PathVariable(\"id\") final Long logId,\n" +
+            "                                                       @Valid @RequestBody ArchiveRequest body) {\n" +
+            "        return ResponseEntity.ok(Map.of());\n" +
+            "    }\n" +
+            "\n" +
+            "    @RequestMapping(path = \"/export\", method = RequestMethod.POST)\n" +
+            "    public void export(HttpServletResponse response) {\n" +
+            "    }\n" +
+            "}\n";
+
+    private static final String LOG_DTO = "package com.example.logs.dto;\n" +
+            "\n" +
+            "@Data\n" +
+            "public class LogDTO extends BaseDTO {\n" +
+            "    private static final long serialVersionUID = 1L;\n" +
+            "    @NotBlank(message = \"operator required\")\n" +
+            "    private String operator;\n" +
+            "    private LogLevel level;\n" +
+            "    private List<String> tags = new ArrayList<>();\n" +
+            "\n" +
+            "    public String getOperator() { return operator; }\n" +
+            "}\n";
+
+    @Test
+    public void endpointsAndReferencedTypesAreSummarized() {
+        List<GeneratedFile> files = List.of(
+                new GeneratedFile("src/main/java/com/example/logs/controller/LogController.java", CONTROLLER),
+                new GeneratedFile("src/main/java/com/example/logs/dto/LogDTO.java", LOG_DTO),
+                new GeneratedFile("src/main/java/com/example/logs/dto/BaseDTO.java",
+                        "public abstract class BaseDTO { protected Long id; protected LocalDateTime createdAt; }"),
+                new GeneratedFile("src/main/java/com/example/logs/dto/LogLevel.java",
+                        "public enum LogLevel { INFO(\"info\"), WARN(\"warn\"), ERROR(\"error\"); private final String code; }"),
+                new GeneratedFile("src/main/java/com/example/logs/dto/ArchiveRequest.java",
+                        "public record ArchiveRequest(@NotNull String reason, boolean notify) {}"),
+                new GeneratedFile("src/main/java/com/example/logs/service/LogService.java",
+                        "@Service public class LogService { private final LogMapper logMapper; }"),
+                new GeneratedFile("src/main/resources/application.properties", "server.port=8080"));
+
+        String summary = JavaApiSignatureExtractor.summarize(files);
+
+        assertTrue(summary.contains("- GET /api/logs -> Result<PageResult<LogDTO>> list(@RequestParam(defaultValue=\"1\") int page, "
+                + "@RequestParam(value=\"page_size\",required=false) Integer size)\n"), summary);
+        assertTrue(summary.contains("- POST /api/logs/{id}/archive -> ResponseEntity<Map<String, Object>> archive("
+                + "@PathVariable(\"id\") Long logId, @RequestBody ArchiveRequest body)\n"), summary);
+        assertTrue(summary.contains("- POST /api/logs/export -> void export()\n"), summary);
+        assertTrue(summary.contains("- LogDTO extends BaseDTO { String operator; LogLevel level; List<String> tags }\n"), summary);
+        assertTrue(summary.contains("- BaseDTO { Long id; LocalDateTime createdAt }\n"), summary);
+        assertTrue(summary.contains("- enum LogLevel { INFO, WARN, ERROR }\n"), summary);
+        assertTrue(summary.contains("- ArchiveRequest { String reason; boolean notify }\n"), summary);
+        assertFalse(summary.contains("LogService"));
+        assertFalse(summary.contains("serialVersionUID"));
+        assertFalse(summary.contains("bad page"));
+        // 摘要只有原代码的一小部分
+        int rawLength = files.stream().mapToInt(file -> file.getCode().length()).sum();
+        assertTrue(summary.length() < rawLength, summary.length() + " >= " + rawLength);
+    }
+
+    @Test
+    public void summaryIsEmptyWithoutControllersAndCappedWhenLong() {
+        assertEquals("", JavaApiSignatureExtractor.summarize(List.of(new GeneratedFile("A.java", LOG_DTO))));
+        assertEquals("", JavaApiSignatureExtractor.summarize(null));
+
+        String summary = JavaApiSignatureExtractor.summarize(List.of(new GeneratedFile("LogController.java", CONTROLLER)), 200);
+        assertTrue(summary.length() <= 260, summary);
+        assertTrue(summary.contains("more lines omitted"), summary);
+    }
+}
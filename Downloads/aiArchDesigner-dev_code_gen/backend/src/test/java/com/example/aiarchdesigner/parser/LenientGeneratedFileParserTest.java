@@ -0,0 +1,153 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.parser.LenientGeneratedFileParser.Repair;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LenientGeneratedFileParser 单元测试类。语料在 src/test/resources/malformed-responses，都是严格解析器会拒绝的真实输出形态。
+ */
+public class LenientGeneratedFileParserTest {
+
+    @Test
+    public void corpusIsRejectedByTheStrictParser() throws Exception {
+        for (String name : List.of("unescaped-newlines.txt", "unescaped-quotes.txt", "trailing-commas.txt", "prose-and-invalid-escapes.txt",
+                "wrapped-unescaped-newlines.txt")) {
+            String response = corpus(name);
+            assertThrows(JsonProcessingException.class, () -> GeneratedFileStreamParser.parse(response), name);
+        }
+    }
+
+    @Test
+    public void repairsUnescapedControlCharacters() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("unescaped-newlines.txt"));
+
+        assertEquals(List.of("backend/src/main/java/com/example/todo/model/Todo.java", "backend/src/main/resources/application.properties"),
+                paths(result));
+        assertEquals("package com.example.todo.model;\n\npublic class Todo {\n\tprivate Long id;\n\tprivate String title;\n\n"
+                + "\tpublic Long getId() {\n\t\treturn id;\n\t}\n}\n", result.getFiles().get(0).getCode());
+        assertEquals("server.port=8080\nspring.datasource.url=jdbc:h2:mem:todo", result.getFiles().get(1).getCode());
+        assertEquals(Map.of(Repair.UNESCAPED_CONTROL_CHARACTER, 17), result.getRepairs());
+        assertFalse(result.isTruncated());
+    }
+
+    @Test
+    public void repairsUnescapedQuotesInsideCode() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("unescaped-quotes.txt"));
+
+        assertEquals(2, result.getFiles().size());
+        String controller = result.getFiles().get(0).getCode();
+        assertTrue(controller.contains("@RequestMapping(\"/api/todos\")\n"));
+        assertTrue(controller.contains("log.info(\"loading {}\", id);"));
+        assertTrue(controller.endsWith("}\n"));
+        assertEquals("export const get = (id) => fetch(`/api/todos/${id}`, { headers: { \"Accept\": \"application/json\" } });\n"
+                + "const labels = { \"a\": \"x\", \"b\": 2 };\n", result.getFiles().get(1).getCode());
+        assertEquals(Map.of(Repair.UNESCAPED_QUOTE, 16), result.getRepairs());
+    }
+
+    @Test
+    public void dropsTrailingCommasAndSkipsProse() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("trailing-commas.txt"));
+
+        assertEquals(List.of("README.md", "docs/api.md"), paths(result));
+        assertEquals("# Todo\n\nRun `mvn spring-boot:run`.\n", result.getFiles().get(0).getCode());
+        assertEquals(Map.of(Repair.TRAILING_COMMA, 2), result.getRepairs());
+    }
+
+    @Test
+    public void collectsFilesFromEveryFencedBlock() throws Exception {
+        String response = corpus("multiple-blocks.txt");
+        // 严格解析器在第一个数组闭合后停止，只拿到一个文件
+        assertEquals(1, GeneratedFileStreamParser.parse(response).size());
+
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(response);
+
+        assertEquals(List.of("backend/src/main/java/com/example/todo/model/Todo.java",
+                "backend/src/main/java/com/example/todo/repository/TodoRepository.java",
+                "backend/src/main/java/com/example/todo/service/TodoService.java"), paths(result));
+        assertEquals(Map.of(Repair.MULTIPLE_BLOCKS, 1), result.getRepairs());
+    }
+
+    @Test
+    public void keepsInvalidEscapesLiterally() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("prose-and-invalid-escapes.txt"));
+
+        assertEquals(1, result.getFiles().size());
+        String code = result.getFiles().get(0).getCode();
+        assertTrue(code.contains("Pattern.compile(\"\\d+\");"));
+        assertTrue(code.contains("\"C:\\Users\\Public\";"));
+        assertEquals(Map.of(Repair.INVALID_ESCAPE, 3), result.getRepairs());
+    }
+
+    @Test
+    public void returnsCompleteFilesOfATruncatedResponse() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("truncated-mid-file.txt"));
+
+        assertEquals(List.of("frontend/src/App.vue", "frontend/src/main.js"), paths(result));
+        assertEquals("import { createApp } from 'vue'\ncreateApp(App).mount('#app')\n", result.getFiles().get(1).getCode());
+        assertTrue(result.isTruncated());
+    }
+
+    @Test
+    public void descendsIntoTheFilesWrapper() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("wrapped-unescaped-newlines.txt"));
+
+        assertEquals(List.of("backend/src/main/java/com/example/todo/model/Todo.java", "backend/src/main/resources/application.properties"),
+                paths(result));
+        assertEquals("package com.example.todo.model;\n\npublic class Todo {\n\tprivate Long id;\n}\n", result.getFiles().get(0).getCode());
+        assertEquals("server.port=8080\nspring.datasource.url=jdbc:h2:mem:todo", result.getFiles().get(1).getCode());
+        assertEquals(Map.of(Repair.UNESCAPED_CONTROL_CHARACTER, 7), result.getRepairs());
+        assertFalse(result.isTruncated());
+
+        // 任意层级的文件数组都收集；每个外层对象算作一块
+        LenientGeneratedFileParser.Result nested = LenientGeneratedFileParser.parse(
+                "{\"project\": {\"name\": \"todo\", \"files\": [{\"filePath\": \"A.java\", \"code\": \"class A {}\"}]}}\n"
+                        + "{\"files\": [{\"filePath\": \"B.java\", \"code\": \"class B {}\"}]}");
+        assertEquals(List.of("A.java", "B.java"), paths(nested));
+        assertEquals(Map.of(Repair.MULTIPLE_BLOCKS, 1), nested.getRepairs());
+    }
+
+    @Test
+    public void returnsCompleteFilesOfATruncatedWrapper() throws Exception {
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(corpus("wrapped-truncated-mid-file.txt"));
+
+        assertEquals(List.of("frontend/src/App.vue", "frontend/src/main.js"), paths(result));
+        assertEquals("<template>\n  <TodoList />\n</template>\n", result.getFiles().get(0).getCode());
+        assertEquals("import { createApp } from 'vue'\ncreateApp(App).mount('#app')\n", result.getFiles().get(1).getCode());
+        assertTrue(result.isTruncated());
+    }
+
+    @Test
+    public void wellFormedResponsesNeedNoRepair() throws Exception {
+        String response = GeneratedFileStreamParser.toJsonArray(List.of(new GeneratedFile("A.java", "class A { String s = \"}\"; }"),
+                new GeneratedFile("b.json", "{\"files\": [1, 2], \"code\": \"x\"}")));
+
+        LenientGeneratedFileParser.Result result = LenientGeneratedFileParser.parse(response);
+
+        assertEquals(GeneratedFileStreamParser.parse(response).stream().map(GeneratedFile::getCode).collect(Collectors.toList()),
+                result.getFiles().stream().map(GeneratedFile::getCode).collect(Collectors.toList()));
+        assertTrue(result.getRepairs().isEmpty());
+        assertTrue(LenientGeneratedFileParser.parse("No files today {sorry}.").getFiles().isEmpty());
+    }
+
+    private static List<String> paths(LenientGeneratedFileParser.Result result) {
+        return result.getFiles().stream().map(GeneratedFile::getFilePath).collect(Collectors.toList());
+    }
+
+    private static String corpus(String name) throws IOException {
+        try (InputStream in = LenientGeneratedFileParserTest.class.getResourceAsStream("/malformed-responses/" + name)) {
+            assertNotNull(in, name);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.aiarchdesigner.parser;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 响应解析微基准：对比改造前（分片拼成完整字符串，replace 去掉 ``` 围栏、trim，再整体反序列化成 List）
+ * 与 {@link GeneratedFileStreamParser} 逐个分片流式解析的单次耗时和分配字节数。
+ * <p>
+ * 输入是一份几百 KB 的代码生成响应：用本项目的源码作为文件内容，按 test001 里 test2 的格式编码成带围栏的 JSON 数组，
+ * 再切成和流式响应差不多大小的分片。
+ */
+public class ResponseParsingBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 30;
+    private static final int MEASURED_ITERATIONS = 50;
+    private static final int CHUNK_CHARS = 16;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void streamingParserAllocatesLessThanBufferAndDeserialize() throws Exception {
+        String response = recordedResponse();
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < response.length(); i += CHUNK_CHARS) {
+            chunks.add(response.substring(i, Math.min(response.length(), i + CHUNK_CHARS)));
+        }
+        assertTrue(response.length() > 200_000, "fixture should be a multi-hundred-KB response");
+
+        ParseRun before = () -> {
+            StringBuilder accumulated = new StringBuilder();
+            for (String chunk : chunks) {
+                accumulated.append(chunk);
+            }
+            String cleaned = accumulated.toString().replace("```json", "").replace("```", "").trim();
+            return objectMapper.readValue(cleaned, new TypeReference<List<GeneratedFile>>() {
+            }).size();
+        };
+        ParseRun after = () -> {
+            int[] files = new int[1];
+            GeneratedFileStreamParser parser = new GeneratedFileStreamParser(file -> files[0]++);
+            for (String chunk : chunks) {
+                parser.feed(chunk);
+            }
+            assertTrue(parser.finish());
+            return files[0];
+        };
+        assertEquals(before.run(), after.run());
+
+        Measurement beforeResult = measure(before);
+        Measurement afterResult = measure(after);
+        System.out.printf("Response parsing (%d KB, %d chunks): buffer+replace+deserialize %.2f ms/op %d KB/op, "
+                        + "streaming %.2f ms/op %d KB/op%n", response.length() / 1024, chunks.size(),
+                beforeResult.nanosPerOp / 1e6, beforeResult.bytesPerOp / 1024, afterResult.nanosPerOp / 1e6, afterResult.bytesPerOp / 1024);
+        assertTrue(afterResult.bytesPerOp < beforeResult.bytesPerOp, "streaming parse should allocate less than copying the response");
+    }
+
+    private static String recordedResponse() throws IOException {
+        List<GeneratedFile> files = new ArrayList<>();
+        Path sources = Paths.get("src/main/java");
+        try (Stream<Path> paths = Files.walk(sources)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                files.add(new GeneratedFile(sources.relativize(path).toString().replace('\\', '/'), Files.readString(path)));
+            }
+        }
+        return "```json\n" + new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(files) + "\n```";
+    }
+
+    private static Measurement measure(ParseRun run) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += run.run();
+        }
+        long startBytes = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            checksum += run.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - startBytes;
+        // 使用结果，防止 JIT 把解析当作死代码消除
+        assertTrue(checksum > 0);
+        return new Measurement((double) elapsed / MEASURED_ITERATIONS, allocated / MEASURED_ITERATIONS);
+    }
+
+    @FunctionalInterface
+    private interface ParseRun {
+        int run() throws Exception;
+    }
+
+    private static final class Measurement {
+        private final double nanosPerOp;
+        private final long bytesPerOp;
+
+        Measurement(double nanosPerOp, long bytesPerOp) {
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
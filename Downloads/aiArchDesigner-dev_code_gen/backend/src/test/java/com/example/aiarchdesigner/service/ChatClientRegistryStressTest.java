@@ -0,0 +1,143 @@
+package com.example.aiarchdesigner.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * ChatClientRegistry 压力测试：大量线程并发使用不同 profile 时，模型收到的参数始终是调用方要求的那一组，
+ * 且每次调用的内存分配低于每次 defaultOptions(...).build() 的旧写法。
+ */
+public class ChatClientRegistryStressTest {
+
+    private static final int THREADS = 32;
+    private static final int CALLS_PER_THREAD = 500;
+
+    private static final List<ChatProfile> PROFILES = List.of(
+            ChatProfile.of("deepseek-chat"),
+            ChatProfile.of("deepseek-chat", 0.3, null),
+            ChatProfile.of("deepseek-chat", 0.7, 4096),
+            ChatProfile.of("deepseek-reasoner"),
+            ChatProfile.of("deepseek-reasoner", 0.0, 8192),
+            ChatProfile.of("gpt-4o-mini", 1.0, 1024),
+            ChatProfile.of("gpt-4o-mini", 0.2, 2048),
+            ChatProfile.of("qwen-max", 0.5, null));
+
+    @Test
+    public void concurrentRequestsNeverSeeAnotherProfilesOptions() throws Exception {
+        ChatClientRegistry registry = new ChatClientRegistry(ChatClient.builder(new EchoOptionsChatModel()));
+
+        int leaked = runConcurrently(profile -> registry.get(profile));
+
+        assertEquals(0, leaked, "requests received options of another profile");
+        assertEquals(PROFILES.size(), registry.size());
+        assertSame(registry.get(PROFILES.get(2)), registry.get(ChatProfile.of("deepseek-chat", 0.7, 4096)));
+    }
+
+    @Test
+    public void sharedBuilderPatternIsNotSafe() throws Exception {
+        // 旧写法：所有线程共享一个 builder，每次 defaultOptions(...).build()。只输出结果作为对照，不做断言（竞争不保证每次都出现）
+        ChatClient.Builder sharedBuilder = ChatClient.builder(new EchoOptionsChatModel());
+        int leaked = runConcurrently(profile -> sharedBuilder.defaultOptions(profile.getOptions()).build());
+        System.out.println("Shared ChatClient.Builder: " + leaked + " of " + (THREADS * CALLS_PER_THREAD) + " requests used another request's options");
+    }
+
+    @Test
+    public void registryAllocatesLessPerCallThanRebuildingTheClient() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean instanceof com.sun.management.ThreadMXBean, "per-thread allocation counters not available");
+        com.sun.management.ThreadMXBean allocationCounter = (com.sun.management.ThreadMXBean) threadMXBean;
+        assumeTrue(allocationCounter.isThreadAllocatedMemorySupported());
+
+        ChatClient.Builder builder = ChatClient.builder(new EchoOptionsChatModel());
+        ChatClientRegistry registry = new ChatClientRegistry(ChatClient.builder(new EchoOptionsChatModel()));
+        ChatProfile profile = PROFILES.get(1);
+        Prompt prompt = new Prompt("ping");
+
+        Function<ChatProfile, ChatClient> rebuild = p -> builder.defaultOptions(p.getOptions()).build();
+        long rebuildClientBytes = bytesPerCall(allocationCounter, () -> rebuild.apply(profile));
+        long registryClientBytes = bytesPerCall(allocationCounter, () -> registry.get(profile));
+        long rebuildCallBytes = bytesPerCall(allocationCounter, () -> rebuild.apply(profile).prompt(prompt).call().content());
+        long registryCallBytes = bytesPerCall(allocationCounter, () -> registry.get(profile).prompt(prompt).call().content());
+        System.out.println("Allocated per client lookup: rebuild " + rebuildClientBytes + " bytes, registry " + registryClientBytes + " bytes; "
+                + "per full call: rebuild " + rebuildCallBytes + " bytes, registry " + registryCallBytes + " bytes");
+        assertTrue(registryClientBytes < rebuildClientBytes);
+    }
+
+    private static int runConcurrently(Function<ChatProfile, ChatClient> clientFor) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger leaked = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        List<Runnable> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            workers.add(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < CALLS_PER_THREAD; i++) {
+                        ChatProfile profile = PROFILES.get((offset + i) % PROFILES.size());
+                        String received = clientFor.apply(profile).prompt(new Prompt("ping")).call().content();
+                        if (!describe(profile.getOptions()).equals(received)) {
+                            leaked.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+        workers.forEach(executor::execute);
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        return leaked.get();
+    }
+
+    private static long bytesPerCall(com.sun.management.ThreadMXBean allocationCounter, Runnable call) {
+        int warmup = 2_000;
+        int measured = 5_000;
+        for (int i = 0; i < warmup; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = allocationCounter.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < measured; i++) {
+            call.run();
+        }
+        return (allocationCounter.getThreadAllocatedBytes(threadId) - before) / measured;
+    }
+
+    private static String describe(ChatOptions options) {
+        return options.getModel() + "|" + options.getTemperature() + "|" + options.getMaxTokens();
+    }
+
+    /**
+     * 把收到的 model / temperature / maxTokens 原样作为回复返回。
+     */
+    private static class EchoOptionsChatModel implements ChatModel {
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage(describe(prompt.getOptions())))));
+        }
+    }
+}
@@ -1,18 +1,60 @@
 package com.example.aiarchdesigner.service;
 
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.model.RegenerationPlan;
+import com.example.aiarchdesigner.model.ResponseParseStats;
+import com.example.aiarchdesigner.service.phase.PhaseGraphExecutor;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.MessageType;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.openai.api.ResponseFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.model.ChatResponse;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 /**
@@ -578,4 +620,554 @@ public class CodeGenerationServiceTest {
 //        }
 //    }
 
+    /**
+     * 测试 2：逐文件并行生成
+     * 预期结果：清单中的每个文件都被单独生成并落盘，同时在途的 LLM 请求数不超过并行度
+     */
+    @Test
+    public void testGenerateProjectCodePerFile_boundedFanOut(@TempDir Path workspace) throws Exception {
+        List<String> plan = List.of("backend/pom.xml", "backend/src/main/java/com/example/App.java",
+                "backend/src/main/java/com/example/LogController.java", "frontend/index.html", "frontend/app.js", "README.md");
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("```json\n[\"" + String.join("\", \"", plan) + "\"]\n```");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                Matcher matcher = Pattern.compile("ONE file of the project: `([^`]+)`").matcher(prompt.getContents());
+                assertTrue(matcher.find());
+                String target = matcher.group(1);
+                return Flux.just("[{\"filePath\": \"" + target + "\", ", "\"code\": \"// " + target + "\"}]")
+                        .delayElements(Duration.ofMillis(100))
+                        .map(CodeGenerationServiceTest::response)
+                        .doOnSubscribe(subscription -> peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                        .doOnTerminate(inFlight::decrementAndGet);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor), new GenerationConcurrencyGate(10), executor,
+                workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16), hedgedStreamer(endpointPool), tokenBudgeter(),
+                condenser(endpointPool, executor), new ResponseParseTracker());
+
+        List<GeneratedFile> files = service.generateProjectCodePerFile(designDocumentContent, 3, GenerationOptions.defaults(), PhaseListener.NO_OP);
+        executor.shutdown();
+
+        assertEquals(plan, files.stream().map(GeneratedFile::getFilePath).collect(Collectors.toList()));
+        // 6 个文件、并行度 3：同时在途的请求正好达到上限
+        assertEquals(3, peakInFlight.get());
+        try (Stream<Path> written = Files.walk(workspace)) {
+            assertEquals(plan.size(), written.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * 测试 3：LLM 响应缓存
+     * 预期结果：相同的设计文档和文件第二次生成直接命中缓存，不再请求模型；useCache=false 时绕过缓存
+     */
+    @Test
+    public void testGenerateSingleFileContent_cachedResponse(@TempDir Path workspace) throws Exception {
+        AtomicInteger streamCalls = new AtomicInteger();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                streamCalls.incrementAndGet();
+                return Flux.just("[{\"filePath\": \"README.md\", \"code\": \"# Logs\"}]").map(CodeGenerationServiceTest::response);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 100, 16);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor), new GenerationConcurrencyGate(10), executor,
+                workspace.toString(), 16, 2, true, cache, hedgedStreamer(endpointPool), tokenBudgeter(),
+                condenser(endpointPool, executor), new ResponseParseTracker());
+
+        GeneratedFile first = service.generateSingleFileContent(designDocumentContent, "README.md");
+        GeneratedFile second = service.generateSingleFileContent(designDocumentContent, "README.md");
+        service.generateSingleFileContent(designDocumentContent, "README.md", GenerationOptions.of(false));
+        executor.shutdown();
+
+        assertEquals("# Logs", first.getCode());
+        assertEquals("# Logs", second.getCode());
+        assertEquals(2, streamCalls.get());
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    /**
+     * 测试 4：增量重新生成
+     * 预期结果：只有引用了被修改字段的文件重新请求模型，其余文件原样复用并落盘
+     */
+    @Test
+    public void testRegenerateProjectCode_onlyAffectedFiles(@TempDir Path workspace) throws Exception {
+        List<String> regeneratedTargets = new CopyOnWriteArrayList<>();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                Matcher matcher = Pattern.compile("ONE file: `([^`]+)`").matcher(prompt.getContents());
+                assertTrue(matcher.find());
+                assertTrue(prompt.getContents().contains("varchar(64)"));
+                regeneratedTargets.add(matcher.group(1));
+                return Flux.just("[{\"filePath\": \"" + matcher.group(1) + "\", \"code\": \"// updated\"}]")
+                        .map(CodeGenerationServiceTest::response);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor), new GenerationConcurrencyGate(10), executor,
+                workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16), hedgedStreamer(endpointPool), tokenBudgeter(),
+                condenser(endpointPool, executor), new ResponseParseTracker());
+        String edited = IncrementalRegenerationPlannerTest.DESIGN_DOCUMENT
+                .replace("| nick_name | varchar(32) | 昵称 |", "| nick_name | varchar(64) | 昵称 |");
+        RegenerationPlan plan = new IncrementalRegenerationPlanner()
+                .plan(IncrementalRegenerationPlannerTest.DESIGN_DOCUMENT, IncrementalRegenerationPlannerTest.previousPhaseFiles(), edited);
+
+        List<GeneratedFile> files = service.regenerateProjectCode(plan, edited, GenerationOptions.defaults(), PhaseListener.NO_OP);
+        executor.shutdown();
+
+        assertEquals(3, regeneratedTargets.size());
+        Map<String, String> codeByPath = files.stream().collect(Collectors.toMap(GeneratedFile::getFilePath, GeneratedFile::getCode));
+        assertEquals(5, codeByPath.size());
+        assertEquals("// updated", codeByPath.get("src/main/java/com/example/entity/User.java"));
+        assertEquals("class Log { Long logId; String operator; }", codeByPath.get("src/main/java/com/example/entity/Log.java"));
+        try (Stream<Path> written = Files.walk(workspace)) {
+            // 前端 2 + 后端 3 + README
+            assertEquals(6, written.filter(Files::isRegularFile).count());
+        }
+    }
+
+    /**
+     * 测试 5：token 预算
+     * 预期结果：设计文档超出上下文窗口时按章节裁剪后再请求模型，提示词不超过预算；每次调用的 token 数汇报给监听器
+     */
+    @Test
+    public void testGenerateProjectCodePerFile_oversizedDocumentIsTrimmed(@TempDir Path workspace) throws Exception {
+        PromptTemplateRegistry templates = new PromptTemplateRegistry(new PromptProviderService());
+        TokenBudgeter counter = tokenBudgeter();
+        Map<String, String> emptyDocument = Map.of(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, "",
+                PromptTemplateRegistry.TARGET_FILE_PATH, "README.md", PromptTemplateRegistry.PLANNED_FILES, "README.md");
+        int fixedTokens = counter.countTokens(templates.render(PromptTemplateRegistry.SHARED_SYSTEM, emptyDocument))
+                + counter.countTokens(templates.render(PromptTemplateRegistry.DESIGN_DOCUMENT, emptyDocument))
+                + counter.countTokens(templates.render(PromptTemplateRegistry.SINGLE_FILE, emptyDocument)) + 50;
+        // 上下文窗口只放得下大约一半的设计文档
+        int contextWindow = fixedTokens + counter.countTokens(designDocumentContent) / 2 + 100;
+        TokenBudgeter budgeter = new TokenBudgeter(contextWindow, 1.0, 100, 100, 100, 100, 100);
+        List<String> streamedPrompts = new CopyOnWriteArrayList<>();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("[\"README.md\"]");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                streamedPrompts.add(prompt.getContents());
+                return Flux.just("[{\"filePath\": \"README.md\", ", "\"code\": \"# Logs\"}]").map(CodeGenerationServiceTest::response);
+            }
+        };
+        Map<String, long[]> usage = new HashMap<>();
+        PhaseListener usageListener = new PhaseListener() {
+            @Override
+            public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                usage.put(phaseName, new long[]{promptTokens, completionTokens});
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), templates, new PhaseGraphExecutor(executor), new GenerationConcurrencyGate(10), executor,
+                workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16), hedgedStreamer(endpointPool), budgeter,
+                condenser(endpointPool, executor), new ResponseParseTracker());
+
+        List<GeneratedFile> files = service.generateProjectCodePerFile(designDocumentContent, 1, GenerationOptions.of(false), usageListener);
+        executor.shutdown();
+
+        assertEquals(1, files.size());
+        assertEquals(1, streamedPrompts.size());
+        String prompt = streamedPrompts.get(0);
+        assertTrue(prompt.contains("omitted to fit the context window"));
+        assertTrue(prompt.contains("## 关键时序图"));
+        assertTrue(budgeter.countTokens(prompt) <= contextWindow - 100);
+        long[] readmeUsage = usage.get("README.md");
+        assertNotNull(readmeUsage);
+        assertTrue(readmeUsage[0] > fixedTokens && readmeUsage[0] <= contextWindow - 100);
+        assertEquals(budgeter.countTokens("[{\"filePath\": \"README.md\", ") + budgeter.countTokens("\"code\": \"# Logs\"}]"), readmeUsage[1]);
+    }
+
+    /**
+     * 测试 6：提示词前缀
+     * 预期结果：各阶段的 system 消息和设计文档消息完全相同，只有最后一条阶段指令不同；服务端报告的用量（包括命中缓存的 token）汇报给监听器；
+     * 前端和 README 的阶段指令带上后端的接口签名索引
+     */
+    @Test
+    public void testGenerateProjectCode_phasesShareAStablePromptPrefix(@TempDir Path workspace) throws Exception {
+        Map<String, List<Message>> promptsByPhase = new ConcurrentHashMap<>();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("Yes");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                List<Message> messages = prompt.getInstructions();
+                String instruction = messages.get(messages.size() - 1).getText();
+                String phase = instruction.contains("GENERATE PROJECT README") ? "README"
+                        : instruction.contains("FRONTEND CODE GENERATION") ? "Frontend" : "Backend";
+                promptsByPhase.put(phase, messages);
+                String file = phase.equals("Backend")
+                        ? "{\"filePath\": \"src/main/java/com/example/LogController.java\", \"code\": \"@RestController @RequestMapping(\\\"/api/logs\\\") "
+                                + "public class LogController { @GetMapping(\\\"/{id}\\\") public Log get(@PathVariable Long id) { return null; } }\"}"
+                        : "{\"filePath\": \"" + (phase.equals("README") ? "README.md" : "index.html") + "\", \"code\": \"x\"}";
+                // 第一个阶段没有命中缓存，之后的阶段命中前缀
+                int cached = promptsByPhase.size() == 1 ? 0 : 1024;
+                ChatResponseMetadata metadata = ChatResponseMetadata.builder()
+                        .usage(new DefaultUsage(2000, 10, 2010, new OpenAiApi.Usage(10, 2000, 2010, null, null, cached, 2000 - cached)))
+                        .build();
+                return Flux.just(response("[" + file + "]"),
+                        new ChatResponse(List.of(new Generation(new AssistantMessage(""))), metadata));
+            }
+        };
+        Map<String, long[]> usage = new ConcurrentHashMap<>();
+        PhaseListener usageListener = new PhaseListener() {
+            @Override
+            public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                usage.put(phaseName, new long[]{promptTokens, cachedPromptTokens, completionTokens});
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor),
+                new GenerationConcurrencyGate(10), executor, workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                hedgedStreamer(endpointPool), tokenBudgeter(), condenser(endpointPool, executor), new ResponseParseTracker());
+
+        service.generateProjectCode(designDocumentContent, GenerationOptions.of(false), usageListener);
+        executor.shutdown();
+
+        assertEquals(Set.of("Backend", "Frontend", "README"), promptsByPhase.keySet());
+        List<Message> backend = promptsByPhase.get("Backend");
+        assertEquals(3, backend.size());
+        assertEquals(MessageType.SYSTEM, backend.get(0).getMessageType());
+        assertTrue(backend.get(1).getText().contains("## 关键时序图"));
+        for (List<Message> messages : promptsByPhase.values()) {
+            assertEquals(backend.get(0).getText(), messages.get(0).getText());
+            assertEquals(backend.get(1).getText(), messages.get(1).getText());
+            assertFalse(messages.get(2).getText().contains("## 关键时序图"));
+        }
+        String endpoint = "- GET /api/logs/{id} -> Log get(@PathVariable Long id)";
+        assertTrue(promptsByPhase.get("Frontend").get(2).getText().contains(endpoint));
+        assertTrue(promptsByPhase.get("README").get(2).getText().contains(endpoint));
+        assertFalse(backend.get(2).getText().contains(endpoint));
+        assertEquals(3, usage.size());
+        assertEquals(1024 * 2, usage.values().stream().mapToLong(phaseUsage -> phaseUsage[1]).sum());
+        assertTrue(usage.values().stream().allMatch(phaseUsage -> phaseUsage[0] == 2000 && phaseUsage[2] == 10));
+    }
+
+    /**
+     * 测试 7：结构化输出
+     * 预期结果：支持 response_format 的端点收到按 GeneratedFile 生成的 schema，返回的 {"files": [...]} 正常解析；
+     * 拒绝该参数的端点降级为 NONE，这次请求去掉参数重发。解析结果按阶段、模型和输出方式计入失败率统计
+     */
+    @Test
+    public void testGenerateSingleFileContent_structuredOutputWithFallback(@TempDir Path workspace) throws Exception {
+        List<ResponseFormat> schemaFormats = new CopyOnWriteArrayList<>();
+        ChatModel schemaModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                schemaFormats.add(((OpenAiChatOptions) prompt.getOptions()).getResponseFormat());
+                List<Message> messages = prompt.getInstructions();
+                assertEquals(StructuredOutputMode.INSTRUCTION, messages.get(messages.size() - 1).getText());
+                return Flux.just("{\"files\": [{\"filePath\": \"App.java\", ", "\"code\": \"class App {}\"}]}")
+                        .map(CodeGenerationServiceTest::response);
+            }
+        };
+        List<ResponseFormat> fallbackFormats = new CopyOnWriteArrayList<>();
+        ChatModel rejectingModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                ResponseFormat format = ((OpenAiChatOptions) prompt.getOptions()).getResponseFormat();
+                fallbackFormats.add(format);
+                if (format != null) {
+                    return Flux.error(WebClientResponseException.create(400, "Bad Request", HttpHeaders.EMPTY,
+                            "{\"error\":{\"message\":\"This response_format type is unavailable now\"}}".getBytes(StandardCharsets.UTF_8),
+                            StandardCharsets.UTF_8));
+                }
+                String text = fallbackFormats.size() <= 2
+                        ? "Here is the file:\n```json\n[{\"filePath\": \"App.java\", \"code\": \"class App {}\"}]\n```"
+                        : "Sorry, I cannot help with that.";
+                return Flux.just(text).map(CodeGenerationServiceTest::response);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ResponseParseTracker schemaTracker = new ResponseParseTracker();
+        LlmEndpointPool schemaPool = endpointPool(schemaModel, StructuredOutputMode.JSON_SCHEMA);
+        ResponseParseTracker fallbackTracker = new ResponseParseTracker();
+        LlmEndpointPool fallbackPool = endpointPool(rejectingModel, StructuredOutputMode.JSON_OBJECT);
+
+        GeneratedFile file = service(schemaPool, executor, workspace, schemaTracker)
+                .generateSingleFileContent(designDocumentContent, "App.java", GenerationOptions.of(false));
+        CodeGenerationService fallbackService = service(fallbackPool, executor, workspace, fallbackTracker);
+        GeneratedFile fallbackFile = fallbackService.generateSingleFileContent(designDocumentContent, "App.java", GenerationOptions.of(false));
+        assertThrows(java.io.IOException.class,
+                () -> fallbackService.generateSingleFileContent(designDocumentContent, "App.java", GenerationOptions.of(false)));
+        executor.shutdown();
+
+        assertEquals("class App {}", file.getCode());
+        assertEquals(1, schemaFormats.size());
+        assertEquals(ResponseFormat.Type.JSON_SCHEMA, schemaFormats.get(0).getType());
+        assertEquals("{type=object, properties={files={type=array, items={type=object, properties={filePath={type=string}, "
+                        + "code={type=string}}, required=[filePath, code], additionalProperties=false}}}, required=[files], additionalProperties=false}",
+                schemaFormats.get(0).getJsonSchema().getSchema().toString());
+        assertEquals(1, schemaTracker.getStats().size());
+        assertEquals("JSON_SCHEMA", schemaTracker.getStats().get(0).getStructuredOutput());
+        assertEquals(0, schemaTracker.getStats().get(0).getFailures());
+
+        // 第一次请求被拒后去掉 response_format 重发，之后不再发送
+        assertEquals("class App {}", fallbackFile.getCode());
+        assertEquals(3, fallbackFormats.size());
+        assertEquals(ResponseFormat.Type.JSON_OBJECT, fallbackFormats.get(0).getType());
+        assertNull(fallbackFormats.get(1));
+        assertNull(fallbackFormats.get(2));
+        assertEquals(StructuredOutputMode.NONE, fallbackPool.getEndpoints().get(0).getStructuredOutput());
+        assertEquals(1, fallbackTracker.getStats().size());
+        ResponseParseStats stats = fallbackTracker.getStats().get(0);
+        assertEquals(PromptTemplateRegistry.SINGLE_FILE, stats.getPhase());
+        assertEquals("stub-model", stats.getModel());
+        assertEquals("NONE", stats.getStructuredOutput());
+        assertEquals(2, stats.getResponses());
+        assertEquals(1, stats.getNoJson());
+        assertEquals(0.5, stats.getFailureRate());
+    }
+
+    /**
+     * 测试 8：截断续写
+     * 预期结果：后端阶段的响应在输出上限处截断时，已完整收到的文件保留，只发一次续写请求要剩下的文件；
+     * 续写里重复的文件被忽略，拼起来的完整结果写入缓存，再次生成直接命中
+     */
+    @Test
+    public void testGenerateProjectCode_truncatedPhaseIsResumed(@TempDir Path workspace) throws Exception {
+        List<List<Message>> backendPrompts = new CopyOnWriteArrayList<>();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("No");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                List<Message> messages = prompt.getInstructions();
+                String instruction = messages.get(messages.size() - 1).getText();
+                if (instruction.contains("GENERATE PROJECT README")) {
+                    return Flux.just(response("[{\"filePath\": \"README.md\", \"code\": \"# Logs\"}]"));
+                }
+                if (instruction.contains("FRONTEND CODE GENERATION")) {
+                    return Flux.just(response("[{\"filePath\": \"index.html\", \"code\": \"<html></html>\"}]"));
+                }
+                backendPrompts.add(messages);
+                if (instruction.contains("[Continuation]")) {
+                    return Flux.just("[{\"filePath\": \"C.java\", \"code\": \"class C {}\"}, ",
+                                    "{\"filePath\": \"A.java\", \"code\": \"class A2 {}\"}, ",
+                                    "{\"filePath\": \"D.java\", \"code\": \"class D {}\"}]")
+                            .map(CodeGenerationServiceTest::response);
+                }
+                ChatGenerationMetadata cutOff = ChatGenerationMetadata.builder().finishReason("LENGTH").build();
+                return Flux.just(response("```json\n[{\"filePath\": \"A.java\", \"code\": \"class A {}\"}, "),
+                        response("{\"filePath\": \"B.java\", \"code\": \"class B {}\"}, "),
+                        new ChatResponse(List.of(new Generation(new AssistantMessage("{\"filePath\": \"C.java\", \"code\": \"cla"), cutOff))));
+            }
+        };
+        List<String> usage = new CopyOnWriteArrayList<>();
+        PhaseListener usageListener = new PhaseListener() {
+            @Override
+            public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                usage.add(phaseName);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = service(endpointPool, executor, workspace, new ResponseParseTracker());
+
+        List<GeneratedFile> files = service.generateProjectCode(designDocumentContent, GenerationOptions.defaults(), usageListener);
+
+        List<String> backendFiles = List.of("A.java", "B.java", "C.java", "D.java");
+        assertEquals(backendFiles, files.stream().map(GeneratedFile::getFilePath).filter(path -> path.endsWith(".java"))
+                .collect(Collectors.toList()));
+        assertEquals("class A {}", files.stream().filter(file -> file.getFilePath().equals("A.java")).findFirst().orElseThrow().getCode());
+        assertEquals(2, backendPrompts.size());
+        // 续写请求 = 原来的阶段提示词 + 已收到的文件清单
+        List<Message> continuation = backendPrompts.get(1);
+        assertEquals(backendPrompts.get(0).size() + 1, continuation.size());
+        for (int i = 0; i < backendPrompts.get(0).size(); i++) {
+            assertEquals(backendPrompts.get(0).get(i).getText(), continuation.get(i).getText());
+        }
+        assertTrue(continuation.get(continuation.size() - 1).getText().contains("A.java\nB.java\n"));
+        assertFalse(continuation.get(continuation.size() - 1).getText().contains("C.java"));
+        assertEquals(2, usage.stream().filter("Backend"::equals).count());
+
+        List<GeneratedFile> cached = service.generateProjectCode(designDocumentContent, GenerationOptions.defaults(), PhaseListener.NO_OP);
+        executor.shutdown();
+
+        assertEquals(2, backendPrompts.size());
+        assertEquals(backendFiles, cached.stream().map(GeneratedFile::getFilePath).filter(path -> path.endsWith(".java"))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * 测试 9：格式错误的响应
+     * 预期结果：code 里有未转义的换行和引号时流不中断，收完后宽松解析救回文件并计入统计；修复后的结果写入缓存，再次生成不再请求模型
+     */
+    @Test
+    public void testGenerateSingleFileContent_malformedResponseIsRepaired(@TempDir Path workspace) throws Exception {
+        AtomicInteger streamCalls = new AtomicInteger();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                streamCalls.incrementAndGet();
+                return Flux.just("```json\n[{\"filePath\": \"LogController.java\", \"code\": \"@RequestMapping(\"/api/logs\")\n",
+                                "class LogController {\n}\n\"}]\n```")
+                        .map(CodeGenerationServiceTest::response);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        ResponseParseTracker tracker = new ResponseParseTracker();
+        CodeGenerationService service = service(endpointPool(stubModel), executor, workspace, tracker);
+
+        GeneratedFile repaired = service.generateSingleFileContent(designDocumentContent, "LogController.java");
+        GeneratedFile cached = service.generateSingleFileContent(designDocumentContent, "LogController.java");
+        executor.shutdown();
+
+        assertEquals("@RequestMapping(\"/api/logs\")\nclass LogController {\n}\n", repaired.getCode());
+        assertEquals(repaired.getCode(), cached.getCode());
+        assertEquals(1, streamCalls.get());
+        ResponseParseStats stats = tracker.getStats().get(0);
+        assertEquals(1, stats.getMalformed());
+        assertEquals(1, stats.getRepaired());
+        assertEquals(1.0, stats.getFailureRate());
+    }
+
+    /**
+     * 测试 10：前端不等待后端的接口签名索引
+     * 预期结果：关闭 codegen.frontend.wait-for-backend-api 后前端与后端并行（后端的流在前端开始之前不会结束），
+     * 前端的阶段指令不带接口签名索引，README 仍然带上
+     */
+    @Test
+    public void testGenerateProjectCode_frontendRunsAlongsideBackend(@TempDir Path workspace) throws Exception {
+        Map<String, String> instructionsByPhase = new ConcurrentHashMap<>();
+        CountDownLatch frontendStarted = new CountDownLatch(1);
+        AtomicBoolean overlapped = new AtomicBoolean();
+        ChatModel stubModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return response("Yes");
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                List<Message> messages = prompt.getInstructions();
+                String instruction = messages.get(messages.size() - 1).getText();
+                String phase = instruction.contains("GENERATE PROJECT README") ? "README"
+                        : instruction.contains("FRONTEND CODE GENERATION") ? "Frontend" : "Backend";
+                instructionsByPhase.put(phase, instruction);
+                if (phase.equals("Frontend")) {
+                    frontendStarted.countDown();
+                }
+                String file = phase.equals("Backend")
+                        ? "{\"filePath\": \"src/main/java/com/example/LogController.java\", \"code\": \"@RestController @RequestMapping(\\\"/api/logs\\\") "
+                                + "public class LogController { @GetMapping(\\\"/{id}\\\") public Log get(@PathVariable Long id) { return null; } }\"}"
+                        : "{\"filePath\": \"" + (phase.equals("README") ? "README.md" : "index.html") + "\", \"code\": \"x\"}";
+                if (!phase.equals("Backend")) {
+                    return Flux.just(response("[" + file + "]"));
+                }
+                // 后端的输出要等前端开始之后才结束；串行执行时前端永远等不到，这里超时后照常返回
+                return Mono.fromCallable(() -> {
+                    overlapped.set(frontendStarted.await(5, TimeUnit.SECONDS));
+                    return response("[" + file + "]");
+                }).subscribeOn(Schedulers.boundedElastic()).flux();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        LlmEndpointPool endpointPool = endpointPool(stubModel);
+        CodeGenerationService service = new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor),
+                new GenerationConcurrencyGate(10), executor, workspace.toString(), 16, 2, false, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                hedgedStreamer(endpointPool), tokenBudgeter(), condenser(endpointPool, executor), new ResponseParseTracker());
+
+        List<GeneratedFile> files = service.generateProjectCode(designDocumentContent, GenerationOptions.of(false), PhaseListener.NO_OP);
+        executor.shutdown();
+
+        assertTrue(overlapped.get());
+        assertEquals(2, files.size());
+        String endpoint = "- GET /api/logs/{id} -> Log get(@PathVariable Long id)";
+        assertFalse(instructionsByPhase.get("Frontend").contains(endpoint));
+        assertTrue(instructionsByPhase.get("README").contains(endpoint));
+    }
+
+    private static CodeGenerationService service(LlmEndpointPool endpointPool, ExecutorService executor, Path workspace,
+                                                 ResponseParseTracker responseParseTracker) {
+        return new CodeGenerationService(endpointPool,
+                new PromptProviderService(), new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(executor),
+                new GenerationConcurrencyGate(10), executor, workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                hedgedStreamer(endpointPool), tokenBudgeter(), condenser(endpointPool, executor), responseParseTracker);
+    }
+
+    static TokenBudgeter tokenBudgeter() {
+        return new TokenBudgeter(65536, 0.9, 4096, 8192, 8192, 4096, 2048);
+    }
+
+    // 这里的文档都很小，不会触发浓缩；浓缩本身在 DesignDocumentCondenserTest 中验证
+    static DesignDocumentCondenser condenser(LlmEndpointPool endpointPool, ExecutorService executor) {
+        return new DesignDocumentCondenser(endpointPool, new PromptTemplateRegistry(new PromptProviderService()), tokenBudgeter(),
+                new LlmResponseCache(new ObjectMapper(), 100, 16), new ObjectMapper(), executor, false, 16000, 6000);
+    }
+
+    static LlmEndpointPool endpointPool(ChatModel chatModel) {
+        return endpointPool(chatModel, StructuredOutputMode.NONE);
+    }
+
+    static LlmEndpointPool endpointPool(ChatModel chatModel, StructuredOutputMode structuredOutput) {
+        return new LlmEndpointPool(List.of(new LlmEndpoint("stub", "stub-model", null, 1,
+                new ChatClientRegistry(ChatClient.builder(chatModel), "stub-model"),
+                new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 1000, 0, 3), new CircuitBreaker(3, 30000), structuredOutput)));
+    }
+
+    static HedgedLlmStreamer hedgedStreamer(LlmEndpointPool endpointPool) {
+        return new HedgedLlmStreamer(endpointPool, Executors.newCachedThreadPool(), false, 95, 2000, 15000, 3, 5000, 0, 500, 8000);
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
 }
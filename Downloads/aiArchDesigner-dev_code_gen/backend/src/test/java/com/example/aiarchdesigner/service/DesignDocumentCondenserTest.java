@@ -0,0 +1,173 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.DesignDigest;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DesignDocumentCondenserTest {
+
+    private static final Pattern MODULE = Pattern.compile("## 模块 (\\d+)");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final TokenBudgeter budgeter = CodeGenerationServiceTest.tokenBudgeter();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void largeDocumentIsCondensedChunkByChunkAndMergedInOrder() {
+        String document = document(8);
+        DesignDocumentCondenser condenser = condenser(digestModel(false), 200, 150);
+        List<String> usage = new CopyOnWriteArrayList<>();
+
+        DesignDigest digest = condenser.condense(document, GenerationOptions.defaults(), new PhaseListener() {
+            @Override
+            public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                usage.add(phaseName);
+                assertTrue(promptTokens > 0 && completionTokens > 0);
+            }
+        });
+
+        assertTrue(digest.isCondensed());
+        assertTrue(digest.getChunkCount() > 1);
+        assertEquals(digest.getChunkCount(), calls.get());
+        assertEquals(calls.get(), usage.size());
+        assertTrue(usage.stream().allMatch(DesignDocumentCondenser.PHASE_CONDENSE::equals));
+        assertEquals(modules("table_", 8), modules(digest.getBackend(), "table_"));
+        assertEquals(modules("page_", 8), modules(digest.getFrontend(), "page_"));
+        assertTrue(budgeter.countTokens(digest.getBackend()) < budgeter.countTokens(document) / 2);
+        assertEquals(digest.getFrontend(), digest.forFile("frontend/src/App.vue"));
+        assertEquals(digest.getOverview(), digest.forFile("README.md"));
+        assertEquals(digest.getBackend(), digest.forFile("backend/pom.xml"));
+
+        // 同一份文档再次提交时直接使用缓存的摘要
+        DesignDigest cached = condenser.condense(document, GenerationOptions.defaults(), PhaseListener.NO_OP);
+        assertEquals(digest.getChunkCount(), calls.get());
+        assertEquals(digest.getBackend(), cached.getBackend());
+        assertEquals(digest.getDocumentHash(), cached.getDocumentHash());
+    }
+
+    @Test
+    public void smallDocumentIsNotCondensed() {
+        String document = document(2);
+        DesignDigest digest = condenser(digestModel(false), 16000, 6000).condense(document, GenerationOptions.defaults(), PhaseListener.NO_OP);
+
+        assertFalse(digest.isCondensed());
+        assertEquals(0, calls.get());
+        assertSame(document, digest.getBackend());
+        assertSame(document, digest.forFile("frontend/index.html"));
+    }
+
+    @Test
+    public void chunkWithoutMarkersIsKeptVerbatim() {
+        String document = document(8);
+        DesignDigest digest = condenser(digestModel(true), 200, 150).condense(document, GenerationOptions.defaults(), PhaseListener.NO_OP);
+
+        assertTrue(digest.isCondensed());
+        // 第一块的回复没有标记，原文保留；其余块正常浓缩
+        assertTrue(digest.getBackend().startsWith("# 设计文档"));
+        assertTrue(digest.getBackend().contains("后端：表 table_1"));
+        assertEquals(modules("table_", 8), modules(digest.getBackend(), "table_"));
+    }
+
+    @Test
+    public void chunksConcatenateToTheOriginalDocument() {
+        String document = document(8) + "没有标题的长段落。".repeat(200);
+
+        List<String> chunks = budgeter.splitIntoChunks(document, 150);
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(document, String.join("", chunks));
+        for (String chunk : chunks) {
+            assertTrue(budgeter.countTokens(chunk) <= 150 || !chunk.contains("\n"), chunk);
+        }
+    }
+
+    private DesignDocumentCondenser condenser(ChatModel chatModel, int minDocumentTokens, int chunkTokens) {
+        return new DesignDocumentCondenser(CodeGenerationServiceTest.endpointPool(chatModel),
+                new PromptTemplateRegistry(new PromptProviderService()), budgeter, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                new ObjectMapper(), executor, true, minDocumentTokens, chunkTokens);
+    }
+
+    // 每个模块浓缩成一行；dropFirstMarkers 时含模块 1 的那一块回复不带标记
+    private ChatModel digestModel(boolean dropFirstMarkers) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                calls.incrementAndGet();
+                List<String> modules = new ArrayList<>();
+                Matcher matcher = MODULE.matcher(prompt.getContents());
+                while (matcher.find()) {
+                    modules.add(matcher.group(1));
+                }
+                if (dropFirstMarkers && modules.contains("1")) {
+                    return response("这一块不需要浓缩。");
+                }
+                StringBuilder backend = new StringBuilder();
+                StringBuilder frontend = new StringBuilder();
+                for (String module : modules) {
+                    backend.append("- table_").append(module).append('\n');
+                    frontend.append("- page_").append(module).append('\n');
+                }
+                return response("=== BACKEND ===\n" + backend + "=== FRONTEND ===\n" + frontend + "=== OVERVIEW ===\n(none)\n");
+            }
+        };
+    }
+
+    private static String document(int modules) {
+        StringBuilder document = new StringBuilder("# 设计文档\n\n");
+        for (int i = 1; i <= modules; i++) {
+            document.append("## 模块 ").append(i).append("\n\n")
+                    .append("后端：表 table_").append(i).append(" 保存模块数据，字段 id bigint、name varchar(64)。\n")
+                    .append("前端：页面 page_").append(i).append(" 展示模块列表并支持按名称搜索。\n")
+                    .append("背景说明，不影响实现。".repeat(10)).append("\n\n");
+        }
+        return document.toString();
+    }
+
+    private static List<String> modules(String prefix, int count) {
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            names.add(prefix + i);
+        }
+        return names;
+    }
+
+    private static List<String> modules(String digest, String prefix) {
+        List<String> names = new ArrayList<>();
+        Matcher matcher = Pattern.compile("\\b" + prefix + "\\d+").matcher(digest);
+        while (matcher.find()) {
+            if (!names.contains(matcher.group())) {
+                names.add(matcher.group());
+            }
+        }
+        return names;
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+}
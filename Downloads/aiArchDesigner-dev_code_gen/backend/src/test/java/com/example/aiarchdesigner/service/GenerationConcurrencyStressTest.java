@@ -0,0 +1,271 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.config.ExecutorConfig;
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.service.phase.GenerationPhase;
+import com.example.aiarchdesigner.service.phase.PhaseGraphExecutor;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.example.aiarchdesigner.utils.VirtualThreadSupport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 执行模型压力测试：每个阶段都像 callLlmForPhase 一样通过 toStream() 阻塞等待流式响应。
+ * 虚拟线程下数千个同时进行的生成不会耗尽平台线程；平台线程下并发天花板之外的生成排队等待。
+ */
+public class GenerationConcurrencyStressTest {
+
+    private static final int GENERATIONS = 3000;
+
+    /**
+     * 验收测试。项目按 Java 17 构建，这个测试只在 Java 21+ 上运行（其余构建里是 skipped）。
+     */
+    @Test
+    public void thousandsOfInFlightGenerationsDoNotExhaustPlatformThreads() throws Exception {
+        assumeTrue(VirtualThreadSupport.isSupported(), "virtual threads require Java 21+");
+
+        ExecutorService requestThreads = VirtualThreadSupport.newVirtualThreadPerTaskExecutor("request-");
+        ExecutorService phaseThreads = VirtualThreadSupport.newVirtualThreadPerTaskExecutor("phase-");
+        StressRun run = runGenerations(GENERATIONS, GENERATIONS, requestThreads, phaseThreads);
+
+        assertEquals(GENERATIONS, run.completed);
+        assertTrue(run.peakInFlight > GENERATIONS / 2, "expected thousands of generations in flight, peak was " + run.peakInFlight);
+        // 只有 ForkJoinPool carrier 线程和 Reactor 调度线程，与在途生成数量无关
+        assertTrue(run.peakPlatformThreads - run.baselinePlatformThreads < 200,
+                "platform threads grew from " + run.baselinePlatformThreads + " to " + run.peakPlatformThreads);
+    }
+
+    /**
+     * 平台线程模式（Java 17 上的实际运行方式）：请求线程多于并发天花板时，超出的生成在 gate 里排队，
+     * 在途数量不超过天花板，阶段线程池大小固定，全部生成最终都能完成。
+     */
+    @Test
+    public void platformThreadsQueueGenerationsAboveTheCeiling() throws Exception {
+        int generations = 400;
+        int ceiling = 100;
+        // 每个生成最多同时运行两个阶段（Frontend 和 Backend）
+        int phaseParallelism = ceiling * 2;
+        ExecutorService requestThreads = Executors.newFixedThreadPool(generations);
+        ExecutorService phaseThreads = Executors.newFixedThreadPool(phaseParallelism);
+        StressRun run = runGenerations(generations, ceiling, requestThreads, phaseThreads);
+
+        assertEquals(generations, run.completed);
+        assertTrue(run.peakInFlight <= ceiling, "in-flight generations exceeded the ceiling: " + run.peakInFlight);
+        assertTrue(run.peakInFlight > ceiling / 2, "expected the ceiling to be reached, peak was " + run.peakInFlight);
+        assertTrue(run.peakWaiting >= (generations - ceiling) / 2, "expected generations to queue at the gate, peak was " + run.peakWaiting);
+        // 请求线程 + 阶段线程 + 少量 Reactor 调度线程
+        assertTrue(run.peakPlatformThreads - run.baselinePlatformThreads <= generations + phaseParallelism + 100,
+                "platform threads grew from " + run.baselinePlatformThreads + " to " + run.peakPlatformThreads);
+    }
+
+    /**
+     * 平台线程模式下经过 CodeGenerationService 的完整生成：并发天花板按阶段线程池折算，超出的生成在 gate 里排队，
+     * 阶段线程池的队列里最多只有阶段交接时的短暂积压（配置的 2000 会让所有生成的阶段都堆在队列里）。
+     */
+    @Test
+    public void platformModeCeilingFollowsThePhasePool(@TempDir Path workspace) throws Exception {
+        int phaseParallelism = 8;
+        int ceiling = ExecutorConfig.effectiveMaxConcurrentGenerations(false, 2000, phaseParallelism);
+        assertEquals(4, ceiling);
+        assertEquals(2000, ExecutorConfig.effectiveMaxConcurrentGenerations(true, 2000, phaseParallelism));
+
+        int generations = 40;
+        ThreadPoolExecutor phaseThreads = new ThreadPoolExecutor(phaseParallelism, phaseParallelism, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        ExecutorService requestThreads = Executors.newFixedThreadPool(generations);
+        GenerationConcurrencyGate gate = new GenerationConcurrencyGate(ceiling);
+        LlmEndpointPool endpointPool = CodeGenerationServiceTest.endpointPool(new SlowFileStreamingChatModel(Duration.ofMillis(20)));
+        CodeGenerationService service = new CodeGenerationService(endpointPool, new PromptProviderService(),
+                new PromptTemplateRegistry(new PromptProviderService()), new PhaseGraphExecutor(phaseThreads), gate, phaseThreads,
+                workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                CodeGenerationServiceTest.hedgedStreamer(endpointPool), CodeGenerationServiceTest.tokenBudgeter(),
+                CodeGenerationServiceTest.condenser(endpointPool, phaseThreads), new ResponseParseTracker());
+
+        CountDownLatch done = new CountDownLatch(generations);
+        AtomicInteger completed = new AtomicInteger();
+        int peakInFlight = 0;
+        int peakQueued = 0;
+        try {
+            for (int i = 0; i < generations; i++) {
+                requestThreads.submit(() -> {
+                    try {
+                        if (service.generateProjectCode("# Todo", GenerationOptions.of(false), PhaseListener.NO_OP).size() == 2) {
+                            completed.incrementAndGet();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                    return null;
+                });
+            }
+            while (!done.await(5, TimeUnit.MILLISECONDS)) {
+                peakInFlight = Math.max(peakInFlight, gate.getInFlight());
+                peakQueued = Math.max(peakQueued, phaseThreads.getQueue().size());
+            }
+        } finally {
+            requestThreads.shutdown();
+            phaseThreads.shutdown();
+        }
+
+        assertEquals(generations, completed.get());
+        assertTrue(peakInFlight <= ceiling, "in-flight generations exceeded the ceiling: " + peakInFlight);
+        assertTrue(peakQueued <= ceiling, "phases queued behind the phase pool: " + peakQueued);
+    }
+
+    @Test
+    public void gateQueuesGenerationsAboveTheCeiling() throws Exception {
+        GenerationConcurrencyGate gate = new GenerationConcurrencyGate(4);
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(16);
+        for (int i = 0; i < 16; i++) {
+            threads.submit(() -> {
+                try {
+                    return gate.run(() -> {
+                        peak.accumulateAndGet(gate.getInFlight(), Math::max);
+                        Thread.sleep(50);
+                        return null;
+                    });
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        threads.shutdown();
+
+        assertEquals(4, peak.get());
+        assertEquals(0, gate.getInFlight());
+        assertEquals(0, gate.getWaiting());
+    }
+
+    private static StressRun runGenerations(int generations, int ceiling, ExecutorService requestThreads,
+                                            ExecutorService phaseThreads) throws Exception {
+        ChatClient chatClient = ChatClient.builder(new SlowStreamingChatModel(5, Duration.ofMillis(60))).build();
+        PhaseGraphExecutor graphExecutor = new PhaseGraphExecutor(phaseThreads);
+        GenerationConcurrencyGate gate = new GenerationConcurrencyGate(ceiling);
+
+        List<GenerationPhase> phases = List.of(
+                new GenerationPhase("Frontend", List.of(), inputs -> blockingLlmCall(chatClient, "front.js")),
+                new GenerationPhase("Backend", List.of(), inputs -> blockingLlmCall(chatClient, "App.java")),
+                new GenerationPhase("README", List.of("Frontend", "Backend"), inputs -> blockingLlmCall(chatClient, "README.md"))
+        );
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        StressRun run = new StressRun();
+        run.baselinePlatformThreads = threadMXBean.getThreadCount();
+        CountDownLatch done = new CountDownLatch(generations);
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            for (int i = 0; i < generations; i++) {
+                requestThreads.submit(() -> {
+                    try {
+                        gate.run(() -> graphExecutor.execute(phases, "doc", null));
+                        completed.incrementAndGet();
+                    } finally {
+                        done.countDown();
+                    }
+                    return null;
+                });
+            }
+            while (!done.await(20, TimeUnit.MILLISECONDS)) {
+                run.peakInFlight = Math.max(run.peakInFlight, gate.getInFlight());
+                run.peakWaiting = Math.max(run.peakWaiting, gate.getWaiting());
+                run.peakPlatformThreads = Math.max(run.peakPlatformThreads, threadMXBean.getThreadCount());
+            }
+        } finally {
+            requestThreads.shutdown();
+            phaseThreads.shutdown();
+        }
+        run.completed = completed.get();
+        return run;
+    }
+
+    private static List<GeneratedFile> blockingLlmCall(ChatClient chatClient, String filePath) {
+        String content = chatClient.prompt("generate " + filePath).stream().content()
+                .toStream()
+                .collect(Collectors.joining());
+        return List.of(new GeneratedFile(filePath, content));
+    }
+
+    static class SlowStreamingChatModel implements ChatModel {
+        private final int chunks;
+        private final Duration delayPerChunk;
+
+        SlowStreamingChatModel(int chunks, Duration delayPerChunk) {
+            this.chunks = chunks;
+            this.delayPerChunk = delayPerChunk;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("chunk"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            return Flux.range(0, chunks)
+                    .delayElements(delayPerChunk)
+                    .map(i -> new ChatResponse(List.of(new Generation(new AssistantMessage("chunk" + i)))));
+        }
+    }
+
+    // 每个阶段返回一个文件，分三片流式输出
+    static class SlowFileStreamingChatModel implements ChatModel {
+        private final Duration delayPerChunk;
+
+        SlowFileStreamingChatModel(Duration delayPerChunk) {
+            this.delayPerChunk = delayPerChunk;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return new ChatResponse(List.of(new Generation(new AssistantMessage("Yes"))));
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            String instruction = prompt.getInstructions().get(prompt.getInstructions().size() - 1).getText();
+            String filePath = instruction.contains("GENERATE PROJECT README") ? "README.md"
+                    : instruction.contains("FRONTEND CODE GENERATION") ? "index.html" : "App.java";
+            return Flux.just("[{\"filePath\": \"" + filePath + "\", ", "\"code\": \"x\"", "}]")
+                    .delayElements(delayPerChunk)
+                    .map(chunk -> new ChatResponse(List.of(new Generation(new AssistantMessage(chunk)))));
+        }
+    }
+
+    private static final class StressRun {
+        private int completed;
+        private int peakInFlight;
+        private int peakWaiting;
+        private int baselinePlatformThreads;
+        private int peakPlatformThreads;
+    }
+}
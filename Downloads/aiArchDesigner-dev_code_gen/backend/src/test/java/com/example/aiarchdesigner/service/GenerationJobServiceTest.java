@@ -0,0 +1,161 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationJob;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.model.JobPhaseStatus;
+import com.example.aiarchdesigner.model.JobStatus;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.model.PhaseStatus;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * GenerationJobService 单元测试类
+ */
+public class GenerationJobServiceTest {
+
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void jobReportsPhaseProgressAndExposesResult() throws Exception {
+        CodeGenerationService codeGenerationService = mock(CodeGenerationService.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(codeGenerationService.generateProjectCode(anyString(), any(GenerationOptions.class), any(PhaseListener.class))).thenAnswer(invocation -> {
+            PhaseListener listener = invocation.getArgument(2);
+            listener.onPhaseStarted(CodeGenerationService.PHASE_BACKEND);
+            release.await();
+            List<GeneratedFile> files = List.of(new GeneratedFile("src/App.java", "class App {}"));
+            listener.onPhaseCompleted(new PhaseResult(CodeGenerationService.PHASE_BACKEND, PhaseStatus.COMPLETED, files, 0, 5, null));
+            return files;
+        });
+        GenerationJobService jobService = new GenerationJobService(codeGenerationService, new IncrementalRegenerationPlanner(), executor,
+                TranscriptRecorder.disabled(), 60);
+
+        GenerationJob job = jobService.submit("doc", GenerationOptions.defaults());
+        assertNotNull(jobService.getJob(job.getJobId()));
+        waitFor(() -> job.getPhase(CodeGenerationService.PHASE_BACKEND).getStatus() == PhaseStatus.RUNNING);
+        assertEquals(JobStatus.RUNNING, job.getStatus());
+        assertNull(job.getResult());
+
+        release.countDown();
+        waitFor(job::isFinished);
+
+        assertEquals(JobStatus.COMPLETED, job.getStatus());
+        JobPhaseStatus backend = job.getPhase(CodeGenerationService.PHASE_BACKEND);
+        assertEquals(PhaseStatus.COMPLETED, backend.getStatus());
+        assertEquals(1, backend.getFileCount());
+        assertEquals(PhaseStatus.PENDING, job.getPhase(CodeGenerationService.PHASE_README).getStatus());
+        assertEquals("src/App.java", job.getResult().get(0).getFilePath());
+    }
+
+    @Test
+    public void submissionsBeyondTheQueueAreRejected() throws Exception {
+        CodeGenerationService codeGenerationService = mock(CodeGenerationService.class);
+        CountDownLatch release = new CountDownLatch(1);
+        when(codeGenerationService.generateProjectCode(anyString(), any(GenerationOptions.class), any(PhaseListener.class))).thenAnswer(invocation -> {
+            release.await();
+            return List.of();
+        });
+        GenerationJobService jobService = new GenerationJobService(codeGenerationService, new IncrementalRegenerationPlanner(), executor,
+                TranscriptRecorder.disabled(), 60);
+
+        GenerationJob running = jobService.submit("doc-1", GenerationOptions.defaults());
+        jobService.submit("doc-2", GenerationOptions.defaults());
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit("doc-3", GenerationOptions.defaults()));
+
+        release.countDown();
+        waitFor(running::isFinished);
+        assertEquals(JobStatus.COMPLETED, running.getStatus());
+    }
+
+    @Test
+    public void failedGenerationMarksJobFailed() throws Exception {
+        CodeGenerationService codeGenerationService = mock(CodeGenerationService.class);
+        when(codeGenerationService.generateProjectCode(anyString(), any(GenerationOptions.class), any(PhaseListener.class)))
+                .thenThrow(new IllegalStateException("provider down"));
+        GenerationJobService jobService = new GenerationJobService(codeGenerationService, new IncrementalRegenerationPlanner(), executor,
+                TranscriptRecorder.disabled(), 60);
+
+        GenerationJob job = jobService.submit("doc", GenerationOptions.defaults());
+        waitFor(job::isFinished);
+
+        assertEquals(JobStatus.FAILED, job.getStatus());
+        assertEquals("provider down", job.getErrorMessage());
+    }
+
+    @Test
+    public void jobTranscriptRecordsPromptsAndStreamedOutput(@TempDir Path transcripts) throws Exception {
+        CodeGenerationService codeGenerationService = mock(CodeGenerationService.class);
+        when(codeGenerationService.generateProjectCode(anyString(), any(GenerationOptions.class), any(PhaseListener.class))).thenAnswer(invocation -> {
+            PhaseListener listener = invocation.getArgument(2);
+            listener.onPhaseStarted(CodeGenerationService.PHASE_BACKEND);
+            listener.onPrompt(CodeGenerationService.PHASE_BACKEND, new Prompt(List.of(new SystemMessage("You are a generator."),
+                    new UserMessage("Design document: todo app"))));
+            listener.onChunk(CodeGenerationService.PHASE_BACKEND, "[{\"filePath\": \"App.java\", ");
+            listener.onChunk(CodeGenerationService.PHASE_BACKEND, "\"code\": \"class App {}\"}]");
+            listener.onTokenUsage(CodeGenerationService.PHASE_BACKEND, 120, 0, 15);
+            return List.of(new GeneratedFile("App.java", "class App {}"));
+        });
+        TranscriptRecorder recorder = new TranscriptRecorder(true, transcripts.toString(), 64, 10, 0, 0, 0);
+        try {
+            GenerationJobService jobService = new GenerationJobService(codeGenerationService, new IncrementalRegenerationPlanner(), executor,
+                    recorder, 60);
+
+            GenerationJob job = jobService.submit("doc", GenerationOptions.defaults());
+            waitFor(job::isFinished);
+            waitFor(() -> transcript(jobService, job.getJobId()).contains("job COMPLETED"));
+
+            String transcript = transcript(jobService, job.getJobId());
+            assertTrue(transcript.contains("Backend PROMPT system #1 (20 chars)\nYou are a generator.\n"), transcript);
+            assertTrue(transcript.contains("Backend OUTPUT\n[{\"filePath\": \"App.java\", \"code\": \"class App {}\"}]\n"), transcript);
+            assertTrue(transcript.contains("Backend usage: 120 prompt tokens (0 cached), 15 completion tokens"), transcript);
+            assertNull(jobService.getTranscript("unknown-job"));
+        } finally {
+            recorder.shutdown();
+        }
+    }
+
+    private static String transcript(GenerationJobService jobService, String jobId) {
+        try {
+            String transcript = jobService.getTranscript(jobId);
+            return transcript == null ? "" : transcript;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.aiarchdesigner.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HedgedLlmStreamerTest {
+
+    private final ExecutorService attemptExecutor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        attemptExecutor.shutdownNow();
+    }
+
+    @Test
+    public void slowFirstTokenIsHedgedAndTheLoserCancelled() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+        Function<LlmEndpoint, Flux<ChatResponse>> request = endpoint -> requests.incrementAndGet() == 1
+                ? chunks("slow ", "primary").delaySubscription(Duration.ofSeconds(5)).doOnCancel(() -> primaryCancelled.set(true))
+                : chunks("fast ", "hedge");
+        HedgedLlmStreamer streamer = streamer(true, 100, 3, 5000, 0);
+        RecordingSink sink = new RecordingSink();
+
+        long start = System.nanoTime();
+        streamer.stream("Backend", request, sink);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("fast hedge", sink.text.toString());
+        assertEquals(0, sink.resets);
+        assertEquals(2, requests.get());
+        assertTrue(primaryCancelled.get());
+        assertTrue(elapsedMillis < 2000, "hedge should finish long before the slow primary, took " + elapsedMillis + " ms");
+        assertEquals(1, streamer.getStats().getHedgesFired());
+        assertEquals(1, streamer.getStats().getHedgesWon());
+    }
+
+    @Test
+    public void tricklingStreamIsReplacedWhenTheHedgeFinishesFirst() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        Function<LlmEndpoint, Flux<ChatResponse>> request = endpoint -> requests.incrementAndGet() == 1
+                ? Flux.concat(chunks("[{\"filePath\": "), chunks("\"a\"", ", ", "\"code\"", ": ", "\"x\"}]").delayElements(Duration.ofMillis(400)))
+                : chunks("[{\"filePath\": \"b\", \"code\": \"y\"}]");
+        HedgedLlmStreamer streamer = streamer(true, 10000, 20, 200, 0);
+        RecordingSink sink = new RecordingSink();
+
+        streamer.stream("Backend", request, sink);
+
+        assertEquals(1, sink.resets);
+        assertEquals("[{\"filePath\": \"b\", \"code\": \"y\"}]", sink.text.toString());
+        assertEquals(1, streamer.getStats().getHedgesWon());
+    }
+
+    @Test
+    public void fastStreamIsNotHedged() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HedgedLlmStreamer streamer = streamer(true, 500, 3, 5000, 0);
+        RecordingSink sink = new RecordingSink();
+
+        streamer.stream("README", endpoint -> {
+            requests.incrementAndGet();
+            return chunks("# ", "Title");
+        }, sink);
+
+        assertEquals("# Title", sink.text.toString());
+        assertEquals(1, requests.get());
+        assertEquals(0, streamer.getStats().getHedgesFired());
+    }
+
+    @Test
+    public void transientErrorsAreRetried() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        HedgedLlmStreamer streamer = streamer(false, 500, 3, 5000, 3);
+        RecordingSink sink = new RecordingSink();
+
+        streamer.stream("Frontend", endpoint -> requests.incrementAndGet() < 3
+                ? Flux.concat(chunks("partial"), Flux.error(httpError(503)))
+                : chunks("complete"), sink);
+
+        assertEquals("complete", sink.text.toString());
+        assertEquals(3, requests.get());
+        // 前两次都已经输出了一部分，重试前各通知一次作废
+        assertEquals(2, sink.resets);
+        assertEquals(2, streamer.getStats().getRetries());
+    }
+
+    @Test
+    public void nonTransientErrorsAndExhaustedRetriesAreSurfaced() {
+        AtomicInteger requests = new AtomicInteger();
+        HedgedLlmStreamer streamer = streamer(false, 500, 3, 5000, 2);
+
+        assertThrows(WebClientResponseException.class, () -> streamer.stream("Frontend", endpoint -> {
+            requests.incrementAndGet();
+            return Flux.error(httpError(400));
+        }, new RecordingSink()));
+        assertEquals(1, requests.get());
+
+        requests.set(0);
+        assertThrows(WebClientResponseException.class, () -> streamer.stream("Frontend", endpoint -> {
+            requests.incrementAndGet();
+            return Flux.error(httpError(502));
+        }, new RecordingSink()));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void failingEndpointIsFailedOverWithoutBackoff() throws Exception {
+        // 坏端点权重更高，保证先被选中；连续失败 2 次后熔断
+        LlmEndpoint broken = endpoint("broken", 10, 2);
+        LlmEndpoint healthy = endpoint("healthy", 1, 2);
+        List<String> routed = new CopyOnWriteArrayList<>();
+        // 退避时间设得很长：换端点不应该等待退避
+        HedgedLlmStreamer streamer = new HedgedLlmStreamer(new LlmEndpointPool(List.of(broken, healthy)), attemptExecutor, false, 95,
+                500, 500, 3, 5000, 0, 60000, 60000);
+        RecordingSink sink = new RecordingSink();
+
+        Function<LlmEndpoint, Flux<ChatResponse>> request = endpoint -> {
+            routed.add(endpoint.getName());
+            return endpoint == broken ? Flux.error(httpError(503)) : chunks("ok");
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 50 && broken.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED; i++) {
+            sink.onReset();
+            streamer.stream("Backend", request, sink);
+            assertEquals("ok", sink.text.toString());
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 5000, "failover should not back off, took " + elapsedMillis + " ms");
+        assertEquals(CircuitBreaker.State.OPEN, broken.getCircuitBreaker().getState());
+        assertEquals(2, routed.stream().filter("broken"::equals).count());
+        assertEquals(2, streamer.getStats().getFailovers());
+
+        routed.clear();
+        for (int i = 0; i < 10; i++) {
+            streamer.stream("Backend", request, new RecordingSink());
+        }
+        assertEquals(List.of("healthy"), routed.stream().distinct().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void slowSinkHoldsBackTheUpstreamRead() throws Exception {
+        int total = HedgedLlmStreamer.STREAM_PREFETCH * 8;
+        AtomicInteger emitted = new AtomicInteger();
+        Function<LlmEndpoint, Flux<ChatResponse>> request = endpoint -> Flux.range(0, total)
+                .map(i -> new ChatResponse(List.of(new Generation(new AssistantMessage("x")))))
+                .doOnNext(response -> emitted.incrementAndGet());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger emittedWhileBlocked = new AtomicInteger();
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onChunk(String chunk) {
+                if (text.length() == 0) {
+                    try {
+                        // 给上游足够的时间，看它会不会在调用方卡住时继续读
+                        Thread.sleep(300);
+                        emittedWhileBlocked.set(emitted.get());
+                        release.countDown();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.onChunk(chunk);
+            }
+        };
+
+        streamer(false, 10_000, 0, 5000, 0).stream("Backend", request, sink);
+
+        assertTrue(release.await(1, TimeUnit.SECONDS));
+        assertTrue(emittedWhileBlocked.get() <= HedgedLlmStreamer.STREAM_PREFETCH,
+                "upstream emitted " + emittedWhileBlocked.get() + " responses while the sink was blocked");
+        assertEquals(total, sink.text.length());
+    }
+
+    private HedgedLlmStreamer streamer(boolean hedging, long hedgeDelayMillis, double minTokensPerSecond, long throughputWindowMillis,
+                                       int maxRetries) {
+        return streamer(new LlmEndpointPool(List.of(endpoint("primary"))), hedging, hedgeDelayMillis, minTokensPerSecond,
+                throughputWindowMillis, maxRetries);
+    }
+
+    private HedgedLlmStreamer streamer(LlmEndpointPool pool, boolean hedging, long hedgeDelayMillis, double minTokensPerSecond,
+                                       long throughputWindowMillis, int maxRetries) {
+        return new HedgedLlmStreamer(pool, attemptExecutor, hedging, 95, hedgeDelayMillis, hedgeDelayMillis,
+                minTokensPerSecond, throughputWindowMillis, maxRetries, 10, 50);
+    }
+
+    static LlmEndpoint endpoint(String name) {
+        return endpoint(name, 1, 10);
+    }
+
+    static LlmEndpoint endpoint(String name, int weight, int failureThreshold) {
+        // 流式请求由测试直接构造，不会用到端点的 ChatClient
+        return new LlmEndpoint(name, "m", "http://" + name, weight, null,
+                new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 1000, 0, 3), new CircuitBreaker(failureThreshold, 60000));
+    }
+
+    private static Flux<ChatResponse> chunks(String... chunks) {
+        return Flux.fromArray(chunks).map(chunk -> new ChatResponse(List.of(new Generation(new AssistantMessage(chunk)))));
+    }
+
+    private static WebClientResponseException httpError(int status) {
+        return WebClientResponseException.create(status, "status " + status, HttpHeaders.EMPTY, new byte[0], null);
+    }
+
+    private static class RecordingSink implements HedgedLlmStreamer.StreamSink {
+        final StringBuilder text = new StringBuilder();
+        private int resets;
+
+        @Override
+        public void onChunk(String chunk) {
+            text.append(chunk);
+        }
+
+        @Override
+        public void onReset() {
+            resets++;
+            text.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.RegenerationPlan;
+import com.example.aiarchdesigner.model.SectionChangeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IncrementalRegenerationPlanner 单元测试类
+ */
+public class IncrementalRegenerationPlannerTest {
+
+    public static final String DESIGN_DOCUMENT = "# 用户中心设计\n" +
+            "## 概述\n" +
+            "系统用于管理用户资料。\n" +
+            "## 库表设计\n" +
+            "### 用户表 (t_user)\n" +
+            "| 字段 | 类型 | 说明 |\n" +
+            "|---|---|---|\n" +
+            "| id | bigint | 主键 |\n" +
+            "| username | varchar(32) | 用户名 |\n" +
+            "| nick_name | varchar(32) | 昵称 |\n" +
+            "\n" +
+            "### 日志表 (t_log)\n" +
+            "| 字段 | 类型 |\n" +
+            "|---|---|\n" +
+            "| log_id | bigint |\n" +
+            "| operator | varchar(64) |\n";
+
+    public static Map<String, List<GeneratedFile>> previousPhaseFiles() {
+        Map<String, List<GeneratedFile>> phaseFiles = new LinkedHashMap<>();
+        phaseFiles.put(CodeGenerationService.PHASE_FRONTEND, List.of(
+                new GeneratedFile("src/views/UserForm.vue", "<input v-model=\"form.nickName\"/>"),
+                new GeneratedFile("src/views/LogList.vue", "<td>{{ row.operator }}</td>")));
+        phaseFiles.put(CodeGenerationService.PHASE_BACKEND, List.of(
+                new GeneratedFile("src/main/java/com/example/entity/User.java", "class User { String username; String nickName; }"),
+                new GeneratedFile("src/main/resources/mapper/UserMapper.xml", "select id, username, nick_name from t_user"),
+                new GeneratedFile("src/main/java/com/example/entity/Log.java", "class Log { Long logId; String operator; }")));
+        phaseFiles.put(CodeGenerationService.PHASE_README, List.of(
+                new GeneratedFile("README.md", "# 用户中心")));
+        return phaseFiles;
+    }
+
+    private final IncrementalRegenerationPlanner planner = new IncrementalRegenerationPlanner();
+
+    @Test
+    public void oneFieldEditRegeneratesOnlyFilesUsingTheField() {
+        String edited = DESIGN_DOCUMENT.replace("| nick_name | varchar(32) | 昵称 |", "| nick_name | varchar(64) | 昵称 |");
+
+        RegenerationPlan plan = planner.plan(DESIGN_DOCUMENT, previousPhaseFiles(), edited);
+
+        assertFalse(plan.isFullRegeneration());
+        assertEquals(1, plan.getChanges().size());
+        assertEquals(SectionChangeType.MODIFIED, plan.getChanges().get(0).getType());
+        assertEquals(List.of("src/views/UserForm.vue", "src/main/java/com/example/entity/User.java", "src/main/resources/mapper/UserMapper.xml"),
+                plan.getRegeneratedFiles());
+        assertEquals(3, plan.getReusedFileCount());
+    }
+
+    @Test
+    public void addedColumnFallsBackToTheWholeTable() {
+        String edited = DESIGN_DOCUMENT.replace("| nick_name | varchar(32) | 昵称 |\n",
+                "| nick_name | varchar(32) | 昵称 |\n| avatar_url | varchar(255) | 头像 |\n");
+
+        RegenerationPlan plan = planner.plan(DESIGN_DOCUMENT, previousPhaseFiles(), edited);
+
+        // avatar_url 还不存在于任何文件中，退回到用户表的表名和其他字段；日志相关文件不受影响
+        assertFalse(plan.isFullRegeneration());
+        assertEquals(List.of("src/views/UserForm.vue", "src/main/java/com/example/entity/User.java", "src/main/resources/mapper/UserMapper.xml"),
+                plan.getRegeneratedFiles());
+    }
+
+    @Test
+    public void newTableRequiresFullRegeneration() {
+        String edited = DESIGN_DOCUMENT + "\n### 订单表 (t_order)\n| 字段 | 类型 |\n|---|---|\n| order_no | varchar(32) |\n";
+
+        RegenerationPlan plan = planner.plan(DESIGN_DOCUMENT, previousPhaseFiles(), edited);
+
+        assertTrue(plan.isFullRegeneration());
+    }
+
+    @Test
+    public void layoutEditsRegenerateNothing() {
+        String edited = DESIGN_DOCUMENT.replace("| log_id | bigint |", "|  log_id  |  bigint  |");
+
+        RegenerationPlan plan = planner.plan(DESIGN_DOCUMENT, previousPhaseFiles(), edited);
+
+        assertFalse(plan.isFullRegeneration());
+        assertTrue(plan.getChanges().isEmpty());
+        assertTrue(plan.getRegeneratedFiles().isEmpty());
+        assertEquals(6, plan.getReusedFileCount());
+    }
+
+    @Test
+    public void proseEditUnderABackendHeadingRegeneratesBackendAndReadme() {
+        String document = DESIGN_DOCUMENT + "\n## 接口设计\n删除用户时物理删除记录。\n";
+        String edited = document.replace("物理删除", "逻辑删除");
+
+        RegenerationPlan plan = planner.plan(document, previousPhaseFiles(), edited);
+
+        // 中文描述提取不到标识符，映射不到任何文件：按标题归到后端，连同 README 一起重新生成
+        assertFalse(plan.isFullRegeneration());
+        assertEquals(List.of("用户中心设计 > 接口设计#TEXT[0]"), plan.getUnmappedSections());
+        assertEquals(List.of("src/main/java/com/example/entity/User.java", "src/main/resources/mapper/UserMapper.xml",
+                "src/main/java/com/example/entity/Log.java", "README.md"), plan.getRegeneratedFiles());
+        assertEquals(2, plan.getReusedFileCount());
+    }
+
+    @Test
+    public void proseEditWithoutAnOwningPhaseRequiresFullRegeneration() {
+        String edited = DESIGN_DOCUMENT.replace("系统用于管理用户资料。", "系统用于集中管理用户资料。");
+
+        RegenerationPlan plan = planner.plan(DESIGN_DOCUMENT, previousPhaseFiles(), edited);
+
+        assertEquals(List.of("用户中心设计 > 概述#TEXT[0]"), plan.getUnmappedSections());
+        assertTrue(plan.isFullRegeneration());
+    }
+
+    @Test
+    public void headingsAreAssignedToASinglePhase() {
+        assertEquals(CodeGenerationService.PHASE_BACKEND, IncrementalRegenerationPlanner.owningPhase("用户中心设计 > 后端 > 删除规则"));
+        assertEquals(CodeGenerationService.PHASE_FRONTEND, IncrementalRegenerationPlanner.owningPhase("用户中心设计 > 页面设计"));
+        assertNull(IncrementalRegenerationPlanner.owningPhase("用户中心设计 > 前后端接口约定 > 前端"));
+        assertNull(IncrementalRegenerationPlanner.owningPhase("用户中心设计 > 概述"));
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.config.LlmEndpointConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用几个本地的 OpenAI 兼容桩服务（/v1/chat/completions，流式返回 SSE）验证路由与故障转移，
+ * 请求走真实的 Spring AI OpenAI 客户端。
+ */
+public class LlmEndpointPoolTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final ExecutorService attemptExecutor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    public void shutdown() {
+        servers.forEach(server -> server.stop(0));
+        attemptExecutor.shutdownNow();
+    }
+
+    @Test
+    public void mostTrafficIsRoutedToTheFasterEndpoint() {
+        AtomicLong clock = new AtomicLong();
+        LlmEndpoint fast = timedEndpoint("fast", clock);
+        LlmEndpoint slow = timedEndpoint("slow", clock);
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(fast, slow));
+
+        // 每 100ms 一个请求，共 10 秒
+        Map<LlmEndpoint, Integer> served = route(pool, clock, 100, endpoint -> endpoint == fast ? 50L : 400L);
+
+        assertEquals(100, served.get(fast) + served.get(slow));
+        // 冷启动的一次、第一个样本一次，之后每 5 秒一次试探
+        assertTrue(served.get(slow) >= 3 && served.get(slow) <= 6, "slow endpoint served " + served.get(slow) + " of 100 requests");
+        assertTrue(pool.getStats().get(1).getEwmaFirstTokenMillis() >= 300);
+    }
+
+    @Test
+    public void oneSlowSampleDoesNotStarveTheFasterEndpoint() {
+        AtomicLong clock = new AtomicLong();
+        LlmEndpoint fast = timedEndpoint("fast", clock);
+        LlmEndpoint slow = timedEndpoint("slow", clock);
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(fast, slow));
+        route(pool, clock, 20, endpoint -> endpoint == fast ? 50L : 400L);
+
+        // fast 的一次 GC 停顿：之后的请求都去 slow，直到试探刷新 fast 的估计
+        fast.recordSuccess(clock.get(), clock.get() + TimeUnit.SECONDS.toNanos(10), clock.get() + TimeUnit.SECONDS.toNanos(11), 100);
+        Map<LlmEndpoint, Integer> firstTenSeconds = route(pool, clock, 100, endpoint -> endpoint == fast ? 50L : 400L);
+        Map<LlmEndpoint, Integer> nextFiveSeconds = route(pool, clock, 50, endpoint -> endpoint == fast ? 50L : 400L);
+
+        // 没有试探时 fast 在 10 秒内一个请求也分不到；试探一次就恢复
+        assertTrue(firstTenSeconds.get(fast) >= 20, "fast endpoint served " + firstTenSeconds.get(fast) + " of 100 requests");
+        assertTrue(nextFiveSeconds.get(fast) >= 45, "fast endpoint served " + nextFiveSeconds.get(fast) + " of 50 requests");
+    }
+
+    @Test
+    public void coldStartSampleAndTinyStreamsAreIgnored() {
+        AtomicLong clock = new AtomicLong();
+        LlmEndpoint endpoint = timedEndpoint("only", clock);
+
+        endpoint.recordSuccess(0, TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(6), 3);
+        assertEquals(0, endpoint.getStats().getEwmaFirstTokenMillis());
+        // 3 个分片的流：首 token 延迟计入，输出速度仍是初始值
+        endpoint.recordSuccess(0, TimeUnit.MILLISECONDS.toNanos(80), TimeUnit.MILLISECONDS.toNanos(81), 3);
+        assertEquals(80, endpoint.getStats().getEwmaFirstTokenMillis());
+        assertEquals(50.0, endpoint.getStats().getEwmaTokensPerSecond());
+        // 非流式调用的整体耗时不是首 token 延迟
+        endpoint.recordSuccess(0, 0, TimeUnit.SECONDS.toNanos(25), 0);
+        assertEquals(80, endpoint.getStats().getEwmaFirstTokenMillis());
+        assertEquals(3, endpoint.getStats().getRequests());
+    }
+
+    @Test
+    public void endpointFailingMidJobIsEjectedAndStreamsFailOver() throws Exception {
+        StubEndpoint first = new StubEndpoint("first", 0);
+        StubEndpoint second = new StubEndpoint("second", 0);
+        // first 权重更高，正常时承担全部流量
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(endpoint(first, 10, 2), endpoint(second, 1, 2)));
+        HedgedLlmStreamer streamer = streamer(pool);
+
+        for (int i = 0; i < 30; i++) {
+            if (i == 10) {
+                first.failing.set(true);
+            }
+            StringBuilder text = new StringBuilder();
+            streamer.stream("Backend", streamRequest(), sink(text));
+            assertTrue(text.toString().startsWith("hello from "), "call " + i + " returned " + text);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, pool.getEndpoints().get(0).getCircuitBreaker().getState());
+        assertEquals(CircuitBreaker.State.CLOSED, pool.getEndpoints().get(1).getCircuitBreaker().getState());
+        // 连续失败 2 次后熔断，之后的请求不再打到坏端点
+        // 故障前 first 承担了大部分流量（second 只有冷启动和第一个样本的两次试探）
+        assertTrue(first.requests.get() >= 8, "first endpoint served " + first.requests.get() + " of 10 requests");
+        assertEquals(2, first.failedRequests.get());
+        assertEquals(30, first.requests.get() + second.requests.get());
+        assertEquals(2, streamer.getStats().getFailovers());
+    }
+
+    @Test
+    public void nonStreamingCallsFailOverToAHealthyEndpoint() throws Exception {
+        StubEndpoint broken = new StubEndpoint("broken", 0);
+        broken.failing.set(true);
+        StubEndpoint healthy = new StubEndpoint("healthy", 0);
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(endpoint(broken, 10, 1), endpoint(healthy, 1, 1)));
+
+        for (int i = 0; i < 5; i++) {
+            String text = pool.execute((endpoint, permit) ->
+                    endpoint.chatClient(ChatProfile.defaults()).prompt("hi").call().content());
+            assertEquals("hello from healthy", text);
+        }
+        assertEquals(1, broken.failedRequests.get());
+        assertEquals(CircuitBreaker.State.OPEN, pool.getEndpoints().get(0).getCircuitBreaker().getState());
+        assertEquals(5, healthy.requests.get());
+    }
+
+    @Test
+    public void probeTakenForAnAlreadyFailedEndpointIsGivenBack() {
+        // 熔断后立即半开：失败之后 select 只能再选回它，并占用它唯一的探测名额
+        LlmEndpoint flaky = new LlmEndpoint("flaky", "m", "http://flaky", 1, null,
+                new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 1000, 0, 3), new CircuitBreaker(1, 0));
+        LlmEndpoint open = HedgedLlmStreamerTest.endpoint("open", 1, 1);
+        open.getCircuitBreaker().onFailure();
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(flaky, open));
+
+        assertThrows(IllegalStateException.class, () -> pool.execute((endpoint, permit) -> {
+            throw WebClientResponseException.create(503, "unavailable", HttpHeaders.EMPTY, new byte[0], null);
+        }));
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, flaky.getCircuitBreaker().getState());
+        assertSame(flaky, pool.select(Set.of()));
+    }
+
+    @Test
+    public void requestErrorsAreNotFailedOver() {
+        StubEndpoint first = new StubEndpoint("first", 0);
+        StubEndpoint second = new StubEndpoint("second", 0);
+        first.failureStatus = 400;
+        first.failing.set(true);
+        second.failureStatus = 400;
+        second.failing.set(true);
+        LlmEndpointPool pool = new LlmEndpointPool(List.of(endpoint(first, 1, 1), endpoint(second, 1, 1)));
+
+        assertThrows(Exception.class, () -> pool.execute((endpoint, permit) ->
+                endpoint.chatClient(ChatProfile.defaults()).prompt("hi").call().content()));
+        assertEquals(1, first.failedRequests.get() + second.failedRequests.get());
+        assertTrue(pool.getEndpoints().stream().allMatch(endpoint -> endpoint.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void streamedUsageIncludingCachedPromptTokensReachesTheSink() throws Exception {
+        StubEndpoint stub = new StubEndpoint("only", 0);
+        HedgedLlmStreamer streamer = streamer(new LlmEndpointPool(List.of(endpoint(stub, 1, 3))));
+        StringBuilder text = new StringBuilder();
+        List<TokenUsage> usage = new ArrayList<>();
+
+        streamer.stream("Backend", streamRequest(), new HedgedLlmStreamer.StreamSink() {
+            @Override
+            public void onChunk(String chunk) {
+                text.append(chunk);
+            }
+
+            @Override
+            public void onReset() {
+                text.setLength(0);
+            }
+
+            @Override
+            public void onUsage(TokenUsage reported) {
+                usage.add(reported);
+            }
+        });
+
+        assertEquals("hello from only", text.toString());
+        assertEquals(1, usage.size());
+        assertEquals(900, usage.get(0).getPromptTokens());
+        assertEquals(768, usage.get(0).getCachedPromptTokens());
+        assertEquals(3, usage.get(0).getCompletionTokens());
+    }
+
+    private static Function<LlmEndpoint, Flux<ChatResponse>> streamRequest() {
+        return endpoint -> endpoint.chatClient(ChatProfile.defaults()).prompt("hi").stream().chatResponse();
+    }
+
+    private HedgedLlmStreamer streamer(LlmEndpointPool pool) {
+        return new HedgedLlmStreamer(pool, attemptExecutor, false, 95, 2000, 15000, 0, 5000, 2, 10, 50);
+    }
+
+    // 不经过 HTTP：直接按 latency 汇报样本，时钟每个请求前进 100ms
+    private static Map<LlmEndpoint, Integer> route(LlmEndpointPool pool, AtomicLong clock, int requests,
+                                                   Function<LlmEndpoint, Long> ttftMillis) {
+        Map<LlmEndpoint, Integer> served = new HashMap<>();
+        pool.getEndpoints().forEach(endpoint -> served.put(endpoint, 0));
+        for (int i = 0; i < requests; i++) {
+            LlmEndpoint endpoint = pool.select(Set.of());
+            long start = clock.get();
+            long firstToken = start + TimeUnit.MILLISECONDS.toNanos(ttftMillis.apply(endpoint));
+            endpoint.recordSuccess(start, firstToken, firstToken + TimeUnit.SECONDS.toNanos(2), 200);
+            served.merge(endpoint, 1, Integer::sum);
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        return served;
+    }
+
+    private static LlmEndpoint timedEndpoint(String name, AtomicLong clock) {
+        return new LlmEndpoint(name, "m", "http://" + name, 1, null, new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 1000, 0, 3),
+                new CircuitBreaker(3, 30000), StructuredOutputMode.NONE, clock::get);
+    }
+
+    private LlmEndpoint endpoint(StubEndpoint stub, int weight, int failureThreshold) {
+        String baseUrl = "http://127.0.0.1:" + stub.server.getAddress().getPort();
+        return new LlmEndpoint(stub.name, "stub-model", baseUrl, weight,
+                new ChatClientRegistry(LlmEndpointConfig.openAiChatClientBuilder(baseUrl, "test-key", "stub-model"), "stub-model"),
+                new UpstreamConcurrencyLimiter(8, 1, 64, 20000, 1000, 0, 3), new CircuitBreaker(failureThreshold, 60000));
+    }
+
+    private static HedgedLlmStreamer.StreamSink sink(StringBuilder text) {
+        return new HedgedLlmStreamer.StreamSink() {
+            @Override
+            public void onChunk(String chunk) {
+                text.append(chunk);
+            }
+
+            @Override
+            public void onReset() {
+                text.setLength(0);
+            }
+        };
+    }
+
+    private class StubEndpoint {
+        private final String name;
+        private final long firstTokenDelayMillis;
+        private final HttpServer server;
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failedRequests = new AtomicInteger();
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private volatile int failureStatus = 500;
+
+        StubEndpoint(String name, long firstTokenDelayMillis) {
+            this.name = name;
+            this.firstTokenDelayMillis = firstTokenDelayMillis;
+            try {
+                server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            server.createContext("/v1/chat/completions", this::handle);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.start();
+            servers.add(server);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (failing.get()) {
+                failedRequests.incrementAndGet();
+                send(exchange, failureStatus, "application/json", "{\"error\":{\"message\":\"stub failure\"}}");
+                return;
+            }
+            requests.incrementAndGet();
+            sleep(firstTokenDelayMillis);
+            if (!body.contains("\"stream\":true")) {
+                send(exchange, 200, "application/json", "{\"id\":\"x\",\"object\":\"chat.completion\",\"created\":1,\"model\":\"stub-model\","
+                        + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"hello from " + name + "\"},"
+                        + "\"finish_reason\":\"stop\"}],\"usage\":{\"prompt_tokens\":1,\"completion_tokens\":3,\"total_tokens\":4}}");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (String chunk : List.of("hello ", "from ", name)) {
+                    out.write(("data: {\"id\":\"x\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"stub-model\","
+                            + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + chunk + "\"},\"finish_reason\":null}]}\n\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+                if (body.contains("\"include_usage\":true")) {
+                    // DeepSeek 的格式：最后一个分片没有 choices，只有用量
+                    out.write(("data: {\"id\":\"x\",\"object\":\"chat.completion.chunk\",\"created\":1,\"model\":\"stub-model\",\"choices\":[],"
+                            + "\"usage\":{\"prompt_tokens\":900,\"completion_tokens\":3,\"total_tokens\":903,"
+                            + "\"prompt_cache_hit_tokens\":768,\"prompt_cache_miss_tokens\":132}}\n\n").getBytes(StandardCharsets.UTF_8));
+                }
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        private void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.CacheStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LlmResponseCache 单元测试类
+ */
+public class LlmResponseCacheTest {
+
+    private final OpenAiChatOptions deepseek = OpenAiChatOptions.builder().model("deepseek-chat").build();
+
+    @Test
+    public void keyDependsOnPromptModelAndOptions() {
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 10, 1);
+        Prompt prompt = new Prompt(List.of(new SystemMessage("preamble"), new UserMessage("doc")));
+
+        String key = cache.keyFor(prompt, deepseek, null);
+        assertEquals(key, cache.keyFor(new Prompt(List.of(new SystemMessage("preamble"), new UserMessage("doc"))), deepseek, null));
+        assertNotEquals(key, cache.keyFor(new Prompt(List.of(new SystemMessage("preamble"), new UserMessage("doc2"))), deepseek, null));
+        // 同样的文本，不同的消息类型
+        assertNotEquals(key, cache.keyFor(new Prompt(List.of(new UserMessage("preamble"), new UserMessage("doc"))), deepseek, null));
+        assertNotEquals(key, cache.keyFor(prompt, OpenAiChatOptions.builder().model("deepseek-reasoner").build(), null));
+        assertNotEquals(key, cache.keyFor(prompt, OpenAiChatOptions.builder().model("deepseek-chat").temperature(0.3).build(), null));
+    }
+
+    @Test
+    public void keyUsesTheEndpointModelsWhenTheOptionsNameNoModel() {
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 10, 1);
+        Prompt prompt = new Prompt(new UserMessage("doc"));
+        OpenAiChatOptions noModel = OpenAiChatOptions.builder().temperature(0.2).build();
+        LlmEndpointPool chat = new LlmEndpointPool(List.of(HedgedLlmStreamerTest.endpoint("a")));
+        LlmEndpointPool mixed = new LlmEndpointPool(List.of(HedgedLlmStreamerTest.endpoint("a"),
+                new LlmEndpoint("b", "other-model", "http://b", 1, null, new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 1000, 0, 3),
+                        new CircuitBreaker(10, 60000))));
+
+        assertEquals("m", chat.getModelIdentity());
+        assertEquals("m,other-model", mixed.getModelIdentity());
+        assertNotEquals(cache.keyFor(prompt, noModel, chat.getModelIdentity()), cache.keyFor(prompt, noModel, mixed.getModelIdentity()));
+        assertNotEquals(cache.keyFor(prompt, noModel, "deepseek-chat"), cache.keyFor(prompt, noModel, "deepseek-reasoner"));
+        // options 指定的模型优先
+        assertEquals(cache.keyFor(prompt, deepseek, "m"), cache.keyFor(prompt, deepseek, "other-model"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntries() {
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 2, 1);
+        cache.put("a", "response-a");
+        cache.put("b", "response-b");
+        assertEquals("response-a", cache.get("a"));
+
+        cache.put("c", "response-c");
+
+        assertNull(cache.get("b"));
+        assertEquals("response-a", cache.get("a"));
+        assertEquals("response-c", cache.get("c"));
+        CacheStats stats = cache.getStats();
+        assertEquals(3, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getEvictions());
+        assertEquals(2, stats.getEntries());
+    }
+
+    @Test
+    public void evictsBySizeAndSkipsOversizedEntries() {
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 100, 1);
+        String halfMegabyte = "x".repeat(256 * 1024);
+        cache.put("a", halfMegabyte);
+        cache.put("b", halfMegabyte);
+        cache.put("c", halfMegabyte);
+
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.getStats().getEntries());
+        assertEquals(1024 * 1024, cache.getStats().getSizeBytes());
+
+        cache.put("huge", "x".repeat(1024 * 1024));
+        assertNull(cache.get("huge"));
+        assertEquals(2, cache.getStats().getEntries());
+    }
+
+    @Test
+    public void servesFromPersistentStoreAfterRestart(@TempDir Path dir) {
+        PersistentResponseStore store = new PersistentResponseStore(true, dir.toString(), 16, 16);
+        new LlmResponseCache(new ObjectMapper(), 10, 1, store).put("key", "response");
+        store.close();
+
+        // 新进程：内存为空，磁盘命中后回填内存
+        PersistentResponseStore reopened = new PersistentResponseStore(true, dir.toString(), 16, 16);
+        LlmResponseCache cache = new LlmResponseCache(new ObjectMapper(), 10, 1, reopened);
+        assertEquals("response", cache.get("key"));
+        assertEquals("response", cache.get("key"));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getDiskHits());
+        assertEquals(1, stats.getEntries());
+        assertEquals(1, stats.getDiskEntries());
+        reopened.close();
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.GenerationOptions;
+import com.example.aiarchdesigner.parser.DelimitedFileStreamParser;
+import com.example.aiarchdesigner.parser.GeneratedFileStreamParser;
+import com.example.aiarchdesigner.service.phase.PhaseGraphExecutor;
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 输出格式基准：同样的设计文档、同样的生成结果，后端阶段分别要求 JSON 数组和 === FILE: ... === 文件块，
+ * 比较输出 token 数和整个生成的端到端耗时。
+ * <p>
+ * 模型用桩代替：按提示词里的输出格式把固定的文件集写成对应格式，按输出 token 数以固定速度逐块流式返回（解码时间与输出 token 数成正比，
+ * 和真实模型一样）。三份"设计文档"分别对应本项目 model、parser、service/phase + service/prompt 目录下的源码。
+ */
+public class OutputFormatBenchmarkTest {
+
+    // 模拟的解码速度：每个输出 token 20 微秒（真实模型约为它的 1000 倍，比例关系不变）
+    private static final long NANOS_PER_TOKEN = 20_000;
+    private static final int CHUNK_CHARS = 256;
+    private static final int MEASURED_RUNS = 3;
+
+    private static final Map<String, List<String>> DESIGN_DOCUMENTS = new LinkedHashMap<>();
+
+    static {
+        DESIGN_DOCUMENTS.put("operation-log-model", List.of("model"));
+        DESIGN_DOCUMENTS.put("response-parsers", List.of("parser"));
+        DESIGN_DOCUMENTS.put("phase-graph", List.of("service/phase", "service/prompt"));
+    }
+
+    private final TokenBudgeter tokenBudgeter = CodeGenerationServiceTest.tokenBudgeter();
+
+    @Test
+    public void fileBlocksNeedFewerOutputTokensThanJson(@TempDir Path workspace) throws Exception {
+        long jsonTokens = 0;
+        long blockTokens = 0;
+        long jsonNanos = 0;
+        long blockNanos = 0;
+        for (Map.Entry<String, List<String>> document : DESIGN_DOCUMENTS.entrySet()) {
+            List<GeneratedFile> expected = sourceFiles(document.getValue());
+            Run json = run(document.getKey(), expected, PhaseOutputFormat.JSON, workspace.resolve("json"));
+            Run blocks = run(document.getKey(), expected, PhaseOutputFormat.FILE_BLOCKS, workspace.resolve("blocks"));
+            System.out.printf("Output format, design document %s (%d files): JSON %d output tokens %.1f ms, "
+                            + "FILE_BLOCKS %d output tokens %.1f ms (%.1f%% fewer tokens)%n", document.getKey(), expected.size(),
+                    json.outputTokens, json.nanos / 1e6, blocks.outputTokens, blocks.nanos / 1e6,
+                    100.0 * (json.outputTokens - blocks.outputTokens) / json.outputTokens);
+
+            // 两种格式解析出完全相同的文件
+            assertEquals(contents(expected), contents(json.files));
+            assertEquals(contents(expected), contents(blocks.files));
+            assertTrue(blocks.outputTokens < json.outputTokens, document.getKey() + ": file blocks should need fewer output tokens");
+            jsonTokens += json.outputTokens;
+            blockTokens += blocks.outputTokens;
+            jsonNanos += json.nanos;
+            blockNanos += blocks.nanos;
+        }
+        System.out.printf("Output format, total: JSON %d output tokens %.1f ms, FILE_BLOCKS %d output tokens %.1f ms%n",
+                jsonTokens, jsonNanos / 1e6, blockTokens, blockNanos / 1e6);
+    }
+
+    private Run run(String document, List<GeneratedFile> files, PhaseOutputFormat backendFormat, Path workspace) throws Exception {
+        String designDocument = "Design document: " + document;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            LlmEndpointPool endpointPool = CodeGenerationServiceTest.endpointPool(new SimulatedModel(files));
+            PromptProviderService promptProviderService = new PromptProviderService("json", backendFormat.name(), "json", "json");
+            CodeGenerationService service = new CodeGenerationService(endpointPool, promptProviderService,
+                    new PromptTemplateRegistry(promptProviderService), new PhaseGraphExecutor(executor), new GenerationConcurrencyGate(10),
+                    executor, workspace.toString(), 16, 2, true, new LlmResponseCache(new ObjectMapper(), 100, 16),
+                    CodeGenerationServiceTest.hedgedStreamer(endpointPool), tokenBudgeter,
+                    CodeGenerationServiceTest.condenser(endpointPool, executor), new ResponseParseTracker());
+            AtomicLong backendTokens = new AtomicLong();
+            PhaseListener usage = new PhaseListener() {
+                @Override
+                public void onTokenUsage(String phaseName, long promptTokens, long cachedPromptTokens, long completionTokens) {
+                    if (CodeGenerationService.PHASE_BACKEND.equals(phaseName)) {
+                        backendTokens.set(completionTokens);
+                    }
+                }
+            };
+            // 第一次预热
+            List<GeneratedFile> generated = service.generateProjectCode(designDocument, GenerationOptions.of(false), usage);
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                generated = service.generateProjectCode(designDocument, GenerationOptions.of(false), usage);
+            }
+            long nanos = (System.nanoTime() - start) / MEASURED_RUNS;
+            List<GeneratedFile> backendFiles = generated.stream().filter(file -> file.getFilePath().endsWith(".java"))
+                    .collect(Collectors.toList());
+            return new Run(backendFiles, backendTokens.get(), nanos);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<GeneratedFile> sourceFiles(List<String> directories) throws IOException {
+        Path sources = Paths.get("src/main/java/com/example/aiarchdesigner");
+        List<GeneratedFile> files = new ArrayList<>();
+        for (String directory : directories) {
+            try (Stream<Path> paths = Files.list(sources.resolve(directory))) {
+                for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                    // 文件块格式的内容总是以换行结尾
+                    String code = Files.readString(path);
+                    files.add(new GeneratedFile(sources.relativize(path).toString().replace('\\', '/'),
+                            code.endsWith("\n") ? code : code + "\n"));
+                }
+            }
+        }
+        return files;
+    }
+
+    private static Map<String, String> contents(List<GeneratedFile> files) {
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (GeneratedFile file : files) {
+            contents.put(file.getFilePath(), file.getCode());
+        }
+        return contents;
+    }
+
+    /**
+     * 按阶段指令里的输出格式返回固定的文件集，每个分片按它的 token 数延迟，模拟解码速度。
+     */
+    private final class SimulatedModel implements ChatModel {
+        private final List<GeneratedFile> backendFiles;
+
+        SimulatedModel(List<GeneratedFile> backendFiles) {
+            this.backendFiles = backendFiles;
+        }
+
+        @Override
+        public ChatResponse call(Prompt prompt) {
+            return response("No");
+        }
+
+        @Override
+        public Flux<ChatResponse> stream(Prompt prompt) {
+            List<Message> messages = prompt.getInstructions();
+            String instruction = messages.get(messages.size() - 1).getText();
+            List<GeneratedFile> files = instruction.contains("BACKEND CODE GENERATION") ? backendFiles
+                    : instruction.contains("GENERATE PROJECT README") ? List.of(new GeneratedFile("README.md", "# Demo\n"))
+                    : List.of(new GeneratedFile("index.html", "<html></html>\n"));
+            String text = render(files, instruction.contains("Output format: FILE BLOCKS"));
+            List<String> chunks = new ArrayList<>();
+            for (int i = 0; i < text.length(); i += CHUNK_CHARS) {
+                chunks.add(text.substring(i, Math.min(text.length(), i + CHUNK_CHARS)));
+            }
+            return Flux.fromIterable(chunks).concatMap(chunk -> Mono.just(response(chunk))
+                    .delayElement(Duration.ofNanos(tokenBudgeter.countTokens(chunk) * NANOS_PER_TOKEN)));
+        }
+
+        private String render(List<GeneratedFile> files, boolean fileBlocks) {
+            try {
+                return fileBlocks ? DelimitedFileStreamParser.format(files) : GeneratedFileStreamParser.toJsonArray(files);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static ChatResponse response(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static final class Run {
+        private final List<GeneratedFile> files;
+        private final long outputTokens;
+        private final long nanos;
+
+        Run(List<GeneratedFile> files, long outputTokens, long nanos) {
+            this.files = files;
+            this.outputTokens = outputTokens;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.aiarchdesigner.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PersistentResponseStore 单元测试类
+ */
+public class PersistentResponseStoreTest {
+
+    private static PersistentResponseStore open(Path dir, long maxSizeMb, long segmentSizeMb) {
+        return new PersistentResponseStore(true, dir.toString(), maxSizeMb, segmentSizeMb);
+    }
+
+    /**
+     * 测试 1：重启后数据仍然可读
+     */
+    @Test
+    public void entriesSurviveRestart(@TempDir Path dir) {
+        PersistentResponseStore store = open(dir, 16, 1);
+        store.put("key-1", "[{\"filePath\": \"a.js\", \"code\": \"中文内容\"}]");
+        store.put("key-2", "second");
+        store.put("key-2", "second, overwritten");
+        store.close();
+
+        PersistentResponseStore reopened = open(dir, 16, 1);
+        assertEquals("[{\"filePath\": \"a.js\", \"code\": \"中文内容\"}]", reopened.get("key-1"));
+        assertEquals("second, overwritten", reopened.get("key-2"));
+        assertNull(reopened.get("missing"));
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    /**
+     * 测试 2：超过总大小上限时淘汰最久未使用的条目，淘汰结果在重启后保持
+     */
+    @Test
+    public void evictsLeastRecentlyUsedWhenOverCapacity(@TempDir Path dir) {
+        PersistentResponseStore store = open(dir, 1, 1);
+        String value = "x".repeat(300 * 1024);
+        store.put("a", value);
+        store.put("b", value);
+        store.put("c", value);
+        assertNotNull(store.get("a"));
+
+        store.put("d", value);
+
+        assertNull(store.get("b"));
+        assertNotNull(store.get("a"));
+        assertEquals(1, store.getEvictions());
+        store.close();
+
+        PersistentResponseStore reopened = open(dir, 1, 1);
+        assertNull(reopened.get("b"));
+        assertEquals(3, reopened.size());
+        reopened.close();
+    }
+
+    /**
+     * 测试 3：压缩回收失效空间并删除旧段，压缩后的数据在重启后仍可读
+     */
+    @Test
+    public void compactionReclaimsDeadSegments(@TempDir Path dir) throws Exception {
+        PersistentResponseStore store = open(dir, 64, 1);
+        String value = "y".repeat(200 * 1024);
+        for (int i = 0; i < 20; i++) {
+            store.put("key", value + i);
+        }
+        store.put("other", "kept");
+        long liveBytes = store.getLiveBytes();
+        awaitCompactions(store, 1);
+
+        store.compact();
+
+        assertEquals(liveBytes, store.getDiskBytes());
+        assertEquals(1, segmentCount(dir));
+        store.close();
+
+        PersistentResponseStore reopened = open(dir, 64, 1);
+        assertEquals(value + 19, reopened.get("key"));
+        assertEquals("kept", reopened.get("other"));
+        reopened.close();
+    }
+
+    /**
+     * 测试 4：写了一半的索引尾部和损坏的数据记录都被当作未命中，不影响其余数据
+     */
+    @Test
+    public void recoversFromTornWritesAndCorruption(@TempDir Path dir) throws Exception {
+        PersistentResponseStore store = open(dir, 16, 16);
+        store.put("good", "intact");
+        store.put("bad", "will be corrupted");
+        store.close();
+
+        try (RandomAccessFile index = new RandomAccessFile(dir.resolve("index.idx").toFile(), "rw")) {
+            index.seek(index.length());
+            index.write(new byte[]{1, 0, 9, 'p'});
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(dir.resolve("segment-000001.log").toFile(), "rw")) {
+            segment.seek(segment.length() - 1);
+            segment.write('!');
+        }
+
+        PersistentResponseStore reopened = open(dir, 16, 16);
+        assertEquals("intact", reopened.get("good"));
+        assertNull(reopened.get("bad"));
+        reopened.put("after", "recovered");
+        reopened.close();
+
+        PersistentResponseStore again = open(dir, 16, 16);
+        assertEquals("recovered", again.get("after"));
+        assertEquals("intact", again.get("good"));
+        again.close();
+    }
+
+    /**
+     * 测试 5：索引文件丢失时从数据段重建
+     */
+    @Test
+    public void rebuildsMissingIndexFromSegments(@TempDir Path dir) throws Exception {
+        PersistentResponseStore store = open(dir, 16, 16);
+        store.put("k1", "v1");
+        store.put("k2", "v2");
+        store.close();
+        Files.delete(dir.resolve("index.idx"));
+
+        PersistentResponseStore reopened = open(dir, 16, 16);
+        assertEquals("v1", reopened.get("k1"));
+        assertEquals("v2", reopened.get("k2"));
+        reopened.close();
+    }
+
+    /**
+     * 测试 6：数万条记录时，重启后的单次查询仍在亚毫秒级
+     */
+    @Test
+    public void lookupStaysSubMillisecondWithManyEntries(@TempDir Path dir) {
+        int count = 20_000;
+        PersistentResponseStore store = open(dir, 1024, 64);
+        String value = "z".repeat(2048);
+        for (int i = 0; i < count; i++) {
+            store.put("key-" + i, value);
+        }
+        store.close();
+
+        PersistentResponseStore reopened = open(dir, 1024, 64);
+        for (int i = 0; i < 2_000; i++) {
+            reopened.get("key-" + i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            assertNotNull(reopened.get("key-" + i));
+        }
+        double averageMicros = (System.nanoTime() - start) / 1000.0 / count;
+        System.out.printf("Average persistent cache lookup over %d entries: %.1f us%n", count, averageMicros);
+        assertTrue(averageMicros < 1000, "average lookup took " + averageMicros + " us");
+        reopened.close();
+    }
+
+    /**
+     * 测试 7：压缩在后台进行，拷贝期间的写入、覆盖和淘汰都保留在压缩结果里
+     */
+    @Test
+    public void writesDuringBackgroundCompactionSurviveTheSwap(@TempDir Path dir) throws Exception {
+        PersistentResponseStore store = open(dir, 64, 1);
+        String value = "w".repeat(100 * 1024);
+        for (int i = 0; i < 200; i++) {
+            store.put("key-" + (i % 10), value + i);
+        }
+        // 第一次压缩已在后台触发，这些写入与它并发进行
+        for (int i = 0; i < 50; i++) {
+            store.put("new-" + i, "value " + i);
+            store.put("key-" + (i % 5), "overwritten " + i);
+        }
+        awaitCompactions(store, 1);
+        store.compact();
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals("value " + i, store.get("new-" + i));
+        }
+        for (int i = 0; i < 5; i++) {
+            assertEquals("overwritten " + (45 + i), store.get("key-" + i));
+        }
+        for (int i = 5; i < 10; i++) {
+            assertEquals(value + (190 + i), store.get("key-" + i));
+        }
+        assertEquals(store.getLiveBytes(), store.getDiskBytes());
+        store.close();
+
+        PersistentResponseStore reopened = open(dir, 64, 1);
+        assertEquals(60, reopened.size());
+        assertEquals("overwritten 45", reopened.get("key-0"));
+        assertEquals(value + 199, reopened.get("key-9"));
+        assertEquals("value 49", reopened.get("new-49"));
+        reopened.close();
+    }
+
+    private static void awaitCompactions(PersistentResponseStore store, int compactions) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (store.getCompactions() < compactions) {
+            assertTrue(System.currentTimeMillis() < deadline, "dead bytes above live bytes should trigger compaction");
+            Thread.sleep(10);
+        }
+    }
+
+    private static long segmentCount(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("segment-")).count();
+        }
+    }
+}
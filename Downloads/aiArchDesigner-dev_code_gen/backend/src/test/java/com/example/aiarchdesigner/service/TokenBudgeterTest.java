@@ -0,0 +1,88 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.service.prompt.PromptTemplateRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBudgeterTest {
+
+    private static final String DOCUMENT = "# 设计文档\n\n简介：日志服务。\n\n"
+            + "## 库表设计\n\n| 字段 | 类型 |\n|---|---|\n| log_id | bigint |\n\n"
+            + "## 接口设计\n\n" + "POST /api/logs 创建日志，返回完整记录。\n".repeat(40) + "\n"
+            + "## 部署\n\n```yaml\n# not a heading\nreplicas: 2\n```\n";
+
+    private final TokenBudgeter budgeter = new TokenBudgeter(65536, 0.9, 4096, 8192, 8192, 4096, 2048);
+
+    @Test
+    public void documentThatFitsIsUntouched() {
+        assertSame(DOCUMENT, budgeter.fitDocument(DOCUMENT, budgeter.countTokens(DOCUMENT)));
+    }
+
+    @Test
+    public void oversizedDocumentKeepsWholeSectionsAndListsTheRest() {
+        int maxTokens = budgeter.countTokens(DOCUMENT) / 2;
+
+        String fitted = budgeter.fitDocument(DOCUMENT, maxTokens);
+
+        assertTrue(budgeter.countTokens(fitted) <= maxTokens);
+        assertTrue(fitted.startsWith("# 设计文档\n\n简介：日志服务。\n\n## 库表设计\n"));
+        // 放不下的接口章节只保留标题，后面放得下的章节照常保留，代码块里的 # 不算标题
+        assertFalse(fitted.contains("POST /api/logs"));
+        assertTrue(fitted.contains("- ## 接口设计"));
+        assertTrue(fitted.contains("## 部署\n\n```yaml\n# not a heading\nreplicas: 2\n```\n"));
+    }
+
+    @Test
+    public void singleOversizedSectionIsTruncated() {
+        String document = "没有标题的长文档。".repeat(500);
+
+        String fitted = budgeter.fitDocument(document, 100);
+
+        assertTrue(budgeter.countTokens(fitted) <= 100);
+        assertTrue(document.startsWith(fitted));
+    }
+
+    @Test
+    public void promptIsFittedToTheBudgetOfItsTemplate() {
+        int fixedTokens = budgeter.countPromptTokens(render(""));
+        int documentTokens = budgeter.countTokens(DOCUMENT);
+        // backend 预留 1000 个输出 token，窗口只够放下一半的文档
+        TokenBudgeter small = new TokenBudgeter(fixedTokens + documentTokens / 2 + 1000, 1.0, 4096, 1000, 1000, 1000, 1000);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, DOCUMENT);
+
+        TokenBudgeter.BudgetedPrompt budgeted = small.fit(PromptTemplateRegistry.BACKEND, parameters, values ->
+                render(values.get(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT).toString()));
+
+        assertTrue(budgeted.isDocumentTrimmed());
+        assertTrue(budgeted.getPromptTokens() <= small.promptBudget(PromptTemplateRegistry.BACKEND));
+        assertEquals(DOCUMENT, parameters.get(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT));
+
+        TokenBudgeter.BudgetedPrompt untouched = budgeter.fit(PromptTemplateRegistry.BACKEND, parameters, values ->
+                render(values.get(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT).toString()));
+        assertFalse(untouched.isDocumentTrimmed());
+        // 拼接处的 token 边界可能略有不同
+        assertTrue(Math.abs(fixedTokens + documentTokens - untouched.getPromptTokens()) <= 2);
+    }
+
+    @Test
+    public void promptThatCannotFitWithoutTheDocumentFailsBeforeCalling() {
+        TokenBudgeter tiny = new TokenBudgeter(1200, 1.0, 1000, 1000, 1000, 1000, 1000);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, DOCUMENT);
+
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> tiny.fit(PromptTemplateRegistry.README, parameters,
+                values -> new Prompt(new UserMessage("说明：".repeat(300) + values.get(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT)))));
+        assertTrue(error.getMessage().contains("without the design document"));
+    }
+
+    private static Prompt render(String document) {
+        return new Prompt(new UserMessage("Generate the backend for:\n" + document));
+    }
+}
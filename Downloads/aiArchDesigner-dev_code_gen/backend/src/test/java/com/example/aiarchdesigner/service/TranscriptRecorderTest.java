@@ -0,0 +1,271 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.service.phase.PhaseListener;
+import com.example.aiarchdesigner.utils.MpscRingBuffer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TranscriptRecorder 单元测试类
+ */
+public class TranscriptRecorderTest {
+
+    @Test
+    public void writesOneGzipTranscriptPerJob(@TempDir Path directory) throws Exception {
+        TranscriptRecorder recorder = new TranscriptRecorder(true, directory.toString(), 1024, 10, 0, 0, 0);
+        String designDocument = "# Todo app\n" + "The backend exposes a REST API for todos.\n".repeat(40);
+        Prompt prompt = new Prompt(List.of(new SystemMessage("You generate code."), new UserMessage(designDocument),
+                new UserMessage("Generate the backend.")));
+
+        recorder.open("job-1", "generate");
+        recorder.open("job-2", "generate");
+        PhaseListener first = recorder.listener("job-1");
+        first.onPhaseStarted("Backend");
+        first.onPrompt("Backend", prompt);
+        first.onChunk("Backend", "[{\"filePath\": ");
+        first.onChunk("Backend", "\"A.java\", \"code\": \"class A {}\"}]");
+        first.onStreamReset("Backend");
+        first.onChunk("Backend", "[]");
+        first.onPrompt("README", prompt);
+        recorder.listener("job-2").onChunk("Frontend", "<html></html>");
+        recorder.close("job-1", "COMPLETED");
+        recorder.close("job-2", "FAILED: provider down");
+        recorder.shutdown();
+
+        Path file = directory.resolve("job-1.transcript.gz");
+        byte[] bytes = Files.readAllBytes(file);
+        assertEquals((byte) 0x1f, bytes[0]);
+        assertEquals((byte) 0x8b, bytes[1]);
+
+        String transcript = recorder.read("job-1");
+        assertTrue(transcript.startsWith("=== Transcript of job job-1: generate (started "), transcript);
+        assertTrue(transcript.contains("Backend phase started\n"), transcript);
+        assertTrue(transcript.contains("Backend PROMPT system #1 (18 chars)\nYou generate code.\n"), transcript);
+        assertTrue(transcript.contains("Backend PROMPT user #2 (" + designDocument.length() + " chars)\n" + designDocument), transcript);
+        // 同一任务里重复的长消息（设计文档）只记录一次，短消息照常记录
+        assertEquals(1, occurrences(transcript, designDocument));
+        assertTrue(transcript.contains("README PROMPT user: same as message #2 (" + designDocument.length() + " chars)\n"), transcript);
+        assertEquals(2, occurrences(transcript, "You generate code."));
+        // 连续的分片合并在一个标题下
+        assertTrue(transcript.contains("Backend OUTPUT\n[{\"filePath\": \"A.java\", \"code\": \"class A {}\"}]\n"), transcript);
+        assertTrue(transcript.contains("Backend response stream replaced, output restarts\n"), transcript);
+        assertTrue(transcript.contains("Backend OUTPUT\n[]\n"), transcript);
+        assertTrue(transcript.endsWith("job COMPLETED\n"), transcript);
+        assertFalse(transcript.contains("<html>"));
+
+        String second = recorder.read("job-2");
+        assertTrue(second.contains("Frontend OUTPUT\n<html></html>\n"), second);
+        assertTrue(second.endsWith("job FAILED: provider down\n"), second);
+        assertNull(recorder.read("job-3"));
+        assertNull(recorder.read("../job-1"));
+    }
+
+    @Test
+    public void runningJobTranscriptIsReadableAndReopenedJobsAppend(@TempDir Path directory) throws Exception {
+        TranscriptRecorder recorder = new TranscriptRecorder(true, directory.toString(), 1024, 10, 0, 0, 0);
+        try {
+            recorder.open("job-1", "generate");
+            recorder.listener("job-1").onChunk("Backend", "partial output");
+            waitFor(recorder, "job-1", "partial output");
+
+            recorder.close("job-1", "COMPLETED");
+            waitFor(recorder, "job-1", "job COMPLETED");
+            // 同一个文件再次打开时追加新的 gzip member
+            recorder.open("job-1", "regenerate");
+            recorder.listener("job-1").onChunk("Backend", "second run");
+            recorder.close("job-1", "COMPLETED");
+            waitFor(recorder, "job-1", "second run");
+        } finally {
+            recorder.shutdown();
+        }
+        String transcript = recorder.read("job-1");
+        assertTrue(transcript.indexOf("partial output") < transcript.indexOf("=== Transcript of job job-1: regenerate"), transcript);
+        assertEquals(2, occurrences(transcript, "job COMPLETED"));
+    }
+
+    @Test
+    public void oldTranscriptsAreDeletedWhenAJobOpens(@TempDir Path directory) throws Exception {
+        Instant now = Instant.now();
+        // job-0 已经过期；job-1 到 job-4 依次越来越旧，加上新任务后只保留最新的 3 个
+        for (int i = 0; i <= 4; i++) {
+            Path file = directory.resolve("job-" + i + ".transcript.gz");
+            Files.write(file, new byte[0]);
+            Instant modified = i == 0 ? now.minus(Duration.ofHours(48)) : now.minus(Duration.ofMinutes(i));
+            Files.setLastModifiedTime(file, FileTime.from(modified));
+        }
+        Files.write(directory.resolve("notes.txt"), new byte[0]);
+        Files.setLastModifiedTime(directory.resolve("notes.txt"), FileTime.from(now.minus(Duration.ofHours(48))));
+
+        TranscriptRecorder recorder = new TranscriptRecorder(true, directory.toString(), 1024, 10, 0, 24, 3);
+        try {
+            recorder.open("job-5", "generate");
+            // 写线程打开文件后先清理再 flush，读到标题时清理已经完成
+            waitFor(recorder, "job-5", "Transcript of job job-5");
+        } finally {
+            recorder.shutdown();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(Set.of("job-1.transcript.gz", "job-2.transcript.gz", "job-5.transcript.gz", "notes.txt"),
+                    files.map(file -> file.getFileName().toString()).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void concurrentPhasesKeepTheirChunkOrder(@TempDir Path directory) throws Exception {
+        int threads = 8;
+        int chunks = 2000;
+        TranscriptRecorder recorder = new TranscriptRecorder(true, directory.toString(), 1 << 16, 10, 0, 0, 0);
+        recorder.open("job-1", "generate");
+        PhaseListener listener = recorder.listener("job-1");
+        runConcurrently(threads, thread -> {
+            for (int i = 0; i < chunks; i++) {
+                listener.onChunk("Phase-" + thread, "<" + thread + ":" + i + ">");
+            }
+        });
+        recorder.close("job-1", "COMPLETED");
+        recorder.shutdown();
+
+        assertEquals(0, recorder.getDroppedEvents());
+        String transcript = recorder.read("job-1");
+        for (int thread = 0; thread < threads; thread++) {
+            int position = -1;
+            for (int i = 0; i < chunks; i++) {
+                int next = transcript.indexOf("<" + thread + ":" + i + ">");
+                assertTrue(next > position, "chunk " + i + " of thread " + thread + " missing or out of order");
+                position = next;
+            }
+        }
+    }
+
+    @Test
+    public void ringBufferRejectsOffersWhenFull() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.poll());
+        }
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    public void disabledRecorderRecordsNothing() throws Exception {
+        TranscriptRecorder recorder = TranscriptRecorder.disabled();
+        recorder.open("job-1", "generate");
+        assertSame(PhaseListener.NO_OP, recorder.listener("job-1"));
+        recorder.close("job-1", "COMPLETED");
+        assertNull(recorder.read("job-1"));
+    }
+
+    /**
+     * 多个阶段线程同时输出分片：原来每个分片都 System.out.print（PrintStream 内部加锁并刷新），
+     * 现在只把事件放进环形缓冲区。这里用丢弃输出的 PrintStream 代替控制台，只比较阶段线程上的耗时。
+     */
+    @Test
+    public void recordingChunksIsCheaperThanPrintingThem(@TempDir Path directory) throws Exception {
+        int threads = 16;
+        int chunks = 20_000;
+        String chunk = "public class TodoService { private final TodoRepository repository; }\n";
+        PrintStream console = new PrintStream(OutputStream.nullOutputStream(), true);
+        long printNanos = runConcurrently(threads, thread -> {
+            for (int i = 0; i < chunks; i++) {
+                console.print(chunk);
+            }
+        });
+
+        TranscriptRecorder recorder = new TranscriptRecorder(true, directory.toString(), 1 << 16, 10, 0, 0, 0);
+        recorder.open("job-1", "benchmark");
+        PhaseListener listener = recorder.listener("job-1");
+        long recordNanos = runConcurrently(threads, thread -> {
+            for (int i = 0; i < chunks; i++) {
+                listener.onChunk("Phase-" + thread, chunk);
+            }
+        });
+        recorder.close("job-1", "COMPLETED");
+        recorder.shutdown();
+
+        System.out.printf("Transcript, %d threads x %d chunks: synchronized print %.1f ms, ring buffer %.1f ms, %d event(s) dropped%n",
+                threads, chunks, printNanos / 1e6, recordNanos / 1e6, recorder.getDroppedEvents());
+        String transcript = recorder.read("job-1");
+        assertTrue(transcript.endsWith("job COMPLETED\n"));
+        // 被丢弃的事件在记录里有说明
+        if (recorder.getDroppedEvents() > 0) {
+            assertTrue(transcript.contains("event(s) dropped, transcript ring buffer full"));
+        }
+    }
+
+    private static long runConcurrently(int threads, Consumer<Integer> work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                int index = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    work.accept(index);
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - begin;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void waitFor(TranscriptRecorder recorder, String jobId, String text) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            String transcript = recorder.read(jobId);
+            if (transcript != null && transcript.contains(text)) {
+                return;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "transcript never contained " + text);
+            Thread.sleep(10);
+        }
+    }
+
+    private static int occurrences(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
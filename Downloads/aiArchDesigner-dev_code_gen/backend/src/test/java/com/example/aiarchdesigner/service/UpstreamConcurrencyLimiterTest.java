@@ -0,0 +1,202 @@
+package com.example.aiarchdesigner.service;
+
+import com.example.aiarchdesigner.model.UpstreamLimiterStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UpstreamConcurrencyLimiterTest {
+
+    @Test
+    public void queuedCallersAreAdmittedInArrivalOrder() throws Exception {
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(1, 1, 1, 20000, 1000, 0, 3);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch releaseHolder = new CountDownLatch(1);
+        List<Integer> admitted = new CopyOnWriteArrayList<>();
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        threads.submit(() -> limiter.execute(permit -> {
+            holding.countDown();
+            await(releaseHolder);
+            return null;
+        }));
+        assertTrue(holding.await(5, TimeUnit.SECONDS));
+        // 逐个入队，确保排队顺序就是 0..4
+        for (int i = 0; i < 5; i++) {
+            int caller = i;
+            threads.submit(() -> limiter.execute(permit -> admitted.add(caller)));
+            waitUntil(() -> limiter.getQueueDepth() == caller + 1);
+        }
+        releaseHolder.countDown();
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of(0, 1, 2, 3, 4), admitted);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void rateLimitedCallIsRequeuedAndHalvesTheLimit() throws Exception {
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(8, 1, 64, 20000, 50, 0, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = limiter.execute(permit -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new NonTransientAiException("429 - {\"error\":{\"message\":\"Rate limit reached\"}}");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(2, attempts.get());
+        UpstreamLimiterStats stats = limiter.getStats();
+        assertEquals(1, stats.getRateLimited());
+        assertEquals(1, stats.getLimitDecreases());
+        assertEquals(4, stats.getLimit());
+    }
+
+    @Test
+    public void rateLimitAfterFirstTokenIsSurfacedToTheCaller() {
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(8, 1, 64, 20000, 50, 0, 3);
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(NonTransientAiException.class, () -> limiter.execute(permit -> {
+            attempts.incrementAndGet();
+            permit.recordFirstToken();
+            throw new NonTransientAiException("429 - Too Many Requests");
+        }));
+        assertEquals(1, attempts.get());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void limitGrowsAdditivelyWhileSaturated() throws Exception {
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(2, 1, 4, 20000, 1000, 0, 3);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 200; i++) {
+            threads.submit(() -> limiter.execute(permit -> {
+                sleep(1);
+                return null;
+            }));
+        }
+        threads.shutdown();
+        assertTrue(threads.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(200, limiter.getStats().getSuccesses());
+    }
+
+    /**
+     * 模拟一个同时只接受 6 个请求的上游：突发的 48 个调用方都能完成，429 不会传给调用方，
+     * 上限在多次下调后收敛到上游容量附近。
+     */
+    @Test
+    public void burstAgainstRateLimitedUpstreamNeverFailsCallers() throws Exception {
+        int upstreamCapacity = 6;
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(16, 1, 64, 20000, 20, 0, 20);
+        AtomicInteger upstreamInFlight = new AtomicInteger();
+        AtomicInteger upstream429s = new AtomicInteger();
+        ExecutorService threads = Executors.newFixedThreadPool(48);
+        List<Future<String>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 480; i++) {
+            results.add(threads.submit(() -> limiter.execute(permit -> {
+                try {
+                    if (upstreamInFlight.incrementAndGet() > upstreamCapacity) {
+                        upstream429s.incrementAndGet();
+                        throw WebClientResponseException.create(429, "Too Many Requests", HttpHeaders.EMPTY, new byte[0], null);
+                    }
+                    sleep(2);
+                    permit.recordFirstToken();
+                    permit.recordTokens(10);
+                    return "ok";
+                } finally {
+                    upstreamInFlight.decrementAndGet();
+                }
+            })));
+        }
+        for (Future<String> result : results) {
+            assertEquals("ok", result.get(60, TimeUnit.SECONDS));
+        }
+        threads.shutdown();
+
+        UpstreamLimiterStats stats = limiter.getStats();
+        System.out.println("Upstream 429s: " + upstream429s.get() + ", limit decreases: " + stats.getLimitDecreases()
+                + ", final limit: " + stats.getLimit() + ", tokens last minute: " + stats.getTokensLastMinute());
+        assertTrue(upstream429s.get() > 0);
+        assertEquals(upstream429s.get(), stats.getRateLimited());
+        assertTrue(stats.getLimitDecreases() > 0);
+        assertTrue(stats.getLimit() <= 2 * upstreamCapacity, "limit should settle near upstream capacity, was " + stats.getLimit());
+        assertEquals(4800, stats.getTokensLastMinute());
+        assertEquals(0, stats.getFailures());
+        assertEquals(0, stats.getInFlight());
+    }
+
+    @Test
+    public void onlyASlowFirstTokenShrinksTheLimit() throws Exception {
+        UpstreamConcurrencyLimiter limiter = new UpstreamConcurrencyLimiter(8, 1, 64, 20, 0, 0, 3);
+
+        // 非流式调用（例如文件清单）整体耗时超过阈值：不算慢响应
+        limiter.execute(permit -> {
+            sleep(50);
+            return null;
+        });
+        assertEquals(8, limiter.getLimit());
+        assertEquals(0, limiter.getStats().getSlowResponses());
+
+        limiter.execute(permit -> {
+            sleep(50);
+            permit.recordFirstToken();
+            return null;
+        });
+        assertEquals(7, limiter.getLimit());
+        assertEquals(1, limiter.getStats().getSlowResponses());
+        assertTrue(limiter.getStats().getLastLatencyMillis() >= 50);
+    }
+
+    @Test
+    public void recognisesRateLimitResponses() {
+        assertTrue(UpstreamConcurrencyLimiter.isRateLimited(new NonTransientAiException("429 - {\"error\":\"rate_limit_exceeded\"}")));
+        assertTrue(UpstreamConcurrencyLimiter.isRateLimited(new RuntimeException("stream failed",
+                WebClientResponseException.create(429, "Too Many Requests", HttpHeaders.EMPTY, new byte[0], null))));
+        assertFalse(UpstreamConcurrencyLimiter.isRateLimited(
+                WebClientResponseException.create(500, "Internal Server Error", HttpHeaders.EMPTY, new byte[0], null)));
+        assertFalse(UpstreamConcurrencyLimiter.isRateLimited(new NonTransientAiException("401 - invalid api key")));
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
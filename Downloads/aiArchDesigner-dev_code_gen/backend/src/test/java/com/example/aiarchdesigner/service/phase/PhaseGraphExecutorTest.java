@@ -0,0 +1,89 @@
+package com.example.aiarchdesigner.service.phase;
+
+import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.model.PhaseResult;
+import com.example.aiarchdesigner.model.PhaseStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PhaseGraphExecutor 单元测试类
+ */
+public class PhaseGraphExecutorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void independentPhasesRunInParallelAndDependentsSeeTheirInputs() {
+        PhaseGraphExecutor graphExecutor = new PhaseGraphExecutor(executor);
+        List<GenerationPhase> phases = List.of(
+                new GenerationPhase("Frontend", List.of(), inputs -> sleepAndProduce(300, "front/index.html")),
+                new GenerationPhase("Backend", List.of(), inputs -> sleepAndProduce(300, "backend/App.java")),
+                new GenerationPhase("README", List.of("Frontend", "Backend"), inputs -> {
+                    assertEquals(2, inputs.getAllDependencyFiles().size());
+                    assertEquals("backend/App.java", inputs.getFiles("Backend").get(0).getFilePath());
+                    return sleepAndProduce(100, "README.md");
+                })
+        );
+
+        long start = System.currentTimeMillis();
+        Map<String, PhaseResult> results = graphExecutor.execute(phases, "doc", null);
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 关键路径约 400ms，串行执行则需要 700ms
+        assertTrue(elapsed < 650, "expected critical-path wall clock but took " + elapsed + "ms");
+        assertEquals(List.of("Frontend", "Backend", "README"), List.copyOf(results.keySet()));
+        results.values().forEach(result -> assertEquals(PhaseStatus.COMPLETED, result.getStatus()));
+        assertTrue(results.get("README").getStartOffsetMillis() >= results.get("Backend").getDurationMillis());
+    }
+
+    @Test
+    public void failedPhaseIsReportedAndDependentsStillRun() {
+        PhaseGraphExecutor graphExecutor = new PhaseGraphExecutor(executor);
+        List<GenerationPhase> phases = List.of(
+                new GenerationPhase("Backend", List.of(), inputs -> {
+                    throw new IllegalStateException("boom");
+                }),
+                new GenerationPhase("README", List.of("Backend"), inputs -> sleepAndProduce(0, "README.md"))
+        );
+
+        Map<String, PhaseResult> results = graphExecutor.execute(phases, "doc", null);
+
+        assertEquals(PhaseStatus.FAILED, results.get("Backend").getStatus());
+        assertEquals("boom", results.get("Backend").getErrorMessage());
+        assertEquals(PhaseStatus.COMPLETED, results.get("README").getStatus());
+    }
+
+    @Test
+    public void cyclesAndUnknownDependenciesAreRejected() {
+        List<GenerationPhase> cyclic = List.of(
+                new GenerationPhase("A", List.of("B"), inputs -> List.of()),
+                new GenerationPhase("B", List.of("A"), inputs -> List.of())
+        );
+        assertThrows(IllegalArgumentException.class, () -> PhaseGraphExecutor.topologicalOrder(cyclic));
+
+        List<GenerationPhase> unknown = List.of(new GenerationPhase("A", List.of("Missing"), inputs -> List.of()));
+        assertThrows(IllegalArgumentException.class, () -> PhaseGraphExecutor.topologicalOrder(unknown));
+    }
+
+    private static List<GeneratedFile> sleepAndProduce(long millis, String path) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return List.of(new GeneratedFile(path, "content"));
+    }
+}
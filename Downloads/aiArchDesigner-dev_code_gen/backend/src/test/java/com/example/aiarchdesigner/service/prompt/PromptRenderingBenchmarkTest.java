@@ -0,0 +1,55 @@
+package com.example.aiarchdesigner.service.prompt;
+
+import com.example.aiarchdesigner.service.CodeGenerationServiceTest;
+import com.example.aiarchdesigner.service.PromptProviderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.prompt.PromptTemplate;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 提示词渲染微基准：对比每次拼接模板字符串 + new PromptTemplate(...) 解析渲染（改造前）
+ * 与启动时编译、每次只做占位符替换（改造后）的单次耗时。
+ * <p>
+ * 使用 list-files 模板：它不含字面量花括号，改造前的 StringTemplate 路径也能正确渲染，两条路径的输出可以直接比较。
+ */
+public class PromptRenderingBenchmarkTest {
+
+    private static final int WARMUP_ITERATIONS = 1_000;
+    private static final int MEASURED_ITERATIONS = 3_000;
+
+    @Test
+    public void compiledTemplateRendersFasterThanStringTemplate() {
+        PromptProviderService promptProviderService = new PromptProviderService();
+        PromptTemplateRegistry registry = new PromptTemplateRegistry(promptProviderService);
+        Map<String, Object> parameters = Map.of(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, CodeGenerationServiceTest.designDocumentContent);
+
+        Supplier<String> before = () -> new PromptTemplate(promptProviderService.constructListFilesPrompt()).create(parameters).getContents();
+        Supplier<String> after = () -> registry.render(PromptTemplateRegistry.LIST_FILES, parameters);
+        assertEquals(before.get(), after.get());
+
+        double beforeNanos = nanosPerCall(before);
+        double afterNanos = nanosPerCall(after);
+        System.out.printf("Prompt rendering (%d chars): StringTemplate %.1f us/op, compiled %.1f us/op, %.0fx faster%n",
+                after.get().length(), beforeNanos / 1000, afterNanos / 1000, beforeNanos / afterNanos);
+        assertTrue(afterNanos < beforeNanos, "compiled rendering should be cheaper than re-parsing the template");
+    }
+
+    private static double nanosPerCall(Supplier<String> render) {
+        long checksum = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            checksum += render.get().length();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            checksum += render.get().length();
+        }
+        long elapsed = System.nanoTime() - start;
+        // 使用结果，防止 JIT 把渲染当作死代码消除
+        assertTrue(checksum > 0);
+        return (double) elapsed / MEASURED_ITERATIONS;
+    }
+}
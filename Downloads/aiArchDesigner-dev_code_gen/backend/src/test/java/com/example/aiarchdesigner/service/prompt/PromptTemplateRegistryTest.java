@@ -0,0 +1,62 @@
+package com.example.aiarchdesigner.service.prompt;
+
+import com.example.aiarchdesigner.service.PhaseOutputFormat;
+import com.example.aiarchdesigner.service.PromptProviderService;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PromptTemplateRegistry / CompiledPromptTemplate 单元测试类
+ */
+public class PromptTemplateRegistryTest {
+
+    private final PromptTemplateRegistry registry = new PromptTemplateRegistry(new PromptProviderService());
+
+    @Test
+    public void literalBracesSurviveAndValuesAreNotReparsed() {
+        Map<String, String> values = Map.of(PromptTemplateRegistry.DESIGN_DOCUMENT_CONTENT, "function f() { return {a}; }");
+
+        // StringTemplate 会把 {{ }} 吞掉，编译后的模板原样保留 JSON 示例里的花括号
+        assertTrue(registry.render(PromptTemplateRegistry.SHARED_SYSTEM, values).contains("[\n  {\n    \"filePath\""));
+        assertTrue(registry.render(PromptTemplateRegistry.BACKEND, values)
+                .contains("public static void main(String[] args) { SpringApplication.run(...); }"));
+        String document = registry.render(PromptTemplateRegistry.DESIGN_DOCUMENT, values);
+        assertTrue(document.contains("function f() { return {a}; }"));
+        assertFalse(document.contains("{design_document_content}"));
+    }
+
+    @Test
+    public void outputFormatIsSelectedPerPhaseWithoutChangingTheSharedPrefix() {
+        PromptProviderService blocks = new PromptProviderService("json", "file-blocks", "json", "FILE_BLOCKS");
+        PromptTemplateRegistry blocksRegistry = new PromptTemplateRegistry(blocks);
+        Map<String, String> values = Map.of(PromptTemplateRegistry.BACKEND_API_SUMMARY, "",
+                PromptTemplateRegistry.GENERATED_FILE_SUMMARY, "");
+
+        assertEquals(PhaseOutputFormat.FILE_BLOCKS, blocks.outputFormat(PromptTemplateRegistry.BACKEND));
+        assertEquals(PhaseOutputFormat.JSON, blocks.outputFormat(PromptTemplateRegistry.FRONTEND));
+        assertEquals(PhaseOutputFormat.JSON, blocks.outputFormat(PromptTemplateRegistry.SINGLE_FILE));
+        assertEquals(registry.render(PromptTemplateRegistry.SHARED_SYSTEM, Map.of()),
+                blocksRegistry.render(PromptTemplateRegistry.SHARED_SYSTEM, Map.of()));
+        assertTrue(blocksRegistry.render(PromptTemplateRegistry.BACKEND, values).endsWith("Output format: FILE BLOCKS. "
+                + "Do NOT output JSON for this request; output every file as a file block as specified above.\n"));
+        assertTrue(blocksRegistry.render(PromptTemplateRegistry.README, values).contains("Output format: FILE BLOCKS"));
+        assertEquals(registry.render(PromptTemplateRegistry.FRONTEND, values), blocksRegistry.render(PromptTemplateRegistry.FRONTEND, values));
+    }
+
+    @Test
+    public void placeholderMismatchFailsAtCompileTime() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                () -> CompiledPromptTemplate.compile("broken", "Doc: {design_document_contnet}", Set.of("design_document_content")));
+        assertTrue(error.getMessage().contains("design_document_contnet"));
+    }
+
+    @Test
+    public void missingValueIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> registry.render(PromptTemplateRegistry.SINGLE_FILE,
+                Map.of(PromptTemplateRegistry.PLANNED_FILES, "README.md")));
+    }
+}
@@ -1,10 +1,10 @@
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.TypeReference;
 import com.example.aiarchdesigner.model.GeneratedFile;
+import com.example.aiarchdesigner.parser.GeneratedFileStreamParser;
 import com.example.aiarchdesigner.service.CodeGenerationService;
 import com.example.aiarchdesigner.utils.fileWriteUtil;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.util.List;
 
 public class test001 {
@@ -85,11 +85,9 @@ public class test001 {
             "]\n" +
             "```";
     @Test
-    public void test001() {
+    public void test001() throws IOException {
         System.out.println("====");
-        String lastTxt = test2.replace("```json", "").replace("```", "");
-        List<GeneratedFile> generatedFiles = JSON.parseObject(lastTxt, new TypeReference<List<GeneratedFile>>() {
-        });
+        List<GeneratedFile> generatedFiles = GeneratedFileStreamParser.parse(test2);
         for (GeneratedFile generatedFile : generatedFiles) {
             System.out.println(generatedFile.getFilePath());
             System.out.println(generatedFile.getCode());
@@ -97,10 +95,8 @@ public class test001 {
     }
 
     @Test
-    public void test002(){
-        String lastTxt = test2.replace("```json", "").replace("```", "");
-        List<GeneratedFile> generatedFiles = JSON.parseObject(lastTxt, new TypeReference<List<GeneratedFile>>() {
-        });
+    public void test002() throws IOException {
+        List<GeneratedFile> generatedFiles = GeneratedFileStreamParser.parse(test2);
         fileWriteUtil.fileWriting(generatedFiles);
     }
 
@@ -0,0 +1,13 @@
+package com.example.llmsimulator;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+@SpringBootApplication
+public class LlmSimulatorApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(LlmSimulatorApplication.class, args);
+    }
+
+}
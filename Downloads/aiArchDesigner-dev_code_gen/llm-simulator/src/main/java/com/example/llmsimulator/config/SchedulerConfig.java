@@ -0,0 +1,27 @@
+package com.example.llmsimulator.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class SchedulerConfig {
+
+    /**
+     * 所有模拟响应的分片都由这个定时线程池按计划发送，请求线程立即返回，不为每个流占用一个线程，
+     * 笔记本上也能同时保持上千个流。
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService simulatorScheduler(@Value("${simulator.scheduler-threads:4}") int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "simulator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
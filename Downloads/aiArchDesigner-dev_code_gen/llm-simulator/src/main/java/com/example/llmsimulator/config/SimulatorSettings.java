@@ -0,0 +1,227 @@
+package com.example.llmsimulator.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * simulator.*：模拟的延迟、速度和故障注入参数。启动时从配置读取，运行中可以通过 PUT /simulator/settings 修改（只影响之后的请求）。
+ */
+@Component
+@ConfigurationProperties(prefix = "simulator")
+public class SimulatorSettings {
+
+    // synthesize：按提示词合成 GeneratedFile 响应；replay：回放 replayDir 里记录的对话，找不到对应的提示词时合成
+    private String mode = "synthesize";
+    // 后端 TranscriptRecorder 写出的 {jobId}.transcript.gz 所在目录
+    private String replayDir = "../backend/transcripts";
+    // 回放时使用记录里的首 token 延迟和输出速度，而不是下面的配置
+    private boolean replayRecordedTiming = true;
+    // 首 token 延迟（毫秒）
+    private long ttftMs = 800;
+    // 输出速度
+    private double tokensPerSecond = 50;
+    // 首 token 延迟和每个分片的间隔按 ±jitter 的比例随机抖动
+    private double jitter = 0.2;
+    // 估算 token 数：每个 token 的字符数
+    private int charsPerToken = 4;
+    // 每个 SSE 分片包含的 token 数
+    private int tokensPerChunk = 2;
+    // 输出上限，超出部分截断并返回 finish_reason=length；请求里的 max_tokens 更小时以请求为准
+    private int maxOutputTokens = 8192;
+    // 在随机位置截断输出（finish_reason=length）的概率
+    private double truncateRate = 0;
+    // 返回 429 的概率
+    private double rateLimitRate = 0;
+    // 429 响应的 Retry-After
+    private long retryAfterSeconds = 1;
+    // 返回 500 / 503 的概率
+    private double serverErrorRate = 0;
+    // 输出中途停顿 stallMs 的概率，用来制造长尾延迟
+    private double stallRate = 0;
+    // 停顿时长
+    private long stallMs = 5000;
+    // 随机数种子：同样的种子、同样的请求顺序得到同样的延迟、截断和错误
+    private long seed = 42;
+    // 合成响应里每个阶段的文件数
+    private int syntheticFiles = 6;
+    // 合成文件的行数
+    private int syntheticLinesPerFile = 40;
+    // 模拟前缀缓存记住的提示词前缀数量，用于报告 cached_tokens
+    private int promptCacheEntries = 4096;
+
+    public SimulatorSettings copy() {
+        SimulatorSettings copy = new SimulatorSettings();
+        copy.mode = mode;
+        copy.replayDir = replayDir;
+        copy.replayRecordedTiming = replayRecordedTiming;
+        copy.ttftMs = ttftMs;
+        copy.tokensPerSecond = tokensPerSecond;
+        copy.jitter = jitter;
+        copy.charsPerToken = charsPerToken;
+        copy.tokensPerChunk = tokensPerChunk;
+        copy.maxOutputTokens = maxOutputTokens;
+        copy.truncateRate = truncateRate;
+        copy.rateLimitRate = rateLimitRate;
+        copy.retryAfterSeconds = retryAfterSeconds;
+        copy.serverErrorRate = serverErrorRate;
+        copy.stallRate = stallRate;
+        copy.stallMs = stallMs;
+        copy.seed = seed;
+        copy.syntheticFiles = syntheticFiles;
+        copy.syntheticLinesPerFile = syntheticLinesPerFile;
+        copy.promptCacheEntries = promptCacheEntries;
+        return copy;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public String getReplayDir() {
+        return replayDir;
+    }
+
+    public void setReplayDir(String replayDir) {
+        this.replayDir = replayDir;
+    }
+
+    public boolean isReplayRecordedTiming() {
+        return replayRecordedTiming;
+    }
+
+    public void setReplayRecordedTiming(boolean replayRecordedTiming) {
+        this.replayRecordedTiming = replayRecordedTiming;
+    }
+
+    public long getTtftMs() {
+        return ttftMs;
+    }
+
+    public void setTtftMs(long ttftMs) {
+        this.ttftMs = ttftMs;
+    }
+
+    public double getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    public void setTokensPerSecond(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    public int getCharsPerToken() {
+        return charsPerToken;
+    }
+
+    public void setCharsPerToken(int charsPerToken) {
+        this.charsPerToken = charsPerToken;
+    }
+
+    public int getTokensPerChunk() {
+        return tokensPerChunk;
+    }
+
+    public void setTokensPerChunk(int tokensPerChunk) {
+        this.tokensPerChunk = tokensPerChunk;
+    }
+
+    public int getMaxOutputTokens() {
+        return maxOutputTokens;
+    }
+
+    public void setMaxOutputTokens(int maxOutputTokens) {
+        this.maxOutputTokens = maxOutputTokens;
+    }
+
+    public double getTruncateRate() {
+        return truncateRate;
+    }
+
+    public void setTruncateRate(double truncateRate) {
+        this.truncateRate = truncateRate;
+    }
+
+    public double getRateLimitRate() {
+        return rateLimitRate;
+    }
+
+    public void setRateLimitRate(double rateLimitRate) {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public void setRetryAfterSeconds(long retryAfterSeconds) {
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public double getServerErrorRate() {
+        return serverErrorRate;
+    }
+
+    public void setServerErrorRate(double serverErrorRate) {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    public double getStallRate() {
+        return stallRate;
+    }
+
+    public void setStallRate(double stallRate) {
+        this.stallRate = stallRate;
+    }
+
+    public long getStallMs() {
+        return stallMs;
+    }
+
+    public void setStallMs(long stallMs) {
+        this.stallMs = stallMs;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getSyntheticFiles() {
+        return syntheticFiles;
+    }
+
+    public void setSyntheticFiles(int syntheticFiles) {
+        this.syntheticFiles = syntheticFiles;
+    }
+
+    public int getSyntheticLinesPerFile() {
+        return syntheticLinesPerFile;
+    }
+
+    public void setSyntheticLinesPerFile(int syntheticLinesPerFile) {
+        this.syntheticLinesPerFile = syntheticLinesPerFile;
+    }
+
+    public int getPromptCacheEntries() {
+        return promptCacheEntries;
+    }
+
+    public void setPromptCacheEntries(int promptCacheEntries) {
+        this.promptCacheEntries = promptCacheEntries;
+    }
+}
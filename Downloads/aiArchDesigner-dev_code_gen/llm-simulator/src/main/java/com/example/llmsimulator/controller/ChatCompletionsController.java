@@ -0,0 +1,201 @@
+package com.example.llmsimulator.controller;
+
+import com.example.llmsimulator.model.ChatCompletionRequest;
+import com.example.llmsimulator.service.ChatCompletionSimulator;
+import com.example.llmsimulator.service.SimulationPlan;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * OpenAI 兼容的 chat completions 接口（/v1/chat/completions，也接受 /chat/completions）。
+ * stream=true 时按计划的时间逐个发送 chat.completion.chunk SSE 事件，最后一个分片带 finish_reason 和 usage，然后是 [DONE]；
+ * 否则在整个响应"生成完"的时间点返回一个 chat.completion。错误按 OpenAI 的格式返回，429 带 Retry-After。
+ */
+@RestController
+public class ChatCompletionsController {
+
+    private final ChatCompletionSimulator simulator;
+    private final ScheduledExecutorService scheduler;
+    private final ObjectMapper objectMapper;
+    private final long streamTimeoutMillis;
+
+    @Autowired
+    public ChatCompletionsController(ChatCompletionSimulator simulator, ScheduledExecutorService simulatorScheduler, ObjectMapper objectMapper,
+                                     @Value("${simulator.stream-timeout-minutes:10}") long streamTimeoutMinutes) {
+        this.simulator = simulator;
+        this.scheduler = simulatorScheduler;
+        this.objectMapper = objectMapper;
+        this.streamTimeoutMillis = TimeUnit.MINUTES.toMillis(streamTimeoutMinutes);
+    }
+
+    @PostMapping({"/v1/chat/completions", "/chat/completions"})
+    public ResponseEntity<ResponseBodyEmitter> chatCompletions(@RequestBody ChatCompletionRequest request) throws IOException {
+        SimulationPlan plan = simulator.plan(request);
+        if (plan.isError()) {
+            return error(plan);
+        }
+        if (request.isStream()) {
+            SseEmitter emitter = new SseEmitter(streamTimeoutMillis);
+            new StreamTask(plan, emitter).start();
+            return ResponseEntity.ok().body(emitter);
+        }
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(streamTimeoutMillis);
+        scheduler.schedule(() -> {
+            try {
+                emitter.send(json(completion(plan)), MediaType.APPLICATION_JSON);
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        }, plan.getTotalDelayMicros(), TimeUnit.MICROSECONDS);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(emitter);
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> error(SimulationPlan plan) throws IOException {
+        boolean rateLimited = plan.getErrorStatus() == 429;
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("message", rateLimited ? "Rate limit reached (simulated)" : "The server had an error processing your request (simulated)");
+        error.put("type", rateLimited ? "requests" : "server_error");
+        error.put("code", plan.getErrorType());
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        // handler 返回前发送的内容会先缓存，初始化后再写出
+        emitter.send(json(Map.of("error", error)), MediaType.APPLICATION_JSON);
+        emitter.complete();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(plan.getErrorStatus()).contentType(MediaType.APPLICATION_JSON);
+        if (rateLimited) {
+            response.header(HttpHeaders.RETRY_AFTER, Long.toString(simulator.getSettings().getRetryAfterSeconds()));
+        }
+        return response.body(emitter);
+    }
+
+    private Map<String, Object> completion(SimulationPlan plan) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", plan.getText());
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("message", message);
+        choice.put("finish_reason", plan.getFinishReason());
+        Map<String, Object> body = envelope(plan, "chat.completion");
+        body.put("choices", List.of(choice));
+        body.put("usage", usage(plan));
+        return body;
+    }
+
+    private Map<String, Object> chunk(SimulationPlan plan, Map<String, Object> delta, String finishReason, boolean withUsage) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        Map<String, Object> body = envelope(plan, "chat.completion.chunk");
+        body.put("choices", List.of(choice));
+        if (withUsage) {
+            body.put("usage", usage(plan));
+        }
+        return body;
+    }
+
+    private static Map<String, Object> envelope(SimulationPlan plan, String object) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", plan.getId());
+        body.put("object", object);
+        body.put("created", Instant.now().getEpochSecond());
+        body.put("model", plan.getModel());
+        return body;
+    }
+
+    // 同时按 OpenAI (prompt_tokens_details.cached_tokens) 和 DeepSeek (prompt_cache_hit_tokens) 的字段报告缓存命中
+    private static Map<String, Object> usage(SimulationPlan plan) {
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("prompt_tokens", plan.getPromptTokens());
+        usage.put("completion_tokens", plan.getCompletionTokens());
+        usage.put("total_tokens", plan.getPromptTokens() + plan.getCompletionTokens());
+        usage.put("prompt_cache_hit_tokens", plan.getCachedPromptTokens());
+        usage.put("prompt_cache_miss_tokens", plan.getPromptTokens() - plan.getCachedPromptTokens());
+        usage.put("prompt_tokens_details", Map.of("cached_tokens", plan.getCachedPromptTokens()));
+        return usage;
+    }
+
+    private String json(Object value) throws JsonProcessingException {
+        return objectMapper.writeValueAsString(value);
+    }
+
+    /**
+     * 一个流式响应：每个分片发送后再调度下一个，线程只在发送时占用。客户端断开（发送失败、超时）后停止调度。
+     */
+    private final class StreamTask implements Runnable {
+        private final SimulationPlan plan;
+        private final SseEmitter emitter;
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private int next;
+
+        StreamTask(SimulationPlan plan, SseEmitter emitter) {
+            this.plan = plan;
+            this.emitter = emitter;
+        }
+
+        void start() {
+            simulator.streamStarted();
+            emitter.onTimeout(() -> finish(true));
+            emitter.onError(error -> finish(true));
+            emitter.onCompletion(() -> finish(false));
+            schedule();
+        }
+
+        private void schedule() {
+            scheduler.schedule(this, plan.getDelaysMicros().get(next), TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        public void run() {
+            if (finished.get()) {
+                return;
+            }
+            try {
+                Map<String, Object> delta = new LinkedHashMap<>();
+                if (next == 0) {
+                    delta.put("role", "assistant");
+                }
+                delta.put("content", plan.getChunks().get(next));
+                emitter.send(SseEmitter.event().data(json(chunk(plan, delta, null, false))));
+                next++;
+                if (next < plan.getChunks().size()) {
+                    schedule();
+                    return;
+                }
+                emitter.send(SseEmitter.event().data(json(chunk(plan, Map.of(), plan.getFinishReason(), true))));
+                emitter.send(SseEmitter.event().data("[DONE]"));
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // 客户端已经断开
+                finish(true);
+                emitter.completeWithError(e);
+            }
+        }
+
+        private void finish(boolean aborted) {
+            if (finished.compareAndSet(false, true)) {
+                simulator.streamFinished(aborted);
+            }
+        }
+    }
+}
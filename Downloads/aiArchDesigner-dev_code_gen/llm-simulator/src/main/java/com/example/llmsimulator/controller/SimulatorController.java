@@ -0,0 +1,55 @@
+package com.example.llmsimulator.controller;
+
+import com.example.llmsimulator.config.SimulatorSettings;
+import com.example.llmsimulator.service.ChatCompletionSimulator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * 运行中调整模拟参数、查看计数。PUT /simulator/settings 只需要给出要修改的字段，例如 {"rateLimitRate": 0.05}。
+ */
+@RestController
+@RequestMapping("/simulator")
+public class SimulatorController {
+
+    private final ChatCompletionSimulator simulator;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public SimulatorController(ChatCompletionSimulator simulator, ObjectMapper objectMapper) {
+        this.simulator = simulator;
+        this.objectMapper = objectMapper;
+    }
+
+    @GetMapping("/settings")
+    public SimulatorSettings getSettings() {
+        return simulator.getSettings();
+    }
+
+    @PutMapping("/settings")
+    public ResponseEntity<?> updateSettings(@RequestBody String changes) {
+        try {
+            SimulatorSettings updated = objectMapper.readerForUpdating(simulator.getSettings()).readValue(changes);
+            simulator.updateSettings(updated);
+            return ResponseEntity.ok(simulator.getSettings());
+        } catch (IOException e) {
+            return ResponseEntity.badRequest().body(Collections.singletonMap("error", "Invalid settings: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return simulator.getStats();
+    }
+
+    @PostMapping("/replay/reload")
+    public Map<String, Object> reloadTranscripts() {
+        return Collections.singletonMap("recordedCalls", simulator.reloadTranscripts());
+    }
+}
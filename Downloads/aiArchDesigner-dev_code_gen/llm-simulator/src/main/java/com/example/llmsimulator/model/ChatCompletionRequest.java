@@ -0,0 +1,137 @@
+package com.example.llmsimulator.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OpenAI chat completions 请求里模拟器用到的字段，其余字段忽略。
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ChatCompletionRequest {
+
+    private String model;
+    private List<ChatMessage> messages = new ArrayList<>();
+    private boolean stream;
+    @JsonProperty("max_tokens")
+    private Integer maxTokens;
+    @JsonProperty("max_completion_tokens")
+    private Integer maxCompletionTokens;
+    @JsonProperty("response_format")
+    private JsonNode responseFormat;
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<ChatMessage> messages) {
+        this.messages = messages;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public void setStream(boolean stream) {
+        this.stream = stream;
+    }
+
+    public Integer getMaxTokens() {
+        return maxTokens;
+    }
+
+    public void setMaxTokens(Integer maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    public Integer getMaxCompletionTokens() {
+        return maxCompletionTokens;
+    }
+
+    public void setMaxCompletionTokens(Integer maxCompletionTokens) {
+        this.maxCompletionTokens = maxCompletionTokens;
+    }
+
+    public JsonNode getResponseFormat() {
+        return responseFormat;
+    }
+
+    public void setResponseFormat(JsonNode responseFormat) {
+        this.responseFormat = responseFormat;
+    }
+
+    /**
+     * 请求的输出 token 上限，没有指定时返回 null。
+     */
+    public Integer outputTokenLimit() {
+        return maxCompletionTokens != null ? maxCompletionTokens : maxTokens;
+    }
+
+    /**
+     * 请求了 JSON 输出（response_format 为 json_object 或 json_schema）。
+     */
+    public boolean isJsonResponse() {
+        if (responseFormat == null || responseFormat.isNull()) {
+            return false;
+        }
+        String type = responseFormat.path("type").asText("");
+        return type.startsWith("json");
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class ChatMessage {
+        private String role;
+        // 字符串，或者 [{"type": "text", "text": ...}] 形式的分段内容
+        private JsonNode content;
+
+        public ChatMessage() {
+        }
+
+        public ChatMessage(String role, String text) {
+            this.role = role;
+            this.content = TextNode.valueOf(text);
+        }
+
+        public String getRole() {
+            return role;
+        }
+
+        public void setRole(String role) {
+            this.role = role;
+        }
+
+        public JsonNode getContent() {
+            return content;
+        }
+
+        public void setContent(JsonNode content) {
+            this.content = content;
+        }
+
+        public String text() {
+            if (content == null || content.isNull()) {
+                return "";
+            }
+            if (content.isTextual()) {
+                return content.asText();
+            }
+            StringBuilder text = new StringBuilder();
+            for (JsonNode part : content) {
+                text.append(part.path("text").asText(""));
+            }
+            return text.toString();
+        }
+    }
+}
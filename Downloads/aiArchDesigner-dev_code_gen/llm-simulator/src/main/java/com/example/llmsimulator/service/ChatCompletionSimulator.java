@@ -0,0 +1,222 @@
+package com.example.llmsimulator.service;
+
+import com.example.llmsimulator.config.SimulatorSettings;
+import com.example.llmsimulator.model.ChatCompletionRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 为每个 chat completions 请求生成 {@link SimulationPlan}：先按 rateLimitRate / serverErrorRate 决定是否返回错误，
+ * 再取回放或合成的响应文本，按 token 切成分片，计算每个分片的发送时间，并按输出上限或 truncateRate 截断。
+ * 随机数由 seed 和请求序号派生，并发请求之间互不影响。
+ */
+@Service
+public class ChatCompletionSimulator {
+
+    public static final String MODE_REPLAY = "replay";
+
+    private final SyntheticResponseGenerator generator;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile SimulatorSettings settings;
+    private volatile TranscriptLibrary transcripts;
+    private volatile PromptCache promptCache;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong serverErrors = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong synthesized = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong activeStreams = new AtomicLong();
+    private final AtomicLong abortedStreams = new AtomicLong();
+
+    @Autowired
+    public ChatCompletionSimulator(SimulatorSettings settings, SyntheticResponseGenerator generator) {
+        this.generator = generator;
+        this.settings = settings.copy();
+        this.promptCache = new PromptCache(settings.getPromptCacheEntries());
+        this.transcripts = new TranscriptLibrary(settings.getCharsPerToken());
+        if (MODE_REPLAY.equalsIgnoreCase(settings.getMode())) {
+            reloadTranscripts();
+        }
+    }
+
+    public SimulatorSettings getSettings() {
+        return settings.copy();
+    }
+
+    /**
+     * 替换全部设置，只影响之后的请求。切换到回放模式或者换了目录时重新读取记录。
+     */
+    public void updateSettings(SimulatorSettings updated) {
+        SimulatorSettings previous = settings;
+        settings = updated.copy();
+        if (updated.getPromptCacheEntries() != previous.getPromptCacheEntries()) {
+            promptCache = new PromptCache(updated.getPromptCacheEntries());
+        }
+        boolean replay = MODE_REPLAY.equalsIgnoreCase(updated.getMode());
+        if (replay && (!MODE_REPLAY.equalsIgnoreCase(previous.getMode()) || !Objects.equals(updated.getReplayDir(), previous.getReplayDir())
+                || updated.getCharsPerToken() != previous.getCharsPerToken())) {
+            reloadTranscripts();
+        }
+    }
+
+    /**
+     * @return 读到的调用数
+     */
+    public int reloadTranscripts() {
+        SimulatorSettings current = settings;
+        try {
+            transcripts = TranscriptLibrary.load(Paths.get(current.getReplayDir()), current.getCharsPerToken());
+            System.out.println("Loaded " + transcripts.size() + " recorded LLM call(s) from " + current.getReplayDir());
+        } catch (IOException e) {
+            System.err.println("Failed to load transcripts from " + current.getReplayDir() + ": " + e.getMessage());
+            transcripts = new TranscriptLibrary(current.getCharsPerToken());
+        }
+        return transcripts.size();
+    }
+
+    public SimulationPlan plan(ChatCompletionRequest request) {
+        SimulatorSettings current = settings;
+        long number = sequence.incrementAndGet();
+        requests.incrementAndGet();
+        SplittableRandom random = new SplittableRandom(current.getSeed() * 0x9E3779B97F4A7C15L + number);
+        String id = "chatcmpl-sim-" + number;
+        String model = request.getModel() == null ? "simulated" : request.getModel();
+
+        double fault = random.nextDouble();
+        if (fault < current.getRateLimitRate()) {
+            rateLimited.incrementAndGet();
+            return SimulationPlan.error(id, model, 429, "rate_limit_exceeded");
+        }
+        if (fault < current.getRateLimitRate() + current.getServerErrorRate()) {
+            serverErrors.incrementAndGet();
+            return SimulationPlan.error(id, model, random.nextBoolean() ? 500 : 503, "server_error");
+        }
+
+        SimulatedResponse response = MODE_REPLAY.equalsIgnoreCase(current.getMode()) ? transcripts.find(request) : null;
+        if (response == null) {
+            response = SimulatedResponse.synthetic(generator.generate(request, current.getSyntheticFiles(), current.getSyntheticLinesPerFile()));
+            synthesized.incrementAndGet();
+        } else {
+            replayed.incrementAndGet();
+        }
+
+        int charsPerToken = Math.max(1, current.getCharsPerToken());
+        List<String> tokens = tokenize(response.getText(), charsPerToken);
+        String finishReason = "stop";
+        int limit = current.getMaxOutputTokens();
+        if (request.outputTokenLimit() != null) {
+            limit = Math.min(limit, request.outputTokenLimit());
+        }
+        if (tokens.size() > limit) {
+            tokens = tokens.subList(0, Math.max(0, limit));
+            finishReason = "length";
+        } else if (tokens.size() > 1 && random.nextDouble() < current.getTruncateRate()) {
+            int cut = (int) (tokens.size() * (0.1 + 0.8 * random.nextDouble()));
+            tokens = tokens.subList(0, Math.max(1, cut));
+            finishReason = "length";
+        }
+        if ("length".equals(finishReason)) {
+            truncated.incrementAndGet();
+        }
+
+        boolean recorded = current.isReplayRecordedTiming() && response.hasRecordedTiming();
+        double ttftMillis = recorded ? response.getRecordedTtftMillis() : current.getTtftMs();
+        double tokensPerSecond = recorded ? response.getRecordedTokensPerSecond() : current.getTokensPerSecond();
+        double microsPerToken = tokensPerSecond > 0 ? 1_000_000.0 / tokensPerSecond : 0;
+        int tokensPerChunk = Math.max(1, current.getTokensPerChunk());
+        List<String> chunks = new ArrayList<>();
+        List<Long> delays = new ArrayList<>();
+        for (int start = 0; start < tokens.size(); start += tokensPerChunk) {
+            List<String> chunkTokens = tokens.subList(start, Math.min(tokens.size(), start + tokensPerChunk));
+            chunks.add(String.join("", chunkTokens));
+            double delay = chunkTokens.size() * microsPerToken;
+            if (start == 0) {
+                delay += ttftMillis * 1000;
+            }
+            delays.add(Math.max(0, Math.round(delay * jitter(random, current.getJitter()))));
+        }
+        if (chunks.isEmpty()) {
+            chunks.add("");
+            delays.add(Math.max(0, Math.round(ttftMillis * 1000 * jitter(random, current.getJitter()))));
+        }
+        if (random.nextDouble() < current.getStallRate()) {
+            int stalled = random.nextInt(delays.size());
+            delays.set(stalled, delays.get(stalled) + current.getStallMs() * 1000);
+        }
+
+        List<String> messages = new ArrayList<>();
+        long promptChars = 0;
+        for (ChatCompletionRequest.ChatMessage message : request.getMessages()) {
+            String text = message.text();
+            messages.add(message.getRole() + ":" + text);
+            promptChars += text.length();
+        }
+        long cachedChars = promptCache.cachedChars(messages);
+        long completion = tokens.size();
+        completionTokens.addAndGet(completion);
+        return SimulationPlan.response(id, model, chunks, delays, finishReason, ceilDiv(promptChars, charsPerToken),
+                cachedChars / charsPerToken, completion, response.getSource());
+    }
+
+    public void streamStarted() {
+        activeStreams.incrementAndGet();
+    }
+
+    public void streamFinished(boolean aborted) {
+        activeStreams.decrementAndGet();
+        if (aborted) {
+            abortedStreams.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("serverErrors", serverErrors.get());
+        stats.put("truncated", truncated.get());
+        stats.put("replayed", replayed.get());
+        stats.put("synthesized", synthesized.get());
+        stats.put("completionTokens", completionTokens.get());
+        stats.put("activeStreams", activeStreams.get());
+        stats.put("abortedStreams", abortedStreams.get());
+        stats.put("recordedCalls", transcripts.size());
+        return stats;
+    }
+
+    // 按固定字符数近似切分 token，不拆开代理对
+    static List<String> tokenize(String text, int charsPerToken) {
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = Math.min(text.length(), start + charsPerToken);
+            if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                end++;
+            }
+            tokens.add(text.substring(start, end));
+            start = end;
+        }
+        return tokens;
+    }
+
+    private static double jitter(SplittableRandom random, double jitter) {
+        return jitter <= 0 ? 1 : 1 + jitter * (2 * random.nextDouble() - 1);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.llmsimulator.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模拟服务端的前缀缓存：记住最近见过的提示词前缀（按整条消息），请求的 cached_tokens 是其中最长的那个前缀的 token 数。
+ * 后端把共享的 system 提示词和设计文档放在前面，同一任务的后续阶段应该报告接近这两条消息长度的缓存命中。
+ */
+public class PromptCache {
+
+    private final LinkedHashMap<String, Boolean> prefixes;
+
+    public PromptCache(int maxEntries) {
+        int capacity = Math.max(1, maxEntries);
+        this.prefixes = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * 返回已缓存的最长前缀的字符数，并把这次请求的所有前缀记入缓存。最后一条消息不算作可缓存的前缀。
+     */
+    public synchronized long cachedChars(List<String> messages) {
+        long cached = 0;
+        long length = 0;
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < messages.size() - 1; i++) {
+            prefix.append(messages.get(i)).append('\u0000');
+            length += messages.get(i).length();
+            String key = prefix.toString();
+            if (prefixes.get(key) != null) {
+                cached = length;
+            } else {
+                prefixes.put(key, Boolean.TRUE);
+            }
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.llmsimulator.service;
+
+/**
+ * 一次模拟调用要输出的完整文本。回放的响应带着记录里的首 token 延迟和输出速度，合成的响应没有（使用配置）。
+ */
+public class SimulatedResponse {
+
+    public static final String SOURCE_REPLAY = "replay";
+    public static final String SOURCE_SYNTHETIC = "synthetic";
+
+    private final String text;
+    private final String source;
+    // 记录里的时间，-1 表示没有
+    private final long recordedTtftMillis;
+    private final double recordedTokensPerSecond;
+
+    public SimulatedResponse(String text, String source, long recordedTtftMillis, double recordedTokensPerSecond) {
+        this.text = text;
+        this.source = source;
+        this.recordedTtftMillis = recordedTtftMillis;
+        this.recordedTokensPerSecond = recordedTokensPerSecond;
+    }
+
+    public static SimulatedResponse synthetic(String text) {
+        return new SimulatedResponse(text, SOURCE_SYNTHETIC, -1, -1);
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean hasRecordedTiming() {
+        return recordedTtftMillis >= 0 && recordedTokensPerSecond > 0;
+    }
+
+    public long getRecordedTtftMillis() {
+        return recordedTtftMillis;
+    }
+
+    public double getRecordedTokensPerSecond() {
+        return recordedTokensPerSecond;
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.llmsimulator.service;
+
+import java.util.List;
+
+/**
+ * 一次请求的完整模拟结果，在请求到达时一次性决定（延迟、截断和错误都来自同一个按请求序号派生的随机数），
+ * 同样的种子和请求顺序得到同样的计划。
+ */
+public class SimulationPlan {
+
+    private final String id;
+    private final String model;
+    // 0 表示正常响应
+    private final int errorStatus;
+    private final String errorType;
+    private final List<String> chunks;
+    // 每个分片发送前的等待时间，第一个包含首 token 延迟
+    private final List<Long> delaysMicros;
+    private final String finishReason;
+    private final long promptTokens;
+    private final long cachedPromptTokens;
+    private final long completionTokens;
+    private final String source;
+
+    private SimulationPlan(String id, String model, int errorStatus, String errorType, List<String> chunks, List<Long> delaysMicros,
+                           String finishReason, long promptTokens, long cachedPromptTokens, long completionTokens, String source) {
+        this.id = id;
+        this.model = model;
+        this.errorStatus = errorStatus;
+        this.errorType = errorType;
+        this.chunks = chunks;
+        this.delaysMicros = delaysMicros;
+        this.finishReason = finishReason;
+        this.promptTokens = promptTokens;
+        this.cachedPromptTokens = cachedPromptTokens;
+        this.completionTokens = completionTokens;
+        this.source = source;
+    }
+
+    public static SimulationPlan error(String id, String model, int status, String type) {
+        return new SimulationPlan(id, model, status, type, List.of(), List.of(), null, 0, 0, 0, null);
+    }
+
+    public static SimulationPlan response(String id, String model, List<String> chunks, List<Long> delaysMicros, String finishReason,
+                                          long promptTokens, long cachedPromptTokens, long completionTokens, String source) {
+        return new SimulationPlan(id, model, 0, null, chunks, delaysMicros, finishReason, promptTokens, cachedPromptTokens,
+                completionTokens, source);
+    }
+
+    public boolean isError() {
+        return errorStatus != 0;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public int getErrorStatus() {
+        return errorStatus;
+    }
+
+    public String getErrorType() {
+        return errorType;
+    }
+
+    public List<String> getChunks() {
+        return chunks;
+    }
+
+    public List<Long> getDelaysMicros() {
+        return delaysMicros;
+    }
+
+    public long getTotalDelayMicros() {
+        long total = 0;
+        for (long delay : delaysMicros) {
+            total += delay;
+        }
+        return total;
+    }
+
+    public String getText() {
+        return String.join("", chunks);
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public long getPromptTokens() {
+        return promptTokens;
+    }
+
+    public long getCachedPromptTokens() {
+        return cachedPromptTokens;
+    }
+
+    public long getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public String getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.llmsimulator.service;
+
+import com.example.llmsimulator.model.ChatCompletionRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按后端的提示词合成响应，内容是确定的（同样的请求得到同样的文本），只有延迟和故障是随机的。
+ * 通过提示词里的固定标记识别调用类型：
+ * <ul>
+ *     <li>文件清单（"JSON array of strings"）：返回路径数组</li>
+ *     <li>是否需要前端：返回 Yes</li>
+ *     <li>设计文档浓缩：返回 === BACKEND === / === FRONTEND === / === OVERVIEW === 三段摘要</li>
+ *     <li>生成阶段：按阶段生成 files 个文件（逐文件生成和增量更新只生成目标文件，续写跳过已收到的文件），
+ *     指令要求 FILE BLOCKS 时输出文件块，否则输出 [{"filePath", "code"}] 数组，请求带 response_format 时包在 {"files": [...]} 里</li>
+ * </ul>
+ */
+@Component
+public class SyntheticResponseGenerator {
+
+    private static final Pattern TARGET_FILE = Pattern.compile("MUST be exactly `([^`]+)`");
+    private static final String PRODUCED_FILES_HEADER = "MUST NOT be output again:\n";
+    private static final String FILE_BLOCKS_INSTRUCTION = "Output format: FILE BLOCKS.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public String generate(ChatCompletionRequest request, int files, int linesPerFile) {
+        String instruction = instruction(request.getMessages());
+        if (instruction.contains("JSON array of strings")) {
+            List<String> paths = new ArrayList<>(backendFiles(files, linesPerFile).keySet());
+            paths.addAll(frontendFiles(files, linesPerFile).keySet());
+            paths.add("README.md");
+            return toJson(paths);
+        }
+        if (instruction.contains("是否需要生成前端代码")) {
+            return "Yes";
+        }
+        if (instruction.contains("Condense the document chunk")) {
+            return "=== BACKEND ===\n## Entities\n- Todo(id BIGINT, title VARCHAR(200), done BOOLEAN)\n## API\n- GET /api/todos\n- POST /api/todos\n"
+                    + "=== FRONTEND ===\n## Pages\n- TodoList: lists todos, calls GET /api/todos\n"
+                    + "=== OVERVIEW ===\nTodo demo, Spring Boot + Vue, port 8080\n";
+        }
+        return render(phaseFiles(instruction, files, linesPerFile), instruction.contains(FILE_BLOCKS_INSTRUCTION),
+                request.isJsonResponse());
+    }
+
+    /**
+     * 阶段指令：生成阶段的提示词是 [system, 设计文档, 阶段指令(, 续写/输出格式说明)]，跳过前两条，避免设计文档里的文字被当成标记；
+     * 其他调用只有一条消息。
+     */
+    static String instruction(List<ChatCompletionRequest.ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return "";
+        }
+        int first = messages.size() >= 3 ? 2 : messages.size() - 1;
+        StringBuilder instruction = new StringBuilder();
+        for (ChatCompletionRequest.ChatMessage message : messages.subList(first, messages.size())) {
+            instruction.append(message.text()).append('\n');
+        }
+        return instruction.toString();
+    }
+
+    private Map<String, String> phaseFiles(String instruction, int files, int linesPerFile) {
+        Map<String, String> phaseFiles;
+        Matcher target = TARGET_FILE.matcher(instruction);
+        if (target.find()) {
+            phaseFiles = new LinkedHashMap<>();
+            phaseFiles.put(target.group(1), javaLikeFile(target.group(1), "Generated", 0, linesPerFile));
+        } else if (instruction.contains("FRONTEND CODE GENERATION")) {
+            phaseFiles = frontendFiles(files, linesPerFile);
+        } else if (instruction.contains("GENERATE PROJECT README")) {
+            phaseFiles = new LinkedHashMap<>();
+            phaseFiles.put("README.md", "# Demo\n\nGenerated by the LLM simulator.\n\n## Run\n\n```\nmvn spring-boot:run\n```\n");
+        } else {
+            phaseFiles = backendFiles(files, linesPerFile);
+        }
+        int produced = instruction.indexOf(PRODUCED_FILES_HEADER);
+        if (produced >= 0) {
+            Set<String> skip = new LinkedHashSet<>();
+            for (String line : instruction.substring(produced + PRODUCED_FILES_HEADER.length()).split("\n")) {
+                if (line.isBlank()) {
+                    break;
+                }
+                skip.add(line.trim());
+            }
+            phaseFiles.keySet().removeAll(skip);
+        }
+        return phaseFiles;
+    }
+
+    private static Map<String, String> backendFiles(int files, int linesPerFile) {
+        Map<String, String> backend = new LinkedHashMap<>();
+        for (int i = 1; i <= files; i++) {
+            String path = "backend/src/main/java/com/example/demo/service/DemoService" + i + ".java";
+            backend.put(path, javaLikeFile(path, "DemoService", i, linesPerFile));
+        }
+        return backend;
+    }
+
+    private static Map<String, String> frontendFiles(int files, int linesPerFile) {
+        Map<String, String> frontend = new LinkedHashMap<>();
+        for (int i = 1; i <= files; i++) {
+            StringBuilder code = new StringBuilder("<template>\n  <div class=\"demo-" + i + "\">\n");
+            for (int line = 0; line < linesPerFile; line++) {
+                code.append("    <p :title=\"'row ").append(line).append("'\">{{ rows[").append(line).append("] }}</p>\n");
+            }
+            code.append("  </div>\n</template>\n\n<script setup>\nconst rows = Array.from({ length: ").append(linesPerFile)
+                    .append(" }, (_, i) => `row ${i}`)\n</script>\n");
+            frontend.put("frontend/src/components/DemoComponent" + i + ".vue", code.toString());
+        }
+        return frontend;
+    }
+
+    // 带引号、反斜杠和缩进的 Java 风格代码，JSON 输出时和真实代码一样需要转义
+    private static String javaLikeFile(String path, String className, int index, int linesPerFile) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.indexOf('.');
+        String simpleName = dot > 0 ? name.substring(0, dot).replaceAll("[^A-Za-z0-9_]", "_") : className + index;
+        StringBuilder code = new StringBuilder("package com.example.demo.service;\n\npublic class ").append(simpleName).append(" {\n");
+        for (int line = 0; line < linesPerFile; line++) {
+            code.append("    private final String field").append(line).append(" = \"value \\\\ ").append(line).append("\";\n");
+        }
+        return code.append("}\n").toString();
+    }
+
+    private String render(Map<String, String> files, boolean fileBlocks, boolean jsonObject) {
+        if (fileBlocks) {
+            StringBuilder blocks = new StringBuilder();
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                blocks.append("=== FILE: ").append(file.getKey()).append(" ===\n").append(file.getValue());
+                if (!file.getValue().endsWith("\n")) {
+                    blocks.append('\n');
+                }
+                blocks.append("=== END FILE ===\n");
+            }
+            return blocks.toString();
+        }
+        List<Map<String, String>> array = new ArrayList<>();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            Map<String, String> element = new LinkedHashMap<>();
+            element.put("filePath", file.getKey());
+            element.put("code", file.getValue());
+            array.add(element);
+        }
+        return jsonObject ? toJson(Map.of("files", array)) : toJson(array);
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.llmsimulator.service;
+
+import com.example.llmsimulator.model.ChatCompletionRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 后端 TranscriptRecorder 写出的对话记录（{jobId}.transcript.gz），按提示词索引，用于回放。
+ * <p>
+ * 每个阶段的一次调用是一组连续的 PROMPT 消息加上之后的 OUTPUT（流式）或 RESPONSE（非流式）正文；
+ * "same as message #n" 引用同一份记录里前面的消息。记录里的时间用来还原首 token 延迟（第一个 OUTPUT 相对提示词）
+ * 和输出速度（输出结束于该阶段的下一个事件，通常是 usage）。流被替换（对冲、重试）时只保留最后一个流的输出。
+ * <p>
+ * 查找顺序：完整的消息列表完全相同 → 最后一条消息（阶段指令）相同，多条记录时轮流返回。
+ * 请求带 response_format 时后端会多追加一条格式说明，两种匹配都会再去掉最后一条消息试一次。
+ */
+public class TranscriptLibrary {
+
+    private static final String FILE_SUFFIX = ".transcript.gz";
+    private static final String MEMBER_HEADER = "=== Transcript of job ";
+    private static final Pattern HEADER = Pattern.compile("^\\[\\+(\\d+) ms\\] (.*)$");
+    private static final Pattern NOTE = Pattern.compile("^\\[\\d+ event\\(s\\) dropped, .*\\]$");
+    private static final Pattern PROMPT = Pattern.compile("^(.+) PROMPT (\\w+) #(\\d+) \\((\\d+) chars\\)$");
+    private static final Pattern PROMPT_REFERENCE = Pattern.compile("^(.+) PROMPT (\\w+): same as message #(\\d+) \\((\\d+) chars\\)$");
+    private static final Pattern EVENT = Pattern.compile("^(.+?) (phase |usage: |file |response stream replaced)(.*)$");
+    private static final String OUTPUT_SUFFIX = " OUTPUT";
+    private static final String RESPONSE_SUFFIX = " RESPONSE";
+
+    private final Map<String, List<Entry>> byPrompt = new HashMap<>();
+    private final Map<String, List<Entry>> byInstruction = new HashMap<>();
+    private final Map<String, AtomicInteger> cursors = new ConcurrentHashMap<>();
+    private final int charsPerToken;
+    private int size;
+
+    public TranscriptLibrary(int charsPerToken) {
+        this.charsPerToken = Math.max(1, charsPerToken);
+    }
+
+    /**
+     * 读取目录下所有 *.transcript.gz；目录不存在时返回空的库。
+     */
+    public static TranscriptLibrary load(Path directory, int charsPerToken) throws IOException {
+        TranscriptLibrary library = new TranscriptLibrary(charsPerToken);
+        if (!Files.isDirectory(directory)) {
+            return library;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            library.add(parse(read(file)));
+        }
+        return library;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return 没有对应的记录时返回 null
+     */
+    public SimulatedResponse find(ChatCompletionRequest request) {
+        List<String> messages = new ArrayList<>();
+        for (ChatCompletionRequest.ChatMessage message : request.getMessages()) {
+            messages.add(messageKey(message.getRole(), message.text()));
+        }
+        List<List<String>> candidates = new ArrayList<>();
+        candidates.add(messages);
+        if (request.getResponseFormat() != null && messages.size() > 1) {
+            candidates.add(messages.subList(0, messages.size() - 1));
+        }
+        for (List<String> candidate : candidates) {
+            Entry entry = next("prompt:", byPrompt, String.join("\u0000", candidate));
+            if (entry != null) {
+                return entry.toResponse(charsPerToken);
+            }
+        }
+        for (List<String> candidate : candidates) {
+            Entry entry = candidate.isEmpty() ? null : next("instruction:", byInstruction, candidate.get(candidate.size() - 1));
+            if (entry != null) {
+                return entry.toResponse(charsPerToken);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解析一份解压后的记录，返回其中所有完整的调用。
+     */
+    public static List<Entry> parse(String transcript) {
+        Parser parser = new Parser(transcript);
+        parser.run();
+        return parser.entries;
+    }
+
+    void add(List<Entry> entries) {
+        for (Entry entry : entries) {
+            List<String> keys = new ArrayList<>();
+            for (String[] message : entry.messages) {
+                keys.add(messageKey(message[0], message[1]));
+            }
+            byPrompt.computeIfAbsent(String.join("\u0000", keys), key -> new ArrayList<>()).add(entry);
+            byInstruction.computeIfAbsent(keys.get(keys.size() - 1), key -> new ArrayList<>()).add(entry);
+            size++;
+        }
+    }
+
+    private Entry next(String namespace, Map<String, List<Entry>> index, String key) {
+        List<Entry> entries = index.get(key);
+        if (entries == null) {
+            return null;
+        }
+        int cursor = cursors.computeIfAbsent(namespace + key, ignored -> new AtomicInteger()).getAndIncrement();
+        return entries.get(Math.floorMod(cursor, entries.size()));
+    }
+
+    private static String messageKey(String role, String text) {
+        return role + "\u0001" + text;
+    }
+
+    private static String read(Path file) throws IOException {
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            in.transferTo(text);
+        } catch (EOFException e) {
+            // 任务仍在运行，最后一个 gzip member 还没有结束
+        }
+        return text.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 记录里的一次调用。
+     */
+    public static final class Entry {
+        // [role, text]
+        private final List<String[]> messages;
+        private final String output;
+        private final long ttftMillis;
+        private final long streamMillis;
+
+        Entry(List<String[]> messages, String output, long ttftMillis, long streamMillis) {
+            this.messages = messages;
+            this.output = output;
+            this.ttftMillis = ttftMillis;
+            this.streamMillis = streamMillis;
+        }
+
+        public List<String[]> getMessages() {
+            return messages;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public long getTtftMillis() {
+            return ttftMillis;
+        }
+
+        public long getStreamMillis() {
+            return streamMillis;
+        }
+
+        SimulatedResponse toResponse(int charsPerToken) {
+            // 非流式调用或者缓存命中没有可用的输出时长
+            double tokensPerSecond = streamMillis > 0 ? (output.length() / (double) charsPerToken) * 1000.0 / streamMillis : -1;
+            return new SimulatedResponse(output, SimulatedResponse.SOURCE_REPLAY, ttftMillis, tokensPerSecond);
+        }
+    }
+
+    private static final class Parser {
+        private final String text;
+        private final List<Entry> entries = new ArrayList<>();
+        private final Map<Integer, String> numberedMessages = new HashMap<>();
+        private final Map<String, Call> calls = new HashMap<>();
+        private int position;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        void run() {
+            while (position < text.length()) {
+                int lineEnd = lineEnd(position);
+                String line = text.substring(position, lineEnd);
+                int next = Math.min(text.length(), lineEnd + 1);
+                Matcher header = HEADER.matcher(line);
+                if (line.startsWith(MEMBER_HEADER)) {
+                    // 同一任务再次打开，消息编号重新开始
+                    finishAll();
+                    numberedMessages.clear();
+                    position = next;
+                } else if (header.matches()) {
+                    position = next;
+                    handle(Long.parseLong(header.group(1)), header.group(2));
+                } else {
+                    position = next;
+                }
+            }
+            finishAll();
+        }
+
+        private void handle(long offset, String rest) {
+            Matcher prompt = PROMPT.matcher(rest);
+            if (prompt.matches()) {
+                int chars = Integer.parseInt(prompt.group(4));
+                int end = Math.min(text.length(), position + chars);
+                String body = text.substring(position, end);
+                // 正文之后多写的一个换行
+                position = Math.min(text.length(), end + 1);
+                numberedMessages.put(Integer.parseInt(prompt.group(3)), body);
+                call(prompt.group(1)).prompt(prompt.group(2), body, offset);
+                return;
+            }
+            Matcher reference = PROMPT_REFERENCE.matcher(rest);
+            if (reference.matches()) {
+                String body = numberedMessages.get(Integer.parseInt(reference.group(3)));
+                if (body != null) {
+                    call(reference.group(1)).prompt(reference.group(2), body, offset);
+                }
+                return;
+            }
+            if (rest.endsWith(OUTPUT_SUFFIX) || rest.endsWith(RESPONSE_SUFFIX)) {
+                boolean streamed = rest.endsWith(OUTPUT_SUFFIX);
+                String phase = rest.substring(0, rest.length() - (streamed ? OUTPUT_SUFFIX : RESPONSE_SUFFIX).length());
+                int boundary = nextBoundary(position);
+                String body = text.substring(position, boundary < text.length() ? boundary - 1 : boundary);
+                position = boundary;
+                Call call = call(phase);
+                call.output(body, offset);
+                if (!streamed) {
+                    finish(phase, offset);
+                }
+                return;
+            }
+            Matcher event = EVENT.matcher(rest);
+            if (event.matches()) {
+                String phase = event.group(1);
+                Call call = calls.get(phase);
+                if (call == null) {
+                    return;
+                }
+                if (event.group(2).startsWith("response stream replaced")) {
+                    call.reset();
+                } else if (event.group(2).startsWith("phase ") && !event.group(3).startsWith("started")) {
+                    finish(phase, offset);
+                } else {
+                    call.lastEventOffset = offset;
+                }
+            }
+        }
+
+        private Call call(String phase) {
+            return calls.computeIfAbsent(phase, ignored -> new Call());
+        }
+
+        private void finish(String phase, long offset) {
+            Call call = calls.remove(phase);
+            if (call != null) {
+                call.lastEventOffset = Math.max(call.lastEventOffset, offset);
+                call.finish(entries);
+            }
+        }
+
+        private void finishAll() {
+            for (Call call : calls.values()) {
+                call.finish(entries);
+            }
+            calls.clear();
+        }
+
+        private int lineEnd(int from) {
+            int end = text.indexOf('\n', from);
+            return end < 0 ? text.length() : end;
+        }
+
+        // 下一个标题行（或说明行、新的记录头）的开头，没有时返回文本长度
+        private int nextBoundary(int from) {
+            int line = from;
+            while (line < text.length()) {
+                int end = lineEnd(line);
+                String candidate = text.substring(line, end);
+                if (candidate.startsWith("[") && (HEADER.matcher(candidate).matches() || NOTE.matcher(candidate).matches())
+                        || candidate.startsWith(MEMBER_HEADER)) {
+                    return line;
+                }
+                line = end + 1;
+            }
+            return text.length();
+        }
+
+        /**
+         * 一个阶段正在进行的调用。新的提示词出现在输出之后（续写），说明上一次调用已经结束。
+         */
+        private final class Call {
+            private final List<String[]> messages = new ArrayList<>();
+            private final StringBuilder output = new StringBuilder();
+            private long promptOffset;
+            private long firstOutputOffset = -1;
+            private long lastEventOffset;
+
+            void prompt(String role, String body, long offset) {
+                if (firstOutputOffset >= 0) {
+                    finish(entries);
+                }
+                if (messages.isEmpty()) {
+                    promptOffset = offset;
+                }
+                messages.add(new String[]{role, body});
+            }
+
+            void output(String body, long offset) {
+                if (firstOutputOffset < 0) {
+                    firstOutputOffset = offset;
+                }
+                output.append(body);
+                lastEventOffset = Math.max(lastEventOffset, offset);
+            }
+
+            void reset() {
+                output.setLength(0);
+                firstOutputOffset = -1;
+            }
+
+            void finish(List<Entry> into) {
+                if (!messages.isEmpty() && output.length() > 0) {
+                    into.add(new Entry(new ArrayList<>(messages), output.toString(), Math.max(0, firstOutputOffset - promptOffset),
+                            Math.max(0, lastEventOffset - firstOutputOffset)));
+                }
+                messages.clear();
+                reset();
+                lastEventOffset = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.llmsimulator.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatCompletionsController 集成测试类：通过 HTTP 调用模拟器，检查 OpenAI 兼容的响应格式
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "simulator.mode=synthesize",
+        "simulator.ttft-ms=200",
+        "simulator.tokens-per-second=20000",
+        "simulator.jitter=0",
+        "simulator.synthetic-files=2",
+        "simulator.synthetic-lines-per-file=5"
+})
+public class ChatCompletionsControllerTest {
+
+    private static final String REQUEST = "{\"model\": \"deepseek-chat\", \"stream\": %s, \"messages\": ["
+            + "{\"role\": \"system\", \"content\": \"You are an expert AI software architect.\"},"
+            + "{\"role\": \"user\", \"content\": \"# Todo app\"},"
+            + "{\"role\": \"user\", \"content\": \"[Current Phase: BACKEND CODE GENERATION]\"}]}";
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @LocalServerPort
+    private int port;
+
+    @AfterEach
+    public void resetFaults() throws Exception {
+        put("/simulator/settings", "{\"rateLimitRate\": 0}");
+    }
+
+    @Test
+    public void streamsChunksEndingWithUsageAndDone() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response = post("/v1/chat/completions", String.format(REQUEST, true));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/event-stream"));
+        List<String> events = new ArrayList<>();
+        for (String line : response.body().split("\n")) {
+            if (line.startsWith("data:")) {
+                events.add(line.substring("data:".length()).trim());
+            }
+        }
+        assertEquals("[DONE]", events.get(events.size() - 1));
+        StringBuilder content = new StringBuilder();
+        JsonNode last = null;
+        for (String event : events.subList(0, events.size() - 1)) {
+            last = objectMapper.readTree(event);
+            assertEquals("chat.completion.chunk", last.path("object").asText());
+            content.append(last.path("choices").get(0).path("delta").path("content").asText(""));
+        }
+        assertEquals("assistant", objectMapper.readTree(events.get(0)).path("choices").get(0).path("delta").path("role").asText());
+        assertEquals("stop", last.path("choices").get(0).path("finish_reason").asText());
+        JsonNode usage = last.path("usage");
+        assertEquals(usage.path("prompt_tokens").asLong() + usage.path("completion_tokens").asLong(), usage.path("total_tokens").asLong());
+        assertTrue(usage.path("completion_tokens").asLong() > 0);
+
+        JsonNode files = objectMapper.readTree(content.toString());
+        assertEquals(2, files.size());
+        assertTrue(millis >= 150, "stream finished before the first token delay: " + millis + " ms");
+    }
+
+    @Test
+    public void returnsASingleCompletionWithoutStreaming() throws Exception {
+        HttpResponse<String> response = post("/chat/completions", String.format(REQUEST, false));
+
+        assertEquals(200, response.statusCode());
+        JsonNode body = objectMapper.readTree(response.body());
+        assertEquals("chat.completion", body.path("object").asText());
+        assertEquals("assistant", body.path("choices").get(0).path("message").path("role").asText());
+        assertEquals(2, objectMapper.readTree(body.path("choices").get(0).path("message").path("content").asText()).size());
+    }
+
+    @Test
+    public void rateLimitsWithRetryAfter() throws Exception {
+        put("/simulator/settings", "{\"rateLimitRate\": 1, \"retryAfterSeconds\": 3}");
+
+        HttpResponse<String> response = post("/v1/chat/completions", String.format(REQUEST, true));
+
+        assertEquals(429, response.statusCode());
+        assertEquals("3", response.headers().firstValue("Retry-After").orElse(null));
+        assertEquals("requests", objectMapper.readTree(response.body()).path("error").path("type").asText());
+        JsonNode stats = objectMapper.readTree(client.send(HttpRequest.newBuilder(uri("/simulator/stats")).build(),
+                HttpResponse.BodyHandlers.ofString()).body());
+        assertTrue(stats.path("rateLimited").asLong() >= 1);
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void put(String path, String body) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri(path)).header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), response.body());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
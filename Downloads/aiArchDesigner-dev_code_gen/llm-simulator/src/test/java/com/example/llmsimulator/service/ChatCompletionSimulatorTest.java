@@ -0,0 +1,167 @@
+package com.example.llmsimulator.service;
+
+import com.example.llmsimulator.config.SimulatorSettings;
+import com.example.llmsimulator.model.ChatCompletionRequest;
+import com.example.llmsimulator.model.ChatCompletionRequest.ChatMessage;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatCompletionSimulator 单元测试类
+ */
+public class ChatCompletionSimulatorTest {
+
+    private static final String SYSTEM = "You are an expert AI software architect.";
+    private static final String DESIGN = "# Todo app\nA REST API for todos.";
+    private static final String BACKEND = "[Current Phase: BACKEND CODE GENERATION]\nGenerate the backend.";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void sameSeedAndRequestOrderGiveTheSamePlan() {
+        SimulatorSettings settings = settings();
+        settings.setJitter(0.5);
+        settings.setStallRate(0.5);
+        settings.setTruncateRate(0.5);
+
+        List<SimulationPlan> first = plans(new ChatCompletionSimulator(settings, new SyntheticResponseGenerator()), 5);
+        List<SimulationPlan> second = plans(new ChatCompletionSimulator(settings, new SyntheticResponseGenerator()), 5);
+
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).getDelaysMicros(), second.get(i).getDelaysMicros());
+            assertEquals(first.get(i).getText(), second.get(i).getText());
+            assertEquals(first.get(i).getFinishReason(), second.get(i).getFinishReason());
+        }
+    }
+
+    @Test
+    public void synthesizesTheBackendPhaseAsAJsonFileArray() throws Exception {
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings(), new SyntheticResponseGenerator());
+
+        SimulationPlan plan = simulator.plan(request(BACKEND));
+
+        assertFalse(plan.isError());
+        assertEquals("stop", plan.getFinishReason());
+        JsonNode files = objectMapper.readTree(plan.getText());
+        assertEquals(3, files.size());
+        assertEquals("backend/src/main/java/com/example/demo/service/DemoService1.java", files.get(0).path("filePath").asText());
+        assertTrue(files.get(0).path("code").asText().contains("private final String field4 = \"value \\\\ 4\";\n"));
+        assertEquals(plan.getChunks().size(), plan.getDelaysMicros().size());
+        assertEquals(ChatCompletionSimulator.tokenize(plan.getText(), 4).size(), plan.getCompletionTokens());
+        // 首 token 延迟 100ms，之后每个分片 2 个 token，每秒 1000 token
+        assertEquals(100_000 + 2_000, plan.getDelaysMicros().get(0));
+        assertEquals(2_000, plan.getDelaysMicros().get(1));
+    }
+
+    @Test
+    public void followsTheOutputFormatAndSkipsProducedFilesOnContinuation() throws Exception {
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings(), new SyntheticResponseGenerator());
+
+        String blocks = simulator.plan(request(BACKEND + "\nOutput format: FILE BLOCKS. Do NOT output JSON for this request.")).getText();
+        assertTrue(blocks.startsWith("=== FILE: backend/src/main/java/com/example/demo/service/DemoService1.java ===\npackage "), blocks);
+        assertEquals(3, blocks.split("=== END FILE ===\n", -1).length - 1);
+
+        String continuation = simulator.plan(request(BACKEND, "[Continuation]\nThe following files were received completely and MUST NOT be output again:\n"
+                + "backend/src/main/java/com/example/demo/service/DemoService1.java\n\nOutput ONLY the remaining files.")).getText();
+        JsonNode remaining = objectMapper.readTree(continuation);
+        assertEquals(2, remaining.size());
+        assertEquals("backend/src/main/java/com/example/demo/service/DemoService2.java", remaining.get(0).path("filePath").asText());
+
+        ChatCompletionRequest structured = request("[Current Phase: SINGLE FILE GENERATION]\nThe `filePath` of the single file in your output "
+                + "MUST be exactly `backend/pom.xml`.");
+        structured.setResponseFormat(objectMapper.readTree("{\"type\": \"json_object\"}"));
+        JsonNode single = objectMapper.readTree(simulator.plan(structured).getText());
+        assertEquals("backend/pom.xml", single.path("files").get(0).path("filePath").asText());
+    }
+
+    @Test
+    public void truncatesAtTheRequestedOutputLimit() {
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings(), new SyntheticResponseGenerator());
+        ChatCompletionRequest request = request(BACKEND);
+        request.setMaxTokens(10);
+
+        SimulationPlan plan = simulator.plan(request);
+
+        assertEquals("length", plan.getFinishReason());
+        assertEquals(10, plan.getCompletionTokens());
+        assertEquals(40, plan.getText().length());
+        assertEquals(1L, simulator.getStats().get("truncated"));
+    }
+
+    @Test
+    public void injectsRateLimitsAndServerErrors() {
+        SimulatorSettings settings = settings();
+        settings.setRateLimitRate(1);
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings, new SyntheticResponseGenerator());
+        assertEquals(429, simulator.plan(request(BACKEND)).getErrorStatus());
+
+        settings.setRateLimitRate(0);
+        settings.setServerErrorRate(1);
+        simulator.updateSettings(settings);
+        int status = simulator.plan(request(BACKEND)).getErrorStatus();
+        assertTrue(status == 500 || status == 503, "status " + status);
+        assertEquals(1L, simulator.getStats().get("rateLimited"));
+        assertEquals(1L, simulator.getStats().get("serverErrors"));
+    }
+
+    @Test
+    public void reportsTheSharedPromptPrefixAsCached() {
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings(), new SyntheticResponseGenerator());
+
+        assertEquals(0, simulator.plan(request(BACKEND)).getCachedPromptTokens());
+        SimulationPlan frontend = simulator.plan(request("[Current Phase: FRONTEND CODE GENERATION]"));
+
+        // system + 设计文档两条消息（含 "role:" 前缀）命中缓存
+        assertEquals(("system:" + SYSTEM).length() / 4 + ("user:" + DESIGN).length() / 4, frontend.getCachedPromptTokens(), 1);
+        assertTrue(frontend.getText().contains("frontend/src/components/DemoComponent1.vue"));
+    }
+
+    @Test
+    public void stallsAddTheConfiguredPause() {
+        SimulatorSettings settings = settings();
+        settings.setStallRate(1);
+        settings.setStallMs(3000);
+        ChatCompletionSimulator simulator = new ChatCompletionSimulator(settings, new SyntheticResponseGenerator());
+
+        SimulationPlan plan = simulator.plan(request(BACKEND));
+        SimulationPlan reference = new ChatCompletionSimulator(settings(), new SyntheticResponseGenerator()).plan(request(BACKEND));
+
+        assertEquals(reference.getTotalDelayMicros() + 3_000_000, plan.getTotalDelayMicros());
+    }
+
+    static SimulatorSettings settings() {
+        SimulatorSettings settings = new SimulatorSettings();
+        settings.setTtftMs(100);
+        settings.setTokensPerSecond(1000);
+        settings.setJitter(0);
+        settings.setSyntheticFiles(3);
+        settings.setSyntheticLinesPerFile(5);
+        return settings;
+    }
+
+    static ChatCompletionRequest request(String... instructions) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        request.setModel("deepseek-chat");
+        request.setStream(true);
+        List<ChatMessage> messages = new ArrayList<>(List.of(new ChatMessage("system", SYSTEM), new ChatMessage("user", DESIGN)));
+        for (String instruction : instructions) {
+            messages.add(new ChatMessage("user", instruction));
+        }
+        request.setMessages(messages);
+        return request;
+    }
+
+    private static List<SimulationPlan> plans(ChatCompletionSimulator simulator, int count) {
+        List<SimulationPlan> plans = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            plans.add(simulator.plan(request(BACKEND)));
+        }
+        return plans;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.llmsimulator.service;
+
+import com.example.llmsimulator.model.ChatCompletionRequest;
+import com.example.llmsimulator.model.ChatCompletionRequest.ChatMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TranscriptLibrary 单元测试类，记录文本按后端 TranscriptRecorder 的格式手写
+ */
+public class TranscriptLibraryTest {
+
+    private static final String SYSTEM = "You generate code.";
+    private static final String DESIGN = "# Todo app\n" + "The backend exposes a REST API for todos.\n".repeat(40);
+
+    private static final String TRANSCRIPT = "=== Transcript of job job-1: generate (started 2026-10-18T10:00:00Z) ===\n"
+            + "[+0 ms] Backend phase started\n"
+            + "[+1 ms] Backend PROMPT system #1 (18 chars)\n" + SYSTEM + "\n"
+            + "[+1 ms] Backend PROMPT user #2 (" + DESIGN.length() + " chars)\n" + DESIGN + "\n"
+            + "[+1 ms] Backend PROMPT user #3 (21 chars)\nGenerate the backend.\n"
+            + "[+2 ms] Frontend phase started\n"
+            + "[+2 ms] Frontend PROMPT system #4 (18 chars)\n" + SYSTEM + "\n"
+            + "[+2 ms] Frontend PROMPT user: same as message #2 (" + DESIGN.length() + " chars)\n"
+            + "[+2 ms] Frontend PROMPT user #5 (22 chars)\nGenerate the frontend.\n"
+            + "[+900 ms] Backend OUTPUT\n[{\"filePath\": \n"
+            + "[+950 ms] Frontend OUTPUT\n<template>\n\n"
+            + "[+1000 ms] Backend OUTPUT\n\"A.java\", \"code\": \"class A {}\"}]\n"
+            + "[+1100 ms] Backend response stream replaced, output restarts\n"
+            + "[+1201 ms] Backend OUTPUT\n[]\n"
+            + "[+2201 ms] Backend phase COMPLETED in 2201 ms, 0 file(s)\n"
+            + "[+2302 ms] Frontend OUTPUT\n</template>\n\n"
+            + "[+2302 ms] Frontend file frontend/App.vue (22 chars)\n"
+            + "[+2302 ms] Frontend phase COMPLETED in 2300 ms, 1 file(s)\n"
+            + "[+2400 ms] File list PROMPT user #6 (14 chars)\nList the files\n"
+            + "[+3000 ms] File list RESPONSE\n[\"A.java\"]\n"
+            + "[3 event(s) dropped, transcript ring buffer full]\n"
+            + "[+3000 ms] job COMPLETED\n";
+
+    @Test
+    public void parsesInterleavedPhasesIntoCalls() {
+        List<TranscriptLibrary.Entry> entries = TranscriptLibrary.parse(TRANSCRIPT);
+
+        assertEquals(3, entries.size());
+        TranscriptLibrary.Entry backend = entries.get(0);
+        assertEquals(List.of("system", "user", "user"), roles(backend));
+        assertEquals(DESIGN, backend.getMessages().get(1)[1]);
+        // 被替换的响应流之前的输出不算
+        assertEquals("[]", backend.getOutput());
+        assertEquals(1200, backend.getTtftMillis());
+        assertEquals(1000, backend.getStreamMillis());
+
+        TranscriptLibrary.Entry frontend = entries.get(1);
+        // "same as message #2" 还原成设计文档全文
+        assertEquals(DESIGN, frontend.getMessages().get(1)[1]);
+        assertEquals("Generate the frontend.", frontend.getMessages().get(2)[1]);
+        assertEquals("<template>\n</template>\n", frontend.getOutput());
+        assertEquals(948, frontend.getTtftMillis());
+
+        TranscriptLibrary.Entry fileList = entries.get(2);
+        assertEquals("[\"A.java\"]", fileList.getOutput());
+        assertEquals(0, fileList.getStreamMillis());
+    }
+
+    @Test
+    public void findsRecordedResponsesByPromptOrInstruction(@TempDir Path directory) throws Exception {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(directory.resolve("job-1.transcript.gz")))) {
+            out.write(TRANSCRIPT.getBytes(StandardCharsets.UTF_8));
+        }
+        // 最后一个 gzip member 没写完（任务还在运行）时，前面的内容照样可用
+        byte[] partial = gzip("=== Transcript of job job-2: generate (started 2026-10-18T10:00:00Z) ===\n");
+        Files.write(directory.resolve("job-2.transcript.gz"), Arrays.copyOf(partial, partial.length - 6));
+        TranscriptLibrary library = TranscriptLibrary.load(directory, 4);
+        assertEquals(3, library.size());
+
+        SimulatedResponse backend = library.find(request(SYSTEM, DESIGN, "Generate the backend."));
+        assertEquals("[]", backend.getText());
+        assertEquals(SimulatedResponse.SOURCE_REPLAY, backend.getSource());
+        assertEquals(1200, backend.getRecordedTtftMillis());
+        assertTrue(backend.hasRecordedTiming());
+
+        // 设计文档不同时按最后一条指令匹配
+        assertEquals("<template>\n</template>\n", library.find(request(SYSTEM, "# Other app", "Generate the frontend.")).getText());
+
+        // 结构化输出请求多出的格式说明消息不参与匹配
+        ChatCompletionRequest structured = request(SYSTEM, DESIGN, "Generate the backend.", "Respond with a JSON object.");
+        structured.setResponseFormat(new ObjectMapper().readTree("{\"type\": \"json_object\"}"));
+        assertEquals("[]", library.find(structured).getText());
+
+        assertNull(library.find(request(SYSTEM, DESIGN, "Generate the tests.")));
+    }
+
+    private static ChatCompletionRequest request(String system, String... userMessages) {
+        ChatCompletionRequest request = new ChatCompletionRequest();
+        List<ChatMessage> messages = new ArrayList<>();
+        messages.add(new ChatMessage("system", system));
+        for (String text : userMessages) {
+            messages.add(new ChatMessage("user", text));
+        }
+        request.setMessages(messages);
+        return request;
+    }
+
+    private static List<String> roles(TranscriptLibrary.Entry entry) {
+        return entry.getMessages().stream().map(message -> message[0]).collect(Collectors.toList());
+    }
+
+    private static byte[] gzip(String text) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}